@@ -0,0 +1,65 @@
+package com.example.demo1.bench;
+
+import com.example.demo1.Demo1Application;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * 为基准测试启动完整的 demo1 应用上下文：随机 HTTP 端口、进程内 MQTT Broker（vm://）、
+ * 独立的 H2 内存库和临时遥测目录，日志级别调到 WARN，避免控制台输出干扰测量。
+ */
+final class BenchmarkContexts {
+
+    /**
+     * 运行中的应用上下文及其临时遥测目录。
+     */
+    record Handle(ConfigurableApplicationContext context, Path telemetryDir) implements AutoCloseable {
+
+        <T> T getBean(Class<T> type) {
+            return context.getBean(type);
+        }
+
+        @Override
+        public void close() throws IOException {
+            context.close();
+            try (Stream<Path> paths = Files.walk(telemetryDir)) {
+                for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+    }
+
+    private BenchmarkContexts() {
+    }
+
+    /**
+     * @param extraProperties 覆盖默认配置的 key=value
+     */
+    static Handle start(String... extraProperties) throws IOException {
+        Path telemetryDir = Files.createTempDirectory("jmh-telemetry");
+        List<String> properties = new ArrayList<>(List.of(
+                "server.port=0",
+                "spring.main.banner-mode=off",
+                "logging.level.root=WARN",
+                "spring.datasource.url=jdbc:h2:mem:jmh-" + System.nanoTime() + ";DB_CLOSE_DELAY=-1",
+                "mqtt.embedded-broker.enabled=true",
+                "mqtt.embedded-broker.name=jmh",
+                "mqtt.embedded-broker.port=-1",
+                "mqtt.broker-url=vm://jmh",
+                "telemetry.data-dir=" + telemetryDir));
+        properties.addAll(List.of(extraProperties));
+        // 以命令行参数传入（优先级高于 application.properties；builder 的 properties() 只是默认值）
+        String[] args = properties.stream().map(p -> "--" + p).toArray(String[]::new);
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(Demo1Application.class).run(args);
+        return new Handle(context, telemetryDir);
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.demo1.bench;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.converter.ByteArrayHttpMessageConverter;
+import org.springframework.http.converter.StringHttpMessageConverter;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.async.StandardServletAsyncWebRequest;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.method.support.ModelAndViewContainer;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitterReturnValueHandler;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 创建已连接的 SseEmitter，用于在没有真实 HTTP 连接的情况下测量推送路径。
+ * <p>
+ * 与控制器返回 SseEmitter 时一样，由 {@link ResponseBodyEmitterReturnValueHandler} 完成异步请求和 emitter 的初始化，
+ * 响应是一个丢弃输出、只统计字节数的 {@link MockHttpServletResponse}。只使用 Spring 的公开 API。
+ */
+final class ConnectedSseEmitters {
+
+    private static final ResponseBodyEmitterReturnValueHandler HANDLER = new ResponseBodyEmitterReturnValueHandler(
+            List.of(new ByteArrayHttpMessageConverter(), new StringHttpMessageConverter(StandardCharsets.UTF_8)));
+
+    private static final MethodParameter RETURN_TYPE;
+
+    static {
+        try {
+            RETURN_TYPE = new MethodParameter(ConnectedSseEmitters.class.getDeclaredMethod("subscribe"), -1);
+        } catch (NoSuchMethodException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private ConnectedSseEmitters() {
+    }
+
+    // 只用于提供返回类型，相当于一个返回 SseEmitter 的控制器方法
+    @SuppressWarnings("unused")
+    private static SseEmitter subscribe() {
+        return null;
+    }
+
+    /**
+     * @param bytesWritten 写出的字节数累加到这里，可为 null
+     */
+    static SseEmitter connect(LongAdder bytesWritten) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/sse/events");
+        request.setAsyncSupported(true);
+        MockHttpServletResponse response = new DiscardingResponse(bytesWritten);
+        WebAsyncUtils.getAsyncManager(request).setAsyncWebRequest(new StandardServletAsyncWebRequest(request, response));
+
+        SseEmitter emitter = new SseEmitter(0L);
+        HANDLER.handleReturnValue(emitter, RETURN_TYPE, new ModelAndViewContainer(), new ServletWebRequest(request, response));
+        return emitter;
+    }
+
+    /**
+     * 丢弃写入内容的响应，避免 MockHttpServletResponse 在内存中无限累积输出。
+     */
+    private static final class DiscardingResponse extends MockHttpServletResponse {
+
+        private final ServletOutputStream outputStream;
+
+        DiscardingResponse(LongAdder bytesWritten) {
+            this.outputStream = new ServletOutputStream() {
+                @Override
+                public void write(int b) {
+                    count(1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    count(len);
+                }
+
+                private void count(int n) {
+                    if (bytesWritten != null) {
+                        bytesWritten.add(n);
+                    }
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setWriteListener(WriteListener writeListener) {
+                }
+            };
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            return outputStream;
+        }
+    }
+}
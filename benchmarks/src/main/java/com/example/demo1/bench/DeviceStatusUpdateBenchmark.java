@@ -0,0 +1,66 @@
+package com.example.demo1.bench;
+
+import com.example.demo1.service.DeviceService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 设备状态更新（device/status 消息的持久化路径）对 H2 的开销，
+ * 分别测量 write-behind 缓冲开启和关闭（每次更新一个事务）两种配置。
+ * 每次调用轮流翻转不同设备的状态，保证不会因"状态未变化"而直接返回。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeviceStatusUpdateBenchmark {
+
+    private static final int DEVICES = 1000;
+
+    @Param({"true", "false"})
+    private boolean writeBehind;
+
+    private BenchmarkContexts.Handle app;
+    private DeviceService deviceService;
+    private String[] deviceUids;
+    private long next;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        app = BenchmarkContexts.start("device.status.write-behind.enabled=" + writeBehind);
+        deviceService = app.getBean(DeviceService.class);
+        deviceUids = new String[DEVICES];
+        for (int i = 0; i < DEVICES; i++) {
+            deviceUids[i] = String.format("sensor-th-%06d", i);
+            deviceService.handleDeviceRegistrationOrUpdate(deviceUids[i], "TempHumSensor", "online");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        app.close();
+    }
+
+    @Benchmark
+    public void updateDeviceStatusByUid() {
+        long n = next++;
+        // 每轮遍历完所有设备后翻转目标状态
+        String status = (n / DEVICES) % 2 == 0 ? "offline" : "online";
+        deviceService.updateDeviceStatusByUid(deviceUids[(int) (n % DEVICES)], status);
+    }
+}
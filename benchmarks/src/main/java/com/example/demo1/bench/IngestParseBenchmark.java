@@ -0,0 +1,72 @@
+package com.example.demo1.bench;
+
+import com.example.demo1.service.MqttTopics;
+import com.example.demo1.service.ingest.PayloadDecoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ingest 解析阶段的热点：上报 / 状态 JSON 的解码以及从主题中提取设备 ID。
+ * <p>
+ * {@code parse*Map} 是原先的做法（字节 -> String -> Map），{@code decode*} 是 {@link PayloadDecoder}
+ * 的流式解码；配合 {@code -prof gc} 运行可对比每条消息的分配量（gc.alloc.rate.norm）。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IngestParseBenchmark {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final PayloadDecoder payloadDecoder = new PayloadDecoder(objectMapper.getFactory());
+    private byte[] reportPayload;
+    private byte[] statusPayload;
+
+    @Setup
+    public void setup() {
+        // 与模拟器 TempHumSensor 上报格式一致
+        reportPayload = "{\"deviceId\":\"sensor-th-000123\",\"temperature\":23.4,\"humidity\":56.7,\"timestamp\":1760000000000}"
+                .getBytes(StandardCharsets.UTF_8);
+        statusPayload = "{\"status\":\"online\",\"timestamp\":1760000000000}".getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public Map<?, ?> parseReportMap() throws Exception {
+        return objectMapper.readValue(new String(reportPayload, StandardCharsets.UTF_8), Map.class);
+    }
+
+    @Benchmark
+    public PayloadDecoder.ReportPayload decodeReport() throws Exception {
+        return payloadDecoder.decodeReport(reportPayload, 0L);
+    }
+
+    @Benchmark
+    public Map<?, ?> parseStatusMap() throws Exception {
+        return objectMapper.readValue(new String(statusPayload, StandardCharsets.UTF_8), Map.class);
+    }
+
+    @Benchmark
+    public PayloadDecoder.StatusPayload decodeStatus() throws Exception {
+        return payloadDecoder.decodeStatus(statusPayload);
+    }
+
+    @Benchmark
+    public String extractDeviceId() {
+        return MqttTopics.extractDeviceId("device/report/sensor-th-000123", 2);
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.demo1.bench;
+
+import com.example.demo1.service.SseNotificationService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SSE 推送路径：一条事件从 {@link SseNotificationService} 进入到放入每个订阅客户端发送队列的耗时。
+ * <p>
+ * 实际写出由写线程池异步完成（写入丢弃输出的响应，见 {@link ConnectedSseEmitters}），这里测量的是调用方线程
+ * （Ingest 推送阶段）承担的部分：事件编码、写事件日志、订阅匹配和入队。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SseFanOutBenchmark {
+
+    private static final int DEVICES = 1000;
+
+    @Param({"1", "100", "10000"})
+    private int emitters;
+
+    private BenchmarkContexts.Handle app;
+    private SseNotificationService sseNotificationService;
+    private final LongAdder bytesWritten = new LongAdder();
+    private String[] topics;
+    private String[] deviceUids;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        app = BenchmarkContexts.start();
+        sseNotificationService = app.getBean(SseNotificationService.class);
+        for (int i = 0; i < emitters; i++) {
+            sseNotificationService.addEmitter(ConnectedSseEmitters.connect(bytesWritten));
+        }
+        topics = new String[DEVICES];
+        deviceUids = new String[DEVICES];
+        for (int i = 0; i < DEVICES; i++) {
+            deviceUids[i] = String.format("sensor-th-%06d", i);
+            topics[i] = "device/report/" + deviceUids[i];
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        app.close();
+    }
+
+    @Benchmark
+    public void sendDeviceEvent() {
+        int i = next++ % DEVICES;
+        sseNotificationService.sendDeviceEvent("mqttMessage",
+                "{\"topic\":\"" + topics[i] + "\",\"payload\":\"{}\",\"timestamp\":0}", topics[i], deviceUids[i]);
+    }
+
+    @Benchmark
+    public void sendSseEvent() {
+        sseNotificationService.sendSseEvent("deviceStatus", "{\"deviceUid\":\"sensor-th-000001\",\"status\":\"online\"}");
+    }
+}
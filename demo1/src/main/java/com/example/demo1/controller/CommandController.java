@@ -0,0 +1,98 @@
+package com.example.demo1.controller;
+
+import com.example.demo1.service.command.BulkCommandJob;
+import com.example.demo1.service.command.BulkCommandService;
+import com.example.demo1.service.command.CommandTracker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/devices/commands")
+public class CommandController {
+
+    private static final Logger logger = LoggerFactory.getLogger(CommandController.class);
+
+    @Autowired
+    private BulkCommandService bulkCommandService;
+
+    @Autowired
+    private CommandTracker commandTracker;
+
+    /**
+     * 批量命令请求体: 指定 deviceUids 时按列表下发，否则按 deviceType 和/或 status 选择设备。
+     */
+    public record BulkCommandRequest(String command, List<String> deviceUids, String deviceType, String status) {
+    }
+
+    // POST 请求：提交批量命令任务，立即返回任务 ID（202），进度见 /devices/commands/{jobId}/events
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> submit(@RequestBody BulkCommandRequest request) {
+        BulkCommandService.Submission submission;
+        try {
+            submission = bulkCommandService.submit(request.command(), request.deviceUids(),
+                    request.deviceType(), request.status());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (IllegalStateException e) {
+            logger.error("提交批量命令失败，MQTT 客户端未连接: {}", e.getMessage());
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "MQTT 服务当前不可用");
+        }
+        Map<String, Object> body = new LinkedHashMap<>(submission.job().getSummary());
+        body.put("unknownDeviceUids", submission.unknownDeviceUids());
+        body.put("events", "/devices/commands/" + submission.job().getId() + "/events");
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(body);
+    }
+
+    // GET 请求：最近的批量命令任务（最新的在前）及连接统计
+    @GetMapping
+    public Map<String, Object> listJobs() {
+        Map<String, Object> body = new LinkedHashMap<>(bulkCommandService.getStats());
+        body.put("recentJobs", bulkCommandService.getJobSummaries());
+        return body;
+    }
+
+    // GET 请求：单条命令的确认结果（PENDING / ACKED / REJECTED / TIMED_OUT / SEND_FAILED）及往返延迟
+    @GetMapping("/outcomes/{commandId}")
+    public CommandTracker.CommandOutcome getOutcome(@PathVariable String commandId) {
+        return commandTracker.find(commandId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown command: " + commandId));
+    }
+
+    // GET 请求：按设备类型的命令往返延迟 p50 / p99（毫秒）、确认数与超时数
+    @GetMapping("/latency")
+    public Map<String, Object> getLatency() {
+        return commandTracker.getLatencyStats();
+    }
+
+    @GetMapping("/{jobId}")
+    public Map<String, Object> getJob(@PathVariable String jobId) {
+        return bulkCommandService.getJob(jobId).map(BulkCommandJob::getSummary)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown job: " + jobId));
+    }
+
+    // SSE：逐设备的下发进度（progress 事件批量携带新完成的设备结果），全部完成后发送 completed 事件并关闭
+    @GetMapping(value = "/{jobId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamProgress(@PathVariable String jobId) {
+        SseEmitter emitter = new SseEmitter(3600_000L);
+        if (!bulkCommandService.subscribe(jobId, emitter)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown job: " + jobId);
+        }
+        return emitter;
+    }
+}
@@ -1,15 +1,28 @@
 package com.example.demo1.controller; // **确认包名**
 
 import com.example.demo1.entity.Device; // **确认导入**
+import com.example.demo1.repository.DeviceFilter;
+import com.example.demo1.repository.DeviceSummary;
+import com.example.demo1.service.DeviceRegistryCache;
 import com.example.demo1.service.DeviceService; // **确认导入**
 import com.example.demo1.service.MqttService; // **确认导入**
+import com.example.demo1.service.command.CommandTracker;
+import com.example.demo1.service.fleet.FleetAggregates;
+import com.example.demo1.service.presence.PresenceTracker;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -19,6 +32,8 @@ import java.util.Optional;
 public class DeviceController {
 
     private static final Logger logger = LoggerFactory.getLogger(DeviceController.class);
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int EXPORT_BATCH_SIZE = 1000;
 
     @Autowired
     private DeviceService deviceService; // **确认注入**
@@ -26,6 +41,21 @@ public class DeviceController {
     @Autowired
     private MqttService mqttService; // **确认注入**
 
+    @Autowired
+    private DeviceRegistryCache deviceRegistryCache;
+
+    @Autowired
+    private CommandTracker commandTracker;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private FleetAggregates fleetAggregates;
+
+    @Autowired
+    private PresenceTracker presenceTracker;
+
     @PostMapping("/register")
     public ResponseEntity<?> registerDevice(@RequestBody Device device) {
         try {
@@ -40,17 +70,93 @@ public class DeviceController {
         }
     }
 
+    // 分页列出设备（keyset 分页，按 id 升序）。可选过滤: status、type（精确匹配）、uidPrefix（UID 前缀）。
+    // 返回 {items, nextCursor}，把 nextCursor 作为下一次请求的 after 参数，为 null 表示没有更多数据
     @GetMapping("/")
-    public ResponseEntity<List<Device>> getAllDevices() {
+    public ResponseEntity<?> listDevices(@RequestParam(required = false) String status,
+                                         @RequestParam(required = false) String type,
+                                         @RequestParam(required = false) String uidPrefix,
+                                         @RequestParam(required = false) Long after,
+                                         @RequestParam(defaultValue = "100") int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().body(Map.of("error", "limit 取值范围为 1 ~ " + MAX_PAGE_SIZE));
+        }
         try {
-            List<Device> devices = deviceService.getAllDevices();
-            return ResponseEntity.ok(devices);
+            return ResponseEntity.ok(deviceService.findDevicePage(DeviceFilter.of(status, type, uidPrefix), after, limit));
         } catch (Exception e) {
-            logger.error("获取所有设备列表时出错", e);
+            logger.error("获取设备列表时出错", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
 
+    // 导出设备（过滤参数同列表）: format=json 为 JSON 数组，format=ndjson 为每行一个 JSON 对象。
+    // 按页读取、边读边写，内存占用与设备总数无关
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportDevices(@RequestParam(required = false) String status,
+                                                               @RequestParam(required = false) String type,
+                                                               @RequestParam(required = false) String uidPrefix,
+                                                               @RequestParam(defaultValue = "json") String format) {
+        boolean ndjson = "ndjson".equalsIgnoreCase(format);
+        if (!ndjson && !"json".equalsIgnoreCase(format)) {
+            return ResponseEntity.badRequest().build();
+        }
+        DeviceFilter filter = DeviceFilter.of(status, type, uidPrefix);
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                if (ndjson) {
+                    generator.setRootValueSeparator(null); // 行之间只用换行分隔，不要默认的空格
+                } else {
+                    generator.writeStartArray();
+                }
+                Long cursor = null;
+                do {
+                    DeviceService.DevicePage page = deviceService.findDevicePage(filter, cursor, EXPORT_BATCH_SIZE);
+                    for (DeviceSummary device : page.items()) {
+                        generator.writeObject(device);
+                        if (ndjson) {
+                            generator.writeRaw('\n');
+                        }
+                    }
+                    generator.flush();
+                    cursor = page.nextCursor();
+                } while (cursor != null);
+                if (!ndjson) {
+                    generator.writeEndArray();
+                }
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(ndjson ? MediaType.APPLICATION_NDJSON : MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=devices." + (ndjson ? "ndjson" : "json"))
+                .body(body);
+    }
+
+    // 设备总览: 总数、按状态 / 类型计数和消息速率，来自内存中增量维护的计数，不扫描设备表。
+    // 之后的变化通过 SSE 事件 fleetSummary 推送
+    @GetMapping("/summary")
+    public ResponseEntity<Map<String, Object>> getFleetSummary() {
+        return ResponseEntity.ok(fleetAggregates.getSummary());
+    }
+
+    // 设备注册表缓存的命中/未命中/淘汰计数
+    @GetMapping("/cache/stats")
+    public ResponseEntity<Map<String, Object>> getCacheStats() {
+        return ResponseEntity.ok(deviceRegistryCache.getStats());
+    }
+
+    // 在线检测: 跟踪的设备数、超时 / 恢复计数和时间轮参数
+    @GetMapping("/presence/stats")
+    public ResponseEntity<Map<String, Object>> getPresenceStats() {
+        return ResponseEntity.ok(presenceTracker.getStats());
+    }
+
+    // 单台设备的最近消息时间、估计的上报间隔和超时时长
+    @GetMapping("/{deviceUid}/presence")
+    public ResponseEntity<PresenceTracker.DevicePresence> getDevicePresence(@PathVariable String deviceUid) {
+        return presenceTracker.find(deviceUid).map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<Device> getDevice(@PathVariable Long id) {
         Optional<Device> deviceOpt = deviceService.getDeviceById(id);
@@ -117,16 +223,36 @@ public class DeviceController {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "未找到具有该 UID 的设备"));
         }
 
+        // 启用命令确认时命令带 commandId 下发，设备执行后回显，结果可经 /devices/commands/outcomes/{commandId} 查询
+        String commandId = commandTracker.isEnabled() ? commandTracker.register(deviceUid, command) : null;
         try {
             String commandTopic = "device/command/" + deviceUid;
-            mqttService.publish(commandTopic, command);
+            byte[] payload = commandId != null
+                    ? commandTracker.encode(commandId, command) : command.getBytes(StandardCharsets.UTF_8);
+            Map<String, String> body = new LinkedHashMap<>();
+            if (commandId != null) {
+                body.put("commandId", commandId);
+            }
+            if (!mqttService.publish(commandTopic, payload, 1)) {
+                // MQTT 暂时断开，命令已排队，重连后按顺序下发
+                logger.info("MQTT 未连接，发往设备 [{}] 的命令 {} 已排队", deviceUid, command);
+                body.put("message", "MQTT 连接暂时中断，命令 '" + command + "' 已排队，重连后发送至设备 " + deviceUid);
+                return ResponseEntity.status(HttpStatus.ACCEPTED).body(body);
+            }
             logger.info("已向设备 [{}] 的主题 [{}] 发送命令: {}", deviceUid, commandTopic, command);
-            return ResponseEntity.ok(Map.of("message", "命令 '" + command + "' 已发送至设备 " + deviceUid));
+            body.put("message", "命令 '" + command + "' 已发送至设备 " + deviceUid);
+            return ResponseEntity.ok(body);
         } catch (IllegalStateException e) {
-            logger.error("向设备 [{}] 发送命令失败，MQTT 客户端未连接。", deviceUid, e);
+            logger.error("向设备 [{}] 发送命令失败，MQTT 客户端未连接且排队队列已满。", deviceUid, e);
+            if (commandId != null) {
+                commandTracker.markSendFailed(commandId, e.getMessage());
+            }
             return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("error", "MQTT 服务当前不可用"));
         } catch (Exception e) {
             logger.error("向设备 [{}] 发送命令时发生意外错误: {}", deviceUid, e.getMessage(), e);
+            if (commandId != null) {
+                commandTracker.markSendFailed(commandId, e.getMessage());
+            }
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("error", "发送命令时发生内部错误"));
         }
     }
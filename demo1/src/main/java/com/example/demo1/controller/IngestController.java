@@ -0,0 +1,34 @@
+package com.example.demo1.controller;
+
+import com.example.demo1.service.StatusWriteBehindBuffer;
+import com.example.demo1.service.ingest.IngestPipeline;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/ingest")
+public class IngestController {
+
+    @Autowired
+    private IngestPipeline ingestPipeline;
+
+    @Autowired
+    private StatusWriteBehindBuffer statusWriteBehindBuffer;
+
+    // GET 请求：查看 Ingest 流水线各阶段的队列深度和吞吐计数
+    @GetMapping("/stats")
+    public ResponseEntity<Map<String, Object>> getStats() {
+        return ResponseEntity.ok(ingestPipeline.getStats());
+    }
+
+    // GET 请求：查看设备状态 write-behind 缓冲的合并/落库统计
+    @GetMapping("/write-behind")
+    public ResponseEntity<Map<String, Object>> getWriteBehindStats() {
+        return ResponseEntity.ok(statusWriteBehindBuffer.getStats());
+    }
+}
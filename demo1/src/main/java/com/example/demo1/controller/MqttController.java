@@ -1,10 +1,14 @@
 package com.example.demo1.controller;
 
 import com.example.demo1.service.MqttService;
+import com.example.demo1.service.broker.EmbeddedMqttBroker;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.Map;
+
 @RestController
 @RequestMapping("/mqtt")
 //@CrossOrigin(origins = "http://localhost:5175") // 允许来自 Vite 开发服务器的请求
@@ -13,10 +17,27 @@ public class MqttController {
     @Autowired
     private MqttService mqttService;
 
+    @Autowired
+    private EmbeddedMqttBroker embeddedMqttBroker;
+
     // POST 请求：发布消息到指定主题
     @PostMapping("/publish")
     public ResponseEntity<String> publish(@RequestParam String topic, @RequestParam String message) {
-        mqttService.publish(topic, message);
+        if (!mqttService.publish(topic, message)) {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body("MQTT 连接暂时中断，消息已排队，重连后发布到主题：" + topic);
+        }
         return ResponseEntity.ok("消息已发布到主题：" + topic);
     }
+
+    // GET 请求：查看内置 MQTT Broker 的连接数和消息计数
+    @GetMapping("/broker")
+    public ResponseEntity<Map<String, Object>> getBrokerStats() {
+        return ResponseEntity.ok(embeddedMqttBroker.getStats());
+    }
+
+    // GET 请求：查看 MQTT 连接池中各连接的状态和收到的消息数
+    @GetMapping("/consumers")
+    public ResponseEntity<Map<String, Object>> getConsumerStats() {
+        return ResponseEntity.ok(mqttService.getStats());
+    }
 }
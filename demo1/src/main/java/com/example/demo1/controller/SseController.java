@@ -1,16 +1,26 @@
 package com.example.demo1.controller;
 
 import com.example.demo1.service.SseNotificationService;
+import com.example.demo1.service.sse.SseEventBus;
+import com.example.demo1.service.sse.SseStreamMode;
+import com.example.demo1.service.sse.SubscriptionFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.util.List;
+import java.util.Map;
+
 @RestController
 @RequestMapping("/sse")
 // 如果需要跨域，仍然需要配置 CORS
@@ -22,18 +32,73 @@ public class SseController {
     @Autowired
     private SseNotificationService sseNotificationService;
 
+    @Autowired
+    private SseEventBus sseEventBus;
+
     // produces = MediaType.TEXT_EVENT_STREAM_VALUE 表示这是一个 SSE 端点
+    // 可选过滤参数（逗号分隔，三者之间为"或"关系，均不传时接收全部消息）:
+    //   topics  MQTT 主题过滤器，支持 + / # 通配符，例如 device/report/+,device/status/#
+    //   devices 设备 UID 列表
+    //   types   设备类型列表
+    // mode=latest 时不逐条推送，而是每 intervalMs 毫秒推送一次各设备的最新状态（latestState 事件）
+    // 浏览器重连时自动携带 Last-Event-ID 请求头，服务端据此重放错过的事件（不支持自定义请求头的客户端可用 lastEventId 参数）
     @GetMapping(value = "/mqtt", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public SseEmitter handleMqttSse() {
+    public SseEmitter handleMqttSse(@RequestParam(required = false) List<String> topics,
+                                    @RequestParam(required = false) List<String> devices,
+                                    @RequestParam(required = false) List<String> types,
+                                    @RequestParam(defaultValue = "stream") String mode,
+                                    @RequestParam(required = false) Long intervalMs,
+                                    @RequestHeader(value = "Last-Event-ID", required = false) String lastEventIdHeader,
+                                    @RequestParam(value = "lastEventId", required = false) String lastEventIdParam) {
+        SubscriptionFilter filter;
+        try {
+            filter = SubscriptionFilter.of(topics, devices, types);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        SseStreamMode streamMode;
+        try {
+            streamMode = SseStreamMode.valueOf(mode.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid mode: " + mode);
+        }
+
+        Long lastEventId = parseEventId(lastEventIdHeader != null ? lastEventIdHeader : lastEventIdParam);
+
         // 创建 SseEmitter，设置一个较长的超时时间（例如 1 小时），或者不设置让服务器默认处理
         // 超时时间是为了防止连接无限期挂起，即使客户端已断开但服务器未感知
         SseEmitter emitter = new SseEmitter(3600_000L); // 1 hour timeout
-        logger.info("Creating new SSE Emitter for MQTT");
+        logger.info("Creating new SSE Emitter for MQTT, filter: {}, mode: {}", filter, streamMode);
 
-        // 将 emitter 添加到管理列表
-        sseNotificationService.addEmitter(emitter);
+        // 将 emitter 连同订阅条件添加到管理列表
+        sseNotificationService.addEmitter(emitter, filter, streamMode, intervalMs, lastEventId);
 
         logger.info("SSE Emitter created and registered");
         return emitter;
     }
+
+    // 无法解析的事件 ID 按新连接处理
+    private Long parseEventId(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            logger.warn("忽略无效的 Last-Event-ID: {}", value);
+            return null;
+        }
+    }
+
+    // 推送统计：每个客户端的发送队列深度、丢弃 / 合并数量与延迟
+    @GetMapping("/stats")
+    public Map<String, Object> getStats() {
+        return sseNotificationService.getStats();
+    }
+
+    // 节点间 SSE 事件总线的转发 / 接收 / 去重统计
+    @GetMapping("/bus")
+    public Map<String, Object> getBusStats() {
+        return sseEventBus.getStats();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,116 @@
+package com.example.demo1.controller;
+
+import com.example.demo1.service.telemetry.RollupEngine;
+import com.example.demo1.service.telemetry.RollupResolution;
+import com.example.demo1.service.telemetry.RollupSeries;
+import com.example.demo1.service.telemetry.TelemetrySeries;
+import com.example.demo1.service.telemetry.TelemetryStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+public class TelemetryController {
+
+    private static final long DEFAULT_RANGE_MS = 3600_000L; // 默认查询最近 1 小时
+
+    @Autowired
+    private TelemetryStore telemetryStore;
+
+    @Autowired
+    private RollupEngine rollupEngine;
+
+    /**
+     * 按时间范围查询设备遥测数据。
+     *
+     * @param metric 指标名（如 temperature），不传则返回该设备的所有指标
+     * @param from   起始时间（毫秒时间戳，含），默认 to 之前 1 小时
+     * @param to     结束时间（毫秒时间戳，含），默认当前时间
+     */
+    @GetMapping("/devices/{deviceUid}/telemetry")
+    public ResponseEntity<Map<String, Object>> query(@PathVariable String deviceUid,
+                                                     @RequestParam(required = false) String metric,
+                                                     @RequestParam(required = false) Long from,
+                                                     @RequestParam(required = false) Long to) {
+        long end = to != null ? to : System.currentTimeMillis();
+        long start = from != null ? from : end - DEFAULT_RANGE_MS;
+        if (start > end) {
+            return ResponseEntity.badRequest().body(Map.of("error", "'from' 不能晚于 'to'"));
+        }
+        Collection<String> metrics = metric != null ? List.of(metric) : telemetryStore.metrics(deviceUid);
+        List<TelemetrySeries> series = new ArrayList<>();
+        for (String name : metrics) {
+            series.add(telemetryStore.query(deviceUid, name, start, end));
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("deviceUid", deviceUid);
+        body.put("from", start);
+        body.put("to", end);
+        body.put("series", series);
+        return ResponseEntity.ok(body);
+    }
+
+    /**
+     * 查询降采样后的聚合数据 (min / max / avg / count)。
+     * 不指定 resolution 时，自动选择桶数不超过 maxPoints 的最细粒度。
+     *
+     * @param resolution 1m / 1h / 1d，可选
+     * @param maxPoints  点数预算，默认 500
+     */
+    @GetMapping("/devices/{deviceUid}/telemetry/rollup")
+    public ResponseEntity<Map<String, Object>> rollup(@PathVariable String deviceUid,
+                                                      @RequestParam(required = false) String metric,
+                                                      @RequestParam(required = false) Long from,
+                                                      @RequestParam(required = false) Long to,
+                                                      @RequestParam(required = false) String resolution,
+                                                      @RequestParam(defaultValue = "500") int maxPoints) {
+        long end = to != null ? to : System.currentTimeMillis();
+        long start = from != null ? from : end - DEFAULT_RANGE_MS;
+        if (start > end || maxPoints <= 0) {
+            return ResponseEntity.badRequest().body(Map.of("error", "'from' 不能晚于 'to'，且 maxPoints 必须大于 0"));
+        }
+        RollupResolution chosen;
+        if (resolution != null) {
+            chosen = null;
+            for (RollupResolution candidate : RollupResolution.values()) {
+                if (candidate.getLabel().equalsIgnoreCase(resolution)) {
+                    chosen = candidate;
+                }
+            }
+            if (chosen == null) {
+                return ResponseEntity.badRequest().body(Map.of("error", "无效的 resolution，只支持 1m / 1h / 1d"));
+            }
+        } else {
+            chosen = rollupEngine.chooseResolution(start, end, maxPoints);
+        }
+        Collection<String> metrics = metric != null ? List.of(metric) : telemetryStore.metrics(deviceUid);
+        List<RollupSeries> series = new ArrayList<>();
+        for (String name : metrics) {
+            series.add(rollupEngine.query(deviceUid, name, chosen, start, end));
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("deviceUid", deviceUid);
+        body.put("from", start);
+        body.put("to", end);
+        body.put("resolution", chosen.getLabel());
+        body.put("series", series);
+        return ResponseEntity.ok(body);
+    }
+
+    // 时序存储的总体统计（不针对单个设备）
+    @GetMapping("/telemetry/stats")
+    public ResponseEntity<Map<String, Object>> stats() {
+        Map<String, Object> body = new LinkedHashMap<>(telemetryStore.getStats());
+        body.put("rollup", rollupEngine.getStats());
+        return ResponseEntity.ok(body);
+    }
+}
@@ -4,10 +4,17 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
 
 import jakarta.persistence.Column;
 
 @Entity
+// 列表分页按 (过滤列, id) 做 keyset 扫描；deviceUid 的唯一索引同时服务 UID 前缀过滤
+@Table(indexes = {
+        @Index(name = "idx_device_status_id", columnList = "status, id"),
+        @Index(name = "idx_device_type_id", columnList = "deviceType, id")
+})
 public class    Device {
 
     @Id
@@ -0,0 +1,16 @@
+package com.example.demo1.repository;
+
+/**
+ * 设备列表的过滤条件，字段为 null 表示不限制。status / deviceType 精确匹配（可使用索引），
+ * uidPrefix 为 deviceUid 前缀。
+ */
+public record DeviceFilter(String status, String deviceType, String uidPrefix) {
+
+    public static DeviceFilter of(String status, String deviceType, String uidPrefix) {
+        return new DeviceFilter(blankToNull(status), blankToNull(deviceType), blankToNull(uidPrefix));
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+}
@@ -1,14 +1,30 @@
 package com.example.demo1.repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional; // 导入 Optional
 import com.example.demo1.entity.Device;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
-public interface DeviceRepository extends JpaRepository<Device, Long> {
+public interface DeviceRepository extends JpaRepository<Device, Long>, DeviceRepositoryCustom {
     // 根据需要添加自定义查询方法，例如通过设备名称查找
 
     Optional<Device> findByDeviceUid(String deviceUid);
 
     // 检查具有给定 deviceUid 的设备是否存在
     boolean existsByDeviceUid(String deviceUid);
+
+    // 批量按 deviceUid 加载（write-behind 刷新时一次查询整批设备）
+    List<Device> findByDeviceUidIn(Collection<String> deviceUids);
+
+    // 批量命令: 一次查询找出给定 UID 中已登记的设备（只取 UID 列，不加载实体）
+    @Query("select d.deviceUid from Device d where d.deviceUid in :uids")
+    List<String> findExistingDeviceUids(@Param("uids") Collection<String> deviceUids);
+
+    // 批量命令: 按设备类型和/或状态选择设备，参数为 null 表示不限制
+    @Query("select d.deviceUid from Device d where (:type is null or d.deviceType = :type)"
+            + " and (:status is null or d.status = lower(:status)) order by d.id")
+    List<String> findDeviceUidsByTypeAndStatus(@Param("type") String deviceType, @Param("status") String status);
 }
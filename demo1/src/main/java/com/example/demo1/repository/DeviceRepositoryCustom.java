@@ -0,0 +1,15 @@
+package com.example.demo1.repository;
+
+import java.util.List;
+
+/**
+ * 需要按条件动态拼装的查询（由 {@link DeviceRepositoryImpl} 实现）。
+ */
+public interface DeviceRepositoryCustom {
+
+    /**
+     * Keyset 分页: 返回 id 大于 afterId（为 null 时从头开始）且满足过滤条件的设备，按 id 升序最多 limit 条。
+     * 翻页代价与页码无关，不像 OFFSET 那样越往后扫描越多行。
+     */
+    List<DeviceSummary> findSummaries(DeviceFilter filter, Long afterId, int limit);
+}
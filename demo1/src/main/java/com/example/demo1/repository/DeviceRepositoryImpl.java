@@ -0,0 +1,61 @@
+package com.example.demo1.repository;
+
+import com.example.demo1.entity.Device;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+public class DeviceRepositoryImpl implements DeviceRepositoryCustom {
+
+    private static final char LIKE_ESCAPE = '\\';
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<DeviceSummary> findSummaries(DeviceFilter filter, Long afterId, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<DeviceSummary> query = cb.createQuery(DeviceSummary.class);
+        Root<Device> device = query.from(Device.class);
+        // 构造器表达式只选出投影需要的列
+        query.select(cb.construct(DeviceSummary.class, device.get("id"), device.get("deviceUid"),
+                device.get("deviceName"), device.get("deviceType"), device.get("status")));
+
+        // 只拼装实际给出的条件，避免 (:p is null or ...) 形式让数据库无法选用索引
+        List<Predicate> where = new ArrayList<>();
+        if (afterId != null) {
+            where.add(cb.greaterThan(device.get("id"), afterId));
+        }
+        if (filter.status() != null) {
+            // DeviceService 以小写入库；对列本身做等值比较，(status, id) 索引才可用
+            where.add(cb.equal(device.get("status"), filter.status().toLowerCase(Locale.ROOT)));
+        }
+        if (filter.deviceType() != null) {
+            where.add(cb.equal(device.get("deviceType"), filter.deviceType()));
+        }
+        if (filter.uidPrefix() != null) {
+            where.add(cb.like(device.get("deviceUid"), escapeLike(filter.uidPrefix()) + "%", LIKE_ESCAPE));
+        }
+        query.where(where.toArray(Predicate[]::new)).orderBy(cb.asc(device.get("id")));
+        return entityManager.createQuery(query).setMaxResults(limit).getResultList();
+    }
+
+    private static String escapeLike(String value) {
+        StringBuilder escaped = new StringBuilder(value.length() + 4);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '%' || c == '_' || c == LIKE_ESCAPE) {
+                escaped.append(LIKE_ESCAPE);
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+}
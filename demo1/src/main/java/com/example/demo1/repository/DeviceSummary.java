@@ -0,0 +1,7 @@
+package com.example.demo1.repository;
+
+/**
+ * 设备列表使用的轻量投影：只查询这几列，不加载托管实体，也不进入持久化上下文。
+ */
+public record DeviceSummary(Long id, String deviceUid, String deviceName, String deviceType, String status) {
+}
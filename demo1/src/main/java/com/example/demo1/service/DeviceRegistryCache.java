@@ -0,0 +1,259 @@
+package com.example.demo1.service;
+
+import com.example.demo1.entity.Device;
+import com.example.demo1.repository.DeviceRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 以 deviceUid 为 key 的设备注册表缓存（读穿透 + 写穿透），挡在 {@link DeviceRepository} 前面。
+ * <p>
+ * 命令下发、状态消息和注册都需要按 UID 判断设备是否存在，缓存命中时不再查询 H2。
+ * 不存在的 UID 也会被缓存（负缓存），防止对未知设备的消息反复打到数据库。
+ * 容量有上限，按 UID 哈希分成多个加锁的分片，每个分片是一个分段 LRU（SLRU）：新条目进入试用段，
+ * 再次命中后晋升到保护段；淘汰只发生在试用段，一批只访问一次的 UID（如未知设备的消息）不会挤掉常用设备。
+ * REST 接口的注册、更新、删除在事务提交后使对应条目失效。
+ */
+@Service
+public class DeviceRegistryCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeviceRegistryCache.class);
+    private static final int SEGMENT_COUNT = 16;
+
+    /**
+     * 缓存中保存的设备快照（不可变，避免把托管实体共享给多个线程）。
+     */
+    public record DeviceSnapshot(Long id, String deviceUid, String deviceType, String status) {
+        static DeviceSnapshot of(Device device) {
+            return new DeviceSnapshot(device.getId(), device.getDeviceUid(), device.getDeviceType(), device.getStatus());
+        }
+
+        DeviceSnapshot withStatus(String newStatus) {
+            return new DeviceSnapshot(id, deviceUid, deviceType, newStatus);
+        }
+    }
+
+    // 负缓存占位: 数据库中不存在该 UID
+    private static final DeviceSnapshot ABSENT = new DeviceSnapshot(null, null, null, null);
+
+    @Autowired
+    private DeviceRepository deviceRepository;
+
+    @Value("${device.cache.max-size:100000}")
+    private int maxSize;
+
+    private Segment[] segments;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * 一个分片：试用段 + 保护段两个按访问顺序排列的 LinkedHashMap（SLRU），以及失效代数。
+     * 读穿透加载前记下代数，若加载期间该分片发生过失效，则放弃回填，避免把旧数据写回缓存。
+     * 所有方法在分片锁内调用。
+     */
+    private final class Segment {
+        private final int capacity;
+        private final int protectedCapacity;
+        private long generation;
+        private final LinkedHashMap<String, DeviceSnapshot> probation = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<String, DeviceSnapshot> protectedEntries = new LinkedHashMap<>(16, 0.75f, true);
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+            // 保护段占 80%，试用段至少保留一个位置给新条目
+            this.protectedCapacity = capacity * 4 / 5;
+        }
+
+        /**
+         * 查询并记录一次访问：保护段内移到最近端，试用段内命中则晋升到保护段。
+         */
+        DeviceSnapshot get(String deviceUid) {
+            DeviceSnapshot snapshot = protectedEntries.get(deviceUid);
+            if (snapshot != null) {
+                return snapshot;
+            }
+            snapshot = probation.remove(deviceUid);
+            if (snapshot != null) {
+                protectedEntries.put(deviceUid, snapshot);
+                if (protectedEntries.size() > protectedCapacity) {
+                    // 保护段溢出：最久未访问的条目降回试用段的最近端，总数不变
+                    Iterator<Map.Entry<String, DeviceSnapshot>> eldest = protectedEntries.entrySet().iterator();
+                    Map.Entry<String, DeviceSnapshot> demoted = eldest.next();
+                    eldest.remove();
+                    probation.put(demoted.getKey(), demoted.getValue());
+                }
+            }
+            return snapshot;
+        }
+
+        /**
+         * 写入或替换条目；新条目进入试用段，超出容量时淘汰试用段中最久未访问的条目。
+         */
+        void put(String deviceUid, DeviceSnapshot snapshot) {
+            if (protectedEntries.containsKey(deviceUid)) {
+                protectedEntries.put(deviceUid, snapshot);
+                return;
+            }
+            probation.put(deviceUid, snapshot);
+            while (probation.size() + protectedEntries.size() > capacity && !probation.isEmpty()) {
+                Iterator<String> eldest = probation.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+
+        boolean contains(String deviceUid) {
+            return protectedEntries.containsKey(deviceUid) || probation.containsKey(deviceUid);
+        }
+
+        DeviceSnapshot remove(String deviceUid) {
+            DeviceSnapshot removed = protectedEntries.remove(deviceUid);
+            return removed != null ? removed : probation.remove(deviceUid);
+        }
+
+        int size() {
+            return probation.size() + protectedEntries.size();
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        int perSegment = Math.max(1, maxSize / SEGMENT_COUNT);
+        segments = new Segment[SEGMENT_COUNT];
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+        logger.info("设备注册表缓存已初始化, 最大条目数: {}", perSegment * SEGMENT_COUNT);
+    }
+
+    private Segment segmentFor(String deviceUid) {
+        return segments[Math.floorMod(deviceUid.hashCode(), SEGMENT_COUNT)];
+    }
+
+    /**
+     * 读穿透查询设备快照。
+     */
+    public Optional<DeviceSnapshot> get(String deviceUid) {
+        Segment segment = segmentFor(deviceUid);
+        long generation;
+        synchronized (segment) {
+            DeviceSnapshot cached = segment.get(deviceUid);
+            if (cached != null) {
+                hits.increment();
+                return cached == ABSENT ? Optional.empty() : Optional.of(cached);
+            }
+            generation = segment.generation;
+        }
+        misses.increment();
+        DeviceSnapshot loaded = deviceRepository.findByDeviceUid(deviceUid).map(DeviceSnapshot::of).orElse(ABSENT);
+        synchronized (segment) {
+            if (segment.generation == generation && !segment.contains(deviceUid)) {
+                segment.put(deviceUid, loaded);
+            }
+        }
+        return loaded == ABSENT ? Optional.empty() : Optional.of(loaded);
+    }
+
+    public boolean exists(String deviceUid) {
+        return get(deviceUid).isPresent();
+    }
+
+    /**
+     * 写穿透：设备已保存到数据库后更新缓存（在事务中调用时推迟到提交之后）。
+     */
+    public void put(Device device) {
+        DeviceSnapshot snapshot = DeviceSnapshot.of(device);
+        afterCommit(() -> {
+            Segment segment = segmentFor(snapshot.deviceUid());
+            synchronized (segment) {
+                segment.generation++;
+                segment.put(snapshot.deviceUid(), snapshot);
+            }
+        });
+    }
+
+    /**
+     * 写穿透：只更新已缓存设备的状态（write-behind 模式下缓存比数据库更新）。
+     */
+    public void updateStatus(String deviceUid, String status) {
+        Segment segment = segmentFor(deviceUid);
+        synchronized (segment) {
+            DeviceSnapshot cached = segment.protectedEntries.get(deviceUid);
+            if (cached == null) {
+                cached = segment.probation.get(deviceUid);
+            }
+            if (cached != null && cached != ABSENT) {
+                segment.generation++;
+                segment.put(deviceUid, cached.withStatus(status));
+            }
+        }
+    }
+
+    /**
+     * 使条目失效（在事务中调用时推迟到提交之后，防止其他线程在提交前重新加载旧数据）。
+     */
+    public void invalidate(String deviceUid) {
+        if (deviceUid == null) {
+            return;
+        }
+        afterCommit(() -> {
+            Segment segment = segmentFor(deviceUid);
+            synchronized (segment) {
+                segment.generation++;
+                if (segment.remove(deviceUid) != null) {
+                    invalidations.increment();
+                }
+            }
+        });
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", size());
+        stats.put("maxSize", maxSize);
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("evictions", evictions.sum());
+        stats.put("invalidations", invalidations.sum());
+        return stats;
+    }
+}
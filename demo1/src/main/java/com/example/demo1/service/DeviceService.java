@@ -1,16 +1,27 @@
 package com.example.demo1.service; // **确认包名**
 
 import com.example.demo1.entity.Device;
+import com.example.demo1.repository.DeviceFilter;
 import com.example.demo1.repository.DeviceRepository; // **确认导入**
+import com.example.demo1.repository.DeviceSummary;
+import com.example.demo1.service.fleet.FleetAggregates;
 // import com.example.demo1.service.MqttService; // **如果需要发送 MQTT 命令，取消注释并确保注入**
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
+import java.util.Set;
 
 @Service // **确认注解**
 public class DeviceService {
@@ -20,43 +31,115 @@ public class DeviceService {
     @Autowired
     private DeviceRepository deviceRepository; // **确认注入**
 
+    @Autowired
+    private StatusWriteBehindBuffer statusWriteBehindBuffer;
+
+    @Autowired
+    private DeviceRegistryCache deviceRegistryCache;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private FleetAggregates fleetAggregates;
+
     // @Autowired
     // private MqttService mqttService;
 
-    @Transactional
-    public Device handleDeviceRegistrationOrUpdate(String deviceUid, String deviceType, String initialStatus) {
-        Optional<Device> existingDeviceOpt = deviceRepository.findByDeviceUid(deviceUid); // **确认 Repository 有此方法**
-        Device device;
-        if (existingDeviceOpt.isPresent()) {
-            device = existingDeviceOpt.get();
-            logger.info("设备 [{}] 已存在于数据库，更新状态为 '{}'", deviceUid, initialStatus);
-            if (initialStatus != null && !initialStatus.equalsIgnoreCase(device.getStatus())) {
-                device.setStatus(initialStatus);
-            }
-        } else {
-            logger.info("数据库中未找到设备 UID [{}]，正在创建新记录... 类型: '{}', 状态: '{}'", deviceUid, deviceType, initialStatus);
-            device = new Device(deviceUid, deviceType, initialStatus, deviceUid);
+    /**
+     * 处理设备通过 MQTT 注册/上线。已存在的设备只更新状态（走与状态消息相同的路径），
+     * 新设备直接创建。设备是否存在由 {@link DeviceRegistryCache} 判断，重复上线不再查询数据库。
+     */
+    public void handleDeviceRegistrationOrUpdate(String deviceUid, String deviceType, String reportedStatus) {
+        String initialStatus = normalizeStatus(reportedStatus);
+        if (deviceRegistryCache.exists(deviceUid)) {
+            logger.debug("设备 [{}] 已存在于数据库，更新状态为 '{}'", deviceUid, initialStatus);
+            updateDeviceStatusByUid(deviceUid, initialStatus);
+            return;
         }
-        return deviceRepository.save(device);
+        logger.info("数据库中未找到设备 UID [{}]，正在创建新记录... 类型: '{}', 状态: '{}'", deviceUid, deviceType, initialStatus);
+        Device device = deviceRepository.save(new Device(deviceUid, deviceType, initialStatus, deviceUid));
+        deviceRegistryCache.put(device);
+        fleetAggregates.upsert(deviceUid, deviceType, initialStatus);
     }
 
-    @Transactional
-    public void updateDeviceStatusByUid(String deviceUid, String status) {
-        Optional<Device> deviceOpt = deviceRepository.findByDeviceUid(deviceUid); // **确认 Repository 有此方法**
-        if (deviceOpt.isPresent()) {
-            Device device = deviceOpt.get();
-            if (status != null && !status.equalsIgnoreCase(device.getStatus())) {
-                logger.info("通过 MQTT 更新数据库中设备 [{}] 的状态从 '{}' 到 '{}'", deviceUid, device.getStatus(), status);
-                device.setStatus(status);
-                deviceRepository.save(device);
-            } else if (status == null) {
-                logger.warn("尝试将设备 [{}] 的状态更新为 null，操作已跳过。", deviceUid);
+    /**
+     * 处理来自 MQTT 的状态变化。
+     * 先查缓存：设备不存在或状态未变化时直接返回，不访问数据库。
+     * 启用 write-behind 时只放入内存缓冲，由 {@link StatusWriteBehindBuffer} 批量落库；
+     * 否则立即在独立事务中查询并更新。
+     */
+    public void updateDeviceStatusByUid(String deviceUid, String reportedStatus) {
+        if (reportedStatus == null) {
+            logger.warn("尝试将设备 [{}] 的状态更新为 null，操作已跳过。", deviceUid);
+            return;
+        }
+        String status = normalizeStatus(reportedStatus);
+        Optional<DeviceRegistryCache.DeviceSnapshot> cached = deviceRegistryCache.get(deviceUid);
+        if (cached.isEmpty()) {
+            logger.warn("尝试通过 MQTT 更新状态，但未在数据库中找到设备 UID: {}", deviceUid);
+            return;
+        }
+        if (status.equalsIgnoreCase(cached.get().status())) {
+            logger.debug("设备 [{}] 的状态已经是 '{}'，无需更新数据库。", deviceUid, status);
+            return;
+        }
+        fleetAggregates.upsert(deviceUid, cached.get().deviceType(), status);
+        if (statusWriteBehindBuffer.isEnabled()) {
+            deviceRegistryCache.updateStatus(deviceUid, status);
+            statusWriteBehindBuffer.enqueue(deviceUid, status);
+            return;
+        }
+        new TransactionTemplate(transactionManager).executeWithoutResult(tx -> {
+            Optional<Device> deviceOpt = deviceRepository.findByDeviceUid(deviceUid); // **确认 Repository 有此方法**
+            if (deviceOpt.isPresent()) {
+                Device device = deviceOpt.get();
+                if (!status.equalsIgnoreCase(device.getStatus())) {
+                    logger.debug("通过 MQTT 更新数据库中设备 [{}] 的状态从 '{}' 到 '{}'", deviceUid, device.getStatus(), status);
+                    device.setStatus(status);
+                    deviceRepository.save(device);
+                } else {
+                    logger.debug("设备 [{}] 的状态已经是 '{}'，无需更新数据库。", deviceUid, status);
+                }
             } else {
-                logger.debug("设备 [{}] 的状态已经是 '{}'，无需更新数据库。", deviceUid, status);
+                logger.warn("尝试通过 MQTT 更新状态，但未在数据库中找到设备 UID: {}", deviceUid);
             }
+        });
+        deviceRegistryCache.updateStatus(deviceUid, status);
+    }
+
+    /**
+     * 批量把一组设备的状态更新为 status（在线检测超时等场景）。不存在或状态未变化的设备跳过。
+     * 启用 write-behind 时放入缓冲；否则在一个事务中每 {@value #LOOKUP_CHUNK_SIZE} 个设备一次 IN 查询后更新。
+     *
+     * @return 状态实际发生变化的设备
+     */
+    public List<String> updateDeviceStatuses(Collection<String> deviceUids, String newStatus) {
+        String status = normalizeStatus(newStatus);
+        List<String> changed = new ArrayList<>();
+        for (String deviceUid : deviceUids) {
+            Optional<DeviceRegistryCache.DeviceSnapshot> cached = deviceRegistryCache.get(deviceUid);
+            if (cached.isPresent() && !status.equalsIgnoreCase(cached.get().status())) {
+                changed.add(deviceUid);
+                fleetAggregates.upsert(deviceUid, cached.get().deviceType(), status);
+            }
+        }
+        if (changed.isEmpty()) {
+            return changed;
+        }
+        if (statusWriteBehindBuffer.isEnabled()) {
+            changed.forEach(deviceUid -> statusWriteBehindBuffer.enqueue(deviceUid, status));
         } else {
-            logger.warn("尝试通过 MQTT 更新状态，但未在数据库中找到设备 UID: {}", deviceUid);
+            new TransactionTemplate(transactionManager).executeWithoutResult(tx -> {
+                for (int from = 0; from < changed.size(); from += LOOKUP_CHUNK_SIZE) {
+                    deviceRepository.findByDeviceUidIn(changed.subList(from, Math.min(changed.size(), from + LOOKUP_CHUNK_SIZE)))
+                            .forEach(device -> device.setStatus(status)); // 提交时由 Hibernate 批量 UPDATE
+                }
+            });
         }
+        changed.forEach(deviceUid -> deviceRegistryCache.updateStatus(deviceUid, status));
+        logger.debug("批量更新 {} 个设备的状态为 '{}'", changed.size(), status);
+        return changed;
     }
 
     @Transactional
@@ -76,17 +159,42 @@ public class DeviceService {
             device.setDeviceUid(uidToCheck);
         }
 
-        if (deviceRepository.existsByDeviceUid(uidToCheck)) { // **确认 Repository 有此方法**
+        if (deviceRegistryCache.exists(uidToCheck)) {
             logger.error("尝试手动注册的设备 UID '{}' 已存在于数据库中！", uidToCheck);
             throw new IllegalArgumentException("Device with UID '" + uidToCheck + "' already exists.");
         }
         logger.info("正在手动注册设备，UID: '{}'", uidToCheck);
-        return deviceRepository.save(device);
+        device.setStatus(normalizeStatus(device.getStatus()));
+        Device saved = deviceRepository.save(device);
+        deviceRegistryCache.invalidate(uidToCheck); // 清除可能存在的负缓存
+        fleetAggregates.upsert(uidToCheck, saved.getDeviceType(), saved.getStatus());
+        return saved;
+    }
+
+    /**
+     * 状态统一以去空白后的小写形式入库，列表和批量查询可以直接按等值条件命中 (status, id) 索引。
+     */
+    private static String normalizeStatus(String status) {
+        return status == null ? null : status.trim().toLowerCase(Locale.ROOT);
     }
 
-    public List<Device> getAllDevices() {
-        logger.debug("正在获取所有设备列表...");
-        return deviceRepository.findAll();
+    /**
+     * 一页设备。nextCursor 为下一页的 after 参数，没有更多数据时为 null。
+     */
+    public record DevicePage(List<DeviceSummary> items, Long nextCursor) {
+    }
+
+    /**
+     * 按 keyset 分页读取设备投影（不加载实体）。多取一条用于判断是否还有下一页。
+     * 状态来自数据库，启用 write-behind 时可能比实时状态滞后一个刷新间隔。
+     */
+    public DevicePage findDevicePage(DeviceFilter filter, Long afterId, int limit) {
+        List<DeviceSummary> rows = deviceRepository.findSummaries(filter, afterId, limit + 1);
+        if (rows.size() <= limit) {
+            return new DevicePage(rows, null);
+        }
+        List<DeviceSummary> items = rows.subList(0, limit);
+        return new DevicePage(items, items.get(limit - 1).id());
     }
 
     public Optional<Device> getDeviceById(Long id) {
@@ -112,9 +220,13 @@ public class DeviceService {
 
         if(deviceDetails.getDeviceName() != null) device.setDeviceName(deviceDetails.getDeviceName());
         if(deviceDetails.getDeviceType() != null) device.setDeviceType(deviceDetails.getDeviceType());
-        if(deviceDetails.getStatus() != null) device.setStatus(deviceDetails.getStatus());
+        if(deviceDetails.getStatus() != null) device.setStatus(normalizeStatus(deviceDetails.getStatus()));
 
-        return deviceRepository.save(device);
+        Device saved = deviceRepository.save(device);
+        deviceRegistryCache.invalidate(saved.getDeviceUid());
+        // 状态未修改时传 null，保留总览中的实时状态（数据库中的状态在 write-behind 模式下可能较旧）
+        fleetAggregates.upsert(saved.getDeviceUid(), saved.getDeviceType(), deviceDetails.getStatus());
+        return saved;
     }
 
     @Transactional
@@ -126,6 +238,8 @@ public class DeviceService {
             // 可选：发送 MQTT 停止命令
             // try { if (mqttService != null) { ... } } catch (Exception e) { ... }
             deviceRepository.deleteById(id);
+            deviceRegistryCache.invalidate(deviceUid);
+            fleetAggregates.remove(deviceUid);
             logger.info("设备 ID: {}, UID: {} 已从数据库删除。", id, deviceUid);
         } else {
             logger.warn("尝试删除但未在数据库中找到设备 ID: {}", id);
@@ -134,8 +248,44 @@ public class DeviceService {
 
     // *** 确认此方法存在 ***
     public boolean existsByDeviceUid(String deviceUid) {
-        // 直接调用 Repository 的方法
-        return deviceRepository.existsByDeviceUid(deviceUid); // **确认 Repository 有此方法**
+        // 经由注册表缓存判断，命中时不查询数据库
+        return deviceRegistryCache.exists(deviceUid);
+    }
+
+    // 单次 IN 查询的最大参数个数
+    private static final int LOOKUP_CHUNK_SIZE = 1000;
+
+    /**
+     * 返回给定 UID 中已登记的设备（保持请求中的顺序并去重），每 {@value #LOOKUP_CHUNK_SIZE} 个 UID 一次 IN 查询。
+     */
+    public List<String> findExistingDeviceUids(Collection<String> deviceUids) {
+        List<String> requested = new ArrayList<>(new LinkedHashSet<>(deviceUids));
+        Set<String> existing = new HashSet<>();
+        for (int from = 0; from < requested.size(); from += LOOKUP_CHUNK_SIZE) {
+            existing.addAll(deviceRepository.findExistingDeviceUids(
+                    requested.subList(from, Math.min(requested.size(), from + LOOKUP_CHUNK_SIZE))));
+        }
+        requested.retainAll(existing);
+        return requested;
+    }
+
+    /**
+     * 按设备类型和/或状态选择设备（null 表示不限制）。按状态选择前先刷新 write-behind 缓冲，使数据库中的状态为最新。
+     */
+    public List<String> findDeviceUids(String deviceType, String status) {
+        if (status != null) {
+            flushPendingStatuses();
+        }
+        return deviceRepository.findDeviceUidsByTypeAndStatus(deviceType, status);
+    }
+
+    /**
+     * 启用 write-behind 时，把缓冲中尚未落库的状态变化立即写入数据库；按状态读取数据库之前调用。
+     */
+    public void flushPendingStatuses() {
+        if (statusWriteBehindBuffer.isEnabled()) {
+            statusWriteBehindBuffer.flush();
+        }
     }
 
     @Transactional
@@ -1,218 +1,444 @@
 package com.example.demo1.service;
 
-import com.example.demo1.service.DeviceService; // 确保 DeviceService 已导入
-import com.example.demo1.service.SseNotificationService;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.example.demo1.service.ingest.IngestPipeline;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.eclipse.paho.client.mqttv3.*;
 import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
 import org.springframework.stereotype.Service;
 
-import java.util.Map; // 用于解析 JSON
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * MQTT 客户端连接池。
+ * <p>
+ * 建立 {@code mqtt.consumer.connections} 个连接，{@code mqtt.consumer.shared-topics} 中的高流量主题以
+ * 共享订阅 {@code $share/<group>/<topic>} 的方式在每个连接上订阅，由 Broker 在连接之间（以及同组的其他
+ * demo1 实例之间）分摊消息。Broker 需按主题哈希分配共享订阅消息（EMQX: {@code shared_subscription_strategy = hash_topic}，
+ * 内置 Broker 固定如此），这样同一设备的消息总是从同一连接按序到达；进入流水线后按 deviceUid 分配通道，顺序得以保持。
+ * <p>
+ * 其余主题（注册、状态、命令确认、test/topic）只在第一个连接上普通订阅：保留消息不会补发给共享订阅，
+ * 而注册表缓存和紧凑格式 schema 依赖启动时收到的保留注册/状态消息，且每个实例都需要完整的一份；
+ * 命令确认也需要送达发出命令的那个实例。
+ * 第一个连接同时用于发布消息。
+ * <p>
+ * ClientID 为 {@code <mqtt.client-id>-<实例 ID>-<序号>}，多个实例不会因 ClientID 相同而互相踢下线。
+ * <p>
+ * 断线后每个连接独立以带抖动的指数退避重连（{@code mqtt.reconnect.*}），重连后重新订阅。断线期间发布的消息
+ * （如下发给设备的命令）进入有界的内存队列（{@code mqtt.outbound-queue.*}），发布连接恢复后按顺序补发。
+ */
 @Service
+@DependsOn("embeddedMqttBroker") // 启用内置 Broker 时，保证它先于客户端启动、后于客户端关闭
 public class MqttService {
 
     private static final Logger logger = LoggerFactory.getLogger(MqttService.class);
 
-    private final String brokerUrl = "tcp://localhost:1883"; // 本地 EMQX 地址
-    private final String clientId = "spring-boot-client-sse"; // 区分 Client ID
-    private MqttClient client;
+    @Value("${mqtt.broker-url:tcp://localhost:1883}")
+    private String brokerUrl; // 本地 EMQX 地址，或 vm://embedded 进程内连接内置 Broker
 
-    @Autowired
-    private SseNotificationService sseNotificationService; // 注入 SSE 服务
+    @Value("${mqtt.client-id:spring-boot-client-sse}")
+    private String clientId; // ClientID 前缀
+
+    @Value("${mqtt.instance-id:}")
+    private String instanceId; // 为空时启动时随机生成
+
+    @Value("${mqtt.consumer.connections:2}")
+    private int connections;
+
+    @Value("${mqtt.consumer.shared-group:demo1}")
+    private String sharedGroup; // 为空表示不使用共享订阅（此时只建立一个连接）
+
+    @Value("${mqtt.consumer.shared-topics:device/report/#}")
+    private List<String> sharedTopics;
+
+    // 订阅的主题: test/topic (保留)、设备上报数据、设备状态、设备注册/上线、命令确认、心跳
+    private static final String[] SUBSCRIBED_TOPICS = {
+            "test/topic", "device/report/#", "device/status/#", "device/lifecycle/register", "device/ack/+",
+            "device/heartbeat/+"
+    };
+
+    @Value("${mqtt.reconnect.initial-delay-ms:1000}")
+    private long reconnectInitialDelayMs;
+
+    @Value("${mqtt.reconnect.max-delay-ms:60000}")
+    private long reconnectMaxDelayMs;
+
+    @Value("${mqtt.outbound-queue.capacity:1000}")
+    private int outboundCapacity;
+
+    @Value("${mqtt.outbound-queue.max-age-ms:300000}")
+    private long outboundMaxAgeMs; // 排队超过该时长的消息在补发时丢弃（过时的命令不再下发），<=0 表示不过期
 
     @Autowired
-    private ObjectMapper objectMapper; // 注入 ObjectMapper
+    private IngestPipeline ingestPipeline; // 消息处理流水线（解析 -> 持久化 / SSE 推送）
 
-    @Autowired // 确保 DeviceService 已注入
-    private DeviceService deviceService; // 用于处理注册和状态更新
+    @Autowired
+    private MeterRegistry meterRegistry;
 
-    // 内部类用于封装发送给前端的数据
-    private static class MqttMessagePayload {
-        public String topic;
-        public String payload;
-        public long timestamp;
+    /**
+     * 连接池中的一个连接及其重连状态。重连状态在 Paho 回调线程（connectionLost）、重连线程
+     * 和启动线程中都会被访问，因此使用原子 / volatile 字段。
+     */
+    private final class Connection {
+        final int index;
+        final MqttClient client;
+        final Counter received;
+        final AtomicInteger attempts = new AtomicInteger(); // 本轮断线以来的重连尝试次数
+        volatile long lostAt;  // 断线时刻 (nanoTime)，0 表示未断线或首次连接
+        volatile boolean reconnecting;
 
-        public MqttMessagePayload(String topic, String payload, long timestamp) {
-            this.topic = topic;
-            this.payload = payload;
-            this.timestamp = timestamp;
+        Connection(int index, MqttClient client, Counter received) {
+            this.index = index;
+            this.client = client;
+            this.received = received;
         }
     }
 
+    /**
+     * 断线期间排队等待发送的消息。
+     */
+    private record PendingPublish(String topic, byte[] payload, int qos, long enqueuedAt) {
+    }
+
+    private final List<Connection> clients = new ArrayList<>();
+    private boolean shared;
+    private volatile boolean stopped;
+
+    // 断线期间发布的消息按顺序排队，连接 0 重连后依次补发。队列和 draining 只在 outbound 锁内读写，
+    // 但实际的网络发布都在锁外进行，避免所有发布者排队等待一次 Broker 往返
+    private final Deque<PendingPublish> outbound = new ArrayDeque<>();
+    private boolean draining; // 正在补发：期间新消息也排到队尾，保证补发和新消息之间的顺序
+
+    private final ScheduledExecutorService reconnector = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "mqtt-reconnect");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // 指标: 连接丢失 / 重连成功次数，流水线拒绝（背压丢弃）的消息数
+    private Counter connectionLost;
+    private Counter reconnects;
+    private Counter reconnectAttempts;
+    private Timer reconnectLatency;
+    private Counter rejected;
+    private Counter outboundQueued;
+    private Counter outboundDropped;
+    private Counter outboundExpired;
+
     @PostConstruct
     public void init() {
+        connectionLost = Counter.builder("mqtt.connection.lost")
+                .description("MQTT 连接丢失次数").register(meterRegistry);
+        reconnects = Counter.builder("mqtt.reconnects")
+                .description("MQTT 重连成功次数").register(meterRegistry);
+        reconnectAttempts = Counter.builder("mqtt.reconnect.attempts")
+                .description("MQTT 重连尝试次数（含失败）").register(meterRegistry);
+        reconnectLatency = Timer.builder("mqtt.reconnect")
+                .description("从连接丢失到重连并重新订阅完成的耗时").publishPercentileHistogram()
+                .register(meterRegistry);
+        rejected = Counter.builder("mqtt.messages.rejected")
+                .description("被 Ingest 流水线拒绝（背压丢弃或已停止）的消息数").register(meterRegistry);
+        outboundQueued = Counter.builder("mqtt.outbound.queued")
+                .description("因未连接而排队等待补发的消息数").register(meterRegistry);
+        outboundDropped = Counter.builder("mqtt.outbound.dropped")
+                .description("因排队队列已满而拒绝的消息数").register(meterRegistry);
+        outboundExpired = Counter.builder("mqtt.outbound.expired")
+                .description("排队超过 mqtt.outbound-queue.max-age-ms 而未补发的消息数").register(meterRegistry);
+        Gauge.builder("mqtt.outbound.queue.depth", this, MqttService::getOutboundQueueDepth)
+                .description("排队等待补发的消息数").register(meterRegistry);
+        if (instanceId == null || instanceId.isBlank()) {
+            instanceId = UUID.randomUUID().toString().substring(0, 8);
+        }
+        shared = sharedGroup != null && !sharedGroup.isBlank();
+        if (!shared && connections > 1) {
+            // 没有共享订阅时多个连接会重复收到同一条消息
+            logger.warn("未配置 mqtt.consumer.shared-group，MQTT 连接数从 {} 调整为 1", connections);
+            connections = 1;
+        }
+        for (int i = 0; i < Math.max(1, connections); i++) {
+            connect(i);
+        }
+        logger.info("MQTT 连接池已建立: Broker={}, 连接数={}, 共享订阅组={}, 共享主题={}",
+                brokerUrl, clients.size(), shared ? sharedGroup : "(无)", shared ? sharedTopics : List.of());
+    }
+
+    private void connect(int index) {
+        String id = clientId + "-" + instanceId + "-" + index;
+        Counter received = Counter.builder("mqtt.messages.received").tag("connection", String.valueOf(index))
+                .description("各 MQTT 连接收到的消息数").register(meterRegistry);
+        MqttClient client;
+        try {
+            client = new MqttClient(brokerUrl, id, new MemoryPersistence());
+        } catch (MqttException e) {
+            logger.error("创建 MQTT 客户端 [{}] 时出错: {}", id, e.getMessage(), e);
+            return;
+        }
+        Connection connection = new Connection(index, client, received);
+        client.setCallback(new MqttCallback() {
+            @Override
+            public void connectionLost(Throwable cause) {
+                connectionLost.increment();
+                logger.warn("MQTT 连接 [{}] 丢失: {}", id, cause == null ? "" : cause.getMessage());
+                connection.lostAt = System.nanoTime();
+                scheduleReconnect(connection);
+            }
+            // 只负责把消息放入 Ingest 流水线后立即返回，解析、数据库更新和 SSE 推送均由流水线的工作线程完成。
+            // 每个连接有自己的回调线程。（Paho 的按订阅回调无法匹配 $share 过滤器，统一在这里处理）
+            @Override
+            public void messageArrived(String topic, MqttMessage message) {
+                received.increment();
+                if (!ingestPipeline.submit(topic, message.getPayload())) {
+                    rejected.increment();
+                    logger.debug("Ingest 流水线拒绝了主题 '{}' 的消息（背压丢弃或已停止）", topic);
+                }
+            }
+            @Override
+            public void deliveryComplete(IMqttDeliveryToken token) {
+                try {
+                    logger.debug("消息已送达: {}, Token: {}", token.isComplete(), token.getMessageId());
+                } catch (Exception e) { logger.debug("消息已送达: {}", token.isComplete()); }
+            }
+        });
+        clients.add(connection);
+        // 启动时 Broker 不可用也不影响应用启动，转入后台重连
+        if (!tryConnect(connection)) {
+            scheduleReconnect(connection);
+        }
+    }
+
+    /**
+     * 建立连接并订阅该连接负责的全部主题（clean session 断线后订阅已丢失，每次都需重新订阅）。
+     * 连接 0 恢复后补发排队的消息。
+     */
+    private boolean tryConnect(Connection connection) {
+        MqttClient client = connection.client;
         try {
-            client = new MqttClient(brokerUrl, clientId, new MemoryPersistence());
             MqttConnectOptions options = new MqttConnectOptions();
             options.setCleanSession(true);
             // options.setUserName("your_username");
             // options.setPassword("your_password".toCharArray());
-
-            client.setCallback(new MqttCallback() {
-                @Override
-                public void connectionLost(Throwable cause) {
-                    logger.warn("MQTT 连接丢失: ", cause);
-                }
-                @Override
-                public void messageArrived(String topic, MqttMessage message) throws Exception { }
-                @Override
-                public void deliveryComplete(IMqttDeliveryToken token) {
-                    try {
-                        logger.debug("消息已送达: {}, Token: {}", token.isComplete(), token.getMessageId());
-                    } catch (Exception e) { logger.debug("消息已送达: {}", token.isComplete()); }
-                }
-            });
-
             client.connect(options);
-            logger.info("MQTT 连接成功！Broker: {}, ClientID: {}", brokerUrl, clientId);
-
-            // --- 订阅 test/topic (保留) ---
-            client.subscribe("test/topic", (topic, msg) -> {
-                String payload = new String(msg.getPayload());
-                logger.info("收到主题 '{}' 的消息 (SSE): {}", topic, payload);
-                MqttMessagePayload messageData = new MqttMessagePayload(topic, payload, System.currentTimeMillis());
-                try {
-                    String jsonPayload = objectMapper.writeValueAsString(messageData);
-                    sseNotificationService.sendSseEvent("mqttMessage", jsonPayload);
-                    logger.debug("Sent message (test/topic) to SSE clients: {}", jsonPayload);
-                } catch (JsonProcessingException e) {
-                    logger.error("转换 MQTT 消息为 JSON 时出错 (test/topic): {}", e.getMessage(), e);
-                }
-            });
-            logger.info("已订阅主题: test/topic");
-
-            // --- 订阅设备上报数据 device/report/# (保留) ---
-            client.subscribe("device/report/#", (topic, msg) -> {
-                String payload = new String(msg.getPayload());
-                String deviceId = extractDeviceIdFromTopic(topic, 2);
-                logger.info("设备 '{}' 上报数据 (SSE), Topic='{}', Payload='{}'", deviceId, topic, payload);
-                MqttMessagePayload messageData = new MqttMessagePayload(topic, payload, System.currentTimeMillis());
-                try {
-                    String jsonPayload = objectMapper.writeValueAsString(messageData);
-                    sseNotificationService.sendSseEvent("mqttMessage", jsonPayload);
-                    logger.debug("Sent message (device/report) to SSE clients: {}", jsonPayload);
-                    // 可选: 更新最后活跃时间等
-                    // if (!"unknown".equals(deviceId)) { deviceService.updateDeviceLastReport(deviceId); }
-                } catch (JsonProcessingException e) {
-                    logger.error("转换 MQTT 消息为 JSON 时出错 (device/report/#): {}", e.getMessage(), e);
-                }
-            });
-            logger.info("已订阅主题: device/report/#");
-
-            // --- 订阅设备状态 device/status/# (保留并调用 DeviceService) ---
-            client.subscribe("device/status/#", (topic, msg) -> {
-                String payload = new String(msg.getPayload());
-                String deviceUid = extractDeviceIdFromTopic(topic, 2);
-                logger.info("收到设备状态消息 (SSE), DeviceUID='{}', Topic='{}', Payload='{}'", deviceUid, topic, payload);
+            for (String topicFilter : subscriptionsFor(connection.index, shared)) {
+                client.subscribe(topicFilter, 1);
+                logger.debug("连接 [{}] 已订阅主题: {}", client.getClientId(), topicFilter);
+            }
+        } catch (MqttException e) {
+            logger.warn("MQTT 连接 [{}] 失败（第 {} 次尝试）: {}", client.getClientId(), connection.attempts.get(), e.getMessage());
+            if (client.isConnected()) {
+                // 连接成功但订阅失败：断开后整体重试，避免留下漏订阅的连接
                 try {
-                    // a) 推送给前端
-                    MqttMessagePayload messageData = new MqttMessagePayload(topic, payload, System.currentTimeMillis());
-                    String jsonPayload = objectMapper.writeValueAsString(messageData);
-                    sseNotificationService.sendSseEvent("mqttMessage", jsonPayload);
-                    logger.debug("Sent status message (device/status) to SSE clients: {}", jsonPayload);
-
-                    // b) 更新数据库
-                    if (!"unknown".equals(deviceUid)) {
-                        try {
-                            Map<String, Object> statusMap = objectMapper.readValue(payload, Map.class);
-                            String status = (String) statusMap.get("status");
-                            if (status != null) {
-                                // *** 调用 DeviceService 更新数据库状态 ***
-                                deviceService.updateDeviceStatusByUid(deviceUid, status); // 使用正确的 Service 方法
-                            } else {
-                                logger.warn("收到的设备 [{}] 状态消息缺少 'status' 字段: {}", deviceUid, payload);
-                            }
-                        } catch (Exception parseException) {
-                            logger.error("解析设备 [{}] 状态消息 JSON 时出错: {}", deviceUid, parseException.getMessage());
-                        }
-                    } else {
-                        logger.warn("无法从主题 '{}' 中提取有效的 Device UID 来更新状态", topic);
-                    }
-                } catch (JsonProcessingException e) {
-                    logger.error("转换状态消息为 JSON 时出错 (device/status/#): {}", e.getMessage(), e);
+                    client.disconnectForcibly(0, 1000);
+                } catch (MqttException ignored) {
                 }
-            });
-            logger.info("已订阅主题: device/status/#");
+            }
+            return false;
+        }
+        if (connection.lostAt != 0) {
+            reconnectLatency.record(System.nanoTime() - connection.lostAt, TimeUnit.NANOSECONDS);
+            reconnects.increment();
+            logger.info("MQTT 连接 [{}] 已恢复（{} 次尝试）并重新订阅", client.getClientId(), connection.attempts.get());
+        } else {
+            logger.info("MQTT 连接成功！Broker: {}, ClientID: {}", brokerUrl, client.getClientId());
+        }
+        connection.attempts.set(0);
+        connection.lostAt = 0;
+        if (connection.index == 0) {
+            drainOutbound();
+        }
+        return true;
+    }
 
-            // *** 新增: 订阅设备注册/上线主题 device/lifecycle/register ***
-            client.subscribe("device/lifecycle/register", (topic, msg) -> {
-                String payload = new String(msg.getPayload());
-                logger.info("收到设备注册/上线消息, Topic='{}', Payload='{}'", topic, payload);
-                try {
-                    // 解析注册消息 JSON
-                    Map<String, Object> registrationInfo = objectMapper.readValue(payload, Map.class);
-                    String deviceUid = (String) registrationInfo.get("deviceId");
-                    String deviceType = (String) registrationInfo.get("deviceType");
-                    // 从消息中获取状态，如果消息中没有，则默认为 "online"
-                    String status = (String) registrationInfo.getOrDefault("status", "online");
-
-                    if (deviceUid != null && !deviceUid.isBlank() && deviceType != null && !deviceType.isBlank()) {
-                        // *** 调用 DeviceService 处理注册或上线更新 ***
-                        deviceService.handleDeviceRegistrationOrUpdate(deviceUid, deviceType, status);
-                        // 可选：将注册事件也推送到前端（如果前端需要知道哪些设备刚注册）
-                        // MqttMessagePayload regEventData = new MqttMessagePayload(topic, payload, System.currentTimeMillis());
-                        // sseNotificationService.sendSseEvent("deviceRegistration", objectMapper.writeValueAsString(regEventData));
-                    } else {
-                        logger.warn("收到的注册消息格式不正确或缺少 deviceId/deviceType 字段: {}", payload);
-                    }
-                } catch (Exception e) {
-                    logger.error("处理设备注册/上线消息时出错: {}", e.getMessage(), e);
-                }
-            });
-            logger.info("已订阅主题: device/lifecycle/register"); // *** 确认订阅日志 ***
+    /**
+     * 以带抖动的指数退避安排下一次重连: 上限为 min(max-delay, initial-delay * 2^尝试次数)，
+     * 实际延迟在 [上限/2, 上限] 内随机，避免 Broker 重启后所有实例和连接同时重连。
+     */
+    private void scheduleReconnect(Connection connection) {
+        if (stopped) {
+            return;
+        }
+        int attempts = connection.attempts.getAndIncrement();
+        long ceiling = Math.min(reconnectMaxDelayMs, reconnectInitialDelayMs << Math.min(attempts, 20));
+        long delay = ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+        connection.reconnecting = true;
+        reconnector.schedule(() -> {
+            if (stopped) {
+                return;
+            }
+            reconnectAttempts.increment();
+            if (tryConnect(connection)) {
+                connection.reconnecting = false;
+            } else {
+                scheduleReconnect(connection);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
 
+    /**
+     * 第 index 个连接要订阅的过滤器：共享主题在每个连接上以 $share 订阅，其余主题只由第一个连接订阅。
+     */
+    private List<String> subscriptionsFor(int index, boolean shared) {
+        List<String> filters = new ArrayList<>();
+        for (String topic : SUBSCRIBED_TOPICS) {
+            if (shared && sharedTopics.contains(topic)) {
+                filters.add("$share/" + sharedGroup + "/" + topic);
+            } else if (index == 0) {
+                filters.add(topic);
+            }
+        }
+        return filters;
+    }
 
-        } catch (MqttException e) {
-            logger.error("初始化 MQTT 客户端或订阅主题时出错: {}", e.getMessage(), e);
+    /**
+     * 以 QoS 1 发布消息。
+     *
+     * @return true 表示已发出；false 表示当前未连接，消息已排队，重连后按顺序补发
+     * @throws IllegalStateException 未连接且排队队列已满
+     */
+    public boolean publish(String topic, String payload) {
+        return publish(topic, payload.getBytes(StandardCharsets.UTF_8), 1);
+    }
+
+    public boolean publish(String topic, byte[] payload, int qos) {
+        MqttClient client = clients.isEmpty() ? null : clients.get(0).client;
+        boolean direct;
+        synchronized (outbound) {
+            // 队列非空或正在补发时新消息也排到队尾，保证补发和新消息之间的顺序
+            direct = outbound.isEmpty() && !draining && client != null && client.isConnected();
+        }
+        if (direct) {
+            try {
+                client.publish(topic, payload, qos, false);
+                logger.debug("已发布消息到主题 '{}', Payload: {} 字节", topic, payload.length);
+                return true;
+            } catch (MqttException e) {
+                logger.warn("发布 MQTT 消息到主题 '{}' 失败，转入排队: {}", topic, e.getMessage());
+            }
+        }
+        synchronized (outbound) {
+            if (outbound.size() >= outboundCapacity) {
+                outboundDropped.increment();
+                logger.warn("MQTT 客户端未连接且排队队列已满（{}），无法发布消息到主题: {}", outboundCapacity, topic);
+                throw new IllegalStateException("MQTT client is not connected and the outbound queue is full.");
+            }
+            outbound.addLast(new PendingPublish(topic, payload, qos, System.currentTimeMillis()));
+            outboundQueued.increment();
+            logger.info("MQTT 客户端未连接，消息已排队等待补发: 主题 {}, 队列长度 {}", topic, outbound.size());
+            return false;
         }
     }
 
-    // 提取 Device ID 的辅助方法
-    private String extractDeviceIdFromTopic(String topic, int index) {
-        try {
-            String[] parts = topic.split("/");
-            if (parts.length > index) {
-                // 做一些基本的 ID 合法性检查（例如非空）
-                String potentialId = parts[index];
-                if(potentialId != null && !potentialId.isBlank()){
-                    return potentialId;
+    /**
+     * 按入队顺序补发排队的消息；发送失败（再次断线）时停止，剩余消息等待下一次重连。
+     * 每条消息在锁内取出、在锁外发布，补发期间新消息排到队尾，不会越过尚未补发的消息。
+     */
+    private void drainOutbound() {
+        MqttClient client = clients.get(0).client;
+        int sent = 0;
+        synchronized (outbound) {
+            if (draining) {
+                return;
+            }
+            draining = true;
+        }
+        while (true) {
+            PendingPublish pending;
+            synchronized (outbound) {
+                pending = outbound.pollFirst();
+                if (pending == null) {
+                    // 与判空在同一把锁内结束补发，之后的新消息才会直接发布，不会滞留在队列中
+                    draining = false;
+                    break;
+                }
+            }
+            if (outboundMaxAgeMs > 0 && System.currentTimeMillis() - pending.enqueuedAt() > outboundMaxAgeMs) {
+                outboundExpired.increment();
+                logger.warn("排队消息已过期，不再补发: 主题 {}", pending.topic());
+                continue;
+            }
+            try {
+                client.publish(pending.topic(), pending.payload(), pending.qos(), false);
+            } catch (MqttException | RuntimeException e) {
+                synchronized (outbound) {
+                    outbound.addFirst(pending); // 放回队首，保持顺序
+                    draining = false;
+                    logger.warn("补发排队消息失败，剩余 {} 条等待下次重连: {}", outbound.size(), e.getMessage());
                 }
+                break;
             }
-        } catch (Exception e){
-            logger.error("从主题 '{}' 提取 Device ID 时出错: {}", topic, e.getMessage());
+            sent++;
+        }
+        if (sent > 0) {
+            logger.info("已补发 {} 条断线期间排队的 MQTT 消息", sent);
         }
-        return "unknown"; // 返回一个明确的无效值
     }
 
+    public int getOutboundQueueDepth() {
+        synchronized (outbound) {
+            return outbound.size();
+        }
+    }
 
-    // publish 方法
-    public void publish(String topic, String payload) {
-        if (client == null || !client.isConnected()) {
-            logger.warn("MQTT 客户端未连接，无法发布消息到主题: {}", topic);
-            throw new IllegalStateException("MQTT client is not connected.");
+    /**
+     * 各连接的 ClientID、连接状态和收到的消息数。
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("brokerUrl", brokerUrl);
+        stats.put("instanceId", instanceId);
+        stats.put("sharedGroup", sharedGroup);
+        List<Map<String, Object>> list = new ArrayList<>();
+        for (Connection connection : clients) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("clientId", connection.client.getClientId());
+            entry.put("connected", connection.client.isConnected());
+            entry.put("reconnecting", connection.reconnecting);
+            entry.put("received", (long) connection.received.count());
+            list.add(entry);
         }
-        try {
-            MqttMessage message = new MqttMessage(payload.getBytes());
-            message.setQos(1);
-            client.publish(topic, message);
-            logger.info("已发布消息到主题 '{}', Payload: '{}'", topic, payload);
-        } catch (MqttException e) {
-            logger.error("发布 MQTT 消息到主题 '{}' 时出错: {}", topic, e.getMessage(), e);
-            // 可以考虑根据错误代码进行更细致的处理，例如判断是否连接丢失
-            if (e.getReasonCode() == MqttException.REASON_CODE_CLIENT_NOT_CONNECTED) {
-                logger.warn("发布失败，因为客户端未连接。");
-                // 可能需要触发重连逻辑或通知
+        stats.put("connections", list);
+        stats.put("reconnects", (long) reconnects.count());
+        stats.put("outboundQueueDepth", getOutboundQueueDepth());
+        stats.put("outboundQueueCapacity", outboundCapacity);
+        stats.put("outboundDropped", (long) outboundDropped.count());
+        stats.put("outboundExpired", (long) outboundExpired.count());
+        return stats;
+    }
+
+    @PreDestroy
+    public void disconnect() {
+        stopped = true;
+        reconnector.shutdownNow();
+        for (Connection connection : clients) {
+            MqttClient client = connection.client;
+            try {
+                if (client.isConnected()) {
+                    client.disconnect(1000);
+                }
+                client.close();
+            } catch (MqttException e) {
+                logger.debug("关闭 MQTT 连接 [{}] 时出错: {}", client.getClientId(), e.getMessage());
             }
         }
     }
-
-    // disconnect 方法可选
-    // @PreDestroy
-    // public void disconnect() { ... }
 }
\ No newline at end of file
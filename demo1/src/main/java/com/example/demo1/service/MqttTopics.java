@@ -0,0 +1,89 @@
+package com.example.demo1.service;
+
+/**
+ * MQTT 主题相关的静态辅助方法。
+ * 主题格式约定: device/{report|status|command|ack|heartbeat}/{deviceUid}
+ */
+public final class MqttTopics {
+
+    /** 无法从主题中提取 Device ID 时返回的明确无效值 */
+    public static final String UNKNOWN_DEVICE = "unknown";
+
+    private MqttTopics() {
+    }
+
+    /**
+     * 从主题中提取第 index 段作为 Device ID。
+     * 使用 indexOf 逐段扫描，避免 split 产生数组和正则开销（该方法在每条消息上都会被调用）。
+     *
+     * @param topic MQTT 主题
+     * @param index 段索引（从 0 开始）
+     * @return Device ID，无效时返回 {@link #UNKNOWN_DEVICE}
+     */
+    public static String extractDeviceId(String topic, int index) {
+        if (topic == null) {
+            return UNKNOWN_DEVICE;
+        }
+        int start = 0;
+        for (int i = 0; i < index; i++) {
+            int slash = topic.indexOf('/', start);
+            if (slash < 0) {
+                return UNKNOWN_DEVICE;
+            }
+            start = slash + 1;
+        }
+        int end = topic.indexOf('/', start);
+        if (end < 0) {
+            end = topic.length();
+        }
+        // 做一些基本的 ID 合法性检查（例如非空）
+        if (end <= start || topic.substring(start, end).isBlank()) {
+            return UNKNOWN_DEVICE;
+        }
+        return topic.substring(start, end);
+    }
+
+    /**
+     * 校验 MQTT 订阅过滤器: 非空；'+' 必须独占一级；'#' 必须独占最后一级。
+     */
+    public static boolean isValidFilter(String filter) {
+        if (filter == null || filter.isEmpty()) {
+            return false;
+        }
+        String[] levels = filter.split("/", -1);
+        for (int i = 0; i < levels.length; i++) {
+            String level = levels[i];
+            if (level.contains("#") && (!level.equals("#") || i != levels.length - 1)) {
+                return false;
+            }
+            if (level.contains("+") && !level.equals("+")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 判断具体主题是否匹配订阅过滤器（过滤器需已通过 {@link #isValidFilter} 校验）。
+     * 以 '$' 开头的主题不会被首级通配符匹配。
+     */
+    public static boolean matches(String filter, String topic) {
+        String[] filterLevels = filter.split("/", -1);
+        String[] topicLevels = topic.split("/", -1);
+        if (topic.startsWith("$") && (filterLevels[0].equals("+") || filterLevels[0].equals("#"))) {
+            return false;
+        }
+        for (int i = 0; i < filterLevels.length; i++) {
+            if (filterLevels[i].equals("#")) {
+                return true;
+            }
+            if (i >= topicLevels.length) {
+                return false;
+            }
+            if (!filterLevels[i].equals("+") && !filterLevels[i].equals(topicLevels[i])) {
+                return false;
+            }
+        }
+        return filterLevels.length == topicLevels.length;
+    }
+}
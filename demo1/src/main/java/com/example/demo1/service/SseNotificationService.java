@@ -1,29 +1,176 @@
 package com.example.demo1.service;
 
+import com.example.demo1.service.sse.LatestStateSlots;
+import com.example.demo1.service.sse.SlowConsumerPolicy;
+import com.example.demo1.service.sse.SseEventJournal;
+import com.example.demo1.service.sse.SseFrame;
+import com.example.demo1.service.sse.SseOutboundQueue;
+import com.example.demo1.service.sse.SseSubscription;
+import com.example.demo1.service.sse.SseStreamMode;
+import com.example.demo1.service.sse.SseSubscriptionIndex;
+import com.example.demo1.service.sse.SubscriptionFilter;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled; // Import for optional heartbeat
 import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.TimeUnit; // Import for optional heartbeat
 
+/**
+ * SSE 推送服务。
+ * <p>
+ * 每个事件只编码一次（{@link SseFrame}），放入各目标客户端自己的有界发送队列后立即返回，
+ * 由独立的写线程池异步写出。一个卡住的浏览器连接只会堆满自己的队列，
+ * 不会拖慢其他客户端和 MQTT 消息处理；队列写满时按 {@code sse.slow-consumer-policy} 处理。
+ * <p>
+ * LATEST 模式的客户端不逐条接收消息：服务端为每个主题保留最新一条消息，客户端只记录变脏的主题，
+ * 按客户端指定的间隔把有变化的条目合并成一个 {@code latestState} 事件推送，流量与上报频率无关。
+ * <p>
+ * 逐条推送的事件带有单调递增的 ID 并写入有界日志；浏览器重连时根据 {@code Last-Event-ID}
+ * 重放错过的事件，缺口超出日志范围时改为发送一个 {@code snapshot} 事件（各主题的最新消息）。
+ * <p>
+ * 指标: {@code sse.emitters}、{@code sse.send}（单次写出耗时）、{@code sse.send.failures}、
+ * {@code sse.frames.encoded}、{@code sse.slow-consumer.disconnects}。
+ */
 @Service
 public class SseNotificationService {
 
     private static final Logger logger = LoggerFactory.getLogger(SseNotificationService.class);
-    // 使用线程安全的列表来存储所有活跃的 SseEmitter 连接
-    private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+    // 单次排空最多写出的帧数，之后让出写线程，避免一个客户端长期占用
+    private static final int MAX_FRAMES_PER_DRAIN = 64;
+    // 所有活跃的 SseEmitter 连接及其订阅条件
+    private final Map<SseEmitter, SseSubscription> emitters = new ConcurrentHashMap<>();
+    // 按主题 / 设备 / 设备类型建立的订阅索引，设备事件只推送给感兴趣的连接
+    private final SseSubscriptionIndex subscriptionIndex = new SseSubscriptionIndex();
+    // 每个主题最新一条消息，供 LATEST 模式合并推送
+    private final LatestStateSlots latestSlots = new LatestStateSlots();
 
-    // 添加一个新的 Emitter
+    @Autowired
+    private DeviceRegistryCache deviceRegistryCache;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${sse.outbound-queue-size:256}")
+    private int outboundQueueSize;
+
+    @Value("${sse.slow-consumer-policy:CONFLATE}")
+    private SlowConsumerPolicy slowConsumerPolicy;
+
+    @Value("${sse.writer-threads:4}")
+    private int writerThreads;
+
+    @Value("${sse.latest.interval-ms:250}")
+    private long latestIntervalMs;
+
+    @Value("${sse.latest.min-interval-ms:50}")
+    private long latestMinIntervalMs;
+
+    @Value("${sse.journal-size:10000}")
+    private int journalSize;
+
+    private SseEventJournal eventJournal;
+
+    private ExecutorService writerPool;
+    private ScheduledExecutorService latestTicker;
+
+    private final LongAdder framesEncoded = new LongAdder();
+    private final LongAdder slowConsumerDisconnects = new LongAdder();
+    private final LongAdder replayedEvents = new LongAdder();
+    private final LongAdder snapshotsSent = new LongAdder();
+
+    private Timer sendTimer;
+    private Counter sendFailures;
+
+    @PostConstruct
+    public void init() {
+        // 以启动时间（微秒级）作为 ID 基数，重启后 ID 仍然递增
+        eventJournal = new SseEventJournal(journalSize, System.currentTimeMillis() * 1000);
+        AtomicInteger threadIndex = new AtomicInteger();
+        writerPool = Executors.newFixedThreadPool(writerThreads, r -> {
+            Thread t = new Thread(r, "sse-writer-" + threadIndex.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        latestTicker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "sse-latest");
+            t.setDaemon(true);
+            return t;
+        });
+        Gauge.builder("sse.emitters", emitters, Map::size)
+                .description("当前 SSE 连接数").register(meterRegistry);
+        FunctionCounter.builder("sse.frames.encoded", framesEncoded, LongAdder::sum)
+                .description("编码的 SSE 事件数（每个事件只编码一次）").register(meterRegistry);
+        FunctionCounter.builder("sse.slow-consumer.disconnects", slowConsumerDisconnects, LongAdder::sum)
+                .description("因发送队列写满被断开的客户端数").register(meterRegistry);
+        sendTimer = Timer.builder("sse.send")
+                .description("向单个客户端写出一个 SSE 事件的耗时").register(meterRegistry);
+        sendFailures = Counter.builder("sse.send.failures")
+                .description("写出失败（随后移除连接）的次数").register(meterRegistry);
+        // 以最小间隔为节拍检查各 LATEST 客户端，到期且有变化时推送
+        latestTicker.scheduleWithFixedDelay(this::flushLatest, latestMinIntervalMs, latestMinIntervalMs, TimeUnit.MILLISECONDS);
+        logger.info("SSE 推送服务已启动: writerThreads={}, outboundQueueSize={}, slowConsumerPolicy={}",
+                writerThreads, outboundQueueSize, slowConsumerPolicy);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        latestTicker.shutdownNow();
+        writerPool.shutdownNow();
+    }
+
+    // 添加一个新的 Emitter（接收全部事件）
     public void addEmitter(SseEmitter emitter) {
+        addEmitter(emitter, SubscriptionFilter.ALL);
+    }
+
+    // 添加一个新的 Emitter，只接收符合过滤条件的设备事件
+    public void addEmitter(SseEmitter emitter, SubscriptionFilter filter) {
+        addEmitter(emitter, filter, SseStreamMode.STREAM, null, null);
+    }
+
+    /**
+     * 添加一个新的 Emitter。
+     *
+     * @param mode       推送模式；LATEST 模式按 intervalMs 批量推送最新状态
+     * @param intervalMs LATEST 模式的推送间隔，为 null 时使用 {@code sse.latest.interval-ms}，不低于 {@code sse.latest.min-interval-ms}
+     * @param lastEventId 重连时浏览器带回的最后事件 ID（Last-Event-ID），为 null 表示新连接
+     */
+    public void addEmitter(SseEmitter emitter, SubscriptionFilter filter, SseStreamMode mode, Long intervalMs,
+                           Long lastEventId) {
         // 设置完成回调，在连接完成（包括超时、错误后完成）时从列表移除
         emitter.onCompletion(() -> {
             logger.info("SSE Emitter completed. Removing from list. Emitter: {}", emitter);
-            this.emitters.remove(emitter);
+            unregister(emitter);
             logger.info("Emitter removed due to completion. Current count: {}", emitters.size());
         });
         // 设置超时回调
@@ -38,35 +185,56 @@ public class SseNotificationService {
             logger.warn("SSE Emitter error: {}. Emitter: {}", e.getMessage(), emitter);
             // onError 之后通常也会触发 onCompletion，所以在这里移除可能是重复的
             // 但为了确保移除，可以保留，CopyOnWriteArrayList 的 remove 是安全的
-            this.emitters.remove(emitter);
+            unregister(emitter);
             logger.info("Emitter removed due to error. Current count: {}", emitters.size());
         });
 
-        // 将新的 Emitter 添加到列表
-        this.emitters.add(emitter);
-        logger.info("New SSE Emitter added. Emitter: {}. Current count: {}", emitter, emitters.size());
+        long interval = Math.max(latestMinIntervalMs, intervalMs != null ? intervalMs : latestIntervalMs);
+        SseSubscription subscription = new SseSubscription(emitter, filter,
+                new SseOutboundQueue(outboundQueueSize, slowConsumerPolicy), mode, interval);
 
-        // 尝试发送一条初始连接确认事件
+        // 先发送初始连接确认事件，再登记订阅，保证 connection 事件排在所有推送之前
         try {
             emitter.send(SseEmitter.event().name("connection").data("SSE Connection established"));
             logger.debug("Sent connection confirmation to new emitter: {}", emitter);
+
+            // 将新的 Emitter 添加到列表并登记订阅条件。持有日志锁期间不会分配新的事件 ID，
+            // 重放的事件与之后的实时事件之间既不重复也不遗漏
+            synchronized (eventJournal) {
+                this.emitters.put(emitter, subscription);
+                subscriptionIndex.add(subscription);
+                if (mode == SseStreamMode.STREAM && lastEventId != null) {
+                    replay(subscription, lastEventId);
+                }
+                subscription.setStartAfterId(eventJournal.lastId());
+            }
+            logger.info("New SSE Emitter added. Emitter: {}, Filter: {}, Mode: {}. Current count: {}",
+                    emitter, filter, mode, emitters.size());
+            if (mode == SseStreamMode.LATEST) {
+                // 新连接先收到一次当前的完整状态
+                for (LatestStateSlots.Slot slot : latestSlots.all()) {
+                    if (filter.matches(slot.topic(), slot.deviceUid(), () -> deviceTypeOf(slot.deviceUid()))) {
+                        subscription.markDirty(slot.topic());
+                    }
+                }
+            }
         } catch (IOException e) {
             // 如果初始消息发送失败，可能连接有问题，直接移除
             logger.warn("Error sending initial SSE message, removing emitter: {}, Error: {}", emitter, e.getMessage());
-            this.emitters.remove(emitter); // 立即移除失败的 emitter
+            unregister(emitter); // 立即移除失败的 emitter
             logger.info("Emitter removed due to initial send error. Current count: {}", emitters.size());
         } catch (IllegalStateException e) {
             // 处理 emitter 可能已经 complete 的情况
             logger.warn("IllegalStateException sending initial SSE message (emitter likely closed), removing emitter: {}, Error: {}",
                     emitter, e.getMessage());
-            this.emitters.remove(emitter);
+            unregister(emitter);
             logger.info("Emitter removed due to initial send error (IllegalState). Current count: {}", emitters.size());
         }
     }
 
     // 移除一个 Emitter (主要由回调自动调用，但提供一个公共方法供其他地方按需调用)
     public void removeEmitter(SseEmitter emitter) {
-        boolean removed = this.emitters.remove(emitter);
+        boolean removed = unregister(emitter);
         if (removed) {
             logger.info("SSE Emitter explicitly removed. Emitter: {}. Current count: {}", emitter, emitters.size());
         }
@@ -78,6 +246,142 @@ public class SseNotificationService {
         // }
     }
 
+    private boolean unregister(SseEmitter emitter) {
+        SseSubscription subscription = this.emitters.remove(emitter);
+        if (subscription == null) {
+            return false;
+        }
+        subscriptionIndex.remove(subscription);
+        subscription.getOutbound().clear();
+        return true;
+    }
+
+    /**
+     * 发送设备相关事件，只推送给订阅条件匹配的 emitters（主题过滤器、设备 UID 或设备类型任一匹配）。
+     * 设备类型只在有按类型订阅的连接时才从注册表缓存中查询。
+     *
+     * @param eventName 事件名称
+     * @param data      要发送的数据
+     * @param topic     事件对应的 MQTT 主题
+     * @param deviceUid 事件对应的设备 UID，可为 null
+     */
+    public void sendDeviceEvent(String eventName, Object data, String topic, String deviceUid) {
+        String text = toText(eventName, data);
+        if (text == null) {
+            return;
+        }
+        if (topic != null) {
+            latestSlots.update(topic, deviceUid, text);
+        }
+        // 没有连接时也要写日志，断线的客户端重连后才能补上这段时间的事件
+        framesEncoded.increment();
+        SseEventJournal.Entry entry = eventJournal.append(eventName, text, topic, deviceUid, false);
+        if (emitters.isEmpty()) {
+            return;
+        }
+        Set<SseSubscription> targets = subscriptionIndex.match(topic, deviceUid, () -> deviceTypeOf(deviceUid));
+        logger.debug("设备事件 '{}' ({}) 匹配到 {} / {} 个 emitter(s)", eventName, topic, targets.size(), emitters.size());
+        for (SseSubscription subscription : targets) {
+            if (subscription.getMode() == SseStreamMode.LATEST) {
+                if (topic != null) {
+                    subscription.markDirty(topic);
+                }
+            } else if (entry.id() > subscription.getStartAfterId()) {
+                enqueue(subscription, entry.frame());
+            }
+        }
+    }
+
+    /**
+     * 在日志锁内调用：把 lastEventId 之后、符合订阅条件的事件放入客户端队列。
+     * 缺口超出日志范围，或需要重放的事件多于发送队列容量时，改为发送一个 snapshot 事件。
+     */
+    private void replay(SseSubscription subscription, long lastEventId) {
+        SubscriptionFilter filter = subscription.getFilter();
+        List<SseEventJournal.Entry> missed = eventJournal.since(lastEventId);
+        if (missed != null) {
+            List<SseFrame> frames = new ArrayList<>();
+            for (SseEventJournal.Entry entry : missed) {
+                if (entry.broadcast()
+                        || filter.matches(entry.topic(), entry.deviceUid(), () -> deviceTypeOf(entry.deviceUid()))) {
+                    frames.add(entry.frame());
+                }
+            }
+            if (frames.size() <= outboundQueueSize) {
+                frames.forEach(frame -> enqueue(subscription, frame));
+                replayedEvents.add(frames.size());
+                logger.info("SSE 客户端重连 (Last-Event-ID={}), 重放 {} 个事件: {}", lastEventId, frames.size(), subscription);
+                return;
+            }
+        }
+        // 带上当前最新 ID，客户端下次重连时从这里继续
+        long snapshotId = eventJournal.lastId();
+        StringBuilder snapshot = new StringBuilder(1024);
+        snapshot.append("{\"lastEventId\":").append(snapshotId).append(",\"updates\":[");
+        int count = 0;
+        for (LatestStateSlots.Slot slot : latestSlots.all()) {
+            if (filter.matches(slot.topic(), slot.deviceUid(), () -> deviceTypeOf(slot.deviceUid()))) {
+                if (count++ > 0) {
+                    snapshot.append(',');
+                }
+                snapshot.append(slot.json());
+            }
+        }
+        snapshot.append("]}");
+        framesEncoded.increment();
+        enqueue(subscription, SseFrame.encode(snapshotId, "snapshot", snapshot.toString(), null));
+        snapshotsSent.increment();
+        logger.info("SSE 客户端重连 (Last-Event-ID={}) 缺口超出事件日志范围, 发送包含 {} 个主题的快照: {}",
+                lastEventId, count, subscription);
+    }
+
+    private String deviceTypeOf(String deviceUid) {
+        if (deviceUid == null) {
+            return null;
+        }
+        return deviceRegistryCache.get(deviceUid)
+                .map(DeviceRegistryCache.DeviceSnapshot::deviceType)
+                .orElse(null);
+    }
+
+    /**
+     * 节拍线程中执行：对到期且有变化的 LATEST 客户端，把变脏主题的最新消息合并成一个 latestState 事件。
+     * 客户端发送队列中还有未写出的事件时跳过本次推送，变化继续累积在脏集合中（自然合并）。
+     */
+    private void flushLatest() {
+        try {
+            long now = System.currentTimeMillis();
+            for (SseSubscription subscription : emitters.values()) {
+                if (subscription.getMode() != SseStreamMode.LATEST || subscription.getDirtyTopics().isEmpty()
+                        || !subscription.isFlushDue(now) || subscription.getOutbound().depth() > 0) {
+                    continue;
+                }
+                StringBuilder batch = new StringBuilder(256);
+                batch.append("{\"timestamp\":").append(now).append(",\"updates\":[");
+                int count = 0;
+                for (Iterator<String> it = subscription.getDirtyTopics().iterator(); it.hasNext(); ) {
+                    String topic = it.next();
+                    it.remove();
+                    LatestStateSlots.Slot slot = latestSlots.get(topic);
+                    if (slot != null) {
+                        if (count++ > 0) {
+                            batch.append(',');
+                        }
+                        batch.append(slot.json());
+                    }
+                }
+                batch.append("]}");
+                subscription.markFlushed(now);
+                if (count > 0) {
+                    framesEncoded.increment();
+                    enqueue(subscription, SseFrame.encode("latestState", batch.toString(), null));
+                }
+            }
+        } catch (Exception e) {
+            logger.error("推送 LATEST 模式 SSE 事件时出错: {}", e.getMessage(), e);
+        }
+    }
+
     /**
      * 向所有当前注册的 SSE emitters 发送事件。
      * 会优雅地处理客户端断开连接导致的 IOException。
@@ -86,75 +390,181 @@ public class SseNotificationService {
      * @param data      要发送的数据 (通常是 JSON 字符串或可被 MessageConverter 处理的对象)
      */
     public void sendSseEvent(String eventName, Object data) {
+        String text = toText(eventName, data);
+        if (text == null) {
+            return;
+        }
+        framesEncoded.increment();
+        SseEventJournal.Entry entry = eventJournal.append(eventName, text, null, null, true);
         // 如果没有活动的连接，直接返回
         if (emitters.isEmpty()) {
             // logger.debug("No active SSE emitters to send event '{}' to.", eventName); // 可以取消注释以查看空发送日志
             return;
         }
 
-        // 记录将要发送的事件和目标数量
-        // 使用 logger.isDebugEnabled() 避免在非 debug 级别下构建复杂的日志字符串
-        if (logger.isDebugEnabled()) {
-            logger.debug("准备发送 SSE 事件 '{}' 给 {} 个 emitter(s). Data: {}", eventName, emitters.size(), data);
-        } else {
-            logger.info("准备发送 SSE 事件 '{}' 给 {} 个 emitter(s)", eventName, emitters.size());
+        // 记录将要发送的事件和目标数量（只在 DEBUG 级别，推送量由 sse.* 指标观察）
+        logger.debug("准备发送 SSE 事件 '{}' 给 {} 个 emitter(s). Data: {}", eventName, emitters.size(), data);
+
+        // 只编码一次（写日志时），放入每个 emitter 的发送队列
+        for (SseSubscription subscription : emitters.values()) {
+            if (entry.id() > subscription.getStartAfterId()) {
+                enqueue(subscription, entry.frame());
+            }
         }
+        // 可选：记录完成发送尝试
+        logger.debug("完成对事件 '{}' 的入队。 当前 emitter 数量: {}", eventName, emitters.size());
+    }
 
-        String emitterIdString; // 用于日志记录，避免在移除后无法获取 emitter 信息
+    private String toText(String eventName, Object data) {
+        try {
+            return data instanceof String str ? str : objectMapper.writeValueAsString(data);
+        } catch (JsonProcessingException e) {
+            logger.error("序列化 SSE 事件 '{}' 的数据时出错: {}", eventName, e.getMessage(), e);
+            return null;
+        }
+    }
 
-        // 遍历 emitters 列表的快照进行发送
-        for (SseEmitter emitter : emitters) {
-            emitterIdString = emitter.toString(); // 在尝试发送前获取字符串表示
+    /**
+     * 放入客户端发送队列并确保有写线程在排空；本方法不做任何网络 IO。
+     */
+    private void enqueue(SseSubscription subscription, SseFrame frame) {
+        SseOutboundQueue.OfferResult result = subscription.getOutbound().offer(frame);
+        if (result == SseOutboundQueue.OfferResult.OVERFLOW) {
+            slowConsumerDisconnects.increment();
+            logger.warn("SSE 客户端发送队列已满，按 DISCONNECT 策略断开: {}", subscription);
+            SseEmitter emitter = subscription.getEmitter();
+            removeEmitter(emitter);
             try {
-                // 构建 SSE 事件
-                SseEmitter.SseEventBuilder event = SseEmitter.event()
-                        .name(eventName) // 事件名称
-                        .data(data);    // 事件数据
-
-                // 发送事件
-                emitter.send(event);
-
-                // 发送成功日志 (Debug 级别)
-                logger.debug("成功发送事件 '{}' 给 emitter: {}", eventName, emitterIdString);
-
-            } catch (IOException e) {
-                // **处理 IO 异常**
-                String errorMessage = e.getMessage();
-                // 检查是否是常见的连接中止错误
-                boolean isConnectionAbort = errorMessage != null &&
-                        (errorMessage.contains("你的主机中的软件中止了一个已建立的连接") || // 中文 Windows
-                                errorMessage.toLowerCase().contains("connection abort") ||       // 常见英文
-                                errorMessage.toLowerCase().contains("broken pipe"));           // 常见 Linux/Unix
-
-                if (isConnectionAbort) {
-                    // 如果是客户端主动断开连接，记录为 WARN 级别
-                    logger.warn("发送 SSE 事件 '{}' 时连接中止 (客户端可能已断开), 移除 emitter: {}, 错误: {}",
-                            eventName, emitterIdString, errorMessage);
-                } else {
-                    // 其他类型的 IO 异常，记录为 ERROR 级别，并包含堆栈跟踪
-                    logger.error("发送 SSE 事件 '{}' 时发生 IO 错误, 移除 emitter: {}, 错误: {}",
-                            eventName, emitterIdString, errorMessage, e);
-                }
-                // 无论哪种 IO 异常，都尝试移除这个 emitter
-                // 注意：这里调用 removeEmitter 是为了立即尝试移除，但最终移除通常由 onError 或 onCompletion 回调保证
-                removeEmitter(emitter); // 立即尝试移除
-
-            } catch (IllegalStateException e) {
-                // 处理 emitter 可能已经 complete 或状态非法的情况
-                logger.warn("发送 SSE 事件 '{}' 时状态非法 (emitter 可能已关闭), 移除 emitter: {}, 错误: {}",
-                        eventName, emitterIdString, e.getMessage());
-                removeEmitter(emitter); // 立即尝试移除
+                emitter.complete();
+            } catch (Exception e) {
+                logger.debug("断开慢速 SSE 客户端时出错: {}", e.getMessage());
             }
-            catch (Exception e) {
-                // **处理其他未预料的异常**
-                logger.error("发送 SSE 事件 '{}' 时发生意外错误, 移除 emitter: {}, 错误: {}",
-                        eventName, emitterIdString, e.getMessage(), e); // 包含异常堆栈跟踪
-                // 同样移除 emitter
-                removeEmitter(emitter); // 立即尝试移除
+            return;
+        }
+        if (result == SseOutboundQueue.OfferResult.QUEUED) {
+            scheduleDrain(subscription);
+        }
+    }
+
+    private void scheduleDrain(SseSubscription subscription) {
+        SseOutboundQueue outbound = subscription.getOutbound();
+        if (!outbound.tryStartDrain()) {
+            return;
+        }
+        try {
+            writerPool.execute(() -> drain(subscription));
+        } catch (RejectedExecutionException e) {
+            // 服务正在关闭
+            outbound.finishDrain();
+        }
+    }
+
+    /**
+     * 写线程中执行：依次写出队列中的帧。写失败时移除该 emitter。
+     */
+    private void drain(SseSubscription subscription) {
+        SseOutboundQueue outbound = subscription.getOutbound();
+        SseEmitter emitter = subscription.getEmitter();
+        for (int i = 0; i < MAX_FRAMES_PER_DRAIN; i++) {
+            SseFrame frame = outbound.poll();
+            if (frame == null) {
+                break;
             }
+            if (!sendTo(emitter, frame)) {
+                outbound.finishDrain();
+                return;
+            }
+            outbound.recordSent(frame);
         }
-        // 可选：记录完成发送尝试
-        logger.debug("完成对事件 '{}' 的发送尝试。 当前 emitter 数量: {}", eventName, emitters.size());
+        outbound.finishDrain();
+        // 排空期间可能有新帧入队（其入队方未能获得排空权）
+        if (outbound.depth() > 0 && emitters.containsKey(emitter)) {
+            scheduleDrain(subscription);
+        }
+    }
+
+    private boolean sendTo(SseEmitter emitter, SseFrame frame) {
+        String eventName = frame.getEventName();
+        long start = System.nanoTime();
+        try {
+            // 直接写出预先编码好的事件字节
+            emitter.send(frame.getContent());
+            sendTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+            // 发送成功日志 (Trace 级别)
+            logger.trace("成功发送事件 '{}' 给 emitter: {}", eventName, emitter);
+            return true;
+
+        } catch (IOException e) {
+            // **处理 IO 异常**
+            String errorMessage = e.getMessage();
+            // 检查是否是常见的连接中止错误
+            boolean isConnectionAbort = errorMessage != null &&
+                    (errorMessage.contains("你的主机中的软件中止了一个已建立的连接") || // 中文 Windows
+                            errorMessage.toLowerCase().contains("connection abort") ||       // 常见英文
+                            errorMessage.toLowerCase().contains("broken pipe"));           // 常见 Linux/Unix
+
+            if (isConnectionAbort) {
+                // 如果是客户端主动断开连接，记录为 WARN 级别
+                logger.warn("发送 SSE 事件 '{}' 时连接中止 (客户端可能已断开), 移除 emitter: {}, 错误: {}",
+                        eventName, emitter, errorMessage);
+            } else {
+                // 其他类型的 IO 异常，记录为 ERROR 级别，并包含堆栈跟踪
+                logger.error("发送 SSE 事件 '{}' 时发生 IO 错误, 移除 emitter: {}, 错误: {}",
+                        eventName, emitter, errorMessage, e);
+            }
+            // 无论哪种 IO 异常，都尝试移除这个 emitter
+            // 注意：这里调用 removeEmitter 是为了立即尝试移除，但最终移除通常由 onError 或 onCompletion 回调保证
+            removeEmitter(emitter); // 立即尝试移除
+
+        } catch (IllegalStateException e) {
+            // 处理 emitter 可能已经 complete 或状态非法的情况
+            logger.warn("发送 SSE 事件 '{}' 时状态非法 (emitter 可能已关闭), 移除 emitter: {}, 错误: {}",
+                    eventName, emitter, e.getMessage());
+            removeEmitter(emitter); // 立即尝试移除
+        }
+        catch (Exception e) {
+            // **处理其他未预料的异常**
+            logger.error("发送 SSE 事件 '{}' 时发生意外错误, 移除 emitter: {}, 错误: {}",
+                    eventName, emitter, e.getMessage(), e); // 包含异常堆栈跟踪
+            // 同样移除 emitter
+            removeEmitter(emitter); // 立即尝试移除
+        }
+        sendFailures.increment();
+        return false;
+    }
+
+    /**
+     * 推送统计：编码次数、慢客户端断开次数，以及每个客户端的队列深度、丢弃/合并数量和延迟。
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("emitters", emitters.size());
+        stats.put("slowConsumerPolicy", slowConsumerPolicy);
+        stats.put("framesEncoded", framesEncoded.sum());
+        stats.put("slowConsumerDisconnects", slowConsumerDisconnects.sum());
+        stats.put("latestSlots", latestSlots.size());
+        stats.put("lastEventId", eventJournal.lastId());
+        stats.put("journalSize", eventJournal.size());
+        stats.put("journalCapacity", eventJournal.capacity());
+        stats.put("replayedEvents", replayedEvents.sum());
+        stats.put("snapshotsSent", snapshotsSent.sum());
+        List<Map<String, Object>> clients = new ArrayList<>();
+        for (SseSubscription subscription : emitters.values()) {
+            Map<String, Object> client = new LinkedHashMap<>();
+            client.put("id", subscription.getId());
+            client.put("connectedAt", subscription.getConnectedAt());
+            client.put("filter", subscription.getFilter().describe());
+            client.put("mode", subscription.getMode());
+            if (subscription.getMode() == SseStreamMode.LATEST) {
+                client.put("intervalMs", subscription.getIntervalMs());
+                client.put("dirtyTopics", subscription.getDirtyTopics().size());
+            }
+            client.putAll(subscription.getOutbound().snapshot());
+            clients.add(client);
+        }
+        stats.put("clients", clients);
+        return stats;
     }
 
 
@@ -175,7 +585,7 @@ public class SseNotificationService {
     //         // 浏览器 EventSource 会忽略注释行
     //         String heartbeatComment = ": heartbeat\n\n";
     //         // 遍历发送原始文本
-    //         for (SseEmitter emitter : emitters) {
+    //         for (SseEmitter emitter : emitters.keySet()) {
     //             String emitterIdString = emitter.toString();
     //             try {
     //                 emitter.send(heartbeatComment);
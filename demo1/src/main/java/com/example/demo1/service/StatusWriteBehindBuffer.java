@@ -0,0 +1,226 @@
+package com.example.demo1.service;
+
+import com.example.demo1.entity.Device;
+import com.example.demo1.repository.DeviceRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 设备状态的 write-behind 缓冲。
+ * <p>
+ * 状态变化先按 deviceUid 合并在内存中（后写覆盖先写），每隔 {@code flush-interval-ms}
+ * 或累计 {@code max-batch-size} 个设备时统一刷新：一次 IN 查询加载实体，
+ * 修改后由 Hibernate 按 {@code hibernate.jdbc.batch_size} 合并为 JDBC 批量 UPDATE。
+ * 应用关闭时会把剩余的状态全部刷新到数据库，关闭之后到达的状态变化直接同步写入。
+ * <p>
+ * 指标: {@code device.status.flush.batch}（每批实际更新行数）、{@code device.status.flush}（每批事务耗时）、
+ * {@code device.status.pending}（待写入设备数）、{@code device.status.coalesced}（被同一设备的后续状态覆盖的更新数）。
+ */
+@Service
+public class StatusWriteBehindBuffer {
+
+    private static final Logger logger = LoggerFactory.getLogger(StatusWriteBehindBuffer.class);
+
+    @Autowired
+    private DeviceRepository deviceRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${device.status.write-behind.enabled:false}")
+    private boolean enabled;
+
+    @Value("${device.status.write-behind.flush-interval-ms:500}")
+    private long flushIntervalMs;
+
+    @Value("${device.status.write-behind.max-batch-size:1000}")
+    private int maxBatchSize;
+
+    // deviceUid -> 最新待写入状态
+    private final ConcurrentHashMap<String, String> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private volatile boolean stopped;
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final AtomicLong lastBatchSize = new AtomicLong();
+
+    private DistributionSummary batchSizes;
+    private Timer flushTimer;
+
+    private TransactionTemplate transactionTemplate;
+    private ScheduledExecutorService flusher;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        batchSizes = DistributionSummary.builder("device.status.flush.batch").baseUnit("rows")
+                .description("write-behind 每批实际更新的行数").register(meterRegistry);
+        flushTimer = Timer.builder("device.status.flush")
+                .description("write-behind 每批事务耗时").register(meterRegistry);
+        Gauge.builder("device.status.pending", pending, Map::size)
+                .description("等待写入数据库的设备状态数").register(meterRegistry);
+        FunctionCounter.builder("device.status.coalesced", coalesced, LongAdder::sum)
+                .description("write-behind 中被同一设备的后续状态覆盖（未单独写库）的更新数").register(meterRegistry);
+        if (!enabled) {
+            return;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "status-write-behind");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::safeFlush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        logger.info("设备状态 write-behind 已启用: 刷新间隔 {} ms, 最大批量 {}", flushIntervalMs, maxBatchSize);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 记录一次状态变化。同一设备在两次刷新之间的多次变化只保留最后一次。
+     * 缓冲关闭后（或与关闭时的最后一次刷新并发时）在调用线程中同步写入。
+     */
+    public void enqueue(String deviceUid, String status) {
+        enqueued.increment();
+        if (pending.put(deviceUid, status) != null) {
+            coalesced.increment();
+        }
+        // stopped 在最后一次刷新之前设置：此处仍读到 false 的状态由最后一次刷新写入
+        if (stopped) {
+            safeFlush();
+            return;
+        }
+        // 累计条目达到批量上限时提前触发一次刷新
+        if (pending.size() >= maxBatchSize && flushScheduled.compareAndSet(false, true)) {
+            try {
+                flusher.execute(() -> {
+                    flushScheduled.set(false);
+                    safeFlush();
+                });
+            } catch (RejectedExecutionException e) {
+                // 刷新线程已关闭
+                flushScheduled.set(false);
+                safeFlush();
+            }
+        }
+    }
+
+    private void safeFlush() {
+        try {
+            flush();
+        } catch (Exception e) {
+            logger.error("刷新设备状态 write-behind 缓冲时出错: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 把当前缓冲的所有状态写入数据库，每 {@code max-batch-size} 个设备一个事务。
+     */
+    public synchronized void flush() {
+        while (!pending.isEmpty()) {
+            Map<String, String> batch = new HashMap<>();
+            Iterator<String> keys = pending.keySet().iterator();
+            while (keys.hasNext() && batch.size() < maxBatchSize) {
+                String deviceUid = keys.next();
+                // remove 返回移除瞬间的最新值；此后的新状态留给下一批
+                String status = pending.remove(deviceUid);
+                if (status != null) {
+                    batch.put(deviceUid, status);
+                }
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            long start = System.nanoTime();
+            int updated = transactionTemplate.execute(tx -> applyBatch(batch));
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            batchSizes.record(updated);
+            flushes.increment();
+            written.add(updated);
+            lastBatchSize.set(updated);
+            logger.debug("write-behind 刷新完成: {} 个设备状态, 实际更新 {} 行", batch.size(), updated);
+        }
+    }
+
+    private int applyBatch(Map<String, String> batch) {
+        List<Device> devices = deviceRepository.findByDeviceUidIn(batch.keySet());
+        int updated = 0;
+        for (Device device : devices) {
+            String status = batch.get(device.getDeviceUid());
+            if (status != null && !status.equalsIgnoreCase(device.getStatus())) {
+                device.setStatus(status); // 脏检查在提交时生成 UPDATE，由 Hibernate 按批执行
+                updated++;
+            }
+        }
+        if (devices.size() < batch.size()) {
+            List<String> missing = new ArrayList<>(batch.keySet());
+            devices.forEach(d -> missing.remove(d.getDeviceUid()));
+            logger.warn("write-behind 刷新时未在数据库中找到 {} 个设备: {}", missing.size(), missing);
+        }
+        return updated;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (flusher == null) {
+            return;
+        }
+        stopped = true;
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 关闭时保证剩余状态全部落库
+        int remaining = pending.size();
+        flush();
+        logger.info("设备状态 write-behind 已关闭, 关闭时刷新了 {} 个待写入状态", remaining);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("pending", pending.size());
+        stats.put("enqueued", enqueued.sum());
+        stats.put("coalesced", coalesced.sum());
+        stats.put("rowsWritten", written.sum());
+        stats.put("flushes", flushes.sum());
+        stats.put("lastBatchSize", lastBatchSize.get());
+        return stats;
+    }
+}
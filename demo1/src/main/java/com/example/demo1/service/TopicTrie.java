@@ -0,0 +1,92 @@
+package com.example.demo1.service;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * MQTT 主题过滤器的前缀树索引，支持 {@code +}（单级）和 {@code #}（多级）通配符。
+ * <p>
+ * 匹配一个具体主题只需沿主题层级向下走，耗时与订阅者总数无关。
+ * 增删订阅在对象锁内进行（包括清理空节点），匹配无锁，可与增删并发执行。
+ * 按 MQTT 规范，以 {@code $} 开头的主题不会被首级的通配符匹配。
+ */
+public class TopicTrie<T> {
+
+    private static final class Node<T> {
+        final ConcurrentHashMap<String, Node<T>> children = new ConcurrentHashMap<>();
+        final Set<T> subscribers = ConcurrentHashMap.newKeySet();
+
+        boolean isEmpty() {
+            return children.isEmpty() && subscribers.isEmpty();
+        }
+    }
+
+    private final Node<T> root = new Node<>();
+
+    public synchronized void add(String filter, T subscriber) {
+        Node<T> node = root;
+        for (String level : filter.split("/", -1)) {
+            node = node.children.computeIfAbsent(level, k -> new Node<>());
+        }
+        node.subscribers.add(subscriber);
+    }
+
+    public synchronized boolean remove(String filter, T subscriber) {
+        return remove(root, filter.split("/", -1), 0, subscriber);
+    }
+
+    private boolean remove(Node<T> node, String[] levels, int depth, T subscriber) {
+        if (depth == levels.length) {
+            return node.subscribers.remove(subscriber);
+        }
+        Node<T> child = node.children.get(levels[depth]);
+        if (child == null) {
+            return false;
+        }
+        boolean removed = remove(child, levels, depth + 1, subscriber);
+        if (child.isEmpty()) {
+            node.children.remove(levels[depth]);
+        }
+        return removed;
+    }
+
+    /**
+     * 对所有匹配 topic 的订阅者回调 consumer。同一订阅者通过不同过滤器匹配时会被回调多次。
+     */
+    public void match(String topic, Consumer<? super T> consumer) {
+        match(root, topic, 0, consumer, topic.startsWith("$"));
+    }
+
+    private void match(Node<T> node, String topic, int start, Consumer<? super T> consumer, boolean systemTopic) {
+        if (!systemTopic) {
+            // '#' 同时匹配父级本身，例如 "a/#" 匹配 "a"
+            Node<T> multi = node.children.get("#");
+            if (multi != null) {
+                multi.subscribers.forEach(consumer);
+            }
+        }
+        if (start > topic.length()) {
+            node.subscribers.forEach(consumer);
+            return;
+        }
+        int end = topic.indexOf('/', start);
+        if (end < 0) {
+            end = topic.length();
+        }
+        Node<T> exact = node.children.get(topic.substring(start, end));
+        if (exact != null) {
+            match(exact, topic, end + 1, consumer, false);
+        }
+        if (!systemTopic) {
+            Node<T> single = node.children.get("+");
+            if (single != null) {
+                match(single, topic, end + 1, consumer, false);
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return root.isEmpty();
+    }
+}
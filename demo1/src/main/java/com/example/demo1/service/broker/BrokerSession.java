@@ -0,0 +1,273 @@
+package com.example.demo1.service.broker;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.example.demo1.service.broker.MqttCodec.*;
+
+/**
+ * Broker 端的一个客户端连接：在自己的读线程中解析报文，向客户端写报文时在输出流上加锁。
+ * <p>
+ * 只支持 clean session：连接断开后订阅随之清除。发往客户端的 QoS 1 消息不做重传
+ * （进程内 / 本地连接上不会丢包，断线后会话本身也会被清除）。
+ */
+final class BrokerSession {
+
+    private static final Logger logger = LoggerFactory.getLogger(BrokerSession.class);
+
+    private final MqttBroker broker;
+    private final DataInputStream in;
+    private final OutputStream out;
+    private final Closeable connection;
+    private final String remote;
+
+    // filter -> 授予的 QoS
+    private final Map<String, Integer> subscriptions = new ConcurrentHashMap<>();
+    // 收到但尚未 PUBREL 的 QoS 2 报文 ID
+    private final Set<Integer> awaitingRelease = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger nextPacketId = new AtomicInteger();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private volatile String clientId;
+    private volatile int keepAliveSeconds;
+    private volatile long lastActivity = System.currentTimeMillis();
+    private MqttBroker.Message will;
+
+    BrokerSession(MqttBroker broker, InputStream in, OutputStream out, Closeable connection, String remote) {
+        this.broker = broker;
+        this.in = new DataInputStream(new BufferedInputStream(in, 16 * 1024));
+        this.out = out;
+        this.connection = connection;
+        this.remote = remote;
+    }
+
+    String getClientId() {
+        return clientId;
+    }
+
+    Map<String, Integer> getSubscriptions() {
+        return subscriptions;
+    }
+
+    /**
+     * 超过 1.5 倍 keepalive 未收到任何报文时视为连接已失效。
+     */
+    boolean isExpired(long now) {
+        return keepAliveSeconds > 0 && now - lastActivity > keepAliveSeconds * 1500L;
+    }
+
+    void run() {
+        boolean graceful = false;
+        try {
+            while (true) {
+                int header = in.readUnsignedByte();
+                int length = readRemainingLength(in);
+                if (length > MAX_REMAINING_LENGTH) {
+                    throw new IOException("Packet too large: " + length);
+                }
+                byte[] body = new byte[length];
+                in.readFully(body);
+                lastActivity = System.currentTimeMillis();
+                int type = header >>> 4;
+                if (clientId == null && type != CONNECT) {
+                    throw new IOException("First packet is not CONNECT");
+                }
+                if (type == DISCONNECT) {
+                    graceful = true;
+                    break;
+                }
+                handle(type, header & 0x0F, body);
+            }
+        } catch (EOFException e) {
+            // 对端关闭连接
+        } catch (IOException e) {
+            if (!closed.get()) {
+                logger.debug("客户端 [{}]({}) 连接异常: {}", clientId, remote, e.getMessage());
+            }
+        } catch (RuntimeException e) {
+            logger.warn("客户端 [{}]({}) 发送了格式错误的报文，断开连接: {}", clientId, remote, e.getMessage());
+        } finally {
+            close();
+            broker.onSessionClosed(this, graceful ? null : will);
+        }
+    }
+
+    private void handle(int type, int flags, byte[] body) throws IOException {
+        MqttCodec.Reader r = new MqttCodec.Reader(body);
+        switch (type) {
+            case CONNECT -> handleConnect(r);
+            case PUBLISH -> handlePublish(flags, r);
+            case PUBREL -> {
+                int packetId = r.u16();
+                awaitingRelease.remove(packetId);
+                write(ack(PUBCOMP, 0, packetId));
+            }
+            case SUBSCRIBE -> handleSubscribe(r);
+            case UNSUBSCRIBE -> {
+                int packetId = r.u16();
+                while (r.remaining() > 0) {
+                    String filter = r.string();
+                    if (subscriptions.remove(filter) != null) {
+                        broker.unsubscribe(this, filter);
+                    }
+                }
+                write(ack(UNSUBACK, 0, packetId));
+            }
+            case PINGREQ -> write(new byte[]{(byte) (PINGRESP << 4), 0x00});
+            case PUBACK, PUBREC, PUBCOMP -> {
+                // 发往客户端的消息最高 QoS 1 且不重传，确认报文无需处理
+            }
+            default -> throw new IOException("Unexpected packet type " + type);
+        }
+    }
+
+    private void handleConnect(MqttCodec.Reader r) throws IOException {
+        if (clientId != null) {
+            throw new IOException("Duplicate CONNECT");
+        }
+        String protocol = r.string();
+        int level = r.u8();
+        if (!("MQTT".equals(protocol) && level == 4) && !("MQIsdp".equals(protocol) && level == 3)) {
+            // 不支持的协议版本: CONNACK 返回码 1 后断开
+            write(new byte[]{(byte) (CONNACK << 4), 0x02, 0x00, 0x01});
+            throw new IOException("Unsupported protocol " + protocol + " level " + level);
+        }
+        int connectFlags = r.u8();
+        keepAliveSeconds = r.u16();
+        String id = r.string();
+        if ((connectFlags & 0x04) != 0) {
+            String willTopic = r.string();
+            byte[] willPayload = r.bytes();
+            will = new MqttBroker.Message(willTopic, willPayload, Math.min(1, (connectFlags >> 3) & 0x03),
+                    (connectFlags & 0x20) != 0);
+        }
+        // 用户名 / 密码: 内置 Broker 不做鉴权，读出后忽略
+        if ((connectFlags & 0x80) != 0) {
+            r.string();
+        }
+        if ((connectFlags & 0x40) != 0) {
+            r.bytes();
+        }
+        if (id.isEmpty()) {
+            id = "auto-" + Integer.toHexString(System.identityHashCode(this)) + "-" + System.nanoTime();
+        }
+        clientId = id;
+        broker.register(this);
+        // 不保存会话状态，session present 始终为 0
+        write(new byte[]{(byte) (CONNACK << 4), 0x02, 0x00, 0x00});
+    }
+
+    private void handlePublish(int flags, MqttCodec.Reader r) throws IOException {
+        int qos = (flags >> 1) & 0x03;
+        boolean retain = (flags & 0x01) != 0;
+        String topic = r.string();
+        if (topic.isEmpty() || hasWildcard(topic)) {
+            throw new IOException("Invalid publish topic '" + topic + "'");
+        }
+        int packetId = qos > 0 ? r.u16() : 0;
+        byte[] payload = r.rest();
+        switch (qos) {
+            case 0 -> broker.publish(new MqttBroker.Message(topic, payload, 0, retain));
+            case 1 -> {
+                broker.publish(new MqttBroker.Message(topic, payload, 1, retain));
+                write(ack(PUBACK, 0, packetId));
+            }
+            case 2 -> {
+                // 同一报文 ID 重发时只转发一次，转发时降为 QoS 1
+                if (awaitingRelease.add(packetId)) {
+                    broker.publish(new MqttBroker.Message(topic, payload, 1, retain));
+                }
+                write(ack(PUBREC, 0, packetId));
+            }
+            default -> throw new IOException("Invalid QoS 3");
+        }
+    }
+
+    private void handleSubscribe(MqttCodec.Reader r) throws IOException {
+        int packetId = r.u16();
+        ByteArrayOutputStream codes = new ByteArrayOutputStream();
+        Map<String, Integer> added = new LinkedHashMap<>();
+        while (r.remaining() > 0) {
+            String filter = r.string();
+            int requested = r.u8() & 0x03;
+            if (!MqttBroker.isValidSubscription(filter)) {
+                codes.write(0x80);
+                continue;
+            }
+            // 最高授予 QoS 1
+            int granted = Math.min(requested, 1);
+            Integer previous = subscriptions.put(filter, granted);
+            if (previous != null) {
+                broker.unsubscribe(this, filter);
+            }
+            broker.subscribe(this, filter, granted);
+            added.put(filter, granted);
+            codes.write(granted);
+        }
+        byte[] granted = codes.toByteArray();
+        ByteArrayOutputStream ack = new ByteArrayOutputStream(granted.length + 4);
+        ack.write(SUBACK << 4);
+        writeRemainingLength(ack, 2 + granted.length);
+        ack.write(packetId >> 8);
+        ack.write(packetId);
+        ack.write(granted, 0, granted.length);
+        write(ack.toByteArray());
+        // SUBACK 之后补发匹配的保留消息（共享订阅不补发）
+        added.forEach((filter, qos) -> {
+            if (!filter.startsWith(MqttBroker.SHARED_PREFIX)) {
+                broker.sendRetained(this, filter, qos);
+            }
+        });
+    }
+
+    /**
+     * 向客户端投递一条消息。写失败时关闭连接，由读线程完成清理。
+     */
+    void deliver(MqttBroker.Message message, int qos, boolean retain) {
+        int packetId = qos > 0 ? nextPacketId() : 0;
+        try {
+            write(publish(message.topic(), message.payload(), qos, packetId, retain));
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    private int nextPacketId() {
+        return nextPacketId.updateAndGet(id -> id >= 0xFFFF ? 1 : id + 1);
+    }
+
+    private void write(byte[] packet) throws IOException {
+        if (closed.get()) {
+            throw new IOException("Session closed");
+        }
+        synchronized (out) {
+            out.write(packet);
+            out.flush();
+        }
+    }
+
+    void close() {
+        if (closed.compareAndSet(false, true)) {
+            try {
+                connection.close();
+            } catch (IOException ignored) {
+                // 已关闭
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.demo1.service.broker;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 随应用启动的内置 MQTT Broker（{@code mqtt.embedded-broker.enabled=true} 时启用）。
+ * <p>
+ * 应用自身的 MQTT 客户端把 {@code mqtt.broker-url} 设为 {@code vm://<name>} 即可在进程内直连；
+ * 模拟器等外部客户端通过 {@code mqtt.embedded-broker.port} 的 TCP 端口连接。
+ */
+@Service
+public class EmbeddedMqttBroker {
+
+    @Value("${mqtt.embedded-broker.enabled:false}")
+    private boolean enabled;
+
+    @Value("${mqtt.embedded-broker.name:embedded}")
+    private String name;
+
+    @Value("${mqtt.embedded-broker.port:1883}")
+    private int port;
+
+    private MqttBroker broker;
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        broker = new MqttBroker(name);
+        broker.start(port);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (broker != null) {
+            broker.close();
+        }
+    }
+
+    public boolean isEnabled() {
+        return broker != null;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", broker != null);
+        if (broker != null) {
+            stats.putAll(broker.getStats());
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,348 @@
+package com.example.demo1.service.broker;
+
+import com.example.demo1.service.MqttTopics;
+import com.example.demo1.service.TopicTrie;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 轻量级 MQTT 3.1.1 Broker，可与应用运行在同一个 JVM 中。
+ * <p>
+ * 支持 QoS 0 / 1（收到的 QoS 2 消息完成握手后按 QoS 1 转发）、保留消息、遗嘱消息和
+ * {@code +} / {@code #} 通配符订阅（基于 {@link TopicTrie}，匹配耗时与订阅数无关）。
+ * <p>
+ * 支持共享订阅 {@code $share/<group>/<filter>}（与 EMQX 的扩展一致）：同一组内的多个订阅者分摊消息，
+ * 每条消息只投递给组内一个成员，按主题哈希选择，同一主题（即同一设备）的消息总是发往同一连接，
+ * 保持设备内的消息顺序。共享订阅不补发保留消息。
+ * 客户端可以通过 TCP 端口连接，也可以通过 {@code vm://<name>} 在进程内直连（见 {@link VmNetworkModuleFactory}），
+ * 后者不经过网络协议栈。只支持 clean session，不做鉴权，面向测试、压测和本地开发。
+ */
+public class MqttBroker implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(MqttBroker.class);
+
+    // vm:// 连接按名称查找同一 JVM 中的 Broker
+    private static final Map<String, MqttBroker> VM_BROKERS = new ConcurrentHashMap<>();
+
+    /**
+     * 一条待转发的消息。
+     */
+    record Message(String topic, byte[] payload, int qos, boolean retain) {
+    }
+
+    /**
+     * 订阅树中的条目：会话 + 授予的 QoS。
+     */
+    private record Subscription(BrokerSession session, int qos) {
+    }
+
+    static final String SHARED_PREFIX = "$share/";
+
+    /**
+     * 一个共享订阅组（组名 + 过滤器）及其成员。
+     */
+    private static final class SharedGroup {
+        private final String key;
+        private final List<Subscription> members = new CopyOnWriteArrayList<>();
+
+        SharedGroup(String key) {
+            this.key = key;
+        }
+
+        /** 按主题哈希选择成员；成员变化时部分主题会改投其他成员 */
+        Subscription pick(String topic) {
+            Object[] snapshot = members.toArray();
+            if (snapshot.length == 0) {
+                return null;
+            }
+            return (Subscription) snapshot[Math.floorMod(topic.hashCode(), snapshot.length)];
+        }
+    }
+
+    private final String name;
+    private final TopicTrie<Subscription> subscriptions = new TopicTrie<>();
+    // 共享订阅: 实际过滤器 -> 组；"组名/过滤器" -> 组
+    private final TopicTrie<SharedGroup> sharedGroups = new TopicTrie<>();
+    private final Map<String, SharedGroup> sharedByKey = new HashMap<>();
+    private final Map<String, BrokerSession> sessions = new ConcurrentHashMap<>();
+    private final Map<String, Message> retained = new ConcurrentHashMap<>();
+    private final AtomicInteger connectionIndex = new AtomicInteger();
+    private ServerSocket serverSocket;
+    private ScheduledExecutorService keepAliveChecker;
+    private volatile boolean running;
+
+    private final LongAdder messagesIn = new LongAdder();
+    private final LongAdder messagesOut = new LongAdder();
+
+    public MqttBroker(String name) {
+        this.name = name;
+    }
+
+    /**
+     * 启动 Broker 并注册 vm://name。
+     *
+     * @param port TCP 监听端口，0 表示随机端口，负数表示不监听 TCP（只接受 vm:// 连接）
+     */
+    public synchronized void start(int port) throws IOException {
+        if (running) {
+            return;
+        }
+        if (VM_BROKERS.putIfAbsent(name, this) != null) {
+            throw new IllegalStateException("An embedded broker named '" + name + "' is already running");
+        }
+        running = true;
+        keepAliveChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "mqtt-broker-keepalive");
+            t.setDaemon(true);
+            return t;
+        });
+        keepAliveChecker.scheduleWithFixedDelay(this::closeExpiredSessions, 1, 1, TimeUnit.SECONDS);
+        if (port >= 0) {
+            try {
+                serverSocket = new ServerSocket(port);
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+            Thread acceptor = new Thread(this::acceptLoop, "mqtt-broker-accept");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+        logger.info("内置 MQTT Broker 已启动: vm://{}{}", name,
+                serverSocket != null ? ", tcp 端口 " + serverSocket.getLocalPort() : "");
+    }
+
+    static MqttBroker lookup(String name) {
+        return VM_BROKERS.get(name);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return TCP 监听端口，未监听 TCP 时返回 -1
+     */
+    public int getPort() {
+        return serverSocket != null ? serverSocket.getLocalPort() : -1;
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                OutputStream out = new BufferedOutputStream(socket.getOutputStream(), 16 * 1024);
+                accept(socket.getInputStream(), out, socket, String.valueOf(socket.getRemoteSocketAddress()));
+            } catch (IOException e) {
+                if (running) {
+                    logger.warn("内置 MQTT Broker 接受连接时出错: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 接入一个新连接（TCP 或 vm://），为其启动读线程。
+     */
+    void accept(InputStream in, OutputStream out, Closeable connection, String remote) throws IOException {
+        if (!running) {
+            connection.close();
+            throw new IOException("Broker '" + name + "' is not running");
+        }
+        BrokerSession session = new BrokerSession(this, in, out, connection, remote);
+        Thread reader = new Thread(session::run, "mqtt-broker-conn-" + connectionIndex.incrementAndGet());
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * CONNECT 完成后登记会话；同一 clientId 的旧连接被踢下线（按异常断开处理，会发布其遗嘱）。
+     */
+    void register(BrokerSession session) {
+        BrokerSession previous = sessions.put(session.getClientId(), session);
+        if (previous != null) {
+            logger.info("客户端 [{}] 重复连接，关闭旧连接", session.getClientId());
+            previous.close();
+        }
+    }
+
+    /**
+     * 共享订阅 {@code $share/<group>/<filter>} 中的实际过滤器；不是共享订阅时返回 null。
+     * 组名不能为空，也不能含通配符。
+     */
+    static String sharedFilter(String filter) {
+        if (!filter.startsWith(SHARED_PREFIX)) {
+            return null;
+        }
+        int slash = filter.indexOf('/', SHARED_PREFIX.length());
+        if (slash <= SHARED_PREFIX.length() || slash == filter.length() - 1) {
+            return null;
+        }
+        String group = filter.substring(SHARED_PREFIX.length(), slash);
+        return group.contains("+") || group.contains("#") ? null : filter.substring(slash + 1);
+    }
+
+    static boolean isValidSubscription(String filter) {
+        if (filter.startsWith(SHARED_PREFIX)) {
+            String actual = sharedFilter(filter);
+            return actual != null && MqttTopics.isValidFilter(actual);
+        }
+        return MqttTopics.isValidFilter(filter);
+    }
+
+    void subscribe(BrokerSession session, String filter, int qos) {
+        String actual = sharedFilter(filter);
+        if (actual == null) {
+            subscriptions.add(filter, new Subscription(session, qos));
+            return;
+        }
+        synchronized (sharedByKey) {
+            SharedGroup group = sharedByKey.computeIfAbsent(filter.substring(SHARED_PREFIX.length()), key -> {
+                SharedGroup created = new SharedGroup(key);
+                sharedGroups.add(actual, created);
+                return created;
+            });
+            group.members.add(new Subscription(session, qos));
+        }
+    }
+
+    void unsubscribe(BrokerSession session, String filter) {
+        String actual = sharedFilter(filter);
+        if (actual == null) {
+            // Subscription 的相等性包含 QoS，按两种可能的 QoS 移除
+            subscriptions.remove(filter, new Subscription(session, 0));
+            subscriptions.remove(filter, new Subscription(session, 1));
+            return;
+        }
+        synchronized (sharedByKey) {
+            SharedGroup group = sharedByKey.get(filter.substring(SHARED_PREFIX.length()));
+            if (group == null) {
+                return;
+            }
+            group.members.removeIf(s -> s.session() == session);
+            if (group.members.isEmpty()) {
+                sharedByKey.remove(group.key);
+                sharedGroups.remove(actual, group);
+            }
+        }
+    }
+
+    /**
+     * 连接关闭后清理订阅；will 非空表示异常断开，需要发布遗嘱。
+     */
+    void onSessionClosed(BrokerSession session, Message will) {
+        session.getSubscriptions().keySet().forEach(filter -> unsubscribe(session, filter));
+        String clientId = session.getClientId();
+        if (clientId == null) {
+            // 未完成 CONNECT
+            return;
+        }
+        // 被同 clientId 的新连接取代时映射已指向新会话，不能误删（旧连接的遗嘱照常发布）
+        sessions.remove(clientId, session);
+        if (will != null && running) {
+            logger.debug("客户端 [{}] 异常断开，发布遗嘱消息到 {}", clientId, will.topic());
+            publish(will);
+        }
+    }
+
+    /**
+     * 转发消息给所有匹配的订阅者（每个匹配的共享组选出一个成员）。
+     * 同一会话通过多个过滤器匹配时只投递一次，取其中最高的 QoS。
+     */
+    void publish(Message message) {
+        messagesIn.increment();
+        if (message.retain()) {
+            if (message.payload().length == 0) {
+                retained.remove(message.topic());
+            } else {
+                retained.put(message.topic(), message);
+            }
+        }
+        Map<BrokerSession, Integer> targets = new HashMap<>();
+        subscriptions.match(message.topic(), s -> targets.merge(s.session(), s.qos(), Math::max));
+        sharedGroups.match(message.topic(), group -> {
+            Subscription s = group.pick(message.topic());
+            if (s != null) {
+                targets.merge(s.session(), s.qos(), Math::max);
+            }
+        });
+        targets.forEach((session, qos) -> {
+            session.deliver(message, Math.min(message.qos(), qos), false);
+            messagesOut.increment();
+        });
+    }
+
+    void sendRetained(BrokerSession session, String filter, int qos) {
+        retained.forEach((topic, message) -> {
+            if (MqttTopics.matches(filter, topic)) {
+                session.deliver(message, Math.min(message.qos(), qos), true);
+                messagesOut.increment();
+            }
+        });
+    }
+
+    private void closeExpiredSessions() {
+        long now = System.currentTimeMillis();
+        for (BrokerSession session : sessions.values()) {
+            if (session.isExpired(now)) {
+                logger.info("客户端 [{}] 超过 keepalive 时间未通信，断开连接", session.getClientId());
+                session.close();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        VM_BROKERS.remove(name, this);
+        keepAliveChecker.shutdownNow();
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException ignored) {
+                // 已关闭
+            }
+        }
+        sessions.values().forEach(BrokerSession::close);
+        logger.info("内置 MQTT Broker vm://{} 已关闭", name);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("name", name);
+        stats.put("port", getPort());
+        stats.put("sessions", sessions.size());
+        stats.put("retained", retained.size());
+        synchronized (sharedByKey) {
+            Map<String, Integer> shared = new LinkedHashMap<>();
+            sharedByKey.forEach((key, group) -> shared.put(key, group.members.size()));
+            stats.put("sharedGroups", shared);
+        }
+        stats.put("messagesIn", messagesIn.sum());
+        stats.put("messagesOut", messagesOut.sum());
+        return stats;
+    }
+}
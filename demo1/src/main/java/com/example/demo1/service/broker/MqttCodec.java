@@ -0,0 +1,136 @@
+package com.example.demo1.service.broker;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * MQTT 3.1 / 3.1.1 报文编解码辅助方法（剩余长度变长编码、带长度前缀的字符串等）。
+ */
+final class MqttCodec {
+
+    static final int CONNECT = 1;
+    static final int CONNACK = 2;
+    static final int PUBLISH = 3;
+    static final int PUBACK = 4;
+    static final int PUBREC = 5;
+    static final int PUBREL = 6;
+    static final int PUBCOMP = 7;
+    static final int SUBSCRIBE = 8;
+    static final int SUBACK = 9;
+    static final int UNSUBSCRIBE = 10;
+    static final int UNSUBACK = 11;
+    static final int PINGREQ = 12;
+    static final int PINGRESP = 13;
+    static final int DISCONNECT = 14;
+
+    /** 协议允许的最大剩余长度（256MB） */
+    static final int MAX_REMAINING_LENGTH = 268_435_455;
+
+    private MqttCodec() {
+    }
+
+    static int readRemainingLength(DataInputStream in) throws IOException {
+        int value = 0;
+        int multiplier = 1;
+        int b;
+        int bytes = 0;
+        do {
+            b = in.readUnsignedByte();
+            value += (b & 0x7F) * multiplier;
+            multiplier *= 128;
+            if (++bytes > 4) {
+                throw new IOException("Malformed remaining length");
+            }
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    static void writeRemainingLength(ByteArrayOutputStream out, int length) {
+        do {
+            int b = length % 128;
+            length /= 128;
+            out.write(length > 0 ? b | 0x80 : b);
+        } while (length > 0);
+    }
+
+    /**
+     * 只有报文 ID 的确认类报文（PUBACK / PUBREC / PUBREL / PUBCOMP / UNSUBACK）。
+     */
+    static byte[] ack(int type, int flags, int packetId) {
+        return new byte[]{(byte) (type << 4 | flags), 0x02, (byte) (packetId >> 8), (byte) packetId};
+    }
+
+    static byte[] publish(String topic, byte[] payload, int qos, int packetId, boolean retain) {
+        byte[] topicBytes = topic.getBytes(StandardCharsets.UTF_8);
+        int length = 2 + topicBytes.length + (qos > 0 ? 2 : 0) + payload.length;
+        ByteArrayOutputStream packet = new ByteArrayOutputStream(length + 5);
+        packet.write(PUBLISH << 4 | qos << 1 | (retain ? 1 : 0));
+        writeRemainingLength(packet, length);
+        packet.write(topicBytes.length >> 8);
+        packet.write(topicBytes.length);
+        packet.write(topicBytes, 0, topicBytes.length);
+        if (qos > 0) {
+            packet.write(packetId >> 8);
+            packet.write(packetId);
+        }
+        packet.write(payload, 0, payload.length);
+        return packet.toByteArray();
+    }
+
+    static boolean hasWildcard(String topic) {
+        return topic.indexOf('+') >= 0 || topic.indexOf('#') >= 0;
+    }
+
+    /**
+     * 报文体读取辅助类。越界读取抛出 {@link IllegalArgumentException}，由会话按格式错误断开连接。
+     */
+    static final class Reader {
+        private final byte[] data;
+        private int pos;
+
+        Reader(byte[] data) {
+            this.data = data;
+        }
+
+        int u8() {
+            require(1);
+            return data[pos++] & 0xFF;
+        }
+
+        int u16() {
+            return (u8() << 8) | u8();
+        }
+
+        byte[] bytes() {
+            int len = u16();
+            require(len);
+            byte[] result = new byte[len];
+            System.arraycopy(data, pos, result, 0, len);
+            pos += len;
+            return result;
+        }
+
+        String string() {
+            return new String(bytes(), StandardCharsets.UTF_8);
+        }
+
+        byte[] rest() {
+            byte[] result = new byte[data.length - pos];
+            System.arraycopy(data, pos, result, 0, result.length);
+            pos = data.length;
+            return result;
+        }
+
+        int remaining() {
+            return data.length - pos;
+        }
+
+        private void require(int n) {
+            if (pos + n > data.length) {
+                throw new IllegalArgumentException("Packet truncated");
+            }
+        }
+    }
+}
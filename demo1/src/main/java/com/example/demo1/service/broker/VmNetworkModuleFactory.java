@@ -0,0 +1,81 @@
+package com.example.demo1.service.broker;
+
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.internal.NetworkModule;
+import org.eclipse.paho.client.mqttv3.spi.NetworkModuleFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Set;
+
+/**
+ * 为 Paho 客户端提供 {@code vm://<name>} 传输：通过 ServiceLoader
+ * （META-INF/services/org.eclipse.paho.client.mqttv3.spi.NetworkModuleFactory）注册，
+ * 连接同一 JVM 中名为 name 的 {@link MqttBroker}，报文经内存管道直接交换，不经过 TCP。
+ */
+public class VmNetworkModuleFactory implements NetworkModuleFactory {
+
+    static final String SCHEME = "vm";
+    private static final int PIPE_CAPACITY = 256 * 1024;
+
+    @Override
+    public Set<String> getSupportedUriSchemes() {
+        return Set.of(SCHEME);
+    }
+
+    @Override
+    public void validateURI(URI brokerUri) throws IllegalArgumentException {
+        if (brokerUri.getHost() == null || brokerUri.getHost().isEmpty()) {
+            throw new IllegalArgumentException("vm:// URI must name a broker, e.g. vm://embedded: " + brokerUri);
+        }
+    }
+
+    @Override
+    public NetworkModule createNetworkModule(URI brokerUri, MqttConnectOptions options, String clientId) {
+        return new VmNetworkModule(brokerUri);
+    }
+
+    private static final class VmNetworkModule implements NetworkModule {
+        private final URI uri;
+        private final MemoryPipe toBroker = new MemoryPipe(PIPE_CAPACITY);
+        private final MemoryPipe toClient = new MemoryPipe(PIPE_CAPACITY);
+
+        VmNetworkModule(URI uri) {
+            this.uri = uri;
+        }
+
+        @Override
+        public void start() throws IOException, MqttException {
+            MqttBroker broker = MqttBroker.lookup(uri.getHost());
+            if (broker == null) {
+                throw new MqttException(MqttException.REASON_CODE_SERVER_CONNECT_ERROR,
+                        new IOException("No embedded broker named '" + uri.getHost() + "' in this JVM"));
+            }
+            broker.accept(toBroker.getInputStream(), toClient.getOutputStream(), this::stop, uri.toString());
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return toClient.getInputStream();
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return toBroker.getOutputStream();
+        }
+
+        @Override
+        public void stop() {
+            toBroker.close();
+            toClient.close();
+        }
+
+        @Override
+        public String getServerURI() {
+            return uri.toString();
+        }
+    }
+}
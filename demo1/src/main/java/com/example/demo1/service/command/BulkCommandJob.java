@@ -0,0 +1,111 @@
+package com.example.demo1.service.command;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一次批量命令下发任务。每台设备的结果按完成顺序追加，进度推送按游标读取新增部分。
+ */
+public class BulkCommandJob {
+
+    public enum State {
+        RUNNING, COMPLETED
+    }
+
+    /**
+     * 单台设备的下发结果: ok 表示 Broker 已确认 (PUBACK)。启用命令确认时 commandId 可用于查询设备是否已执行。
+     */
+    public record DeviceResult(String deviceUid, String commandId, boolean ok, String error) {
+    }
+
+    private final String id;
+    private final String command;
+    private final List<String> deviceUids;
+    private final long createdAt = System.currentTimeMillis();
+    // 结果只追加；读写都在 results 上同步
+    private final List<DeviceResult> results;
+    private int sent;
+    private int failed;
+    private volatile long finishedAt;
+
+    BulkCommandJob(String id, String command, List<String> deviceUids) {
+        this.id = id;
+        this.command = command;
+        this.deviceUids = deviceUids;
+        this.results = new ArrayList<>(deviceUids.size());
+        if (deviceUids.isEmpty()) {
+            finishedAt = createdAt;
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    List<String> getDeviceUids() {
+        return deviceUids;
+    }
+
+    public int getTotal() {
+        return deviceUids.size();
+    }
+
+    public State getState() {
+        return finishedAt == 0 ? State.RUNNING : State.COMPLETED;
+    }
+
+    public boolean isDone() {
+        return finishedAt != 0;
+    }
+
+    /**
+     * 记录一台设备的结果。
+     *
+     * @return 这条结果是否使任务结束
+     */
+    boolean record(DeviceResult result) {
+        synchronized (results) {
+            results.add(result);
+            if (result.ok()) {
+                sent++;
+            } else {
+                failed++;
+            }
+            if (results.size() == deviceUids.size()) {
+                finishedAt = System.currentTimeMillis();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 返回从下标 cursor 开始的最多 limit 条结果。
+     */
+    public List<DeviceResult> resultsSince(int cursor, int limit) {
+        synchronized (results) {
+            return new ArrayList<>(results.subList(cursor, Math.min(results.size(), cursor + limit)));
+        }
+    }
+
+    public Map<String, Object> getSummary() {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("jobId", id);
+        summary.put("command", command);
+        summary.put("state", getState());
+        summary.put("total", getTotal());
+        synchronized (results) {
+            summary.put("sent", sent);
+            summary.put("failed", failed);
+        }
+        summary.put("createdAt", createdAt);
+        summary.put("durationMs", (isDone() ? finishedAt : System.currentTimeMillis()) - createdAt);
+        return summary;
+    }
+}
@@ -0,0 +1,400 @@
+package com.example.demo1.service.command;
+
+import com.example.demo1.service.DeviceService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 批量命令下发。
+ * <p>
+ * 目标设备由 UID 列表或 (设备类型, 状态) 条件选出，各用一次集合查询确认/查找已登记的设备，不再逐台查询。
+ * 命令经独立的 {@link MqttAsyncClient} 连接以 QoS 1 流水线式发布：最多 {@code command.bulk.max-inflight}
+ * 条在途，Broker 的 PUBACK 在回调中记录为该设备的结果，不逐条阻塞等待。任务在单独的线程中依次执行，
+ * 提交接口立即返回任务 ID；进度经 SSE 以批量的 progress 事件推送（{@code GET /devices/commands/{jobId}/events}）。
+ */
+@Service
+@DependsOn("embeddedMqttBroker")
+public class BulkCommandService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkCommandService.class);
+
+    // 每个 progress 事件最多携带的设备结果数
+    private static final int MAX_RESULTS_PER_EVENT = 500;
+
+    /**
+     * 提交结果: 任务以及请求中未登记的设备 UID。
+     */
+    public record Submission(BulkCommandJob job, List<String> unknownDeviceUids) {
+    }
+
+    /**
+     * 一个进度订阅者及其已推送到的结果位置（只在进度线程中访问）。
+     */
+    private static final class ProgressSubscriber {
+        final SseEmitter emitter;
+        int cursor;
+
+        ProgressSubscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+    }
+
+    @Autowired
+    private DeviceService deviceService;
+
+    @Autowired
+    private CommandTracker commandTracker;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${mqtt.broker-url:tcp://localhost:1883}")
+    private String brokerUrl;
+
+    @Value("${mqtt.client-id:spring-boot-client-sse}")
+    private String clientId;
+
+    @Value("${command.bulk.max-inflight:500}")
+    private int maxInflight;
+
+    @Value("${command.bulk.progress-interval-ms:200}")
+    private long progressIntervalMs;
+
+    @Value("${command.bulk.retained-jobs:100}")
+    private int retainedJobs;
+
+    private final Map<String, BulkCommandJob> jobs = new LinkedHashMap<>(); // 按提交顺序，在 jobs 上同步
+    private final Map<String, List<ProgressSubscriber>> subscribers = new ConcurrentHashMap<>();
+
+    private MqttAsyncClient client;
+    private Semaphore inflight;
+    private ExecutorService dispatcher;
+    private ScheduledExecutorService progressTicker;
+
+    private Counter jobsSubmitted;
+    private Counter published;
+    private Counter failed;
+    private Timer jobDuration;
+
+    @PostConstruct
+    public void init() {
+        jobsSubmitted = Counter.builder("command.bulk.jobs").description("提交的批量命令任务数").register(meterRegistry);
+        published = Counter.builder("command.bulk.published").tag("result", "ok")
+                .description("批量命令下发结果").register(meterRegistry);
+        failed = Counter.builder("command.bulk.published").tag("result", "failed")
+                .description("批量命令下发结果").register(meterRegistry);
+        jobDuration = Timer.builder("command.bulk.job").description("批量命令任务从开始到全部确认的耗时")
+                .register(meterRegistry);
+        inflight = new Semaphore(maxInflight);
+        Gauge.builder("command.bulk.inflight", inflight, s -> maxInflight - s.availablePermits())
+                .description("已发布但尚未收到 PUBACK 的批量命令数").register(meterRegistry);
+
+        dispatcher = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "bulk-command");
+            t.setDaemon(true);
+            return t;
+        });
+        progressTicker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "bulk-command-progress");
+            t.setDaemon(true);
+            return t;
+        });
+        progressTicker.scheduleWithFixedDelay(this::pushProgress, progressIntervalMs, progressIntervalMs,
+                TimeUnit.MILLISECONDS);
+
+        try {
+            client = new MqttAsyncClient(brokerUrl,
+                    clientId + "-" + UUID.randomUUID().toString().substring(0, 8) + "-cmd", new MemoryPersistence());
+            connect();
+        } catch (MqttException e) {
+            logger.warn("批量命令连接暂不可用，提交任务时重试: {}", e.getMessage());
+        }
+    }
+
+    private void connect() throws MqttException {
+        MqttConnectOptions options = new MqttConnectOptions();
+        options.setCleanSession(true);
+        options.setAutomaticReconnect(true);
+        // 留出余量: Paho 可能在在途计数释放之前就完成 token
+        options.setMaxInflight(maxInflight + 16);
+        client.connect(options).waitForCompletion(10_000);
+        logger.info("批量命令连接已建立: {}", client.getClientId());
+    }
+
+    /**
+     * 选出目标设备并提交任务。指定了 deviceUids 时按列表下发（未登记的设备在返回值中列出），
+     * 否则按 deviceType / status 条件选择。
+     *
+     * @throws IllegalArgumentException 命令无效或没有给出任何选择条件
+     * @throws IllegalStateException    MQTT 连接不可用
+     */
+    public Submission submit(String command, List<String> deviceUids, String deviceType, String status) {
+        if (command == null || command.isBlank()) {
+            throw new IllegalArgumentException("请求体中缺少 'command' 字段或字段值为空");
+        }
+        String normalized = command.trim().toUpperCase();
+        if (!normalized.equals("ON") && !normalized.equals("OFF")) {
+            throw new IllegalArgumentException("无效的命令，只支持 'ON' 或 'OFF'");
+        }
+        boolean byList = deviceUids != null && !deviceUids.isEmpty();
+        if (!byList && isBlank(deviceType) && isBlank(status)) {
+            throw new IllegalArgumentException("需要指定 deviceUids、deviceType 或 status");
+        }
+        ensureConnected();
+
+        List<String> targets;
+        List<String> unknown = List.of();
+        if (byList) {
+            targets = deviceService.findExistingDeviceUids(deviceUids);
+            if (targets.size() < deviceUids.size()) {
+                List<String> missing = new ArrayList<>(deviceUids);
+                missing.removeAll(new HashSet<>(targets));
+                unknown = missing;
+            }
+        } else {
+            targets = deviceService.findDeviceUids(blankToNull(deviceType), blankToNull(status));
+        }
+
+        BulkCommandJob job = new BulkCommandJob(UUID.randomUUID().toString().substring(0, 12), normalized, targets);
+        retain(job);
+        jobsSubmitted.increment();
+        logger.info("批量命令任务 {} 已提交: 命令 {}, 目标设备 {} 台, 未登记 {} 台",
+                job.getId(), normalized, targets.size(), unknown.size());
+        if (!targets.isEmpty()) {
+            dispatcher.execute(() -> dispatch(job));
+        }
+        return new Submission(job, unknown);
+    }
+
+    private void ensureConnected() {
+        if (client == null) {
+            throw new IllegalStateException("MQTT client is not available.");
+        }
+        if (client.isConnected()) {
+            return;
+        }
+        try {
+            connect();
+        } catch (MqttException e) {
+            // 已连接过的客户端正在自动重连
+            if (!client.isConnected()) {
+                throw new IllegalStateException("MQTT client is not connected.", e);
+            }
+        }
+    }
+
+    private void retain(BulkCommandJob job) {
+        synchronized (jobs) {
+            jobs.put(job.getId(), job);
+            // 只淘汰已结束的旧任务
+            var it = jobs.values().iterator();
+            while (jobs.size() > retainedJobs && it.hasNext()) {
+                BulkCommandJob oldest = it.next();
+                if (oldest.isDone() && !subscribers.containsKey(oldest.getId())) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * 依次发布，在途数达到上限时等待 PUBACK 释放名额。结果在 Paho 回调线程中记录。
+     * 启用命令确认时每台设备的命令带各自的 commandId。
+     */
+    private void dispatch(BulkCommandJob job) {
+        long start = System.nanoTime();
+        byte[] plain = job.getCommand().getBytes(StandardCharsets.UTF_8);
+        IMqttActionListener listener = new IMqttActionListener() {
+            @Override
+            public void onSuccess(IMqttToken token) {
+                complete(job, (String[]) token.getUserContext(), null, start);
+            }
+
+            @Override
+            public void onFailure(IMqttToken token, Throwable exception) {
+                complete(job, (String[]) token.getUserContext(), exception, start);
+            }
+        };
+        for (String deviceUid : job.getDeviceUids()) {
+            try {
+                inflight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            String commandId = commandTracker.isEnabled() ? commandTracker.register(deviceUid, job.getCommand()) : null;
+            String[] target = {deviceUid, commandId};
+            byte[] payload = commandId != null ? commandTracker.encode(commandId, job.getCommand()) : plain;
+            try {
+                client.publish("device/command/" + deviceUid, payload, 1, false, target, listener);
+            } catch (MqttException e) {
+                complete(job, target, e, start);
+            }
+        }
+    }
+
+    // target: {deviceUid, commandId}
+    private void complete(BulkCommandJob job, String[] target, Throwable error, long start) {
+        inflight.release();
+        String deviceUid = target[0];
+        String commandId = target[1];
+        boolean finished;
+        if (error == null) {
+            published.increment();
+            finished = job.record(new BulkCommandJob.DeviceResult(deviceUid, commandId, true, null));
+        } else {
+            failed.increment();
+            logger.debug("批量命令任务 {} 向设备 {} 下发失败: {}", job.getId(), deviceUid, error.getMessage());
+            if (commandId != null) {
+                commandTracker.markSendFailed(commandId, error.getMessage());
+            }
+            finished = job.record(new BulkCommandJob.DeviceResult(deviceUid, commandId, false, error.getMessage()));
+        }
+        if (finished) {
+            jobDuration.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            logger.info("批量命令任务 {} 完成: {}", job.getId(), job.getSummary());
+        }
+    }
+
+    public Optional<BulkCommandJob> getJob(String jobId) {
+        synchronized (jobs) {
+            return Optional.ofNullable(jobs.get(jobId));
+        }
+    }
+
+    public List<Map<String, Object>> getJobSummaries() {
+        List<BulkCommandJob> snapshot;
+        synchronized (jobs) {
+            snapshot = new ArrayList<>(jobs.values());
+        }
+        List<Map<String, Object>> summaries = new ArrayList<>();
+        for (int i = snapshot.size() - 1; i >= 0; i--) {
+            summaries.add(snapshot.get(i).getSummary()); // 最近的在前
+        }
+        return summaries;
+    }
+
+    /**
+     * 订阅任务进度。返回 false 表示任务不存在。
+     */
+    public boolean subscribe(String jobId, SseEmitter emitter) {
+        if (getJob(jobId).isEmpty()) {
+            return false;
+        }
+        ProgressSubscriber subscriber = new ProgressSubscriber(emitter);
+        List<ProgressSubscriber> list = subscribers.computeIfAbsent(jobId, k -> new CopyOnWriteArrayList<>());
+        list.add(subscriber);
+        Runnable remove = () -> list.remove(subscriber);
+        emitter.onCompletion(remove);
+        emitter.onTimeout(remove);
+        emitter.onError(e -> remove.run());
+        return true;
+    }
+
+    /**
+     * 定期把各任务新增的设备结果推送给订阅者；任务结束且结果推送完毕后发送 completed 事件并关闭连接。
+     */
+    private void pushProgress() {
+        for (Map.Entry<String, List<ProgressSubscriber>> entry : subscribers.entrySet()) {
+            BulkCommandJob job = getJob(entry.getKey()).orElse(null);
+            List<ProgressSubscriber> list = entry.getValue();
+            if (job == null || list.isEmpty()) {
+                subscribers.remove(entry.getKey(), list);
+                continue;
+            }
+            for (ProgressSubscriber subscriber : list) {
+                try {
+                    pushTo(job, subscriber);
+                } catch (Exception e) {
+                    logger.debug("推送批量命令任务 {} 的进度失败: {}", job.getId(), e.getMessage());
+                    list.remove(subscriber);
+                    subscriber.emitter.completeWithError(e);
+                }
+            }
+        }
+    }
+
+    private void pushTo(BulkCommandJob job, ProgressSubscriber subscriber) throws Exception {
+        boolean done = job.isDone(); // 先读状态：结束之后的结果已全部可见
+        List<BulkCommandJob.DeviceResult> batch;
+        while (!(batch = job.resultsSince(subscriber.cursor, MAX_RESULTS_PER_EVENT)).isEmpty()) {
+            subscriber.cursor += batch.size();
+            Map<String, Object> progress = job.getSummary();
+            progress.put("results", batch);
+            subscriber.emitter.send(SseEmitter.event().name("progress").data(progress, MediaType.APPLICATION_JSON));
+        }
+        if (done && subscriber.cursor >= job.getTotal()) {
+            subscriber.emitter.send(SseEmitter.event().name("completed").data(job.getSummary(), MediaType.APPLICATION_JSON));
+            subscriber.emitter.complete();
+            subscribers.getOrDefault(job.getId(), List.of()).remove(subscriber);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("connected", client != null && client.isConnected());
+        stats.put("maxInflight", maxInflight);
+        stats.put("inflight", maxInflight - inflight.availablePermits());
+        stats.put("jobs", (long) jobsSubmitted.count());
+        stats.put("published", (long) published.count());
+        stats.put("failed", (long) failed.count());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dispatcher.shutdownNow();
+        progressTicker.shutdownNow();
+        if (client == null) {
+            return;
+        }
+        try {
+            client.disconnectForcibly(1000);
+            client.close();
+        } catch (MqttException e) {
+            logger.debug("关闭批量命令连接时出错: {}", e.getMessage());
+        }
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    private static String blankToNull(String value) {
+        return isBlank(value) ? null : value.trim();
+    }
+}
@@ -0,0 +1,267 @@
+package com.example.demo1.service.command;
+
+import com.example.demo1.service.DeviceRegistryCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 命令确认跟踪。
+ * <p>
+ * 每条下发的命令分配一个 commandId，以 {@code {"commandId":"...","action":"ON"}} 的形式发布；设备执行后在
+ * {@code device/ack/<deviceUid>} 回显 commandId 和执行结果。待确认的命令保存在内存表中，收到确认时记录往返延迟
+ * （按设备类型的 {@code command.rtt} 计时器，含 p50 / p99），超过 {@code command.ack.timeout-ms} 未确认的标记为超时。
+ * 已结束的命令保留最近 {@code command.ack.retained-outcomes} 条供查询。
+ * <p>
+ * 每个节点都普通订阅确认主题，只有发出命令的节点能在待确认表中找到它，其余节点计为未匹配。
+ * 断线期间排队的命令同样从提交时开始计时。
+ */
+@Service
+public class CommandTracker {
+
+    private static final Logger logger = LoggerFactory.getLogger(CommandTracker.class);
+
+    private static final String UNKNOWN_TYPE = "unknown";
+
+    public enum Outcome {
+        PENDING,    // 已发布，等待确认
+        ACKED,      // 设备已执行（result 为 ok 或 noop）
+        REJECTED,   // 设备回报执行失败
+        TIMED_OUT,  // 超时未确认
+        SEND_FAILED // 未能发布
+    }
+
+    /**
+     * 命令的当前结果。rttMs 只在收到确认时有值；result / deviceStatus 为设备回报的内容。
+     */
+    public record CommandOutcome(String commandId, String deviceUid, String deviceType, String command,
+                                 Outcome outcome, long issuedAt, Double rttMs, String result, String deviceStatus) {
+    }
+
+    private record Pending(String commandId, String deviceUid, String deviceType, String command,
+                           long issuedAt, long issuedNanos) {
+
+        CommandOutcome toOutcome(Outcome outcome, Double rttMs, String result, String deviceStatus) {
+            return new CommandOutcome(commandId, deviceUid, deviceType, command, outcome, issuedAt, rttMs, result,
+                    deviceStatus);
+        }
+    }
+
+    @Autowired
+    private DeviceRegistryCache deviceRegistryCache;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${command.ack.enabled:true}")
+    private boolean enabled;
+
+    @Value("${command.ack.timeout-ms:10000}")
+    private long timeoutMs;
+
+    @Value("${command.ack.retained-outcomes:10000}")
+    private int retainedOutcomes;
+
+    // commandId 前缀区分节点（和重启），后缀为节点内递增序号
+    private final String idPrefix = UUID.randomUUID().toString().substring(0, 6);
+    private final AtomicLong nextId = new AtomicLong();
+
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+    private final Map<String, CommandOutcome> finished = new LinkedHashMap<>(); // 按结束顺序，在 finished 上同步
+    private final Map<String, Timer> rttTimers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> timeoutCounters = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService sweeper;
+
+    private Counter acked;
+    private Counter rejected;
+    private Counter unmatched;
+
+    @PostConstruct
+    public void init() {
+        acked = Counter.builder("command.acks").tag("result", "ok").description("收到的命令确认数").register(meterRegistry);
+        rejected = Counter.builder("command.acks").tag("result", "rejected").description("收到的命令确认数")
+                .register(meterRegistry);
+        unmatched = Counter.builder("command.acks.unmatched")
+                .description("找不到待确认命令的确认数（超时后才到达，或由其他节点发出）").register(meterRegistry);
+        Gauge.builder("command.pending", pending, Map::size).description("等待确认的命令数").register(meterRegistry);
+        if (!enabled) {
+            logger.info("命令确认跟踪未启用，命令以纯文本 ON/OFF 下发");
+            return;
+        }
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "command-timeout");
+            t.setDaemon(true);
+            return t;
+        });
+        long interval = Math.max(10, Math.min(1000, timeoutMs / 4));
+        sweeper.scheduleWithFixedDelay(this::expire, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 登记一条即将发布的命令，返回其 commandId。应在发布之前调用，确认不会早于登记到达。
+     */
+    public String register(String deviceUid, String command) {
+        String deviceType = deviceRegistryCache.get(deviceUid)
+                .map(DeviceRegistryCache.DeviceSnapshot::deviceType).orElse(UNKNOWN_TYPE);
+        String commandId = idPrefix + "-" + Long.toString(nextId.incrementAndGet(), 36);
+        pending.put(commandId, new Pending(commandId, deviceUid, deviceType, command,
+                System.currentTimeMillis(), System.nanoTime()));
+        return commandId;
+    }
+
+    /**
+     * 带 commandId 的命令报文。commandId 只含字母、数字和 '-'，命令已校验为 ON / OFF，无需转义。
+     */
+    public byte[] encode(String commandId, String command) {
+        return ("{\"commandId\":\"" + commandId + "\",\"action\":\"" + command + "\"}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 命令未能发布（队列已满、连接不可用等）。
+     */
+    public void markSendFailed(String commandId, String reason) {
+        Pending command = pending.get(commandId);
+        if (command != null) {
+            finish(command, command.toOutcome(Outcome.SEND_FAILED, null, reason, null));
+        }
+    }
+
+    /**
+     * 处理设备回显的确认（在 Ingest 解析线程中调用）。
+     */
+    public void acknowledge(String commandId, String deviceUid, String result, String deviceStatus) {
+        Pending command = commandId == null ? null : pending.get(commandId);
+        if (command == null) {
+            unmatched.increment();
+            logger.debug("设备 [{}] 的确认找不到待确认命令: {}", deviceUid, commandId);
+            return;
+        }
+        long rttNanos = System.nanoTime() - command.issuedNanos();
+        boolean ok = "ok".equalsIgnoreCase(result) || "noop".equalsIgnoreCase(result);
+        Outcome outcome = ok ? Outcome.ACKED : Outcome.REJECTED;
+        if (!finish(command, command.toOutcome(outcome, rttNanos / 1_000_000.0, result, deviceStatus))) {
+            unmatched.increment(); // 同时已被判定超时
+            return;
+        }
+        rttTimers.computeIfAbsent(command.deviceType(), type -> Timer.builder("command.rtt").tag("deviceType", type)
+                        .description("命令从下发到收到设备确认的往返延迟")
+                        .publishPercentiles(0.5, 0.99).register(meterRegistry))
+                .record(rttNanos, TimeUnit.NANOSECONDS);
+        (ok ? acked : rejected).increment();
+        if (!ok) {
+            logger.warn("设备 [{}] 执行命令 {} ({}) 失败: {}", command.deviceUid(), commandId, command.command(), result);
+        }
+    }
+
+    private void expire() {
+        long deadline = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        int expired = 0;
+        for (Pending command : pending.values()) {
+            if (command.issuedNanos() - deadline < 0
+                    && finish(command, command.toOutcome(Outcome.TIMED_OUT, null, null, null))) {
+                timeoutCounters.computeIfAbsent(command.deviceType(), type -> Counter.builder("command.timeouts")
+                        .tag("deviceType", type).description("超时未确认的命令数").register(meterRegistry)).increment();
+                expired++;
+            }
+        }
+        if (expired > 0) {
+            logger.warn("{} 条命令超过 {} ms 未收到设备确认", expired, timeoutMs);
+        }
+    }
+
+    /**
+     * 把命令从待确认表移到已结束表。两步在同一把锁内完成，查询不会看到两边都不存在的中间状态；
+     * 确认与超时同时发生时只有一方成功。
+     *
+     * @return false 表示命令已被其他结果结束
+     */
+    private boolean finish(Pending command, CommandOutcome outcome) {
+        synchronized (finished) {
+            if (!pending.remove(command.commandId(), command)) {
+                return false;
+            }
+            finished.put(outcome.commandId(), outcome);
+            Iterator<String> oldest = finished.keySet().iterator();
+            while (finished.size() > retainedOutcomes && oldest.hasNext()) {
+                oldest.next();
+                oldest.remove();
+            }
+            return true;
+        }
+    }
+
+    public Optional<CommandOutcome> find(String commandId) {
+        synchronized (finished) {
+            Pending command = pending.get(commandId);
+            if (command != null) {
+                return Optional.of(command.toOutcome(Outcome.PENDING, null, null, null));
+            }
+            return Optional.ofNullable(finished.get(commandId));
+        }
+    }
+
+    /**
+     * 按设备类型的往返延迟（毫秒）、确认数和超时数。
+     */
+    public Map<String, Object> getLatencyStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("pending", pending.size());
+        stats.put("acked", (long) acked.count());
+        stats.put("rejected", (long) rejected.count());
+        stats.put("unmatched", (long) unmatched.count());
+        stats.put("timeoutMs", timeoutMs);
+        Map<String, Object> byType = new TreeMap<>();
+        rttTimers.forEach((type, timer) -> {
+            HistogramSnapshot snapshot = timer.takeSnapshot();
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("count", snapshot.count());
+            for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+                entry.put("p" + Math.round(percentile.percentile() * 100), percentile.value(TimeUnit.MILLISECONDS));
+            }
+            entry.put("mean", snapshot.mean(TimeUnit.MILLISECONDS));
+            entry.put("max", snapshot.max(TimeUnit.MILLISECONDS));
+            Counter timeouts = timeoutCounters.get(type);
+            entry.put("timeouts", timeouts == null ? 0L : (long) timeouts.count());
+            byType.put(type, entry);
+        });
+        timeoutCounters.forEach((type, counter) -> byType.putIfAbsent(type,
+                Map.of("count", 0L, "timeouts", (long) counter.count())));
+        stats.put("byDeviceType", byType);
+        return stats;
+    }
+}
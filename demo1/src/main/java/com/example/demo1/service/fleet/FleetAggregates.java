@@ -0,0 +1,266 @@
+package com.example.demo1.service.fleet;
+
+import com.example.demo1.repository.DeviceFilter;
+import com.example.demo1.repository.DeviceRepository;
+import com.example.demo1.repository.DeviceSummary;
+import com.example.demo1.service.SseNotificationService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 设备总览计数（总数、按状态、按类型）和消息速率，在内存中增量维护。
+ * <p>
+ * 启动时从数据库按页加载一次，之后由 {@link com.example.demo1.service.DeviceService} 在注册、状态变化、更新和删除时
+ * 调用 {@link #upsert} / {@link #remove}。每台设备的当前类型和状态保存在索引中，变化时只调整受影响的两个计数，
+ * 重复上报同一状态不产生变化。查询总览不访问数据库。
+ * <p>
+ * 有变化时每 {@code fleet.summary.push-interval-ms} 推送一个 {@code fleetSummary} SSE 事件，只包含变化了的计数
+ * （取值为最新的绝对值，0 表示该项已清空）和递增的 seq；客户端发现 seq 不连续时重新获取完整总览。
+ * 状态是实时状态（启用 write-behind 时比数据库新），计数只覆盖本节点数据库中的设备。
+ */
+@Service
+public class FleetAggregates {
+
+    private static final Logger logger = LoggerFactory.getLogger(FleetAggregates.class);
+
+    private static final String UNKNOWN = "unknown";
+    private static final int LOAD_PAGE_SIZE = 1000;
+
+    private record Entry(String deviceType, String status) {
+    }
+
+    @Autowired
+    private DeviceRepository deviceRepository;
+
+    @Autowired
+    private SseNotificationService sseNotificationService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${fleet.summary.push-interval-ms:1000}")
+    private long pushIntervalMs;
+
+    private final Map<String, Entry> devices = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> byStatus = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> byType = new ConcurrentHashMap<>();
+
+    // 自上次推送以来变化过的计数
+    private final Set<String> dirtyStatuses = ConcurrentHashMap.newKeySet();
+    private final Set<String> dirtyTypes = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean totalDirty = new AtomicBoolean();
+
+    private final AtomicLong seq = new AtomicLong();
+    private volatile double messagesPerSecond;
+    private double lastMessageCount;
+    private long lastRateAt;
+
+    private ScheduledExecutorService ticker;
+
+    @PostConstruct
+    public void init() {
+        Long cursor = null;
+        DeviceFilter all = DeviceFilter.of(null, null, null);
+        do {
+            List<DeviceSummary> page = deviceRepository.findSummaries(all, cursor, LOAD_PAGE_SIZE);
+            // 加载期间已经到达的实时变化更新，不被数据库中的旧值覆盖
+            page.forEach(d -> devices.computeIfAbsent(d.deviceUid(), uid -> {
+                Entry entry = new Entry(normalizeType(d.deviceType()), normalizeStatus(d.status()));
+                adjust(byType, dirtyTypes, entry.deviceType(), 1);
+                adjust(byStatus, dirtyStatuses, entry.status(), 1);
+                return entry;
+            }));
+            cursor = page.size() < LOAD_PAGE_SIZE ? null : page.get(page.size() - 1).id();
+        } while (cursor != null);
+        logger.info("设备总览计数已初始化, 设备数: {}", devices.size());
+
+        Gauge.builder("fleet.devices", devices, Map::size).description("本节点登记的设备数").register(meterRegistry);
+        lastMessageCount = ingestMessageCount();
+        lastRateAt = System.nanoTime();
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "fleet-summary");
+            t.setDaemon(true);
+            return t;
+        });
+        ticker.scheduleWithFixedDelay(this::tick, pushIntervalMs, pushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+    }
+
+    /**
+     * 设备已登记或类型 / 状态已变化（在事务中调用时推迟到提交之后）。
+     */
+    public void upsert(String deviceUid, String deviceType, String status) {
+        if (deviceUid == null) {
+            return;
+        }
+        afterCommit(() -> devices.compute(deviceUid, (uid, previous) -> {
+            // 参数为 null 的字段沿用原值
+            String nextType = deviceType == null && previous != null ? previous.deviceType() : normalizeType(deviceType);
+            String nextStatus = status == null && previous != null ? previous.status() : normalizeStatus(status);
+            Entry next = new Entry(nextType, nextStatus);
+            if (previous == null) {
+                totalDirty.set(true);
+            } else if (previous.equals(next)) {
+                return previous;
+            } else {
+                adjust(byType, dirtyTypes, previous.deviceType(), -1);
+                adjust(byStatus, dirtyStatuses, previous.status(), -1);
+            }
+            adjust(byType, dirtyTypes, next.deviceType(), 1);
+            adjust(byStatus, dirtyStatuses, next.status(), 1);
+            return next;
+        }));
+    }
+
+    /**
+     * 设备已删除（在事务中调用时推迟到提交之后）。
+     */
+    public void remove(String deviceUid) {
+        if (deviceUid == null) {
+            return;
+        }
+        afterCommit(() -> devices.computeIfPresent(deviceUid, (uid, previous) -> {
+            adjust(byType, dirtyTypes, previous.deviceType(), -1);
+            adjust(byStatus, dirtyStatuses, previous.status(), -1);
+            totalDirty.set(true);
+            return null;
+        }));
+    }
+
+    private static void adjust(Map<String, AtomicLong> counts, Set<String> dirty, String key, int delta) {
+        counts.computeIfAbsent(key, k -> new AtomicLong()).addAndGet(delta);
+        dirty.add(key);
+    }
+
+    private static String normalizeStatus(String status) {
+        return status == null || status.isBlank() ? UNKNOWN : status.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static String normalizeType(String deviceType) {
+        return deviceType == null || deviceType.isBlank() ? UNKNOWN : deviceType.trim();
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * 完整总览，计数项数量与设备数无关。seq 为最近一次推送的变化序号。
+     */
+    public Map<String, Object> getSummary() {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("seq", seq.get());
+        summary.put("timestamp", System.currentTimeMillis());
+        summary.put("total", devices.size());
+        summary.put("messagesPerSecond", messagesPerSecond);
+        summary.put("byStatus", snapshot(byStatus, null));
+        summary.put("byType", snapshot(byType, null));
+        return summary;
+    }
+
+    private static Map<String, Long> snapshot(Map<String, AtomicLong> counts, Set<String> keys) {
+        Map<String, Long> result = new TreeMap<>();
+        if (keys == null) {
+            counts.forEach((key, count) -> {
+                if (count.get() > 0) {
+                    result.put(key, count.get());
+                }
+            });
+        } else {
+            for (String key : keys) {
+                AtomicLong count = counts.get(key);
+                result.put(key, count == null ? 0L : count.get());
+            }
+        }
+        return result;
+    }
+
+    private double ingestMessageCount() {
+        return meterRegistry.find("ingest.messages").counters().stream().mapToDouble(Counter::count).sum();
+    }
+
+    /**
+     * 节拍线程中执行：更新消息速率，有变化时推送一个只含变化项的 fleetSummary 事件。
+     */
+    private void tick() {
+        try {
+            long now = System.nanoTime();
+            double count = ingestMessageCount();
+            double rate = (count - lastMessageCount) * 1e9 / Math.max(1, now - lastRateAt);
+            lastMessageCount = count;
+            lastRateAt = now;
+            boolean rateChanged = Math.round(rate * 10) != Math.round(messagesPerSecond * 10);
+            messagesPerSecond = Math.round(rate * 10) / 10.0;
+
+            Set<String> statuses = drain(dirtyStatuses);
+            Set<String> types = drain(dirtyTypes);
+            boolean total = totalDirty.getAndSet(false);
+            if (!rateChanged && !total && statuses.isEmpty() && types.isEmpty()) {
+                return;
+            }
+            Map<String, Object> delta = new LinkedHashMap<>();
+            delta.put("seq", seq.incrementAndGet());
+            delta.put("timestamp", System.currentTimeMillis());
+            delta.put("total", devices.size());
+            delta.put("messagesPerSecond", messagesPerSecond);
+            if (!statuses.isEmpty()) {
+                delta.put("byStatus", snapshot(byStatus, statuses));
+            }
+            if (!types.isEmpty()) {
+                delta.put("byType", snapshot(byType, types));
+            }
+            sseNotificationService.sendSseEvent("fleetSummary", delta);
+        } catch (Exception e) {
+            logger.error("推送设备总览变化时出错: {}", e.getMessage(), e);
+        }
+    }
+
+    private static Set<String> drain(Set<String> dirty) {
+        Set<String> drained = new HashSet<>();
+        for (Iterator<String> it = dirty.iterator(); it.hasNext(); ) {
+            drained.add(it.next());
+            it.remove();
+        }
+        return drained;
+    }
+}
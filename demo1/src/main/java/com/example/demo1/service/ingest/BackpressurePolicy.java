@@ -0,0 +1,13 @@
+package com.example.demo1.service.ingest;
+
+/**
+ * 环形缓冲区写满时的背压策略。
+ */
+public enum BackpressurePolicy {
+    /** 阻塞生产者（MQTT 回调线程）直到有空位，不丢消息 */
+    BLOCK,
+    /** 丢弃队列中最旧的消息，为新消息腾出位置 */
+    DROP_OLDEST,
+    /** 直接丢弃新到达的消息 */
+    DROP_NEWEST
+}
@@ -0,0 +1,98 @@
+package com.example.demo1.service.ingest;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 固定容量的阶段队列（基于数组的环形缓冲区），写满时按 {@link BackpressurePolicy} 处理。
+ * 同时记录入队、丢弃数量和历史最大深度，供监控使用。
+ */
+public class BoundedStageQueue<T> {
+
+    private final ArrayBlockingQueue<T> queue;
+    private final BackpressurePolicy policy;
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicLong highWaterMark = new AtomicLong();
+
+    public BoundedStageQueue(int capacity, BackpressurePolicy policy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity must be positive: " + capacity);
+        }
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.policy = policy;
+    }
+
+    /**
+     * 按背压策略放入元素。
+     *
+     * @return true 表示新元素已入队；false 表示新元素被丢弃
+     */
+    public boolean offer(T item) {
+        boolean accepted;
+        switch (policy) {
+            case BLOCK -> {
+                try {
+                    queue.put(item);
+                    accepted = true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    accepted = false;
+                }
+            }
+            case DROP_OLDEST -> {
+                while (!queue.offer(item)) {
+                    if (queue.poll() != null) {
+                        dropped.increment();
+                    }
+                }
+                accepted = true;
+            }
+            default -> accepted = queue.offer(item);
+        }
+        if (accepted) {
+            enqueued.increment();
+            recordDepth();
+        } else {
+            dropped.increment();
+        }
+        return accepted;
+    }
+
+    public T take() throws InterruptedException {
+        return queue.take();
+    }
+
+    private void recordDepth() {
+        long depth = queue.size();
+        long current = highWaterMark.get();
+        while (depth > current && !highWaterMark.compareAndSet(current, depth)) {
+            current = highWaterMark.get();
+        }
+    }
+
+    public int depth() {
+        return queue.size();
+    }
+
+    public int capacity() {
+        return queue.size() + queue.remainingCapacity();
+    }
+
+    public long enqueuedCount() {
+        return enqueued.sum();
+    }
+
+    public long droppedCount() {
+        return dropped.sum();
+    }
+
+    public long highWaterMark() {
+        return highWaterMark.get();
+    }
+
+    public BackpressurePolicy policy() {
+        return policy;
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.demo1.service.ingest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 设备可选的紧凑二进制报文格式（在注册消息中以 {@code "encoding":"compact"} 声明）。
+ * <pre>
+ * 字节 0      魔数 0xC7（不可能是 JSON 文本的首字节，据此与 JSON 报文区分）
+ * 字节 1      类型: 0x01 上报 (device/report)、0x02 状态 (device/status)；最高位 0x80 表示带压测附加字段
+ * 上报        varint 时间戳(毫秒) + 按注册时声明的 schema 顺序，每个指标一个 zigzag varint，
+ *             值为 round(指标值 * 10^scale)；带压测附加字段时再跟 varint seq + zigzag varint sendNanos
+ * 状态        varint 时间戳(毫秒) + varint 长度 + UTF-8 状态字符串
+ * </pre>
+ * 指标名和设备 ID 不出现在报文中（设备 ID 取自主题），温湿度上报约 12 字节，JSON 约 90 字节。
+ */
+public final class CompactPayloadCodec {
+
+    public static final int MAGIC = 0xC7;
+    public static final int KIND_REPORT = 0x01;
+    public static final int KIND_STATUS = 0x02;
+    public static final int FLAG_BENCH = 0x80;
+
+    private static final int MAX_SCALE = 9;
+
+    /** schema 中的一个指标：名称 + 小数位数 */
+    public record Field(String name, int scale) {
+    }
+
+    /**
+     * 设备注册时声明的上报 schema。预先计算按名称排序后的顺序，解码结果与 JSON 上报一样按指标名排序。
+     */
+    public static final class Schema {
+        private final String[] sortedNames;
+        private final int[] sortedToWire;   // 排序后第 i 个指标在报文中的位置
+        private final double[] divisors;    // 按报文顺序
+
+        public Schema(List<Field> fields) {
+            if (fields.isEmpty()) {
+                throw new IllegalArgumentException("Compact schema must declare at least one field");
+            }
+            int n = fields.size();
+            divisors = new double[n];
+            Integer[] order = new Integer[n];
+            for (int i = 0; i < n; i++) {
+                Field field = fields.get(i);
+                if (field.scale() < 0 || field.scale() > MAX_SCALE) {
+                    throw new IllegalArgumentException("Invalid scale " + field.scale() + " for field " + field.name());
+                }
+                divisors[i] = Math.pow(10, field.scale());
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> fields.get(a).name().compareTo(fields.get(b).name()));
+            sortedNames = new String[n];
+            sortedToWire = new int[n];
+            for (int i = 0; i < n; i++) {
+                sortedNames[i] = fields.get(order[i]).name();
+                sortedToWire[i] = order[i];
+            }
+        }
+
+        public int size() {
+            return divisors.length;
+        }
+    }
+
+    /**
+     * 解码后的上报：names 在同一 schema 的所有消息之间共享，调用方不得修改。
+     */
+    public record Report(long timestamp, String[] names, double[] values, boolean bench, long benchSeq,
+                         long benchSendNanos) {
+    }
+
+    public record Status(long timestamp, String status) {
+    }
+
+    private CompactPayloadCodec() {
+    }
+
+    public static boolean isCompact(byte[] payload) {
+        return payload.length >= 2 && (payload[0] & 0xFF) == MAGIC;
+    }
+
+    public static int kind(byte[] payload) {
+        return payload[1] & 0x7F;
+    }
+
+    public static Report decodeReport(byte[] payload, Schema schema) throws IOException {
+        Cursor in = new Cursor(payload);
+        if (kind(payload) != KIND_REPORT) {
+            throw new IOException("Not a compact report payload");
+        }
+        long timestamp = in.varint();
+        double[] wire = new double[schema.size()];
+        for (int i = 0; i < wire.length; i++) {
+            wire[i] = zigzag(in.varint()) / schema.divisors[i];
+        }
+        double[] values = new double[wire.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = wire[schema.sortedToWire[i]];
+        }
+        boolean bench = (payload[1] & FLAG_BENCH) != 0;
+        long seq = bench ? in.varint() : 0;
+        long sendNanos = bench ? zigzag(in.varint()) : 0;
+        return new Report(timestamp, schema.sortedNames, values, bench, seq, sendNanos);
+    }
+
+    public static Status decodeStatus(byte[] payload) throws IOException {
+        Cursor in = new Cursor(payload);
+        if (kind(payload) != KIND_STATUS) {
+            throw new IOException("Not a compact status payload");
+        }
+        long timestamp = in.varint();
+        int length = (int) in.varint();
+        return new Status(timestamp, in.utf8(length));
+    }
+
+    private static long zigzag(long n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    /**
+     * 从第 2 个字节开始顺序读取。
+     */
+    private static final class Cursor {
+        private final byte[] data;
+        private int pos = 2;
+
+        Cursor(byte[] data) {
+            this.data = data;
+        }
+
+        long varint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (pos >= data.length) {
+                    throw new IOException("Truncated compact payload");
+                }
+                byte b = data[pos++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint in compact payload");
+        }
+
+        String utf8(int length) throws IOException {
+            if (length < 0 || pos + length > data.length) {
+                throw new IOException("Truncated compact payload");
+            }
+            String text = new String(data, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return text;
+        }
+    }
+}
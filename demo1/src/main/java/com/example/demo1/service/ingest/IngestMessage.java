@@ -0,0 +1,143 @@
+package com.example.demo1.service.ingest;
+
+import com.example.demo1.service.MqttTopics;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 在流水线各阶段之间传递的消息。
+ * 原始字段在回调线程中创建；解析结果由解析阶段填充，经阻塞队列交接给后续阶段（队列保证可见性）。
+ */
+public class IngestMessage {
+
+    private final String topic;
+    private final byte[] payload;
+    private final long receivedAt;
+    private final TopicFamily family;
+
+    // 以下字段由解析阶段填充
+    private String deviceUid;
+    private PayloadDecoder.RegistrationPayload registration;
+    private String payloadText;
+    private boolean compact;
+    private String status;
+    private String deviceType;
+    private String sseJson;
+    private long reportTimestamp;
+    private String[] metricNames;
+    private double[] metricValues;
+
+    public IngestMessage(String topic, byte[] payload, long receivedAt) {
+        this.topic = topic;
+        this.payload = payload;
+        this.receivedAt = receivedAt;
+        this.family = TopicFamily.of(topic);
+    }
+
+    /**
+     * 选择通道的 key：同一设备的所有消息落在同一通道，保持处理顺序。
+     * 已知 deviceUid 时直接使用；解析前取主题中的设备段（device/{family}/{deviceUid}），
+     * 主题中没有设备段时用主题本身。
+     */
+    public String laneKey() {
+        if (deviceUid != null) {
+            return deviceUid;
+        }
+        String fromTopic = MqttTopics.extractDeviceId(topic, 2);
+        return MqttTopics.UNKNOWN_DEVICE.equals(fromTopic) ? topic : fromTopic;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public long getReceivedAt() {
+        return receivedAt;
+    }
+
+    public TopicFamily getFamily() {
+        return family;
+    }
+
+    public String getDeviceUid() {
+        return deviceUid;
+    }
+
+    public void setDeviceUid(String deviceUid) {
+        this.deviceUid = deviceUid;
+    }
+
+    /** 入队前已解码的注册消息，未解码时为 null */
+    public PayloadDecoder.RegistrationPayload getRegistration() {
+        return registration;
+    }
+
+    public void setRegistration(PayloadDecoder.RegistrationPayload registration) {
+        this.registration = registration;
+    }
+
+    /** payload 的文本形式，只在需要时（日志）才解码；紧凑二进制报文为解码后生成的 JSON */
+    public String getPayloadText() {
+        if (payloadText == null) {
+            payloadText = new String(payload, StandardCharsets.UTF_8);
+        }
+        return payloadText;
+    }
+
+    /** 是否为已解码的紧凑二进制报文 */
+    public boolean isCompact() {
+        return compact;
+    }
+
+    public void setCompactText(String json) {
+        this.compact = true;
+        this.payloadText = json;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getDeviceType() {
+        return deviceType;
+    }
+
+    public void setDeviceType(String deviceType) {
+        this.deviceType = deviceType;
+    }
+
+    public String getSseJson() {
+        return sseJson;
+    }
+
+    public void setSseJson(String sseJson) {
+        this.sseJson = sseJson;
+    }
+
+    public long getReportTimestamp() {
+        return reportTimestamp;
+    }
+
+    public String[] getMetricNames() {
+        return metricNames;
+    }
+
+    public double[] getMetricValues() {
+        return metricValues;
+    }
+
+    /** 设置上报数据中解析出的数值指标（名称与数值一一对应） */
+    public void setMetrics(long reportTimestamp, String[] metricNames, double[] metricValues) {
+        this.reportTimestamp = reportTimestamp;
+        this.metricNames = metricNames;
+        this.metricValues = metricValues;
+    }
+}
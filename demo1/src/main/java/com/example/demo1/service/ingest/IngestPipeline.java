@@ -0,0 +1,491 @@
+package com.example.demo1.service.ingest;
+
+import com.example.demo1.service.DeviceService;
+import com.example.demo1.service.MqttTopics;
+import com.example.demo1.service.SseNotificationService;
+import com.example.demo1.service.command.CommandTracker;
+import com.example.demo1.service.presence.PresenceTracker;
+import com.example.demo1.service.sse.SseEventBus;
+import com.example.demo1.service.telemetry.RollupEngine;
+import com.example.demo1.service.telemetry.TelemetryStore;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * MQTT 消息分阶段处理流水线: 回调线程 -> [解析] -> [持久化] / [SSE 推送]。
+ * <p>
+ * MQTT 回调线程只负责把消息放入有界环形缓冲区（解析阶段的输入队列）后立即返回，
+ * 解析、数据库写入和 SSE 推送分别在各自的工作线程中执行，慢速的数据库写入不会再阻塞所有主题。
+ * 入口缓冲区写满时按 {@code ingest.backpressure} 配置的策略处理；阶段之间使用阻塞交接，
+ * 已被接收的消息不会在流水线内部丢失，下游变慢时压力会传导回入口。
+ * <p>
+ * 指标（Micrometer）: {@code ingest.messages}（按主题族计数）、{@code ingest.parse} / {@code ingest.persist}
+ * （按主题族计时）、{@code ingest.stage.queue.depth} / {@code ingest.stage.dropped}（按阶段）。
+ * 单条消息的日志只在 DEBUG 级别输出。
+ */
+@Service
+public class IngestPipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(IngestPipeline.class);
+
+    @Autowired
+    private SseNotificationService sseNotificationService;
+
+    @Autowired
+    private SseEventBus sseEventBus;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private DeviceService deviceService;
+
+    @Autowired
+    private CommandTracker commandTracker;
+
+    @Autowired
+    private PresenceTracker presenceTracker;
+
+    @Autowired
+    private TelemetryStore telemetryStore;
+
+    @Autowired
+    private RollupEngine rollupEngine;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${ingest.ring-buffer-size:8192}")
+    private int ringBufferSize;
+
+    @Value("${ingest.stage-queue-size:4096}")
+    private int stageQueueSize;
+
+    @Value("${ingest.backpressure:BLOCK}")
+    private BackpressurePolicy backpressurePolicy;
+
+    @Value("${ingest.parse-workers:2}")
+    private int parseWorkers;
+
+    @Value("${ingest.persist-workers:2}")
+    private int persistWorkers;
+
+    @Value("${ingest.broadcast-workers:1}")
+    private int broadcastWorkers;
+
+    @Value("${ingest.shutdown-timeout-ms:5000}")
+    private long shutdownTimeoutMs;
+
+    private IngestStage<IngestMessage> parseStage;
+    private IngestStage<IngestMessage> persistStage;
+    private IngestStage<IngestMessage> broadcastStage;
+
+    private PayloadDecoder payloadDecoder;
+
+    // 声明了紧凑二进制格式的设备: deviceUid -> 上报 schema（来自注册消息）
+    private final Map<String, CompactPayloadCodec.Schema> compactSchemas = new ConcurrentHashMap<>();
+    private final LongAdder compactPayloads = new LongAdder();
+    private final LongAdder compactWithoutSchema = new LongAdder();
+
+    // 按主题族预先注册的计数器 / 计时器，热路径上不再按标签查找
+    private final Map<TopicFamily, Counter> messageCounters = new EnumMap<>(TopicFamily.class);
+    private final Map<TopicFamily, Timer> parseTimers = new EnumMap<>(TopicFamily.class);
+    private final Map<TopicFamily, Timer> persistTimers = new EnumMap<>(TopicFamily.class);
+
+    @PostConstruct
+    public void start() {
+        payloadDecoder = new PayloadDecoder(objectMapper.getFactory());
+        for (TopicFamily family : TopicFamily.values()) {
+            String tag = family.name().toLowerCase();
+            messageCounters.put(family, Counter.builder("ingest.messages").tag("family", tag)
+                    .description("Ingest 流水线解析的 MQTT 消息数").register(meterRegistry));
+            parseTimers.put(family, Timer.builder("ingest.parse").tag("family", tag)
+                    .description("解析阶段单条消息耗时").register(meterRegistry));
+            persistTimers.put(family, Timer.builder("ingest.persist").tag("family", tag)
+                    .description("持久化阶段单条消息耗时").register(meterRegistry));
+        }
+        int ringLaneCapacity = Math.max(1, ringBufferSize / parseWorkers);
+        int persistLaneCapacity = Math.max(1, stageQueueSize / persistWorkers);
+        int broadcastLaneCapacity = Math.max(1, stageQueueSize / broadcastWorkers);
+
+        broadcastStage = new IngestStage<>("broadcast", broadcastWorkers, broadcastLaneCapacity,
+                BackpressurePolicy.BLOCK, IngestMessage::laneKey, this::broadcast);
+        persistStage = new IngestStage<>("persist", persistWorkers, persistLaneCapacity,
+                BackpressurePolicy.BLOCK, IngestMessage::laneKey, timed(persistTimers, this::persist));
+        parseStage = new IngestStage<>("parse", parseWorkers, ringLaneCapacity,
+                backpressurePolicy, IngestMessage::laneKey, timed(parseTimers, this::parse));
+        for (IngestStage<IngestMessage> stage : List.of(parseStage, persistStage, broadcastStage)) {
+            Gauge.builder("ingest.stage.queue.depth", stage, IngestStage::depth).tag("stage", stage.getName())
+                    .description("阶段队列中等待处理的消息数").register(meterRegistry);
+            FunctionCounter.builder("ingest.stage.dropped", stage, IngestStage::droppedCount).tag("stage", stage.getName())
+                    .description("被背压策略丢弃的消息数").register(meterRegistry);
+        }
+
+        // 从下游到上游依次启动，保证上游产出时下游已就绪
+        broadcastStage.start();
+        persistStage.start();
+        parseStage.start();
+        logger.info("MQTT Ingest 流水线已启动: ringBuffer={}, backpressure={}", ringBufferSize, backpressurePolicy);
+    }
+
+    @PreDestroy
+    public void stop() {
+        // 从上游到下游依次停止，让已接收的消息尽量处理完
+        parseStage.stop(shutdownTimeoutMs);
+        persistStage.stop(shutdownTimeoutMs);
+        broadcastStage.stop(shutdownTimeoutMs);
+    }
+
+    /**
+     * 由 MQTT 回调线程调用：只入队，不做 IO。
+     * 唯一的例外是注册消息：所有设备共用一个注册主题，设备 ID 在负载中，需要先解码才能把它
+     * 分到该设备的解析通道，保证注册先于该设备之后的状态 / 上报消息处理。注册消息很少，解码结果留给解析阶段复用。
+     *
+     * @return false 表示消息被背压策略丢弃或流水线已停止
+     */
+    public boolean submit(String topic, byte[] payload) {
+        IngestMessage message = new IngestMessage(topic, payload, System.currentTimeMillis());
+        if (message.getFamily() == TopicFamily.REGISTER) {
+            try {
+                PayloadDecoder.RegistrationPayload registration = payloadDecoder.decodeRegistration(payload);
+                message.setRegistration(registration);
+                if (registration.deviceId() != null && !registration.deviceId().isBlank()) {
+                    message.setDeviceUid(registration.deviceId());
+                }
+            } catch (Exception e) {
+                // 格式错误的注册消息由解析阶段报告
+            }
+        }
+        return parseStage.submit(message);
+    }
+
+    private Consumer<IngestMessage> timed(Map<TopicFamily, Timer> timers, Consumer<IngestMessage> handler) {
+        return message -> {
+            long start = System.nanoTime();
+            try {
+                handler.accept(message);
+            } finally {
+                timers.get(message.getFamily()).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        };
+    }
+
+    // --- 阶段 1: 解析 ---
+    // 直接在字节数组上流式解码，payload 文本只在需要输出日志时才构造
+    private void parse(IngestMessage message) {
+        String topic = message.getTopic();
+        messageCounters.get(message.getFamily()).increment();
+
+        switch (message.getFamily()) {
+            case TEST -> logger.info("收到主题 '{}' 的消息 (SSE): {}", topic, message.getPayloadText());
+            case REPORT -> {
+                message.setDeviceUid(MqttTopics.extractDeviceId(topic, 2));
+                if (!MqttTopics.UNKNOWN_DEVICE.equals(message.getDeviceUid())) {
+                    parseReportMetrics(message);
+                }
+                if (logger.isDebugEnabled()) {
+                    logger.debug("设备 '{}' 上报数据 (SSE), Topic='{}', Payload='{}'", message.getDeviceUid(), topic, message.getPayloadText());
+                }
+            }
+            case STATUS -> {
+                String deviceUid = MqttTopics.extractDeviceId(topic, 2);
+                message.setDeviceUid(deviceUid);
+                if (!MqttTopics.UNKNOWN_DEVICE.equals(deviceUid)) {
+                    try {
+                        String status = decodeStatus(message);
+                        if (logger.isDebugEnabled()) {
+                            logger.debug("收到设备状态消息 (SSE), DeviceUID='{}', Topic='{}', Payload='{}'", deviceUid, topic, message.getPayloadText());
+                        }
+                        if (status != null) {
+                            message.setStatus(status);
+                        } else {
+                            logger.warn("收到的设备 [{}] 状态消息缺少 'status' 字段: {}", deviceUid, message.getPayloadText());
+                        }
+                    } catch (Exception parseException) {
+                        logger.error("解析设备 [{}] 状态消息 JSON 时出错: {}", deviceUid, parseException.getMessage());
+                    }
+                } else {
+                    logger.warn("无法从主题 '{}' 中提取有效的 Device UID 来更新状态", topic);
+                }
+            }
+            case REGISTER -> {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("收到设备注册/上线消息, Topic='{}', Payload='{}'", topic, message.getPayloadText());
+                }
+                try {
+                    PayloadDecoder.RegistrationPayload registration = message.getRegistration() != null
+                            ? message.getRegistration() : payloadDecoder.decodeRegistration(message.getPayload());
+                    String deviceUid = registration.deviceId();
+                    String deviceType = registration.deviceType();
+                    // 从消息中获取状态，如果消息中没有，则默认为 "online"
+                    String status = registration.status() != null ? registration.status() : "online";
+                    if (deviceUid != null && !deviceUid.isBlank() && deviceType != null && !deviceType.isBlank()) {
+                        registerEncoding(deviceUid, registration);
+                        message.setDeviceUid(deviceUid);
+                        message.setDeviceType(deviceType);
+                        message.setStatus(status);
+                    } else {
+                        logger.warn("收到的注册消息格式不正确或缺少 deviceId/deviceType 字段: {}", message.getPayloadText());
+                        return;
+                    }
+                } catch (Exception e) {
+                    logger.error("处理设备注册/上线消息时出错: {}", e.getMessage(), e);
+                    return;
+                }
+            }
+            case ACK -> {
+                // 确认只更新内存中的待确认表，在解析阶段直接处理，往返延迟不包含后续阶段的排队
+                String deviceUid = MqttTopics.extractDeviceId(topic, 2);
+                message.setDeviceUid(deviceUid);
+                try {
+                    PayloadDecoder.AckPayload ack = payloadDecoder.decodeAck(message.getPayload());
+                    commandTracker.acknowledge(ack.commandId(), deviceUid, ack.result(), ack.status());
+                } catch (Exception e) {
+                    logger.warn("解析设备 [{}] 的命令确认时出错: {}", deviceUid, e.getMessage());
+                }
+            }
+            case HEARTBEAT -> {
+                // 心跳没有内容，只用于在线检测（不落库、不推送）
+                message.setDeviceUid(MqttTopics.extractDeviceId(topic, 2));
+            }
+            default -> {
+                logger.debug("忽略未知主题的消息: {}", topic);
+                return;
+            }
+        }
+
+        // 上报、心跳、状态和注册消息说明设备在线；主动上报 offline 的设备停止在线检测。
+        // 命令确认不计入：设备被主动关闭后仍会回复关闭命令的确认，不能因此重新开始跟踪
+        String deviceUid = message.getDeviceUid();
+        if (message.getFamily().indicatesPresence() && deviceUid != null
+                && !MqttTopics.UNKNOWN_DEVICE.equals(deviceUid)) {
+            if ("offline".equalsIgnoreCase(message.getStatus())) { // 状态消息或注册消息
+                presenceTracker.markOffline(deviceUid);
+            } else {
+                presenceTracker.touch(deviceUid);
+            }
+        }
+        if (message.getFamily() == TopicFamily.HEARTBEAT) {
+            return;
+        }
+
+        // 需要推送给前端的消息在这里一次性序列化（无法解码的二进制报文不推送）
+        if (message.getFamily() != TopicFamily.REGISTER
+                && (message.isCompact() || !CompactPayloadCodec.isCompact(message.getPayload()))) {
+            try {
+                message.setSseJson(toSseJson(message));
+            } catch (IOException e) {
+                logger.error("转换 MQTT 消息为 JSON 时出错 ({}): {}", topic, e.getMessage(), e);
+            }
+        }
+        // 持久化与推送相互独立：数据库变慢不会推迟前端收到消息
+        if (message.getFamily() == TopicFamily.STATUS || message.getFamily() == TopicFamily.REGISTER
+                || message.getMetricNames() != null) {
+            persistStage.submit(message);
+        }
+        if (message.getSseJson() != null) {
+            broadcastStage.submit(message);
+        }
+    }
+
+    /**
+     * 从上报数据中提取数值指标（数字或可解析为数字的字符串），忽略 deviceId / timestamp。
+     * 指标名排序后存储，保证同一设备连续上报的列结构一致。
+     */
+    private void parseReportMetrics(IngestMessage message) {
+        if (CompactPayloadCodec.isCompact(message.getPayload())) {
+            parseCompactReport(message);
+            return;
+        }
+        try {
+            PayloadDecoder.ReportPayload report = payloadDecoder.decodeReport(message.getPayload(), message.getReceivedAt());
+            if (report.names().length > 0) {
+                message.setMetrics(report.timestamp(), report.names(), report.values());
+            }
+        } catch (Exception e) {
+            logger.warn("解析设备 [{}] 上报数据 JSON 时出错: {}", message.getDeviceUid(), e.getMessage());
+        }
+    }
+
+    /**
+     * 紧凑格式的上报按设备注册时声明的 schema 解码；解码后生成等价的 JSON 文本用于日志和 SSE 推送。
+     */
+    private void parseCompactReport(IngestMessage message) {
+        String deviceUid = message.getDeviceUid();
+        CompactPayloadCodec.Schema schema = compactSchemas.get(deviceUid);
+        if (schema == null) {
+            // 注册消息尚未处理（或设备未声明格式），无法解码
+            compactWithoutSchema.increment();
+            logger.debug("设备 [{}] 发送了紧凑格式上报，但未找到其注册的 schema，忽略", deviceUid);
+            return;
+        }
+        try {
+            CompactPayloadCodec.Report report = CompactPayloadCodec.decodeReport(message.getPayload(), schema);
+            compactPayloads.increment();
+            message.setMetrics(report.timestamp(), report.names(), report.values());
+            message.setCompactText(renderJson(generator -> {
+                generator.writeStringField("deviceId", deviceUid);
+                generator.writeNumberField("timestamp", report.timestamp());
+                for (int i = 0; i < report.names().length; i++) {
+                    generator.writeNumberField(report.names()[i], report.values()[i]);
+                }
+                if (report.bench()) {
+                    generator.writeObjectFieldStart("bench");
+                    generator.writeNumberField("seq", report.benchSeq());
+                    generator.writeNumberField("sendNanos", report.benchSendNanos());
+                    generator.writeEndObject();
+                }
+            }));
+        } catch (IOException e) {
+            logger.warn("解析设备 [{}] 紧凑格式上报时出错: {}", deviceUid, e.getMessage());
+        }
+    }
+
+    /**
+     * 解码状态消息（JSON 或紧凑格式），返回 status 字段。
+     */
+    private String decodeStatus(IngestMessage message) throws IOException {
+        if (!CompactPayloadCodec.isCompact(message.getPayload())) {
+            return payloadDecoder.decodeStatus(message.getPayload()).status();
+        }
+        CompactPayloadCodec.Status status = CompactPayloadCodec.decodeStatus(message.getPayload());
+        compactPayloads.increment();
+        message.setCompactText(renderJson(generator -> {
+            generator.writeStringField("deviceId", message.getDeviceUid());
+            generator.writeStringField("status", status.status());
+            generator.writeNumberField("timestamp", status.timestamp());
+        }));
+        return status.status();
+    }
+
+    /**
+     * 记录设备在注册消息中声明的上报 schema。重新注册为 JSON 或不上报指标（无 schema）的设备移除其 schema；
+     * 紧凑格式的状态消息不依赖 schema，按魔数识别即可解码。
+     */
+    private void registerEncoding(String deviceUid, PayloadDecoder.RegistrationPayload registration) {
+        if (!"compact".equalsIgnoreCase(registration.encoding()) || registration.schema().isEmpty()) {
+            compactSchemas.remove(deviceUid);
+            return;
+        }
+        try {
+            compactSchemas.put(deviceUid, new CompactPayloadCodec.Schema(registration.schema()));
+            logger.debug("设备 [{}] 使用紧凑二进制格式上报, schema={}", deviceUid, registration.schema());
+        } catch (IllegalArgumentException e) {
+            logger.warn("设备 [{}] 声明的紧凑格式 schema 无效: {}", deviceUid, e.getMessage());
+        }
+    }
+
+    private interface JsonFieldsWriter {
+        void write(JsonGenerator generator) throws IOException;
+    }
+
+    private String renderJson(JsonFieldsWriter fields) throws IOException {
+        ByteArrayBuilder buffer = new ByteArrayBuilder(128);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(buffer, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            fields.write(generator);
+            generator.writeEndObject();
+        }
+        return new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 推送给前端的 JSON: {"topic":..., "payload": 原始消息文本, "timestamp":...}。
+     * payload 的 UTF-8 字节直接写成 JSON 字符串（由生成器转义），不经过中间的 String。
+     */
+    private String toSseJson(IngestMessage message) throws IOException {
+        byte[] payload = message.getPayload();
+        ByteArrayBuilder buffer = new ByteArrayBuilder(payload.length + message.getTopic().length() + 64);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(buffer, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeStringField("topic", message.getTopic());
+            if (message.isCompact()) {
+                // 二进制报文推送解码后的 JSON 文本，浏览器端格式不变
+                generator.writeStringField("payload", message.getPayloadText());
+            } else {
+                generator.writeFieldName("payload");
+                generator.writeUTF8String(payload, 0, payload.length);
+            }
+            generator.writeNumberField("timestamp", message.getReceivedAt());
+            generator.writeEndObject();
+        }
+        return new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    // --- 阶段 2: 持久化 ---
+    private void persist(IngestMessage message) {
+        switch (message.getFamily()) {
+            case REPORT -> {
+                telemetryStore.append(message.getDeviceUid(), message.getReportTimestamp(),
+                        message.getMetricNames(), message.getMetricValues());
+                rollupEngine.record(message.getDeviceUid(), message.getReportTimestamp(),
+                        message.getMetricNames(), message.getMetricValues());
+            }
+            case STATUS -> {
+                if (message.getStatus() != null) {
+                    // *** 调用 DeviceService 更新数据库状态 ***
+                    deviceService.updateDeviceStatusByUid(message.getDeviceUid(), message.getStatus());
+                }
+            }
+            case REGISTER -> {
+                // *** 调用 DeviceService 处理注册或上线更新 ***
+                deviceService.handleDeviceRegistrationOrUpdate(
+                        message.getDeviceUid(), message.getDeviceType(), message.getStatus());
+            }
+            default -> {
+                // 其他主题暂无持久化
+            }
+        }
+    }
+
+    // --- 阶段 3: SSE 推送 ---
+    private void broadcast(IngestMessage message) {
+        // 只推送给订阅了该主题 / 设备 / 设备类型的客户端
+        String deviceUid = MqttTopics.UNKNOWN_DEVICE.equals(message.getDeviceUid()) ? null : message.getDeviceUid();
+        sseNotificationService.sendDeviceEvent("mqttMessage", message.getSseJson(), message.getTopic(), deviceUid);
+        // 共享订阅的消息只有本节点收到，经事件总线转发给其他节点的 SSE 连接
+        sseEventBus.publish("mqttMessage", message.getSseJson(), message.getTopic(), deviceUid);
+        logger.trace("Sent message ({}) to SSE clients: {}", message.getTopic(), message.getSseJson());
+    }
+
+    /**
+     * 各阶段队列深度等指标快照。
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put(parseStage.getName(), parseStage.snapshot());
+        stats.put(persistStage.getName(), persistStage.snapshot());
+        stats.put(broadcastStage.getName(), broadcastStage.snapshot());
+        Map<String, Object> compact = new LinkedHashMap<>();
+        compact.put("devices", compactSchemas.size());
+        compact.put("decoded", compactPayloads.sum());
+        compact.put("withoutSchema", compactWithoutSchema.sum());
+        stats.put("compactPayloads", compact);
+        return stats;
+    }
+}
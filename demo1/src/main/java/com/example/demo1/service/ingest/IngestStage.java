@@ -0,0 +1,166 @@
+package com.example.demo1.service.ingest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 流水线中的一个处理阶段：N 条通道（lane），每条通道一个有界队列 + 一个工作线程。
+ * 元素按 key 的哈希分配到固定通道，因此同一设备的消息在阶段内保持顺序。
+ */
+public class IngestStage<T> {
+
+    private static final Logger logger = LoggerFactory.getLogger(IngestStage.class);
+
+    private final String name;
+    private final Function<T, String> keyExtractor;
+    private final Consumer<T> handler;
+    private final BoundedStageQueue<T>[] lanes;
+    private final Thread[] workers;
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private volatile boolean running = false;
+
+    @SuppressWarnings("unchecked")
+    public IngestStage(String name, int workerCount, int laneCapacity, BackpressurePolicy policy,
+                       Function<T, String> keyExtractor, Consumer<T> handler) {
+        if (workerCount <= 0) {
+            throw new IllegalArgumentException("Stage '" + name + "' needs at least one worker");
+        }
+        this.name = name;
+        this.keyExtractor = keyExtractor;
+        this.handler = handler;
+        this.lanes = (BoundedStageQueue<T>[]) new BoundedStageQueue<?>[workerCount];
+        this.workers = new Thread[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            lanes[i] = new BoundedStageQueue<>(laneCapacity, policy);
+        }
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        for (int i = 0; i < workers.length; i++) {
+            BoundedStageQueue<T> lane = lanes[i];
+            Thread worker = new Thread(() -> runLane(lane), "ingest-" + name + "-" + i);
+            worker.setDaemon(true);
+            workers[i] = worker;
+            worker.start();
+        }
+        logger.info("Ingest 阶段 '{}' 已启动, 工作线程数: {}", name, workers.length);
+    }
+
+    /**
+     * 提交一个元素到对应通道。
+     *
+     * @return false 表示阶段已停止或元素被背压策略丢弃
+     */
+    public boolean submit(T item) {
+        if (!running) {
+            logger.debug("Ingest 阶段 '{}' 未运行，丢弃消息", name);
+            return false;
+        }
+        String key = keyExtractor.apply(item);
+        int laneIndex = key == null ? 0 : Math.floorMod(key.hashCode(), lanes.length);
+        return lanes[laneIndex].offer(item);
+    }
+
+    private void runLane(BoundedStageQueue<T> lane) {
+        while (running || lane.depth() > 0) {
+            T item;
+            try {
+                item = lane.take();
+            } catch (InterruptedException e) {
+                // 停止时被中断，退出循环
+                break;
+            }
+            try {
+                handler.accept(item);
+                processed.increment();
+            } catch (Exception e) {
+                failed.increment();
+                logger.error("Ingest 阶段 '{}' 处理消息时出错: {}", name, e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * 停止接收新消息，等待队列排空（最多 timeoutMillis），然后中断工作线程。
+     */
+    public synchronized void stop(long timeoutMillis) {
+        if (!running) {
+            return;
+        }
+        running = false;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (depth() > 0 && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        for (Thread worker : workers) {
+            if (worker != null) {
+                worker.interrupt();
+            }
+        }
+        logger.info("Ingest 阶段 '{}' 已停止, 剩余未处理: {}", name, depth());
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long droppedCount() {
+        long dropped = 0;
+        for (BoundedStageQueue<T> lane : lanes) {
+            dropped += lane.droppedCount();
+        }
+        return dropped;
+    }
+
+    public int depth() {
+        int depth = 0;
+        for (BoundedStageQueue<T> lane : lanes) {
+            depth += lane.depth();
+        }
+        return depth;
+    }
+
+    /**
+     * 阶段指标快照：队列深度、容量、历史最大深度、入队/处理/失败/丢弃数量。
+     */
+    public Map<String, Object> snapshot() {
+        int capacity = 0;
+        long enqueued = 0;
+        long dropped = 0;
+        long highWaterMark = 0;
+        for (BoundedStageQueue<T> lane : lanes) {
+            capacity += lane.capacity();
+            enqueued += lane.enqueuedCount();
+            dropped += lane.droppedCount();
+            highWaterMark = Math.max(highWaterMark, lane.highWaterMark());
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("workers", workers.length);
+        stats.put("policy", lanes[0].policy().name());
+        stats.put("queueDepth", depth());
+        stats.put("queueCapacity", capacity);
+        stats.put("laneHighWaterMark", highWaterMark);
+        stats.put("enqueued", enqueued);
+        stats.put("processed", processed.sum());
+        stats.put("failed", failed.sum());
+        stats.put("dropped", dropped);
+        return stats;
+    }
+}
@@ -0,0 +1,251 @@
+package com.example.demo1.service.ingest;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 设备消息的流式解码器：直接在 MQTT 消息的字节数组上用 Jackson {@link JsonParser} 读取需要的字段，
+ * 不构造 payload 字符串，也不构造中间 Map（没有装箱的数值和 LinkedHashMap）。
+ * <p>
+ * 字段名由 Jackson 的符号表规范化，同名字段在不同消息之间共享同一个 String 实例。
+ * 未识别的字段（包括嵌套对象和数组）直接跳过。线程安全，可被多个解析线程共享。
+ */
+public final class PayloadDecoder {
+
+    /** device/status 消息 */
+    public record StatusPayload(String status) {
+    }
+
+    /**
+     * device/lifecycle/register 消息。encoding 为设备声明的报文格式（缺省为 JSON），
+     * 声明 compact 时 schema 给出上报指标的顺序和小数位数（见 {@link CompactPayloadCodec}）。
+     */
+    public record RegistrationPayload(String deviceId, String deviceType, String status, String encoding,
+                                      List<CompactPayloadCodec.Field> schema) {
+    }
+
+    /**
+     * device/ack 消息: 设备回显的命令 ID、执行结果（ok / noop / error）和执行后的状态。
+     */
+    public record AckPayload(String commandId, String result, String status) {
+    }
+
+    /**
+     * device/report 消息中的数值指标，按指标名排序，names 与 values 一一对应。
+     * timestamp 为上报中的时间戳，缺失时为调用方给出的默认值。
+     */
+    public record ReportPayload(long timestamp, String[] names, double[] values) {
+    }
+
+    private static final String[] NO_NAMES = new String[0];
+    private static final double[] NO_VALUES = new double[0];
+
+    private final JsonFactory jsonFactory;
+
+    public PayloadDecoder(JsonFactory jsonFactory) {
+        this.jsonFactory = jsonFactory;
+    }
+
+    public StatusPayload decodeStatus(byte[] payload) throws IOException {
+        String status = null;
+        try (JsonParser parser = openObject(payload)) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("status".equals(field) && value == JsonToken.VALUE_STRING) {
+                    status = parser.getText();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return new StatusPayload(status);
+    }
+
+    public AckPayload decodeAck(byte[] payload) throws IOException {
+        String commandId = null;
+        String result = null;
+        String status = null;
+        try (JsonParser parser = openObject(payload)) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                if (parser.nextToken() != JsonToken.VALUE_STRING) {
+                    parser.skipChildren();
+                    continue;
+                }
+                switch (field) {
+                    case "commandId" -> commandId = parser.getText();
+                    case "result" -> result = parser.getText();
+                    case "status" -> status = parser.getText();
+                    default -> {
+                        // 其他字段忽略
+                    }
+                }
+            }
+        }
+        return new AckPayload(commandId, result, status);
+    }
+
+    public RegistrationPayload decodeRegistration(byte[] payload) throws IOException {
+        String deviceId = null;
+        String deviceType = null;
+        String status = null;
+        String encoding = null;
+        List<CompactPayloadCodec.Field> schema = List.of();
+        try (JsonParser parser = openObject(payload)) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("schema".equals(field) && value == JsonToken.START_ARRAY) {
+                    schema = readSchema(parser);
+                    continue;
+                }
+                if (value != JsonToken.VALUE_STRING) {
+                    parser.skipChildren();
+                    continue;
+                }
+                switch (field) {
+                    case "deviceId" -> deviceId = parser.getText();
+                    case "deviceType" -> deviceType = parser.getText();
+                    case "status" -> status = parser.getText();
+                    case "encoding" -> encoding = parser.getText();
+                    default -> {
+                        // 其他字段忽略
+                    }
+                }
+            }
+        }
+        return new RegistrationPayload(deviceId, deviceType, status, encoding, schema);
+    }
+
+    /**
+     * [{"name":"temperature","scale":1}, ...]，缺少名称的条目视为格式错误。
+     */
+    private static List<CompactPayloadCodec.Field> readSchema(JsonParser parser) throws IOException {
+        List<CompactPayloadCodec.Field> fields = new ArrayList<>();
+        for (JsonToken token = parser.nextToken(); token != JsonToken.END_ARRAY; token = parser.nextToken()) {
+            if (token != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Schema entries must be objects");
+            }
+            String name = null;
+            int scale = 0;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("name".equals(field) && value == JsonToken.VALUE_STRING) {
+                    name = parser.getText();
+                } else if ("scale".equals(field) && value == JsonToken.VALUE_NUMBER_INT) {
+                    scale = parser.getIntValue();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (name == null) {
+                throw new JsonParseException(parser, "Schema field without a name");
+            }
+            fields.add(new CompactPayloadCodec.Field(name, scale));
+        }
+        return fields;
+    }
+
+    /**
+     * 提取顶层的数值字段作为指标（JSON 数字，或可解析为数字的字符串以兼容旧版模拟器），
+     * 忽略 deviceId；数值型的 timestamp 作为上报时间。
+     */
+    public ReportPayload decodeReport(byte[] payload, long defaultTimestamp) throws IOException {
+        long timestamp = defaultTimestamp;
+        String[] names = null;
+        double[] values = null;
+        int count = 0;
+        try (JsonParser parser = openObject(payload)) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken token = parser.nextToken();
+                double value;
+                if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+                    if ("timestamp".equals(field)) {
+                        timestamp = parser.getLongValue();
+                        continue;
+                    }
+                    value = parser.getDoubleValue();
+                } else if (token == JsonToken.VALUE_STRING && !"deviceId".equals(field) && !"timestamp".equals(field)) {
+                    try {
+                        value = Double.parseDouble(parser.getText());
+                    } catch (NumberFormatException ignored) {
+                        continue;
+                    }
+                } else {
+                    parser.skipChildren();
+                    continue;
+                }
+                if (names == null) {
+                    names = new String[4];
+                    values = new double[4];
+                }
+                int index = indexOf(names, count, field);
+                if (index >= 0) {
+                    // 重复字段以最后一次为准
+                    values[index] = value;
+                    continue;
+                }
+                if (count == names.length) {
+                    names = Arrays.copyOf(names, count * 2);
+                    values = Arrays.copyOf(values, count * 2);
+                }
+                names[count] = field;
+                values[count] = value;
+                count++;
+            }
+        }
+        if (count == 0) {
+            return new ReportPayload(timestamp, NO_NAMES, NO_VALUES);
+        }
+        sortByName(names, values, count);
+        return new ReportPayload(timestamp,
+                names.length == count ? names : Arrays.copyOf(names, count),
+                values.length == count ? values : Arrays.copyOf(values, count));
+    }
+
+    private JsonParser openObject(byte[] payload) throws IOException {
+        JsonParser parser = jsonFactory.createParser(payload);
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            parser.close();
+            throw new JsonParseException(parser, "Expected a JSON object");
+        }
+        return parser;
+    }
+
+    private static int indexOf(String[] names, int count, String name) {
+        for (int i = 0; i < count; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 指标通常只有几个，插入排序即可，同时移动对应的数值。
+     */
+    private static void sortByName(String[] names, double[] values, int count) {
+        for (int i = 1; i < count; i++) {
+            String name = names[i];
+            double value = values[i];
+            int j = i - 1;
+            while (j >= 0 && names[j].compareTo(name) > 0) {
+                names[j + 1] = names[j];
+                values[j + 1] = values[j];
+                j--;
+            }
+            names[j + 1] = name;
+            values[j + 1] = value;
+        }
+    }
+}
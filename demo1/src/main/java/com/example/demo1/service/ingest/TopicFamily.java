@@ -0,0 +1,43 @@
+package com.example.demo1.service.ingest;
+
+/**
+ * 流水线处理的主题族。
+ */
+public enum TopicFamily {
+    TEST,
+    REPORT,
+    STATUS,
+    REGISTER,
+    ACK,
+    HEARTBEAT,
+    OTHER;
+
+    /**
+     * 该主题族的消息是否说明设备在线（用于在线检测）。命令确认只是对后端命令的回复，不计入。
+     */
+    public boolean indicatesPresence() {
+        return this == REPORT || this == STATUS || this == REGISTER || this == HEARTBEAT;
+    }
+
+    public static TopicFamily of(String topic) {
+        if (topic.startsWith("device/report/")) {
+            return REPORT;
+        }
+        if (topic.startsWith("device/status/")) {
+            return STATUS;
+        }
+        if (topic.startsWith("device/ack/")) {
+            return ACK;
+        }
+        if (topic.startsWith("device/heartbeat/")) {
+            return HEARTBEAT;
+        }
+        if (topic.equals("device/lifecycle/register")) {
+            return REGISTER;
+        }
+        if (topic.equals("test/topic")) {
+            return TEST;
+        }
+        return OTHER;
+    }
+}
@@ -0,0 +1,398 @@
+package com.example.demo1.service.presence;
+
+import com.example.demo1.service.DeviceService;
+import com.example.demo1.service.SseNotificationService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 设备在线检测：设备停止发消息但没有触发遗嘱（例如网络静默中断）时，按上报间隔判定超时并标记为离线。
+ * <p>
+ * 每个 deviceUid 首次出现时分配一个稠密的整数槽位，最近消息时间、估计的上报间隔和状态保存在按槽位分页的
+ * 原子数组中，收到消息时只写这几个数组元素，不分配对象、不加锁。上报间隔按消息间隔的指数移动平均估计，
+ * 超时时长为 {@code presence.missed-intervals} 个间隔（不低于 {@code presence.min-timeout-ms}）。
+ * <p>
+ * 超时检测使用一个哈希时间轮（{@code presence.wheel-size} 个槽位，每 {@code presence.tick-ms} 一个节拍），
+ * 槽位链表以 int 数组串联，只由节拍线程访问。收到消息不移动设备在时间轮中的位置：槽位到期时按最近消息时间
+ * 重新计算截止时间，未超时的设备挂到新的槽位，超时的设备在本节拍内合并成一批，经
+ * {@link DeviceService#updateDeviceStatuses} 批量更新状态，并以 {@code device/status/<uid>} 主题推送 SSE 事件。
+ * 超时后再次收到消息的设备同样批量恢复为 online。十万台设备只占用几个数组，没有每设备的定时任务。
+ * <p>
+ * 上报、心跳、状态和注册消息计为收到消息，命令确认不计入。收到 offline 状态消息的设备不再跟踪，直到再次收到
+ * 这类消息。多节点部署时共享订阅只把一部分消息交给本节点，其他节点经 SSE 事件总线转发的设备上报同样计为收到消息。
+ */
+@Service
+public class PresenceTracker {
+
+    private static final Logger logger = LoggerFactory.getLogger(PresenceTracker.class);
+
+    private static final int PAGE_SHIFT = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int NONE = -1;
+
+    // 槽位状态
+    private static final int IDLE = 0;    // 不跟踪（尚未收到消息，或收到 offline 状态）
+    private static final int ACTIVE = 1;  // 跟踪中
+    private static final int EXPIRED = 2; // 已超时并标记为离线
+
+    /**
+     * 单台设备的在线检测信息。
+     */
+    public record DevicePresence(String deviceUid, String state, long lastSeen, long intervalMs, long timeoutMs) {
+    }
+
+    /**
+     * 一页槽位。lastSeen / intervalMs / state 由消息线程写入；wheelNext / inWheel 只由节拍线程访问。
+     */
+    private static final class Page {
+        final String[] deviceUids = new String[PAGE_SIZE];
+        final AtomicLongArray lastSeen = new AtomicLongArray(PAGE_SIZE);
+        final AtomicIntegerArray intervalMs = new AtomicIntegerArray(PAGE_SIZE);
+        final AtomicIntegerArray state = new AtomicIntegerArray(PAGE_SIZE);
+        final int[] wheelNext = new int[PAGE_SIZE];
+        final boolean[] inWheel = new boolean[PAGE_SIZE];
+    }
+
+    @Autowired
+    private DeviceService deviceService;
+
+    @Autowired
+    private SseNotificationService sseNotificationService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${presence.enabled:true}")
+    private boolean enabled;
+
+    @Value("${presence.tick-ms:1000}")
+    private long tickMs;
+
+    @Value("${presence.wheel-size:512}")
+    private int wheelSize;
+
+    @Value("${presence.missed-intervals:3}")
+    private int missedIntervals;
+
+    @Value("${presence.default-interval-ms:30000}")
+    private int defaultIntervalMs;
+
+    @Value("${presence.min-timeout-ms:10000}")
+    private long minTimeoutMs;
+
+    @Value("${presence.max-devices:1000000}")
+    private int maxDevices;
+
+    private final Map<String, Integer> slots = new ConcurrentHashMap<>();
+    private final AtomicInteger nextSlot = new AtomicInteger();
+    private AtomicReferenceArray<Page> pages;
+    // 开始跟踪的槽位（负数 -slot-1 表示超时后恢复），由节拍线程放入时间轮
+    private final Queue<Integer> arrivals = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger active = new AtomicInteger();
+
+    // 时间轮，只由节拍线程访问
+    private int[] wheel;
+    private int mask;
+    private long startTime;
+    private long tick;
+
+    private volatile boolean running;
+    private Thread worker;
+
+    private Counter expired;
+    private Counter revived;
+    private volatile boolean capacityWarned;
+
+    @PostConstruct
+    public void init() {
+        pages = new AtomicReferenceArray<>((maxDevices + PAGE_SIZE - 1) / PAGE_SIZE);
+        expired = Counter.builder("presence.expired").description("超时判定为离线的设备数").register(meterRegistry);
+        revived = Counter.builder("presence.revived").description("超时后再次收到消息而恢复在线的设备数")
+                .register(meterRegistry);
+        Gauge.builder("presence.tracked", active, AtomicInteger::get).description("正在跟踪在线状态的设备数")
+                .register(meterRegistry);
+        if (!enabled) {
+            logger.info("设备在线检测未启用");
+            return;
+        }
+        int size = Integer.highestOneBit(Math.max(2, wheelSize) - 1) << 1;
+        wheel = new int[size];
+        Arrays.fill(wheel, NONE);
+        mask = size - 1;
+
+        // 数据库中标记为在线的设备从现在开始计时，重启后一直没有消息的设备也会超时。
+        // 先写出 write-behind 缓冲中尚未落库的状态，避免按过时的状态建立初始跟踪集合
+        deviceService.flushPendingStatuses();
+        List<String> online = deviceService.findDeviceUids(null, "online");
+        online.forEach(this::touch);
+
+        startTime = System.currentTimeMillis();
+        running = true;
+        worker = new Thread(this::run, "presence-wheel");
+        worker.setDaemon(true);
+        worker.start();
+        logger.info("设备在线检测已启用: 节拍 {} ms x {} 槽位, 超时 = {} 个上报间隔 (不低于 {} ms), 初始跟踪 {} 台在线设备",
+                tickMs, size, missedIntervals, minTimeoutMs, online.size());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 记录设备发来一条消息（在 Ingest 解析线程中调用）。同时更新上报间隔的估计值。
+     */
+    public void touch(String deviceUid) {
+        if (!enabled || deviceUid == null) {
+            return;
+        }
+        int slot = slotFor(deviceUid);
+        if (slot == NONE) {
+            return;
+        }
+        Page page = pages.get(slot >>> PAGE_SHIFT);
+        int i = slot & (PAGE_SIZE - 1);
+        long now = System.currentTimeMillis();
+        long previous = page.lastSeen.getAndSet(i, now);
+        if (previous > 0) {
+            // 从默认间隔开始做指数移动平均 (1/4 权重)。单次间隔限制在 [估计值/4, 默认间隔*10] 内：
+            // 上线时注册、状态、首次上报连续到达不会把估计值拉到接近 0，一次长时间断线也不会使其失真
+            int estimate = page.intervalMs.get(i) == 0 ? defaultIntervalMs : page.intervalMs.get(i);
+            long gap = Math.max(estimate / 4, Math.min(now - previous, 10L * defaultIntervalMs));
+            page.intervalMs.lazySet(i, (int) (estimate + (gap - estimate) / 4));
+        }
+        int state = page.state.get(i);
+        if (state != ACTIVE && page.state.compareAndSet(i, state, ACTIVE)) {
+            active.incrementAndGet();
+            arrivals.add(state == EXPIRED ? -slot - 1 : slot);
+        }
+    }
+
+    /**
+     * 设备主动上报离线（状态消息或遗嘱），停止跟踪。
+     */
+    public void markOffline(String deviceUid) {
+        if (!enabled || deviceUid == null) {
+            return;
+        }
+        Integer slot = slots.get(deviceUid);
+        if (slot == null) {
+            return;
+        }
+        Page page = pages.get(slot >>> PAGE_SHIFT);
+        int i = slot & (PAGE_SIZE - 1);
+        if (page.state.compareAndSet(i, ACTIVE, IDLE)) {
+            active.decrementAndGet();
+        }
+    }
+
+    private int slotFor(String deviceUid) {
+        Integer slot = slots.get(deviceUid);
+        if (slot == null) {
+            slot = slots.computeIfAbsent(deviceUid, this::allocate);
+        }
+        return slot == null ? NONE : slot;
+    }
+
+    // 在 computeIfAbsent 中调用；不同 UID 可能并发分配，槽位号和页面都以原子操作获取
+    private Integer allocate(String deviceUid) {
+        int slot = nextSlot.getAndIncrement();
+        if (slot >= maxDevices) {
+            nextSlot.decrementAndGet();
+            if (!capacityWarned) {
+                capacityWarned = true;
+                logger.warn("在线检测跟踪的设备数已达上限 {}，新设备不再跟踪", maxDevices);
+            }
+            return null;
+        }
+        int pageIndex = slot >>> PAGE_SHIFT;
+        pages.compareAndSet(pageIndex, null, new Page());
+        pages.get(pageIndex).deviceUids[slot & (PAGE_SIZE - 1)] = deviceUid;
+        return slot;
+    }
+
+    private long timeoutOf(Page page, int i) {
+        int interval = page.intervalMs.get(i);
+        return Math.max(minTimeoutMs, (long) missedIntervals * (interval == 0 ? defaultIntervalMs : interval));
+    }
+
+    // --- 节拍线程 ---
+
+    private void run() {
+        while (running) {
+            long sleep = startTime + (tick + 1) * tickMs - System.currentTimeMillis();
+            if (sleep > 0) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(sleep);
+                } catch (InterruptedException e) {
+                    if (!running) {
+                        break;
+                    }
+                }
+            }
+            try {
+                List<String> revivedUids = transferArrivals();
+                List<String> expiredUids = expireBucket();
+                // 先计数再落库推送：状态变化可见时计数已经更新
+                expired.increment(expiredUids.size());
+                revived.increment(revivedUids.size());
+                apply(expiredUids, "offline", "presence-timeout");
+                apply(revivedUids, "online", "presence-revived");
+            } catch (Exception e) {
+                logger.error("在线检测处理节拍时出错: {}", e.getMessage(), e);
+            }
+            tick++;
+        }
+    }
+
+    private List<String> transferArrivals() {
+        List<String> revivedUids = new ArrayList<>();
+        Integer next;
+        while ((next = arrivals.poll()) != null) {
+            int slot = next < 0 ? -next - 1 : next;
+            Page page = pages.get(slot >>> PAGE_SHIFT);
+            int i = slot & (PAGE_SIZE - 1);
+            if (next < 0) {
+                revivedUids.add(page.deviceUids[i]);
+            }
+            if (!page.inWheel[i]) {
+                schedule(slot, page, i);
+            }
+        }
+        return revivedUids;
+    }
+
+    /**
+     * 把槽位挂到截止时间所在的节拍；超出时间轮一圈的挂到最远的槽位，到时再重新计算。
+     */
+    private void schedule(int slot, Page page, int i) {
+        long deadline = page.lastSeen.get(i) + timeoutOf(page, i) - startTime;
+        long target = Math.min(Math.max(deadline / tickMs, tick + 1), tick + mask);
+        int bucket = (int) (target & mask);
+        page.wheelNext[i] = wheel[bucket];
+        page.inWheel[i] = true;
+        wheel[bucket] = slot;
+    }
+
+    private List<String> expireBucket() {
+        int bucket = (int) (tick & mask);
+        int slot = wheel[bucket];
+        wheel[bucket] = NONE; // 摘下整条链表，未超时的重新挂到后面的槽位
+        long now = System.currentTimeMillis();
+        List<String> expiredUids = new ArrayList<>();
+        while (slot != NONE) {
+            Page page = pages.get(slot >>> PAGE_SHIFT);
+            int i = slot & (PAGE_SIZE - 1);
+            int next = page.wheelNext[i];
+            page.inWheel[i] = false;
+            // 不再跟踪的槽位直接摘除；之后恢复跟踪时由 arrivals 重新挂入
+            if (page.state.get(i) == ACTIVE) {
+                if (page.lastSeen.get(i) + timeoutOf(page, i) > now) {
+                    schedule(slot, page, i);
+                } else if (page.state.compareAndSet(i, ACTIVE, EXPIRED)) {
+                    active.decrementAndGet();
+                    expiredUids.add(page.deviceUids[i]);
+                }
+            }
+            slot = next;
+        }
+        return expiredUids;
+    }
+
+    /**
+     * 批量更新状态，并为实际发生变化的设备推送与 MQTT 状态消息格式相同的 SSE 事件（payload 为 JSON 文本）。
+     */
+    private void apply(List<String> deviceUids, String status, String reason) throws JsonProcessingException {
+        if (deviceUids.isEmpty()) {
+            return;
+        }
+        List<String> changed = deviceService.updateDeviceStatuses(deviceUids, status);
+        long now = System.currentTimeMillis();
+        for (String deviceUid : changed) {
+            String topic = "device/status/" + deviceUid;
+            Map<String, Object> payload = new LinkedHashMap<>();
+            payload.put("deviceId", deviceUid);
+            payload.put("status", status);
+            payload.put("reason", reason);
+            payload.put("timestamp", now);
+            Map<String, Object> event = new LinkedHashMap<>();
+            event.put("topic", topic);
+            event.put("payload", objectMapper.writeValueAsString(payload));
+            event.put("timestamp", now);
+            sseNotificationService.sendDeviceEvent("mqttMessage", event, topic, deviceUid);
+        }
+        if ("offline".equals(status)) {
+            logger.warn("{} 台设备超过 {} 个上报间隔未发消息，已标记为离线 (其中 {} 台状态发生变化)",
+                    deviceUids.size(), missedIntervals, changed.size());
+        } else {
+            logger.info("{} 台超时离线的设备重新发来消息，已恢复为在线", changed.size());
+        }
+    }
+
+    public Optional<DevicePresence> find(String deviceUid) {
+        Integer slot = slots.get(deviceUid);
+        if (slot == null) {
+            return Optional.empty();
+        }
+        Page page = pages.get(slot >>> PAGE_SHIFT);
+        int i = slot & (PAGE_SIZE - 1);
+        String state = switch (page.state.get(i)) {
+            case ACTIVE -> "ACTIVE";
+            case EXPIRED -> "EXPIRED";
+            default -> "IDLE";
+        };
+        int interval = page.intervalMs.get(i);
+        return Optional.of(new DevicePresence(deviceUid, state, page.lastSeen.get(i),
+                interval == 0 ? defaultIntervalMs : interval, timeoutOf(page, i)));
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("slots", nextSlot.get());
+        stats.put("tracked", active.get());
+        stats.put("expired", (long) expired.count());
+        stats.put("revived", (long) revived.count());
+        stats.put("tickMs", tickMs);
+        stats.put("wheelSize", wheel == null ? 0 : wheel.length);
+        stats.put("missedIntervals", missedIntervals);
+        stats.put("minTimeoutMs", minTimeoutMs);
+        return stats;
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.demo1.service.sse;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 每个主题（即设备 + 消息类型，例如 device/report/{uid}、device/status/{uid}）最新一条消息的槽位。
+ * 新消息直接覆盖旧值，LATEST 模式的客户端只记录哪些槽位变脏，推送时读取槽位中的最新值。
+ */
+public class LatestStateSlots {
+
+    /**
+     * 一个槽位的当前值；json 为推送给前端的消息 JSON。
+     */
+    public record Slot(String topic, String deviceUid, String json) {
+    }
+
+    private final ConcurrentHashMap<String, Slot> slots = new ConcurrentHashMap<>();
+
+    public void update(String topic, String deviceUid, String json) {
+        slots.put(topic, new Slot(topic, deviceUid, json));
+    }
+
+    public Slot get(String topic) {
+        return slots.get(topic);
+    }
+
+    public Collection<Slot> all() {
+        return slots.values();
+    }
+
+    public int size() {
+        return slots.size();
+    }
+}
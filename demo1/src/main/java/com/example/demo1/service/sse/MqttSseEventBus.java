@@ -0,0 +1,234 @@
+package com.example.demo1.service.sse;
+
+import com.example.demo1.service.MqttTopics;
+import com.example.demo1.service.SseNotificationService;
+import com.example.demo1.service.ingest.TopicFamily;
+import com.example.demo1.service.presence.PresenceTracker;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttCallbackExtended;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 经 MQTT Broker 转发的 SSE 事件总线（默认实现），不需要额外的基础设施。
+ * <p>
+ * 每个节点用一个独立的异步连接普通订阅（非共享）{@code sse.event-bus.topic}，因此每个节点都收到全部总线消息。
+ * 只有来自共享订阅主题（{@code mqtt.consumer.shared-topics}）的事件才需要转发：其余主题每个节点都直接订阅了，
+ * 转发反而会重复。节点忽略自己发出的消息，并用 {@link SseEventDeduplicator} 按 (来源节点, 序号) 去重。
+ * <p>
+ * 发布不等待 Broker 确认；在途消息超过 {@code sse.event-bus.max-inflight} 时丢弃事件并计数
+ * （SSE 推送本身也是尽力而为，断线客户端可通过 Last-Event-ID / 快照补齐）。
+ */
+@Service
+@ConditionalOnProperty(name = "sse.event-bus.type", havingValue = "mqtt", matchIfMissing = true)
+@DependsOn("embeddedMqttBroker")
+public class MqttSseEventBus implements SseEventBus {
+
+    private static final Logger logger = LoggerFactory.getLogger(MqttSseEventBus.class);
+
+    /**
+     * 总线消息: 来源节点、来源内的序号和事件内容。
+     */
+    record BusMessage(String origin, long seq, String event, String topic, String deviceUid, String data) {
+    }
+
+    @Autowired
+    private SseNotificationService sseNotificationService;
+
+    @Autowired
+    private PresenceTracker presenceTracker;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${mqtt.broker-url:tcp://localhost:1883}")
+    private String brokerUrl;
+
+    @Value("${mqtt.client-id:spring-boot-client-sse}")
+    private String clientId;
+
+    @Value("${mqtt.consumer.shared-group:demo1}")
+    private String sharedGroup;
+
+    @Value("${mqtt.consumer.shared-topics:device/report/#}")
+    private List<String> sharedTopics;
+
+    @Value("${sse.event-bus.topic:demo1/sse-bus}")
+    private String busTopic;
+
+    @Value("${sse.event-bus.max-inflight:1000}")
+    private int maxInflight;
+
+    private final String nodeId = UUID.randomUUID().toString().substring(0, 8);
+    private final AtomicLong nextSeq = new AtomicLong();
+    private final SseEventDeduplicator deduplicator = new SseEventDeduplicator();
+
+    private MqttAsyncClient client;
+    private boolean forwarding;
+
+    private Counter published;
+    private Counter received;
+    private Counter duplicates;
+    private Counter dropped;
+
+    @PostConstruct
+    public void start() {
+        published = Counter.builder("sse.bus.published").description("转发给其他节点的事件数").register(meterRegistry);
+        received = Counter.builder("sse.bus.received").description("从其他节点收到并推送的事件数").register(meterRegistry);
+        duplicates = Counter.builder("sse.bus.duplicates").description("被去重丢弃的总线事件数").register(meterRegistry);
+        dropped = Counter.builder("sse.bus.dropped").description("未能发布到总线的事件数").register(meterRegistry);
+        // 没有共享订阅时每个节点都收到全部 MQTT 消息，无需转发
+        forwarding = sharedGroup != null && !sharedGroup.isBlank() && !sharedTopics.isEmpty();
+        if (!forwarding) {
+            logger.info("未使用共享订阅，SSE 事件总线不转发事件");
+            return;
+        }
+        try {
+            client = new MqttAsyncClient(brokerUrl, clientId + "-" + nodeId + "-bus", new MemoryPersistence());
+            client.setCallback(new MqttCallbackExtended() {
+                @Override
+                public void connectComplete(boolean reconnect, String serverURI) {
+                    // clean session 重连后订阅已丢失，需要重新订阅
+                    subscribe();
+                }
+
+                @Override
+                public void connectionLost(Throwable cause) {
+                    logger.warn("SSE 事件总线连接丢失: {}", cause.getMessage());
+                }
+
+                @Override
+                public void messageArrived(String topic, MqttMessage message) {
+                    onBusMessage(message.getPayload());
+                }
+
+                @Override
+                public void deliveryComplete(IMqttDeliveryToken token) {
+                }
+            });
+            MqttConnectOptions options = new MqttConnectOptions();
+            options.setCleanSession(true);
+            options.setAutomaticReconnect(true);
+            options.setMaxInflight(maxInflight);
+            client.connect(options).waitForCompletion(10_000);
+            logger.info("SSE 事件总线已连接: 节点 {}, 主题 {}", nodeId, busTopic);
+        } catch (MqttException e) {
+            logger.error("SSE 事件总线连接失败，事件只推送给本节点的连接: {}", e.getMessage(), e);
+        }
+    }
+
+    private void subscribe() {
+        try {
+            client.subscribe(busTopic, 1);
+        } catch (MqttException e) {
+            logger.error("订阅 SSE 事件总线主题 {} 失败: {}", busTopic, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (client == null) {
+            return;
+        }
+        try {
+            client.disconnectForcibly(1000);
+            client.close();
+        } catch (MqttException e) {
+            logger.debug("关闭 SSE 事件总线连接时出错: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void publish(String eventName, String data, String topic, String deviceUid) {
+        if (client == null || topic == null || !isShared(topic)) {
+            return;
+        }
+        try {
+            byte[] payload = objectMapper.writeValueAsBytes(
+                    new BusMessage(nodeId, nextSeq.incrementAndGet(), eventName, topic, deviceUid, data));
+            client.publish(busTopic, payload, 1, false);
+            published.increment();
+        } catch (Exception e) {
+            // 未连接或在途消息过多
+            dropped.increment();
+            logger.debug("发布 SSE 总线事件失败 ({}): {}", topic, e.getMessage());
+        }
+    }
+
+    private boolean isShared(String topic) {
+        for (String filter : sharedTopics) {
+            if (MqttTopics.matches(filter, topic)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void onBusMessage(byte[] payload) {
+        BusMessage message;
+        try {
+            message = objectMapper.readValue(payload, BusMessage.class);
+        } catch (Exception e) {
+            logger.warn("无法解析 SSE 总线消息: {}", e.getMessage());
+            return;
+        }
+        if (nodeId.equals(message.origin())) {
+            return; // 本节点发出的事件已在本地推送过
+        }
+        if (!deduplicator.accept(message.origin(), message.seq())) {
+            duplicates.increment();
+            return;
+        }
+        received.increment();
+        // 其他节点处理的设备上报（共享订阅分摊到其他节点）同样说明设备在线。状态事件可能是 offline，
+        // 也可能是其他节点的在线检测自己发出的超时事件，不计入
+        if (message.topic() != null && TopicFamily.of(message.topic()) == TopicFamily.REPORT) {
+            presenceTracker.touch(message.deviceUid());
+        }
+        sseNotificationService.sendDeviceEvent(message.event(), message.data(), message.topic(), message.deviceUid());
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("type", "mqtt");
+        stats.put("nodeId", nodeId);
+        stats.put("forwarding", forwarding);
+        stats.put("connected", client != null && client.isConnected());
+        stats.put("topic", busTopic);
+        stats.put("published", (long) published.count());
+        stats.put("received", (long) received.count());
+        stats.put("duplicates", (long) duplicates.count());
+        stats.put("dropped", (long) dropped.count());
+        stats.put("origins", deduplicator.origins());
+        return stats;
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.demo1.service.sse;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 单节点部署使用的空总线（{@code sse.event-bus.type=none}）：事件只推送给本节点的连接。
+ */
+@Service
+@ConditionalOnProperty(name = "sse.event-bus.type", havingValue = "none")
+public class NoopSseEventBus implements SseEventBus {
+
+    @Override
+    public void publish(String eventName, String data, String topic, String deviceUid) {
+        // 单节点，无需转发
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("type", "none");
+        return stats;
+    }
+}
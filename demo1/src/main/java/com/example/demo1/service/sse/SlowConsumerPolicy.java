@@ -0,0 +1,13 @@
+package com.example.demo1.service.sse;
+
+/**
+ * SSE 客户端发送队列写满（客户端消费过慢）时的处理策略。
+ */
+public enum SlowConsumerPolicy {
+    /** 丢弃新事件，已排队的事件照常发送 */
+    DROP,
+    /** 同一主题只保留最新一条：替换队列中该主题尚未发送的事件，没有可替换的则丢弃最旧的事件 */
+    CONFLATE,
+    /** 断开该客户端，由浏览器 EventSource 自行重连 */
+    DISCONNECT
+}
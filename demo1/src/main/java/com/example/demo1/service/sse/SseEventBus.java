@@ -0,0 +1,21 @@
+package com.example.demo1.service.sse;
+
+import java.util.Map;
+
+/**
+ * 节点间的 SSE 事件总线。
+ * <p>
+ * MQTT 消息经共享订阅在多个 demo1 节点之间分摊后，每条消息只由一个节点解析；该节点把推送事件发布到总线，
+ * 其他节点收到后推送给各自本地的 SSE 连接，浏览器无论连到哪个节点都能收到全部事件。
+ * 实现由 {@code sse.event-bus.type} 选择: {@code mqtt}（默认，经 MQTT Broker 转发，见 {@link MqttSseEventBus}）
+ * 或 {@code none}（单节点部署）。
+ */
+public interface SseEventBus {
+
+    /**
+     * 把本节点已推送给本地客户端的设备事件转发给其他节点；不需要转发的事件（例如每个节点都会收到的主题）由实现忽略。
+     */
+    void publish(String eventName, String data, String topic, String deviceUid);
+
+    Map<String, Object> getStats();
+}
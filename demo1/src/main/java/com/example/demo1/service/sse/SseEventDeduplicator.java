@@ -0,0 +1,48 @@
+package com.example.demo1.service.sse;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 按来源节点去重总线事件。每个节点为自己发布的事件分配递增序号，接收方为每个来源保留
+ * 已见过的最大序号和其之前 {@value #WINDOW} 个序号的位图（滑动窗口），
+ * 重复投递（QoS 1 重传、重连后重复订阅）和过旧的事件都会被拒绝；内存占用与事件数量无关。
+ */
+public class SseEventDeduplicator {
+
+    static final int WINDOW = 64;
+
+    private static final class Window {
+        long highest = -1;
+        long seen; // 第 i 位表示序号 highest - i 已见过
+    }
+
+    private final Map<String, Window> windows = new HashMap<>();
+
+    /**
+     * @return true 表示首次见到该事件，应当处理
+     */
+    public synchronized boolean accept(String origin, long seq) {
+        Window window = windows.computeIfAbsent(origin, o -> new Window());
+        if (seq > window.highest) {
+            long shift = seq - window.highest;
+            window.seen = shift >= WINDOW ? 1 : (window.seen << shift) | 1;
+            window.highest = seq;
+            return true;
+        }
+        long offset = window.highest - seq;
+        if (offset >= WINDOW) {
+            return false;
+        }
+        long bit = 1L << offset;
+        if ((window.seen & bit) != 0) {
+            return false;
+        }
+        window.seen |= bit;
+        return true;
+    }
+
+    public synchronized int origins() {
+        return windows.size();
+    }
+}
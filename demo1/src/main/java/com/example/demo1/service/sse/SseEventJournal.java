@@ -0,0 +1,87 @@
+package com.example.demo1.service.sse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 已推送事件的有界日志（环形缓冲区），为每个事件分配单调递增的 ID。
+ * <p>
+ * 浏览器 EventSource 重连时会带上 {@code Last-Event-ID}，据此从日志中重放断线期间错过的事件；
+ * 断线太久、所需事件已被覆盖时由调用方改为发送完整快照。
+ * 所有方法在对象锁内执行，调用方也可以持有该锁，在分配 ID 的间隙完成"登记订阅 + 重放"。
+ */
+public class SseEventJournal {
+
+    /**
+     * 一条日志记录；broadcast 为 true 的事件推送给所有连接，不受订阅条件限制。
+     */
+    public record Entry(long id, String topic, String deviceUid, boolean broadcast, SseFrame frame) {
+    }
+
+    private final Entry[] ring;
+    private long lastId;
+    private int size;
+    private int head; // 下一个写入位置
+
+    /**
+     * @param initialId 起始 ID（第一个事件为 initialId + 1）。以启动时间为基数可保证重启后 ID 仍然递增，
+     *                  旧进程分配的 ID 会被识别为缺口而不是被误认为"已是最新"
+     */
+    public SseEventJournal(int capacity, long initialId) {
+        this.ring = new Entry[Math.max(1, capacity)];
+        this.lastId = initialId;
+    }
+
+    /**
+     * 分配下一个事件 ID，编码事件帧并写入日志。
+     * 帧以主题为合并键：只有同一主题（同一设备的同一类事件）的新事件才能替换旧事件，
+     * 例如排队中的 device/status 不会被之后的 device/report 覆盖；没有主题的事件不合并。
+     */
+    public synchronized Entry append(String eventName, String data, String topic, String deviceUid, boolean broadcast) {
+        long id = ++lastId;
+        Entry entry = new Entry(id, topic, deviceUid, broadcast, SseFrame.encode(id, eventName, data, topic));
+        ring[head] = entry;
+        head = (head + 1) % ring.length;
+        if (size < ring.length) {
+            size++;
+        }
+        return entry;
+    }
+
+    public synchronized long lastId() {
+        return lastId;
+    }
+
+    /**
+     * 返回 ID 大于 afterId 的全部事件（按 ID 升序）。
+     * 所需事件已被覆盖（缺口超出日志范围）或 afterId 不是本日志分配的 ID 时返回 null；
+     * afterId 等于最新 ID 时返回空列表。
+     */
+    public synchronized List<Entry> since(long afterId) {
+        if (afterId == lastId) {
+            return List.of();
+        }
+        if (afterId > lastId) {
+            return null;
+        }
+        long oldestId = lastId - size + 1;
+        if (afterId < oldestId - 1) {
+            return null;
+        }
+        int count = (int) (lastId - afterId);
+        List<Entry> result = new ArrayList<>(count);
+        int start = Math.floorMod(head - count, ring.length);
+        for (int i = 0; i < count; i++) {
+            result.add(ring[(start + i) % ring.length]);
+        }
+        return result;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return ring.length;
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.demo1.service.sse;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+/**
+ * 编码完成的 SSE 事件帧。每个事件只编码一次，同一份字节被所有目标客户端共享，
+ * 发送时直接写出，不再为每个客户端重复构建 SseEventBuilder 和做消息转换。
+ */
+public final class SseFrame {
+
+    private final long id;
+    private final String eventName;
+    private final String conflationKey;
+    private final long createdAt;
+    private final Set<ResponseBodyEmitter.DataWithMediaType> content;
+
+    private SseFrame(long id, String eventName, String conflationKey, byte[] bytes) {
+        this.id = id;
+        this.eventName = eventName;
+        this.conflationKey = conflationKey;
+        this.createdAt = System.nanoTime();
+        this.content = Set.of(new ResponseBodyEmitter.DataWithMediaType(bytes, MediaType.TEXT_PLAIN));
+    }
+
+    /**
+     * 按 SSE 文本格式编码: {@code event:<name>\ndata:<line>\n...\n\n}，多行数据拆成多个 data 行。
+     *
+     * @param conflationKey 合并键（通常为事件主题），CONFLATE 策略下同键的旧事件可被替换；为 null 表示不可合并
+     */
+    public static SseFrame encode(String eventName, String data, String conflationKey) {
+        return encode(0, eventName, data, conflationKey);
+    }
+
+    /**
+     * 编码带事件 ID 的帧（先输出 {@code id:<id>} 行），浏览器会在重连时通过 Last-Event-ID 带回最后收到的 ID。
+     * id 为 0 表示不带 ID。
+     */
+    public static SseFrame encode(long id, String eventName, String data, String conflationKey) {
+        StringBuilder sb = new StringBuilder(data.length() + eventName.length() + 32);
+        if (id > 0) {
+            sb.append("id:").append(id).append('\n');
+        }
+        sb.append("event:").append(eventName).append('\n');
+        int start = 0;
+        while (true) {
+            int end = data.indexOf('\n', start);
+            if (end < 0) {
+                sb.append("data:").append(data, start, data.length()).append('\n');
+                break;
+            }
+            sb.append("data:").append(data, start, end).append('\n');
+            start = end + 1;
+        }
+        sb.append('\n');
+        return new SseFrame(id, eventName, conflationKey, sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getEventName() {
+        return eventName;
+    }
+
+    public String getConflationKey() {
+        return conflationKey;
+    }
+
+    /**
+     * 事件创建时刻（System.nanoTime），用于计算客户端延迟。
+     */
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public Set<ResponseBodyEmitter.DataWithMediaType> getContent() {
+        return content;
+    }
+}
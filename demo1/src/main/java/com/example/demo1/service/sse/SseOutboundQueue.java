@@ -0,0 +1,156 @@
+package com.example.demo1.service.sse;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 单个 SSE 客户端的有界发送队列，由写线程池异步排空。
+ * <p>
+ * 生产者（推送线程）只入队，不做任何网络 IO；队列写满时按 {@link SlowConsumerPolicy} 处理，
+ * 慢客户端只影响自己的队列。同时记录该客户端的排队深度、丢弃/合并数量和发送延迟。
+ */
+public class SseOutboundQueue {
+
+    /**
+     * 队列中的一个位置；按身份比较，CONFLATE 策略下据此从队列中间移除被替换的位置。
+     */
+    private static final class Slot {
+        final SseFrame frame;
+
+        Slot(SseFrame frame) {
+            this.frame = frame;
+        }
+    }
+
+    /**
+     * 入队结果。
+     */
+    public enum OfferResult {
+        QUEUED, CONFLATED, DROPPED, OVERFLOW
+    }
+
+    private final int capacity;
+    private final SlowConsumerPolicy policy;
+    private final ArrayDeque<Slot> queue;
+    private final HashMap<String, Slot> slotsByKey = new HashMap<>();
+    // 是否已有写线程任务在排空（或已提交排空任务），保证同一客户端同一时刻只有一个写线程
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    private long enqueued;
+    private long sent;
+    private long dropped;
+    private long conflated;
+    private int highWaterMark;
+    private long lastLagNanos;
+    private long maxLagNanos;
+
+    public SseOutboundQueue(int capacity, SlowConsumerPolicy policy) {
+        this.capacity = capacity;
+        this.policy = policy;
+        this.queue = new ArrayDeque<>(Math.min(capacity, 64));
+    }
+
+    public synchronized OfferResult offer(SseFrame frame) {
+        String key = frame.getConflationKey();
+        if (queue.size() >= capacity) {
+            switch (policy) {
+                case DROP -> {
+                    dropped++;
+                    return OfferResult.DROPPED;
+                }
+                case DISCONNECT -> {
+                    dropped++;
+                    return OfferResult.OVERFLOW;
+                }
+                case CONFLATE -> {
+                    Slot existing = key == null ? null : slotsByKey.remove(key);
+                    if (existing != null) {
+                        // 移除旧事件并把新事件排到队尾，而不是原位替换：保证队列中的事件 ID 始终递增，
+                        // 客户端重连时带回的 Last-Event-ID 之前不会有尚未收到的事件（O(capacity)，只在队列已满时发生）
+                        queue.removeFirstOccurrence(existing);
+                        Slot slot = new Slot(frame);
+                        queue.addLast(slot);
+                        slotsByKey.put(key, slot);
+                        conflated++;
+                        return OfferResult.CONFLATED;
+                    }
+                    Slot oldest = queue.pollFirst();
+                    forget(oldest);
+                    dropped++;
+                }
+            }
+        }
+        Slot slot = new Slot(frame);
+        queue.addLast(slot);
+        if (key != null && policy == SlowConsumerPolicy.CONFLATE) {
+            slotsByKey.put(key, slot);
+        }
+        enqueued++;
+        highWaterMark = Math.max(highWaterMark, queue.size());
+        return OfferResult.QUEUED;
+    }
+
+    public synchronized SseFrame poll() {
+        Slot slot = queue.pollFirst();
+        if (slot == null) {
+            return null;
+        }
+        forget(slot);
+        return slot.frame;
+    }
+
+    private void forget(Slot slot) {
+        String key = slot.frame.getConflationKey();
+        if (key != null) {
+            slotsByKey.remove(key, slot);
+        }
+    }
+
+    /**
+     * 记录一次成功发送及其延迟（从事件创建到写出）。
+     */
+    public synchronized void recordSent(SseFrame frame) {
+        sent++;
+        lastLagNanos = System.nanoTime() - frame.getCreatedAt();
+        maxLagNanos = Math.max(maxLagNanos, lastLagNanos);
+    }
+
+    public synchronized int depth() {
+        return queue.size();
+    }
+
+    public synchronized void clear() {
+        queue.clear();
+        slotsByKey.clear();
+    }
+
+    /**
+     * 尝试获得排空权；返回 true 的调用方负责提交排空任务。
+     */
+    public boolean tryStartDrain() {
+        return draining.compareAndSet(false, true);
+    }
+
+    public void finishDrain() {
+        draining.set(false);
+    }
+
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("policy", policy);
+        stats.put("capacity", capacity);
+        stats.put("depth", queue.size());
+        stats.put("highWaterMark", highWaterMark);
+        stats.put("enqueued", enqueued);
+        stats.put("sent", sent);
+        stats.put("dropped", dropped);
+        stats.put("conflated", conflated);
+        stats.put("lastLagMs", TimeUnit.NANOSECONDS.toMillis(lastLagNanos));
+        stats.put("maxLagMs", TimeUnit.NANOSECONDS.toMillis(maxLagNanos));
+        return stats;
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.demo1.service.sse;
+
+/**
+ * SSE 连接的推送模式。
+ */
+public enum SseStreamMode {
+    /** 逐条推送每一条 MQTT 消息 */
+    STREAM,
+    /** 只推送最新状态：按主题（设备 + 消息类型）合并，按固定间隔批量推送有变化的条目 */
+    LATEST
+}
@@ -0,0 +1,104 @@
+package com.example.demo1.service.sse;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一个 SSE 连接及其订阅条件和发送队列。
+ */
+public class SseSubscription {
+
+    private static final AtomicLong ID_SEQUENCE = new AtomicLong();
+
+    private final long id;
+    private final SseEmitter emitter;
+    private final SubscriptionFilter filter;
+    private final SseOutboundQueue outbound;
+    private final long connectedAt;
+    private final SseStreamMode mode;
+    private final long intervalMs;
+    // LATEST 模式: 自上次推送以来有新值的主题
+    private final Set<String> dirtyTopics;
+    private volatile long lastFlushAt;
+    // 登记时日志中的最新事件 ID，不早于该 ID 的实时事件已通过重放（或不需要）发送，直接跳过
+    private volatile long startAfterId;
+
+    public SseSubscription(SseEmitter emitter, SubscriptionFilter filter, SseOutboundQueue outbound) {
+        this(emitter, filter, outbound, SseStreamMode.STREAM, 0);
+    }
+
+    public SseSubscription(SseEmitter emitter, SubscriptionFilter filter, SseOutboundQueue outbound,
+                           SseStreamMode mode, long intervalMs) {
+        this.id = ID_SEQUENCE.incrementAndGet();
+        this.emitter = emitter;
+        this.filter = filter;
+        this.outbound = outbound;
+        this.connectedAt = System.currentTimeMillis();
+        this.mode = mode;
+        this.intervalMs = intervalMs;
+        this.dirtyTopics = mode == SseStreamMode.LATEST ? ConcurrentHashMap.newKeySet() : Set.of();
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public SseEmitter getEmitter() {
+        return emitter;
+    }
+
+    public SubscriptionFilter getFilter() {
+        return filter;
+    }
+
+    public SseOutboundQueue getOutbound() {
+        return outbound;
+    }
+
+    public long getConnectedAt() {
+        return connectedAt;
+    }
+
+    public SseStreamMode getMode() {
+        return mode;
+    }
+
+    public long getIntervalMs() {
+        return intervalMs;
+    }
+
+    public long getStartAfterId() {
+        return startAfterId;
+    }
+
+    public void setStartAfterId(long startAfterId) {
+        this.startAfterId = startAfterId;
+    }
+
+    public void markDirty(String topic) {
+        dirtyTopics.add(topic);
+    }
+
+    public Set<String> getDirtyTopics() {
+        return dirtyTopics;
+    }
+
+    /**
+     * 距上次批量推送是否已超过推送间隔。
+     */
+    public boolean isFlushDue(long now) {
+        return now - lastFlushAt >= intervalMs;
+    }
+
+    public void markFlushed(long now) {
+        this.lastFlushAt = now;
+    }
+
+    @Override
+    public String toString() {
+        return "SseSubscription#" + id + " " + filter;
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.demo1.service.sse;
+
+import com.example.demo1.service.TopicTrie;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * SSE 订阅索引：主题过滤器放在 {@link TopicTrie} 中，设备 UID 和设备类型使用哈希索引，
+ * 无过滤条件的连接单独存放。匹配一个事件只需查这几个索引，不再逐个检查所有连接。
+ */
+public class SseSubscriptionIndex {
+
+    private final TopicTrie<SseSubscription> topicIndex = new TopicTrie<>();
+    private final ConcurrentHashMap<String, Set<SseSubscription>> deviceIndex = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<SseSubscription>> typeIndex = new ConcurrentHashMap<>();
+    private final Set<SseSubscription> matchAll = ConcurrentHashMap.newKeySet();
+
+    public synchronized void add(SseSubscription subscription) {
+        SubscriptionFilter filter = subscription.getFilter();
+        if (filter.isMatchAll()) {
+            matchAll.add(subscription);
+            return;
+        }
+        filter.getTopicFilters().forEach(topic -> topicIndex.add(topic, subscription));
+        filter.getDeviceUids().forEach(uid ->
+                deviceIndex.computeIfAbsent(uid, k -> ConcurrentHashMap.newKeySet()).add(subscription));
+        filter.getDeviceTypes().forEach(type ->
+                typeIndex.computeIfAbsent(type, k -> ConcurrentHashMap.newKeySet()).add(subscription));
+    }
+
+    public synchronized void remove(SseSubscription subscription) {
+        SubscriptionFilter filter = subscription.getFilter();
+        if (filter.isMatchAll()) {
+            matchAll.remove(subscription);
+            return;
+        }
+        filter.getTopicFilters().forEach(topic -> topicIndex.remove(topic, subscription));
+        filter.getDeviceUids().forEach(uid -> removeFrom(deviceIndex, uid, subscription));
+        filter.getDeviceTypes().forEach(type -> removeFrom(typeIndex, type, subscription));
+    }
+
+    private static void removeFrom(ConcurrentHashMap<String, Set<SseSubscription>> index, String key,
+                                   SseSubscription subscription) {
+        Set<SseSubscription> set = index.get(key);
+        if (set != null && set.remove(subscription) && set.isEmpty()) {
+            index.remove(key, set);
+        }
+    }
+
+    /**
+     * 找出对该设备事件感兴趣的所有连接（去重）。
+     * 设备类型只在存在按类型订阅的连接时才解析，避免无谓的查询。
+     */
+    public Set<SseSubscription> match(String topic, String deviceUid, Supplier<String> deviceType) {
+        Set<SseSubscription> result = new HashSet<>(matchAll);
+        if (topic != null) {
+            topicIndex.match(topic, result::add);
+        }
+        if (deviceUid != null) {
+            Set<SseSubscription> byDevice = deviceIndex.get(deviceUid);
+            if (byDevice != null) {
+                result.addAll(byDevice);
+            }
+            if (!typeIndex.isEmpty()) {
+                String type = deviceType.get();
+                Set<SseSubscription> byType = type == null ? null : typeIndex.get(type);
+                if (byType != null) {
+                    result.addAll(byType);
+                }
+            }
+        }
+        return result;
+    }
+}
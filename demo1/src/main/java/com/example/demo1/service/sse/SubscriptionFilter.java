@@ -0,0 +1,109 @@
+package com.example.demo1.service.sse;
+
+import com.example.demo1.service.MqttTopics;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * SSE 客户端的订阅条件。三类条件之间是"或"关系：
+ * 主题匹配任一 MQTT 过滤器（支持 + / # 通配符）、设备 UID 在列表中、或设备类型在列表中。
+ * 三类都为空表示接收全部事件。
+ */
+public final class SubscriptionFilter {
+
+    public static final SubscriptionFilter ALL = new SubscriptionFilter(List.of(), Set.of(), Set.of());
+
+    private final List<String> topicFilters;
+    private final Set<String> deviceUids;
+    private final Set<String> deviceTypes;
+
+    private SubscriptionFilter(List<String> topicFilters, Set<String> deviceUids, Set<String> deviceTypes) {
+        this.topicFilters = topicFilters;
+        this.deviceUids = deviceUids;
+        this.deviceTypes = deviceTypes;
+    }
+
+    /**
+     * 由请求参数构建过滤条件，忽略空白项。
+     *
+     * @throws IllegalArgumentException 主题过滤器格式不合法
+     */
+    public static SubscriptionFilter of(Collection<String> topics, Collection<String> devices, Collection<String> types) {
+        List<String> topicFilters = clean(topics).stream().toList();
+        for (String filter : topicFilters) {
+            if (!MqttTopics.isValidFilter(filter)) {
+                throw new IllegalArgumentException("Invalid topic filter: " + filter);
+            }
+        }
+        return new SubscriptionFilter(topicFilters, clean(devices), clean(types));
+    }
+
+    private static Set<String> clean(Collection<String> values) {
+        if (values == null) {
+            return Set.of();
+        }
+        return values.stream()
+                .filter(v -> v != null && !v.isBlank())
+                .map(String::trim)
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    public boolean isMatchAll() {
+        return topicFilters.isEmpty() && deviceUids.isEmpty() && deviceTypes.isEmpty();
+    }
+
+    /**
+     * 逐条判断事件是否符合条件（用于不经过订阅索引的场景，例如新连接的初始快照）。
+     */
+    public boolean matches(String topic, String deviceUid, Supplier<String> deviceType) {
+        if (isMatchAll()) {
+            return true;
+        }
+        for (String filter : topicFilters) {
+            if (topic != null && MqttTopics.matches(filter, topic)) {
+                return true;
+            }
+        }
+        if (deviceUid != null) {
+            if (deviceUids.contains(deviceUid)) {
+                return true;
+            }
+            if (!deviceTypes.isEmpty()) {
+                String type = deviceType.get();
+                return type != null && deviceTypes.contains(type);
+            }
+        }
+        return false;
+    }
+
+    public List<String> getTopicFilters() {
+        return topicFilters;
+    }
+
+    public Set<String> getDeviceUids() {
+        return deviceUids;
+    }
+
+    public Set<String> getDeviceTypes() {
+        return deviceTypes;
+    }
+
+    public Map<String, Object> describe() {
+        Map<String, Object> description = new LinkedHashMap<>();
+        description.put("topics", topicFilters);
+        description.put("devices", deviceUids);
+        description.put("types", deviceTypes);
+        return description;
+    }
+
+    @Override
+    public String toString() {
+        return isMatchAll() ? "ALL" : describe().toString();
+    }
+}
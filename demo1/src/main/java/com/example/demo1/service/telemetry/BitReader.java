@@ -0,0 +1,38 @@
+package com.example.demo1.service.telemetry;
+
+/**
+ * 按位读取 {@link BitWriter} 产生的字节数组（高位在前）。
+ */
+final class BitReader {
+
+    private final byte[] data;
+    private int position;
+
+    BitReader(byte[] data) {
+        this.data = data;
+    }
+
+    boolean readBit() {
+        int b = data[position >>> 3] & 0xFF;
+        boolean bit = ((b >>> (7 - (position & 7))) & 1) != 0;
+        position++;
+        return bit;
+    }
+
+    /**
+     * 读取 nbits 位（0..64），作为无符号值放在返回值的低位。
+     */
+    long readBits(int nbits) {
+        long result = 0;
+        while (nbits > 0) {
+            int available = 8 - (position & 7);
+            int take = Math.min(available, nbits);
+            int b = data[position >>> 3] & 0xFF;
+            int bits = (b >>> (available - take)) & ((1 << take) - 1);
+            result = (result << take) | bits;
+            position += take;
+            nbits -= take;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.demo1.service.telemetry;
+
+import java.util.Arrays;
+
+/**
+ * 按位追加写入的缓冲区（高位在前），底层是可扩容的 long 数组。
+ */
+final class BitWriter {
+
+    private long[] words;
+    private int bitLength;
+
+    BitWriter(int initialWords) {
+        this.words = new long[Math.max(1, initialWords)];
+    }
+
+    void writeBit(boolean bit) {
+        writeBits(bit ? 1L : 0L, 1);
+    }
+
+    /**
+     * 写入 value 的低 nbits 位（1..64）。
+     */
+    void writeBits(long value, int nbits) {
+        if (nbits <= 0) {
+            return;
+        }
+        ensureCapacity(bitLength + nbits);
+        long v = nbits == 64 ? value : value & ((1L << nbits) - 1);
+        int wordIndex = bitLength >>> 6;
+        int free = 64 - (bitLength & 63);
+        if (nbits <= free) {
+            words[wordIndex] |= v << (free - nbits);
+        } else {
+            int spill = nbits - free;
+            words[wordIndex] |= v >>> spill;
+            words[wordIndex + 1] |= v << (64 - spill);
+        }
+        bitLength += nbits;
+    }
+
+    private void ensureCapacity(int bits) {
+        int needed = (bits + 63) >>> 6;
+        if (needed > words.length) {
+            words = Arrays.copyOf(words, Math.max(needed, words.length * 2));
+        }
+    }
+
+    int bitLength() {
+        return bitLength;
+    }
+
+    int byteLength() {
+        return (bitLength + 7) >>> 3;
+    }
+
+    byte[] toByteArray() {
+        byte[] bytes = new byte[byteLength()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (words[i >>> 3] >>> (56 - ((i & 7) << 3)));
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.demo1.service.telemetry;
+
+import java.util.Arrays;
+
+/**
+ * 正在写入的列式数据块。数据在追加时即被流式压缩，内存中只保留压缩后的位流。
+ * 非线程安全，由所属的设备序列加锁保护。
+ */
+final class ChunkBuilder {
+
+    final String deviceUid;
+    final String[] metrics;
+    final long createdAt;
+
+    private final BitWriter timestampBits;
+    private final GorillaCodec.TimestampEncoder timestampEncoder;
+    private final BitWriter[] valueBits;
+    private final GorillaCodec.ValueEncoder[] valueEncoders;
+    private int count;
+    private long minTimestamp = Long.MAX_VALUE;
+    private long maxTimestamp = Long.MIN_VALUE;
+
+    ChunkBuilder(String deviceUid, String[] metrics, long createdAt) {
+        this.deviceUid = deviceUid;
+        this.metrics = metrics;
+        this.createdAt = createdAt;
+        this.timestampBits = new BitWriter(4);
+        this.timestampEncoder = new GorillaCodec.TimestampEncoder(timestampBits);
+        this.valueBits = new BitWriter[metrics.length];
+        this.valueEncoders = new GorillaCodec.ValueEncoder[metrics.length];
+        for (int i = 0; i < metrics.length; i++) {
+            valueBits[i] = new BitWriter(4);
+            valueEncoders[i] = new GorillaCodec.ValueEncoder(valueBits[i]);
+        }
+    }
+
+    /** 指标集合相同才能写入同一个块（列结构固定） */
+    boolean accepts(String[] otherMetrics) {
+        return Arrays.equals(metrics, otherMetrics);
+    }
+
+    void append(long timestamp, double[] values) {
+        timestampEncoder.append(timestamp);
+        for (int i = 0; i < valueEncoders.length; i++) {
+            valueEncoders[i].append(values[i]);
+        }
+        count++;
+        minTimestamp = Math.min(minTimestamp, timestamp);
+        maxTimestamp = Math.max(maxTimestamp, timestamp);
+    }
+
+    int count() {
+        return count;
+    }
+
+    int encodedBytes() {
+        int bytes = timestampBits.byteLength();
+        for (BitWriter column : valueBits) {
+            bytes += column.byteLength();
+        }
+        return bytes;
+    }
+
+    /** 生成当前内容的不可变快照（用于封存或查询尚未封存的数据） */
+    EncodedChunk encode() {
+        byte[][] columns = new byte[valueBits.length][];
+        for (int i = 0; i < valueBits.length; i++) {
+            columns[i] = valueBits[i].toByteArray();
+        }
+        return new EncodedChunk(deviceUid, metrics, count, minTimestamp, maxTimestamp,
+                timestampBits.toByteArray(), columns);
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.demo1.service.telemetry;
+
+/**
+ * 已封存数据块的索引项：只保存元信息和在段文件中的位置，数据按需从映射内存中读取。
+ */
+final class ChunkRef {
+
+    final SegmentFile segment;
+    final int offset;
+    final int length;
+    final String[] metrics;
+    final int count;
+    final long minTimestamp;
+    final long maxTimestamp;
+
+    ChunkRef(SegmentFile segment, int offset, int length, EncodedChunk chunk) {
+        this.segment = segment;
+        this.offset = offset;
+        this.length = length;
+        this.metrics = chunk.metrics;
+        this.count = chunk.count;
+        this.minTimestamp = chunk.minTimestamp;
+        this.maxTimestamp = chunk.maxTimestamp;
+    }
+
+    boolean overlaps(long from, long to) {
+        return maxTimestamp >= from && minTimestamp <= to;
+    }
+
+    boolean hasMetric(String metric) {
+        for (String m : metrics) {
+            if (m.equals(metric)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    EncodedChunk load() {
+        return EncodedChunk.fromRecord(segment.read(offset, length));
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.demo1.service.telemetry;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 一个已编码的列式数据块：一列时间戳 + 每个指标一列数值，各列独立压缩。
+ * 同时负责块在段文件中的记录格式:
+ * <pre>
+ * int   记录长度（不含本字段）
+ * int   CRC32（覆盖长度字段和其后的内容，不含本字段）
+ * short deviceUid 长度, bytes
+ * short 指标数, 每个指标: short 长度, bytes
+ * int   点数
+ * long  最小时间戳, long 最大时间戳
+ * int   时间戳列长度, bytes
+ * 每个指标: int 数值列长度, bytes
+ * </pre>
+ */
+final class EncodedChunk {
+
+    final String deviceUid;
+    final String[] metrics;
+    final int count;
+    final long minTimestamp;
+    final long maxTimestamp;
+    final byte[] timestamps;
+    final byte[][] values;
+
+    EncodedChunk(String deviceUid, String[] metrics, int count, long minTimestamp, long maxTimestamp,
+                 byte[] timestamps, byte[][] values) {
+        this.deviceUid = deviceUid;
+        this.metrics = metrics;
+        this.count = count;
+        this.minTimestamp = minTimestamp;
+        this.maxTimestamp = maxTimestamp;
+        this.timestamps = timestamps;
+        this.values = values;
+    }
+
+    int indexOf(String metric) {
+        for (int i = 0; i < metrics.length; i++) {
+            if (metrics[i].equals(metric)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 解码时间戳列和指定指标列，把落在 [from, to] 内的点追加到结果中。
+     */
+    void decodeInto(int metricIndex, long from, long to, TelemetrySeries result) {
+        if (count == 0 || maxTimestamp < from || minTimestamp > to) {
+            return;
+        }
+        GorillaCodec.TimestampDecoder ts = new GorillaCodec.TimestampDecoder(new BitReader(timestamps));
+        GorillaCodec.ValueDecoder vs = new GorillaCodec.ValueDecoder(new BitReader(values[metricIndex]));
+        for (int i = 0; i < count; i++) {
+            long t = ts.next();
+            double v = vs.next();
+            if (t >= from && t <= to) {
+                result.add(t, v);
+            }
+        }
+    }
+
+    byte[] toRecord() {
+        byte[] uid = deviceUid.getBytes(StandardCharsets.UTF_8);
+        byte[][] names = new byte[metrics.length][];
+        int size = SegmentFile.HEADER_BYTES + 2 + uid.length + 2 + 4 + 8 + 8 + 4 + timestamps.length;
+        for (int i = 0; i < metrics.length; i++) {
+            names[i] = metrics[i].getBytes(StandardCharsets.UTF_8);
+            size += 2 + names[i].length + 4 + values[i].length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(size - 4);
+        buffer.putInt(0); // CRC 在内容写完后回填
+        buffer.putShort((short) uid.length).put(uid);
+        buffer.putShort((short) names.length);
+        for (byte[] name : names) {
+            buffer.putShort((short) name.length).put(name);
+        }
+        buffer.putInt(count).putLong(minTimestamp).putLong(maxTimestamp);
+        buffer.putInt(timestamps.length).put(timestamps);
+        for (byte[] column : values) {
+            buffer.putInt(column.length).put(column);
+        }
+        buffer.putInt(4, SegmentFile.checksum(buffer.array()));
+        return buffer.array();
+    }
+
+    /**
+     * 解析完整记录（含开头的长度和 CRC 字段）。
+     */
+    static EncodedChunk fromRecord(byte[] record) {
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        buffer.position(SegmentFile.HEADER_BYTES);
+        String uid = readString(buffer);
+        String[] metrics = new String[buffer.getShort()];
+        for (int i = 0; i < metrics.length; i++) {
+            metrics[i] = readString(buffer);
+        }
+        int count = buffer.getInt();
+        long min = buffer.getLong();
+        long max = buffer.getLong();
+        byte[] timestamps = new byte[buffer.getInt()];
+        buffer.get(timestamps);
+        byte[][] values = new byte[metrics.length][];
+        for (int i = 0; i < metrics.length; i++) {
+            values[i] = new byte[buffer.getInt()];
+            buffer.get(values[i]);
+        }
+        return new EncodedChunk(uid, metrics, count, min, max, timestamps, values);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.demo1.service.telemetry;
+
+/**
+ * Gorilla 风格的列编码：
+ * <ul>
+ *     <li>时间戳列：首个值原样写入，之后写 delta-of-delta，按大小使用 1/9/12/16/68 位的变长前缀编码；</li>
+ *     <li>数值列：首个值原样写入，之后写与上一个值的 XOR，复用上一次的前导/尾随零窗口。</li>
+ * </ul>
+ * 周期性上报（固定间隔、数值缓慢变化）的传感器数据通常每个点只需 1~2 字节。
+ */
+final class GorillaCodec {
+
+    private GorillaCodec() {
+    }
+
+    /** 判断有符号值能否用 n 位补码表示 */
+    private static boolean fits(long value, int bits) {
+        long min = -(1L << (bits - 1));
+        long max = (1L << (bits - 1)) - 1;
+        return value >= min && value <= max;
+    }
+
+    /** 把 n 位补码符号扩展为 long */
+    private static long signExtend(long value, int bits) {
+        int shift = 64 - bits;
+        return (value << shift) >> shift;
+    }
+
+    static final class TimestampEncoder {
+        private final BitWriter out;
+        private long previous;
+        private long previousDelta;
+        private int count;
+
+        TimestampEncoder(BitWriter out) {
+            this.out = out;
+        }
+
+        void append(long timestamp) {
+            if (count == 0) {
+                out.writeBits(timestamp, 64);
+            } else {
+                long delta = timestamp - previous;
+                long dod = delta - previousDelta;
+                if (dod == 0) {
+                    out.writeBit(false);
+                } else if (fits(dod, 7)) {
+                    out.writeBits(0b10, 2);
+                    out.writeBits(dod, 7);
+                } else if (fits(dod, 9)) {
+                    out.writeBits(0b110, 3);
+                    out.writeBits(dod, 9);
+                } else if (fits(dod, 12)) {
+                    out.writeBits(0b1110, 4);
+                    out.writeBits(dod, 12);
+                } else {
+                    out.writeBits(0b1111, 4);
+                    out.writeBits(dod, 64);
+                }
+                previousDelta = delta;
+            }
+            previous = timestamp;
+            count++;
+        }
+    }
+
+    static final class TimestampDecoder {
+        private final BitReader in;
+        private long previous;
+        private long previousDelta;
+        private int count;
+
+        TimestampDecoder(BitReader in) {
+            this.in = in;
+        }
+
+        long next() {
+            if (count++ == 0) {
+                previous = in.readBits(64);
+                return previous;
+            }
+            long dod;
+            if (!in.readBit()) {
+                dod = 0;
+            } else if (!in.readBit()) {
+                dod = signExtend(in.readBits(7), 7);
+            } else if (!in.readBit()) {
+                dod = signExtend(in.readBits(9), 9);
+            } else if (!in.readBit()) {
+                dod = signExtend(in.readBits(12), 12);
+            } else {
+                dod = in.readBits(64);
+            }
+            previousDelta += dod;
+            previous += previousDelta;
+            return previous;
+        }
+    }
+
+    static final class ValueEncoder {
+        private final BitWriter out;
+        private long previousBits;
+        private int previousLeading = -1;
+        private int previousTrailing;
+        private int count;
+
+        ValueEncoder(BitWriter out) {
+            this.out = out;
+        }
+
+        void append(double value) {
+            long bits = Double.doubleToRawLongBits(value);
+            if (count++ == 0) {
+                out.writeBits(bits, 64);
+                previousBits = bits;
+                return;
+            }
+            long xor = bits ^ previousBits;
+            previousBits = bits;
+            if (xor == 0) {
+                out.writeBit(false);
+                return;
+            }
+            int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+            int trailing = Long.numberOfTrailingZeros(xor);
+            if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+                // 有效位落在上一次的窗口内，只写窗口内的位
+                out.writeBits(0b10, 2);
+                out.writeBits(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+            } else {
+                int significant = 64 - leading - trailing;
+                out.writeBits(0b11, 2);
+                out.writeBits(leading, 5);
+                out.writeBits(significant - 1, 6); // 1..64 存为 0..63
+                out.writeBits(xor >>> trailing, significant);
+                previousLeading = leading;
+                previousTrailing = trailing;
+            }
+        }
+    }
+
+    static final class ValueDecoder {
+        private final BitReader in;
+        private long previousBits;
+        private int previousLeading;
+        private int previousTrailing;
+        private int count;
+
+        ValueDecoder(BitReader in) {
+            this.in = in;
+        }
+
+        double next() {
+            if (count++ == 0) {
+                previousBits = in.readBits(64);
+                return Double.longBitsToDouble(previousBits);
+            }
+            if (in.readBit()) {
+                if (in.readBit()) {
+                    previousLeading = (int) in.readBits(5);
+                    int significant = (int) in.readBits(6) + 1;
+                    previousTrailing = 64 - previousLeading - significant;
+                }
+                int significant = 64 - previousLeading - previousTrailing;
+                long xor = in.readBits(significant) << previousTrailing;
+                previousBits ^= xor;
+            }
+            return Double.longBitsToDouble(previousBits);
+        }
+    }
+}
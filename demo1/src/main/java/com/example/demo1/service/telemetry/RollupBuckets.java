@@ -0,0 +1,101 @@
+package com.example.demo1.service.telemetry;
+
+import java.util.Arrays;
+
+/**
+ * 单个序列在某一粒度下的聚合桶，按桶起始时间升序存放在并行的基本类型数组中。
+ * 非线程安全，由调用方加锁。
+ */
+final class RollupBuckets {
+
+    private long[] starts = new long[8];
+    private double[] mins = new double[8];
+    private double[] maxs = new double[8];
+    private double[] sums = new double[8];
+    private long[] counts = new long[8];
+    private int size;
+
+    void add(long bucketStart, double value) {
+        int index;
+        if (size > 0 && starts[size - 1] == bucketStart) {
+            index = size - 1; // 最常见: 落在最新的桶
+        } else if (size == 0 || starts[size - 1] < bucketStart) {
+            index = insertAt(size, bucketStart);
+        } else {
+            // 乱序到达的旧数据
+            int found = Arrays.binarySearch(starts, 0, size, bucketStart);
+            index = found >= 0 ? found : insertAt(-found - 1, bucketStart);
+        }
+        if (counts[index] == 0) {
+            mins[index] = value;
+            maxs[index] = value;
+        } else {
+            mins[index] = Math.min(mins[index], value);
+            maxs[index] = Math.max(maxs[index], value);
+        }
+        sums[index] += value;
+        counts[index]++;
+    }
+
+    private int insertAt(int index, long bucketStart) {
+        if (size == starts.length) {
+            int capacity = size * 2;
+            starts = Arrays.copyOf(starts, capacity);
+            mins = Arrays.copyOf(mins, capacity);
+            maxs = Arrays.copyOf(maxs, capacity);
+            sums = Arrays.copyOf(sums, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+        int tail = size - index;
+        if (tail > 0) {
+            System.arraycopy(starts, index, starts, index + 1, tail);
+            System.arraycopy(mins, index, mins, index + 1, tail);
+            System.arraycopy(maxs, index, maxs, index + 1, tail);
+            System.arraycopy(sums, index, sums, index + 1, tail);
+            System.arraycopy(counts, index, counts, index + 1, tail);
+        }
+        starts[index] = bucketStart;
+        sums[index] = 0;
+        counts[index] = 0;
+        size++;
+        return index;
+    }
+
+    /**
+     * 删除起始时间早于 cutoff 的桶。
+     */
+    void trimBefore(long cutoff) {
+        int first = 0;
+        while (first < size && starts[first] < cutoff) {
+            first++;
+        }
+        if (first == 0) {
+            return;
+        }
+        int remaining = size - first;
+        System.arraycopy(starts, first, starts, 0, remaining);
+        System.arraycopy(mins, first, mins, 0, remaining);
+        System.arraycopy(maxs, first, maxs, 0, remaining);
+        System.arraycopy(sums, first, sums, 0, remaining);
+        System.arraycopy(counts, first, counts, 0, remaining);
+        size = remaining;
+    }
+
+    void copyRange(long from, long to, RollupSeries result) {
+        int index = Arrays.binarySearch(starts, 0, size, from);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        for (; index < size && starts[index] <= to; index++) {
+            result.add(starts[index], mins[index], maxs[index], sums[index] / counts[index], counts[index]);
+        }
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    long oldestStart() {
+        return size == 0 ? Long.MAX_VALUE : starts[0];
+    }
+}
@@ -0,0 +1,211 @@
+package com.example.demo1.service.telemetry;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 遥测数据的降采样引擎：按设备 + 指标维护 1 分钟 / 1 小时 / 1 天三种粒度的
+ * min / max / avg / count 聚合，随 device/report 消息到达增量更新。
+ * <p>
+ * 查询时根据请求的点数预算自动选择粒度，长时间范围的查询只读取少量聚合桶，
+ * 查询耗时不随历史数据量增长。后台线程负责按保留期清理过期的桶；
+ * 启动时从 {@link TelemetryStore} 回填历史数据。回填在初始化中同步完成，此时 Ingest 流水线
+ * （依赖本引擎）尚未开始消费，因此存储中的数据都是启动前写入的，不会与实时记录重复计数。
+ */
+@Service
+public class RollupEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(RollupEngine.class);
+
+    @Autowired
+    private TelemetryStore telemetryStore;
+
+    @Value("${telemetry.rollup.minute-retention-hours:24}")
+    private long minuteRetentionHours;
+
+    @Value("${telemetry.rollup.hour-retention-days:30}")
+    private long hourRetentionDays;
+
+    @Value("${telemetry.rollup.day-retention-days:365}")
+    private long dayRetentionDays;
+
+    // key: deviceUid + '\0' + metric
+    private final ConcurrentHashMap<String, SeriesRollups> series = new ConcurrentHashMap<>();
+    private final EnumMap<RollupResolution, Long> retentionMillis = new EnumMap<>(RollupResolution.class);
+    private ScheduledExecutorService maintenance;
+
+    /**
+     * 单个序列三种粒度的聚合桶，所有访问在对象锁内进行。
+     * 清理线程判定为空后标记为已退役，之后的写入返回 false，由调用方换一个新实例重试，
+     * 避免写入落在刚从索引中移除的实例上而丢失。
+     */
+    private static final class SeriesRollups {
+        private final EnumMap<RollupResolution, RollupBuckets> buckets = new EnumMap<>(RollupResolution.class);
+        private boolean retired;
+
+        SeriesRollups() {
+            for (RollupResolution resolution : RollupResolution.values()) {
+                buckets.put(resolution, new RollupBuckets());
+            }
+        }
+
+        synchronized boolean add(long timestamp, double value) {
+            if (retired) {
+                return false;
+            }
+            for (Map.Entry<RollupResolution, RollupBuckets> entry : buckets.entrySet()) {
+                entry.getValue().add(entry.getKey().bucketStart(timestamp), value);
+            }
+            return true;
+        }
+
+        synchronized void trim(EnumMap<RollupResolution, Long> cutoffs) {
+            cutoffs.forEach((resolution, cutoff) -> buckets.get(resolution).trimBefore(cutoff));
+        }
+
+        synchronized void copyRange(RollupResolution resolution, long from, long to, RollupSeries result) {
+            buckets.get(resolution).copyRange(resolution.bucketStart(from), to, result);
+        }
+
+        synchronized boolean retireIfEmpty() {
+            retired = buckets.get(RollupResolution.DAY).isEmpty();
+            return retired;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        retentionMillis.put(RollupResolution.MINUTE, TimeUnit.HOURS.toMillis(minuteRetentionHours));
+        retentionMillis.put(RollupResolution.HOUR, TimeUnit.DAYS.toMillis(hourRetentionDays));
+        retentionMillis.put(RollupResolution.DAY, TimeUnit.DAYS.toMillis(dayRetentionDays));
+
+        maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "telemetry-rollup");
+            t.setDaemon(true);
+            return t;
+        });
+        backfill();
+        maintenance.scheduleWithFixedDelay(this::trimExpired, 1, 1, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        maintenance.shutdownNow();
+    }
+
+    private static String key(String deviceUid, String metric) {
+        return deviceUid + '\0' + metric;
+    }
+
+    /**
+     * 增量记录一行上报数据（与 {@link TelemetryStore#append} 参数一致）。
+     */
+    public void record(String deviceUid, long timestamp, String[] metrics, double[] values) {
+        for (int i = 0; i < metrics.length; i++) {
+            add(key(deviceUid, metrics[i]), timestamp, values[i]);
+        }
+    }
+
+    private void add(String key, long timestamp, double value) {
+        SeriesRollups rollups = series.computeIfAbsent(key, k -> new SeriesRollups());
+        while (!rollups.add(timestamp, value)) {
+            // 该实例刚被清理线程退役：移除（清理线程可能还没来得及）后换新实例
+            series.remove(key, rollups);
+            rollups = series.computeIfAbsent(key, k -> new SeriesRollups());
+        }
+    }
+
+    /**
+     * 选择满足点数预算的最细粒度：(to - from) / 粒度 不超过 maxPoints，且保留期覆盖 from。
+     * 没有粒度满足时使用最粗的 1 天粒度。
+     * <p>
+     * 取最细而不是最粗的可行粒度：最粗的 1 天粒度几乎总能满足预算，按"最粗"选择会让短时间范围的查询
+     * 也只返回一两个点；最细的可行粒度在不超出预算的前提下给出最多的细节，点数上限仍由 maxPoints 保证。
+     */
+    public RollupResolution chooseResolution(long from, long to, int maxPoints) {
+        long now = System.currentTimeMillis();
+        for (RollupResolution resolution : RollupResolution.values()) {
+            long buckets = (to - from) / resolution.getMillis() + 1;
+            boolean retained = from >= now - retentionMillis.get(resolution);
+            if (buckets <= maxPoints && retained) {
+                return resolution;
+            }
+        }
+        return RollupResolution.DAY;
+    }
+
+    public RollupSeries query(String deviceUid, String metric, RollupResolution resolution, long from, long to) {
+        RollupSeries result = new RollupSeries(metric, resolution);
+        SeriesRollups rollups = series.get(key(deviceUid, metric));
+        if (rollups != null) {
+            rollups.copyRange(resolution, from, to, result);
+        }
+        return result;
+    }
+
+    private void trimExpired() {
+        try {
+            long now = System.currentTimeMillis();
+            EnumMap<RollupResolution, Long> cutoffs = new EnumMap<>(RollupResolution.class);
+            retentionMillis.forEach((resolution, retention) -> cutoffs.put(resolution, now - retention));
+            series.forEach((key, rollups) -> {
+                rollups.trim(cutoffs);
+                if (rollups.retireIfEmpty()) {
+                    series.remove(key, rollups);
+                }
+            });
+        } catch (Exception e) {
+            logger.error("清理过期聚合桶时出错: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 从时序存储回填启动前的历史数据。在 {@link #init} 中同步执行：按写入顺序而不是设备时间戳划分，
+     * 存储中已有的点全部由回填计入，之后到达的点（即使设备时间戳更早）只由 {@link #record} 计入。
+     */
+    private void backfill() {
+        long from = System.currentTimeMillis() - retentionMillis.get(RollupResolution.DAY);
+        long points = 0;
+        try {
+            for (String deviceUid : telemetryStore.deviceUids()) {
+                for (String metric : telemetryStore.metrics(deviceUid)) {
+                    TelemetrySeries raw = telemetryStore.query(deviceUid, metric, from, Long.MAX_VALUE);
+                    if (raw.getSize() == 0) {
+                        continue;
+                    }
+                    String key = key(deviceUid, metric);
+                    for (int i = 0; i < raw.getSize(); i++) {
+                        add(key, raw.timestampAt(i), raw.valueAt(i));
+                    }
+                    points += raw.getSize();
+                }
+            }
+            trimExpired();
+            logger.info("遥测聚合回填完成: {} 个数据点, {} 个序列", points, series.size());
+        } catch (Exception e) {
+            logger.error("遥测聚合回填失败: {}", e.getMessage(), e);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("series", series.size());
+        Map<String, Long> retention = new LinkedHashMap<>();
+        retentionMillis.forEach((resolution, millis) -> retention.put(resolution.getLabel(), millis));
+        stats.put("retentionMillis", retention);
+        return stats;
+    }
+}
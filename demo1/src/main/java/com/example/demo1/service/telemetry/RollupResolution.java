@@ -0,0 +1,30 @@
+package com.example.demo1.service.telemetry;
+
+/**
+ * 预聚合的时间粒度（由细到粗）。
+ */
+public enum RollupResolution {
+    MINUTE("1m", 60_000L),
+    HOUR("1h", 3_600_000L),
+    DAY("1d", 86_400_000L);
+
+    private final String label;
+    private final long millis;
+
+    RollupResolution(String label, long millis) {
+        this.label = label;
+        this.millis = millis;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+
+    long bucketStart(long timestamp) {
+        return Math.floorDiv(timestamp, millis) * millis;
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.demo1.service.telemetry;
+
+import java.util.Arrays;
+
+/**
+ * 预聚合查询结果（列式）：每个桶的起始时间、最小值、最大值、平均值和点数。
+ */
+public class RollupSeries {
+
+    private final String metric;
+    private final String resolution;
+    private long[] starts = new long[64];
+    private double[] mins = new double[64];
+    private double[] maxs = new double[64];
+    private double[] avgs = new double[64];
+    private long[] counts = new long[64];
+    private int size;
+
+    public RollupSeries(String metric, RollupResolution resolution) {
+        this.metric = metric;
+        this.resolution = resolution.getLabel();
+    }
+
+    void add(long start, double min, double max, double avg, long count) {
+        if (size == starts.length) {
+            int capacity = size * 2;
+            starts = Arrays.copyOf(starts, capacity);
+            mins = Arrays.copyOf(mins, capacity);
+            maxs = Arrays.copyOf(maxs, capacity);
+            avgs = Arrays.copyOf(avgs, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+        starts[size] = start;
+        mins[size] = min;
+        maxs[size] = max;
+        avgs[size] = avg;
+        counts[size] = count;
+        size++;
+    }
+
+    public String getMetric() {
+        return metric;
+    }
+
+    public String getResolution() {
+        return resolution;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public long[] getTimestamps() {
+        return Arrays.copyOf(starts, size);
+    }
+
+    public double[] getMin() {
+        return Arrays.copyOf(mins, size);
+    }
+
+    public double[] getMax() {
+        return Arrays.copyOf(maxs, size);
+    }
+
+    public double[] getAvg() {
+        return Arrays.copyOf(avgs, size);
+    }
+
+    public long[] getCount() {
+        return Arrays.copyOf(counts, size);
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.demo1.service.telemetry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * 固定大小、只追加的内存映射段文件。文件创建时为全零，遇到长度为 0 的记录即表示数据结束。
+ * 每条记录以 int 长度（不含本字段）和 int CRC32（覆盖长度字段和内容）开头。
+ */
+final class SegmentFile {
+
+    /** 记录头：长度 + CRC32 */
+    static final int HEADER_BYTES = 8;
+    private static final int ZERO_FILL_BYTES = 64 * 1024;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private int writePosition;
+    private long maxTimestamp = Long.MIN_VALUE;
+
+    SegmentFile(Path path, int capacity) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long existing = channel.size();
+        this.capacity = (int) Math.max(existing, capacity);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, this.capacity);
+    }
+
+    /**
+     * 扫描已有记录（启动恢复），对每条记录回调 (offset, 记录字节)，并把写位置移到末尾。
+     * 遇到长度越界、CRC 不符或无法解析的记录（进程崩溃时写了一半的记录、磁盘损坏）时，
+     * 从该记录起截断：其后内容清零，写位置停在该记录处。
+     *
+     * @return 截断时返回被丢弃记录的起始偏移，否则返回 -1
+     */
+    synchronized int scan(BiConsumer<Integer, byte[]> consumer) {
+        int position = 0;
+        int truncatedAt = -1;
+        while (position + HEADER_BYTES <= capacity) {
+            int length = buffer.getInt(position);
+            if (length == 0) {
+                break;
+            }
+            if (length < HEADER_BYTES - 4 || length > capacity - position - 4) {
+                truncatedAt = position;
+                break;
+            }
+            byte[] record = read(position, length + 4);
+            if (ByteBuffer.wrap(record).getInt(4) != checksum(record)) {
+                truncatedAt = position;
+                break;
+            }
+            try {
+                consumer.accept(position, record);
+            } catch (RuntimeException e) {
+                truncatedAt = position;
+                break;
+            }
+            position += 4 + length;
+        }
+        writePosition = position;
+        if (truncatedAt >= 0) {
+            byte[] zeros = new byte[ZERO_FILL_BYTES];
+            for (int offset = truncatedAt; offset < capacity; offset += zeros.length) {
+                buffer.put(offset, zeros, 0, Math.min(zeros.length, capacity - offset));
+            }
+            buffer.force();
+        }
+        return truncatedAt;
+    }
+
+    /**
+     * 完整记录（含记录头）的 CRC32：覆盖长度字段和记录头之后的内容，跳过 CRC 字段本身。
+     */
+    static int checksum(byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, 4);
+        crc.update(record, HEADER_BYTES, record.length - HEADER_BYTES);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * 追加一条完整记录。
+     *
+     * @return 记录的起始偏移；空间不足时返回 -1
+     */
+    synchronized int append(byte[] record) {
+        if (writePosition + record.length > capacity) {
+            return -1;
+        }
+        int offset = writePosition;
+        buffer.put(offset, record);
+        writePosition += record.length;
+        return offset;
+    }
+
+    byte[] read(int offset, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes); // 绝对位置读取，不修改 buffer 的 position，可并发调用
+        return bytes;
+    }
+
+    synchronized int writePosition() {
+        return writePosition;
+    }
+
+    /**
+     * 记录写入本段的数据块的最大时间戳，用于按保留期清理整段。
+     */
+    synchronized void recordTimestamp(long timestamp) {
+        maxTimestamp = Math.max(maxTimestamp, timestamp);
+    }
+
+    /**
+     * 本段数据的最大时间戳；空段返回 {@link Long#MIN_VALUE}。
+     */
+    synchronized long maxTimestamp() {
+        return maxTimestamp;
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    /**
+     * 关闭并删除段文件。已加载的映射在被回收前仍可读取，并发查询不受影响。
+     */
+    void delete() throws IOException {
+        channel.close();
+        Files.deleteIfExists(path);
+    }
+
+    Path path() {
+        return path;
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.demo1.service.telemetry;
+
+import java.util.Arrays;
+
+/**
+ * 单个指标的查询结果，以两个基本类型数组（列式）返回，序列化为
+ * {"metric": ..., "timestamps": [...], "values": [...]}。
+ */
+public class TelemetrySeries {
+
+    private final String metric;
+    private long[] timestamps = new long[64];
+    private double[] values = new double[64];
+    private int size;
+
+    public TelemetrySeries(String metric) {
+        this.metric = metric;
+    }
+
+    void add(long timestamp, double value) {
+        if (size == timestamps.length) {
+            timestamps = Arrays.copyOf(timestamps, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        timestamps[size] = timestamp;
+        values[size] = value;
+        size++;
+    }
+
+    public String getMetric() {
+        return metric;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public long[] getTimestamps() {
+        return Arrays.copyOf(timestamps, size);
+    }
+
+    public double[] getValues() {
+        return Arrays.copyOf(values, size);
+    }
+
+    public long timestampAt(int index) {
+        return timestamps[index];
+    }
+
+    public double valueAt(int index) {
+        return values[index];
+    }
+}
@@ -0,0 +1,393 @@
+package com.example.demo1.service.telemetry;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 设备遥测数据（device/report）的只追加时序存储。
+ * <p>
+ * 每个设备一个列式数据块：一列 long 时间戳 + 每个指标一列 double，追加时即用
+ * delta-of-delta / XOR 流式压缩。块写满 {@code telemetry.chunk-points} 个点、指标集合变化
+ * 或空闲超过 {@code telemetry.seal-after-ms} 时封存，写入内存映射的段文件，堆内只保留索引。
+ * 启动时扫描已有段文件重建索引（校验每条记录的 CRC，在第一条损坏的记录处截断），关闭时封存所有未满的块。
+ * 最新数据早于 {@code telemetry.raw.retention} 的已写满段文件连同其索引一起删除。
+ * 数据目录在运行期间以文件锁独占，同一目录不能被第二个存储实例（其他进程或同一进程中的另一个上下文）打开。
+ */
+@Service
+public class TelemetryStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(TelemetryStore.class);
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".tsdb";
+    private static final String LOCK_FILE = "store.lock";
+
+    @Value("${telemetry.enabled:true}")
+    private boolean enabled;
+
+    @Value("${telemetry.data-dir:data/telemetry}")
+    private String dataDir;
+
+    @Value("${telemetry.segment-size-mb:64}")
+    private int segmentSizeMb;
+
+    @Value("${telemetry.chunk-points:512}")
+    private int chunkPoints;
+
+    @Value("${telemetry.seal-after-ms:300000}")
+    private long sealAfterMs;
+
+    @Value("${telemetry.raw.retention:7d}")
+    private Duration rawRetention = Duration.ofDays(7);
+
+    private final ConcurrentHashMap<String, DeviceSeries> devices = new ConcurrentHashMap<>();
+    private final List<SegmentFile> segments = new ArrayList<>();
+    private SegmentFile activeSegment;
+    private int nextSegmentIndex;
+    private ScheduledExecutorService sealer;
+    private FileChannel lockChannel;
+    private FileLock dirLock;
+
+    private final LongAdder pointsAppended = new LongAdder();
+    private final LongAdder chunksSealed = new LongAdder();
+    private final LongAdder sealedBytes = new LongAdder();
+    private final LongAdder segmentsDropped = new LongAdder();
+
+    /**
+     * 单个设备的数据：一个正在写入的块 + 已封存块的索引。所有访问都在对象锁内进行。
+     */
+    private final class DeviceSeries {
+        private final String deviceUid;
+        private ChunkBuilder open;
+        private final List<ChunkRef> sealed = new ArrayList<>();
+        private boolean retired;
+
+        DeviceSeries(String deviceUid) {
+            this.deviceUid = deviceUid;
+        }
+
+        /**
+         * @return false 表示该对象已因数据过期被移出索引，调用方应重新获取
+         */
+        synchronized boolean append(long timestamp, String[] metrics, double[] values) {
+            if (retired) {
+                return false;
+            }
+            if (open != null && (!open.accepts(metrics) || open.count() >= chunkPoints)) {
+                seal();
+            }
+            if (open == null) {
+                open = new ChunkBuilder(deviceUid, metrics.clone(), System.currentTimeMillis());
+            }
+            open.append(timestamp, values);
+            return true;
+        }
+
+        synchronized void sealIfIdle(long now) {
+            if (open != null && now - open.createdAt >= sealAfterMs) {
+                seal();
+            }
+        }
+
+        synchronized void seal() {
+            if (open == null || open.count() == 0) {
+                open = null;
+                return;
+            }
+            EncodedChunk chunk = open.encode();
+            open = null;
+            try {
+                sealed.add(writeChunk(chunk));
+            } catch (IOException e) {
+                logger.error("封存设备 [{}] 的遥测数据块失败，丢弃 {} 个点: {}", deviceUid, chunk.count, e.getMessage(), e);
+            }
+        }
+
+        synchronized void addSealed(ChunkRef ref) {
+            sealed.add(ref);
+        }
+
+        /**
+         * 移除指向该段文件的索引项。
+         *
+         * @return 移除后已无任何数据时返回 true，此时对象被标记为退役，应从设备表中移除
+         */
+        synchronized boolean dropSegment(SegmentFile segment) {
+            sealed.removeIf(ref -> ref.segment == segment);
+            if (open == null && sealed.isEmpty()) {
+                retired = true;
+            }
+            return retired;
+        }
+
+        synchronized void query(String metric, long from, long to, TelemetrySeries result) {
+            for (ChunkRef ref : sealed) {
+                if (ref.overlaps(from, to) && ref.hasMetric(metric)) {
+                    EncodedChunk chunk = ref.load();
+                    chunk.decodeInto(chunk.indexOf(metric), from, to, result);
+                }
+            }
+            if (open != null) {
+                EncodedChunk chunk = open.encode();
+                int index = chunk.indexOf(metric);
+                if (index >= 0) {
+                    chunk.decodeInto(index, from, to, result);
+                }
+            }
+        }
+
+        synchronized Set<String> metrics() {
+            Set<String> names = new LinkedHashSet<>();
+            for (ChunkRef ref : sealed) {
+                names.addAll(List.of(ref.metrics));
+            }
+            if (open != null) {
+                names.addAll(List.of(open.metrics));
+            }
+            return names;
+        }
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            logger.info("遥测时序存储已禁用");
+            return;
+        }
+        Path dir = Paths.get(dataDir);
+        Files.createDirectories(dir);
+        lockDirectory(dir);
+        List<Path> existing = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(existing::add);
+        }
+        existing.sort(null);
+        for (Path path : existing) {
+            SegmentFile segment = new SegmentFile(path, segmentSizeBytes());
+            int truncatedAt = segment.scan((offset, record) -> {
+                EncodedChunk chunk = EncodedChunk.fromRecord(record);
+                series(chunk.deviceUid).addSealed(new ChunkRef(segment, offset, record.length, chunk));
+                segment.recordTimestamp(chunk.maxTimestamp);
+            });
+            if (truncatedAt >= 0) {
+                logger.warn("遥测段文件 {} 在偏移 {} 处的记录损坏，已截断其后的数据", path, truncatedAt);
+            }
+            nextSegmentIndex = Math.max(nextSegmentIndex, segmentIndex(path) + 1);
+            segments.add(segment);
+            activeSegment = segment;
+        }
+        if (activeSegment == null) {
+            rollSegment();
+        }
+        sealer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "telemetry-sealer");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, sealAfterMs / 4);
+        sealer.scheduleWithFixedDelay(this::sealIdleChunks, period, period, TimeUnit.MILLISECONDS);
+        sealer.scheduleWithFixedDelay(this::dropExpiredSegments, 0, 10, TimeUnit.MINUTES);
+        logger.info("遥测时序存储已启动: 目录 {}, 已加载 {} 个段文件 / {} 个设备", dir.toAbsolutePath(), existing.size(), devices.size());
+    }
+
+    /**
+     * 独占数据目录：多个实例同时写同一个内存映射段文件会互相覆盖数据。
+     */
+    private void lockDirectory(Path dir) throws IOException {
+        lockChannel = FileChannel.open(dir.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            dirLock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            dirLock = null; // 同一进程中已有实例持有该锁
+        }
+        if (dirLock == null) {
+            lockChannel.close();
+            throw new IllegalStateException("遥测数据目录已被另一个 TelemetryStore 占用: " + dir.toAbsolutePath());
+        }
+    }
+
+    private int segmentSizeBytes() {
+        return segmentSizeMb * 1024 * 1024;
+    }
+
+    private static int segmentIndex(Path path) {
+        String name = path.getFileName().toString();
+        try {
+            return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private DeviceSeries series(String deviceUid) {
+        return devices.computeIfAbsent(deviceUid, DeviceSeries::new);
+    }
+
+    /**
+     * 追加一行遥测数据。metrics 与 values 一一对应；指标顺序相同的连续上报写入同一个块。
+     */
+    public void append(String deviceUid, long timestamp, String[] metrics, double[] values) {
+        if (!enabled || metrics.length == 0) {
+            return;
+        }
+        while (!series(deviceUid).append(timestamp, metrics, values)) {
+            // 该设备的索引刚被过期清理移除，重新获取
+        }
+        pointsAppended.add(metrics.length);
+    }
+
+    /**
+     * 查询某设备某指标在 [from, to]（毫秒时间戳，含两端）内的原始数据点。
+     */
+    public TelemetrySeries query(String deviceUid, String metric, long from, long to) {
+        TelemetrySeries result = new TelemetrySeries(metric);
+        DeviceSeries series = devices.get(deviceUid);
+        if (series != null) {
+            series.query(metric, from, to, result);
+        }
+        return result;
+    }
+
+    public Set<String> deviceUids() {
+        return Set.copyOf(devices.keySet());
+    }
+
+    public Set<String> metrics(String deviceUid) {
+        DeviceSeries series = devices.get(deviceUid);
+        return series == null ? Set.of() : series.metrics();
+    }
+
+    private synchronized ChunkRef writeChunk(EncodedChunk chunk) throws IOException {
+        byte[] record = chunk.toRecord();
+        if (record.length > segmentSizeBytes()) {
+            throw new IOException("Chunk record larger than segment size: " + record.length);
+        }
+        int offset = activeSegment.append(record);
+        if (offset < 0) {
+            activeSegment.force();
+            rollSegment();
+            offset = activeSegment.append(record);
+        }
+        activeSegment.recordTimestamp(chunk.maxTimestamp);
+        chunksSealed.increment();
+        sealedBytes.add(record.length);
+        return new ChunkRef(activeSegment, offset, record.length, chunk);
+    }
+
+    private synchronized void rollSegment() throws IOException {
+        String name = String.format("%s%06d%s", SEGMENT_PREFIX, nextSegmentIndex++, SEGMENT_SUFFIX);
+        activeSegment = new SegmentFile(Paths.get(dataDir, name), segmentSizeBytes());
+        segments.add(activeSegment);
+        logger.info("创建新的遥测段文件: {}", activeSegment.path());
+    }
+
+    private void sealIdleChunks() {
+        try {
+            long now = System.currentTimeMillis();
+            devices.values().forEach(series -> series.sealIfIdle(now));
+        } catch (Exception e) {
+            logger.error("封存空闲遥测数据块时出错: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 删除最新数据早于保留期的已写满段文件，并移除指向它们的索引项。正在写入的段不会被删除。
+     */
+    private void dropExpiredSegments() {
+        try {
+            long cutoff = System.currentTimeMillis() - rawRetention.toMillis();
+            List<SegmentFile> expired = new ArrayList<>();
+            synchronized (this) {
+                for (Iterator<SegmentFile> it = segments.iterator(); it.hasNext(); ) {
+                    SegmentFile segment = it.next();
+                    if (segment != activeSegment && segment.maxTimestamp() < cutoff) {
+                        expired.add(segment);
+                        it.remove();
+                    }
+                }
+            }
+            for (SegmentFile segment : expired) {
+                devices.values().forEach(series -> {
+                    if (series.dropSegment(segment)) {
+                        devices.remove(series.deviceUid, series);
+                    }
+                });
+                try {
+                    segment.delete();
+                } catch (IOException e) {
+                    logger.warn("删除过期遥测段文件 {} 时出错: {}", segment.path(), e.getMessage());
+                }
+                segmentsDropped.increment();
+                logger.info("遥测段文件 {} 的数据已超过保留期 {}，已删除", segment.path(), rawRetention);
+            }
+        } catch (Exception e) {
+            logger.error("清理过期遥测段文件时出错: {}", e.getMessage(), e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!enabled) {
+            return;
+        }
+        sealer.shutdownNow();
+        devices.values().forEach(DeviceSeries::seal);
+        synchronized (this) {
+            for (SegmentFile segment : segments) {
+                try {
+                    segment.close();
+                } catch (IOException e) {
+                    logger.warn("关闭遥测段文件 {} 时出错: {}", segment.path(), e.getMessage());
+                }
+            }
+        }
+        try {
+            dirLock.release();
+            lockChannel.close();
+        } catch (IOException e) {
+            logger.warn("释放遥测数据目录锁时出错: {}", e.getMessage());
+        }
+        logger.info("遥测时序存储已关闭，所有未满数据块已封存");
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("devices", devices.size());
+        stats.put("pointsAppended", pointsAppended.sum());
+        stats.put("chunksSealed", chunksSealed.sum());
+        stats.put("sealedBytes", sealedBytes.sum());
+        stats.put("segmentsDropped", segmentsDropped.sum());
+        stats.put("rawRetention", rawRetention.toString());
+        synchronized (this) {
+            stats.put("segments", segments.size());
+        }
+        return stats;
+    }
+}
@@ -1,13 +1,47 @@
 package com.example.demo1;
 
+import com.example.demo1.service.MqttService;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+// 使用进程内的内置 Broker，测试不依赖外部 EMQX
+@SpringBootTest(properties = {
+        "mqtt.embedded-broker.enabled=true",
+        "mqtt.embedded-broker.port=-1",
+        "mqtt.broker-url=vm://embedded"
+})
 class Demo1ApplicationTests {
 
+    @Autowired
+    private MqttService mqttService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @Test
     void contextLoads() {
     }
 
+    @Test
+    void ingestMetricsCountMessagesPerTopicFamily() throws InterruptedException {
+        double messages = meterRegistry.get("ingest.messages").tag("family", "test").counter().count();
+        long parsed = meterRegistry.get("ingest.parse").tag("family", "test").timer().count();
+        mqttService.publish("test/topic", "hello");
+
+        // 计时器在解析结束后才记录，等它变化即可
+        long deadline = System.currentTimeMillis() + 5000;
+        while (meterRegistry.get("ingest.parse").tag("family", "test").timer().count() == parsed
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(parsed + 1, meterRegistry.get("ingest.parse").tag("family", "test").timer().count());
+        assertEquals(messages + 1, meterRegistry.get("ingest.messages").tag("family", "test").counter().count());
+        assertNotNull(meterRegistry.find("sse.emitters").gauge());
+    }
+
 }
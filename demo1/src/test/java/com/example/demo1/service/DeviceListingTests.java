@@ -0,0 +1,88 @@
+package com.example.demo1.service;
+
+import com.example.demo1.entity.Device;
+import com.example.demo1.repository.DeviceFilter;
+import com.example.demo1.repository.DeviceRepository;
+import com.example.demo1.repository.DeviceSummary;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:device_listing_tests;DB_CLOSE_DELAY=-1",
+        "mqtt.embedded-broker.enabled=true",
+        "mqtt.embedded-broker.name=listing-tests",
+        "mqtt.embedded-broker.port=-1",
+        "mqtt.broker-url=vm://listing-tests"
+})
+class DeviceListingTests {
+
+    @Autowired
+    private DeviceService deviceService;
+
+    @Autowired
+    private DeviceRepository deviceRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private List<DeviceSummary> readAll(DeviceFilter filter, int pageSize) {
+        List<DeviceSummary> all = new ArrayList<>();
+        Long cursor = null;
+        do {
+            DeviceService.DevicePage page = deviceService.findDevicePage(filter, cursor, pageSize);
+            assertTrue(page.items().size() <= pageSize);
+            all.addAll(page.items());
+            cursor = page.nextCursor();
+        } while (cursor != null);
+        return all;
+    }
+
+    @Test
+    void keysetPagesCoverFilteredDevicesInIdOrder() {
+        List<Device> devices = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            devices.add(new Device("开关 " + i, "switch", i % 5 == 0 ? "offline" : "online", "list-sw-" + i));
+        }
+        devices.add(new Device("传感器", "sensor", "online", "list-sensor-0"));
+        devices.add(new Device("下划线", "sensor", "online", "list_x"));
+        deviceRepository.saveAll(devices);
+        // 经 DeviceService 写入的状态统一为小写
+        deviceService.registerDevice(new Device("大写状态", "sensor", " OFFLINE", "list-upper-0"));
+        assertEquals("offline", deviceRepository.findByDeviceUid("list-upper-0").orElseThrow().getStatus());
+
+        List<DeviceSummary> all = readAll(DeviceFilter.of(null, null, "list-"), 7);
+        assertEquals(27, all.size());
+        for (int i = 1; i < all.size(); i++) {
+            assertTrue(all.get(i - 1).id() < all.get(i).id());
+        }
+
+        assertEquals(25, readAll(DeviceFilter.of(" ", "switch", null), 10).size());
+        assertEquals(5, readAll(DeviceFilter.of("offline", "switch", "list-sw-"), 2).size());
+        // 状态过滤不区分大小写
+        assertEquals(List.of("list-upper-0"), readAll(DeviceFilter.of("Offline", "sensor", "list-"), 10).stream()
+                .map(DeviceSummary::deviceUid).toList());
+        // '_' 按字面匹配，不作为 LIKE 通配符
+        List<DeviceSummary> underscore = readAll(DeviceFilter.of(null, null, "list_"), 100);
+        assertEquals(List.of("list_x"), underscore.stream().map(DeviceSummary::deviceUid).toList());
+
+        // 恰好取完时不返回下一页游标
+        assertNull(deviceService.findDevicePage(DeviceFilter.of(null, "switch", null), null, 25).nextCursor());
+    }
+
+    @Test
+    void listingIndexesExist() {
+        List<String> indexes = jdbcTemplate.queryForList(
+                "select index_name from information_schema.indexes where table_name = 'DEVICE'", String.class);
+        assertTrue(indexes.contains("IDX_DEVICE_STATUS_ID"), indexes::toString);
+        assertTrue(indexes.contains("IDX_DEVICE_TYPE_ID"), indexes::toString);
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.demo1.service;
+
+import com.example.demo1.entity.Device;
+import com.example.demo1.repository.DeviceRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DeviceRegistryCacheTests {
+
+    // 16 个分片，每个分片 5 个条目，其中保护段 4 个
+    private static final int MAX_SIZE = 80;
+
+    private DeviceRepository deviceRepository;
+    private DeviceRegistryCache cache;
+
+    @BeforeEach
+    void setUp() {
+        deviceRepository = mock(DeviceRepository.class);
+        when(deviceRepository.findByDeviceUid(anyString()))
+                .thenAnswer(invocation -> Optional.of(device(invocation.getArgument(0), "online")));
+        cache = new DeviceRegistryCache();
+        ReflectionTestUtils.setField(cache, "deviceRepository", deviceRepository);
+        ReflectionTestUtils.setField(cache, "maxSize", MAX_SIZE);
+        cache.init();
+    }
+
+    private static Device device(String deviceUid, String status) {
+        return new Device(deviceUid, "switch", status, deviceUid);
+    }
+
+    /** 落在同一分片中的 count 个 UID，便于观察单个分片内的淘汰顺序 */
+    private static List<String> sameSegmentUids(int count) {
+        List<String> uids = new ArrayList<>();
+        for (int i = 0; uids.size() < count; i++) {
+            String uid = "slru-" + i;
+            if (Math.floorMod(uid.hashCode(), 16) == 0) {
+                uids.add(uid);
+            }
+        }
+        return uids;
+    }
+
+    /** 读取一次并返回是否命中缓存（未查询数据库） */
+    private boolean cached(String deviceUid) {
+        clearInvocations(deviceRepository);
+        cache.get(deviceUid);
+        return mockingDetails(deviceRepository).getInvocations().isEmpty();
+    }
+
+    @Test
+    void evictsFromProbationBeforeProtectedAndDemotesProtectedOverflow() {
+        List<String> k = sameSegmentUids(9);
+        for (int i = 0; i < 5; i++) {
+            cache.get(k.get(i)); // 试用段: k0..k4
+        }
+        cache.get(k.get(0));
+        cache.get(k.get(1)); // 再次命中，晋升到保护段
+
+        // 新条目挤出的是试用段中最久未访问的 k2、k3、k4，而不是更早加载的 k0、k1
+        for (int i = 5; i < 8; i++) {
+            cache.get(k.get(i));
+        }
+        assertEquals(3L, cache.getStats().get("evictions"));
+        assertTrue(cached(k.get(0)));
+        assertTrue(cached(k.get(1)));
+        assertFalse(cached(k.get(2))); // 未命中后重新加载，又挤出一个试用段条目 (k5)
+
+        // 保护段（容量 4）溢出时，最久未访问的保护条目降回试用段，随后先于其他保护条目被淘汰
+        cache.get(k.get(6));
+        cache.get(k.get(7)); // 保护段: k0, k1, k6, k7
+        cache.get(k.get(2)); // 晋升 k2，k0 降回试用段
+        cache.get(k.get(8)); // 新条目挤出试用段中最旧的 k0
+        assertFalse(cached(k.get(0)));
+        assertTrue(cached(k.get(1)));
+        assertTrue(cached(k.get(7)));
+    }
+
+    @Test
+    void negativeEntryIsReplacedByRegistrationAndInvalidation() {
+        when(deviceRepository.findByDeviceUid("ghost")).thenReturn(Optional.empty());
+        when(deviceRepository.findByDeviceUid("ghost-2")).thenReturn(Optional.empty());
+
+        assertTrue(cache.get("ghost").isEmpty());
+        assertTrue(cache.get("ghost").isEmpty());
+        verify(deviceRepository, times(1)).findByDeviceUid("ghost"); // 负缓存命中
+
+        // 注册写穿透，覆盖负缓存条目，不再查询数据库
+        cache.put(device("ghost", "online"));
+        assertEquals("online", cache.get("ghost").orElseThrow().status());
+        verify(deviceRepository, times(1)).findByDeviceUid("ghost");
+
+        // 失效后重新加载
+        assertFalse(cache.exists("ghost-2"));
+        when(deviceRepository.findByDeviceUid("ghost-2")).thenReturn(Optional.of(device("ghost-2", "online")));
+        cache.invalidate("ghost-2");
+        assertTrue(cache.exists("ghost-2"));
+    }
+
+    @Test
+    void loadRacingWithInvalidationDoesNotCacheStaleSnapshot() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(deviceRepository.findByDeviceUid("race"))
+                .thenAnswer(invocation -> {
+                    loading.countDown();
+                    release.await(5, TimeUnit.SECONDS);
+                    return Optional.of(device("race", "online")); // 失效之前读到的旧数据
+                })
+                .thenReturn(Optional.of(device("race", "offline")));
+
+        CompletableFuture<Optional<DeviceRegistryCache.DeviceSnapshot>> staleLoad =
+                CompletableFuture.supplyAsync(() -> cache.get("race"));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        cache.invalidate("race"); // 数据库已更新，加载线程还持有旧快照
+        release.countDown();
+        assertEquals("online", staleLoad.get(5, TimeUnit.SECONDS).orElseThrow().status());
+
+        // 旧快照没有被回填，下一次读取重新加载到新状态
+        assertEquals("offline", cache.get("race").orElseThrow().status());
+        verify(deviceRepository, times(2)).findByDeviceUid("race");
+    }
+}
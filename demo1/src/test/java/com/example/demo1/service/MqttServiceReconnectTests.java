@@ -0,0 +1,84 @@
+package com.example.demo1.service;
+
+import com.example.demo1.service.broker.EmbeddedMqttBroker;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:reconnect_tests;DB_CLOSE_DELAY=-1",
+        "mqtt.embedded-broker.enabled=true",
+        "mqtt.embedded-broker.name=reconnect-tests",
+        "mqtt.embedded-broker.port=-1",
+        "mqtt.broker-url=vm://reconnect-tests",
+        "mqtt.reconnect.initial-delay-ms=50",
+        "mqtt.reconnect.max-delay-ms=200"
+})
+class MqttServiceReconnectTests {
+
+    @Autowired
+    private MqttService mqttService;
+
+    @Autowired
+    private EmbeddedMqttBroker embeddedMqttBroker;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean allConnected() {
+        List<Map<String, Object>> connections = (List<Map<String, Object>>) mqttService.getStats().get("connections");
+        return connections.stream().allMatch(c -> Boolean.TRUE.equals(c.get("connected")));
+    }
+
+    @Test
+    void queuesWhileDisconnectedThenReconnectsResubscribesAndDrainsInOrder() throws Exception {
+        embeddedMqttBroker.stop();
+        await(() -> !allConnected());
+
+        assertFalse(mqttService.publish("device/command/dev-1", "ON"));
+        assertFalse(mqttService.publish("device/command/dev-1", "OFF"));
+        assertEquals(2, meterRegistry.get("mqtt.outbound.queue.depth").gauge().value());
+
+        embeddedMqttBroker.start();
+        await(this::allConnected);
+        await(() -> mqttService.getOutboundQueueDepth() == 0);
+        // 连接状态先于重连计时器更新，等计时器追上
+        await(() -> meterRegistry.get("mqtt.reconnect").timer().count() >= 2);
+        assertEquals(2L, embeddedMqttBroker.getStats().get("messagesIn"));
+
+        // 重连后订阅已恢复: 普通订阅与共享订阅的主题都能进入流水线
+        double tests = meterRegistry.get("ingest.messages").tag("family", "test").counter().count();
+        double reports = meterRegistry.get("ingest.messages").tag("family", "report").counter().count();
+        MqttClient device = new MqttClient("vm://reconnect-tests", "reconnect-tests-device", new MemoryPersistence());
+        device.connect(new MqttConnectOptions());
+        device.publish("test/topic", "hello".getBytes(StandardCharsets.UTF_8), 1, false);
+        device.publish("device/report/dev-1", "{\"temperature\":1}".getBytes(StandardCharsets.UTF_8), 1, false);
+        device.disconnect();
+        device.close();
+        await(() -> meterRegistry.get("ingest.messages").tag("family", "test").counter().count() == tests + 1);
+        await(() -> meterRegistry.get("ingest.messages").tag("family", "report").counter().count() == reports + 1);
+        assertTrue(mqttService.publish("device/command/dev-1", "ON"));
+    }
+}
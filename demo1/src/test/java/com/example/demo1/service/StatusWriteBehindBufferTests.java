@@ -0,0 +1,97 @@
+package com.example.demo1.service;
+
+import com.example.demo1.repository.DeviceRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:write_behind_tests;DB_CLOSE_DELAY=-1",
+        "mqtt.embedded-broker.enabled=true",
+        "mqtt.embedded-broker.name=write-behind-tests",
+        "mqtt.embedded-broker.port=-1",
+        "mqtt.broker-url=vm://write-behind-tests",
+        "device.status.write-behind.enabled=true",
+        "device.status.write-behind.flush-interval-ms=600000" // 测试中手动触发刷新
+})
+class StatusWriteBehindBufferTests {
+
+    @Autowired
+    private StatusWriteBehindBuffer statusWriteBehindBuffer;
+
+    @Autowired
+    private DeviceService deviceService;
+
+    @Autowired
+    private DeviceRepository deviceRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private String storedStatus(String deviceUid) {
+        return deviceRepository.findByDeviceUid(deviceUid).orElseThrow().getStatus();
+    }
+
+    private long stat(String name) {
+        return (long) statusWriteBehindBuffer.getStats().get(name);
+    }
+
+    @Test
+    void coalescesUpdatesOfOneDeviceIntoSingleRowWrite() {
+        deviceService.handleDeviceRegistrationOrUpdate("wb-coalesce", "switch", "online");
+        long coalescedBefore = stat("coalesced");
+        long writtenBefore = stat("rowsWritten");
+
+        deviceService.updateDeviceStatusByUid("wb-coalesce", "offline");
+        deviceService.updateDeviceStatusByUid("wb-coalesce", "online");
+        deviceService.updateDeviceStatusByUid("wb-coalesce", "offline");
+        assertEquals("online", storedStatus("wb-coalesce")); // 尚未刷新
+        assertEquals(2, stat("coalesced") - coalescedBefore);
+        assertEquals(stat("coalesced"), (long) meterRegistry.get("device.status.coalesced").functionCounter().count());
+
+        statusWriteBehindBuffer.flush();
+        assertEquals("offline", storedStatus("wb-coalesce"));
+        assertEquals(1, stat("rowsWritten") - writtenBefore);
+    }
+
+    @Test
+    void selectingByStatusFlushesPendingUpdatesFirst() {
+        deviceService.handleDeviceRegistrationOrUpdate("wb-read", "switch", "online");
+        deviceService.updateDeviceStatusByUid("wb-read", "offline");
+
+        List<String> offline = deviceService.findDeviceUids("switch", "offline");
+        assertTrue(offline.contains("wb-read"));
+        assertEquals("offline", storedStatus("wb-read"));
+    }
+
+    @Test
+    @DirtiesContext
+    void shutdownWritesRemainingUpdates() {
+        deviceService.handleDeviceRegistrationOrUpdate("wb-shutdown", "switch", "online");
+        deviceService.updateDeviceStatusByUid("wb-shutdown", "offline");
+        assertEquals("online", storedStatus("wb-shutdown"));
+
+        statusWriteBehindBuffer.shutdown();
+        assertEquals("offline", storedStatus("wb-shutdown"));
+        assertEquals(0, statusWriteBehindBuffer.getStats().get("pending"));
+    }
+
+    @Test
+    @DirtiesContext
+    void updatesAfterShutdownAreWrittenThrough() {
+        deviceService.handleDeviceRegistrationOrUpdate("wb-late", "switch", "online");
+        statusWriteBehindBuffer.shutdown();
+
+        // 关闭之后（例如 Ingest 线程还在处理最后几条消息）到达的状态不会丢失
+        deviceService.updateDeviceStatusByUid("wb-late", "offline");
+        assertEquals("offline", storedStatus("wb-late"));
+        assertEquals(0, statusWriteBehindBuffer.getStats().get("pending"));
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.demo1.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TopicTrieTests {
+
+    private static Set<String> match(TopicTrie<String> trie, String topic) {
+        Set<String> result = new HashSet<>();
+        trie.match(topic, result::add);
+        return result;
+    }
+
+    @Test
+    void matchesExactAndWildcardFilters() {
+        TopicTrie<String> trie = new TopicTrie<>();
+        trie.add("device/report/dev-1", "exact");
+        trie.add("device/report/+", "single");
+        trie.add("device/#", "multi");
+        trie.add("device/status/+", "status");
+
+        assertEquals(Set.of("exact", "single", "multi"), match(trie, "device/report/dev-1"));
+        assertEquals(Set.of("single", "multi"), match(trie, "device/report/dev-2"));
+        assertEquals(Set.of("multi"), match(trie, "device"));
+        assertEquals(Set.of("multi"), match(trie, "device/report/dev-1/extra"));
+        assertEquals(Set.of(), match(trie, "test/topic"));
+    }
+
+    @Test
+    void wildcardsDoNotMatchSystemTopicsAtFirstLevel() {
+        TopicTrie<String> trie = new TopicTrie<>();
+        trie.add("#", "all");
+        trie.add("+/broker", "single");
+        trie.add("$SYS/#", "sys");
+
+        assertEquals(Set.of("sys"), match(trie, "$SYS/broker"));
+        assertEquals(Set.of("all", "single"), match(trie, "a/broker"));
+    }
+
+    @Test
+    void removePrunesEmptyNodes() {
+        TopicTrie<String> trie = new TopicTrie<>();
+        trie.add("device/report/+", "a");
+        trie.add("device/report/+", "b");
+
+        assertTrue(trie.remove("device/report/+", "a"));
+        assertEquals(Set.of("b"), match(trie, "device/report/x"));
+        assertTrue(trie.remove("device/report/+", "b"));
+        assertFalse(trie.remove("device/report/+", "b"));
+        assertTrue(trie.isEmpty());
+    }
+
+    @Test
+    void validatesFilters() {
+        assertTrue(MqttTopics.isValidFilter("device/+/dev-1"));
+        assertTrue(MqttTopics.isValidFilter("device/#"));
+        assertTrue(MqttTopics.isValidFilter("#"));
+        assertFalse(MqttTopics.isValidFilter("device/#/x"));
+        assertFalse(MqttTopics.isValidFilter("device/dev+"));
+        assertFalse(MqttTopics.isValidFilter(""));
+    }
+
+    @Test
+    void singleFilterMatchingAgreesWithTrie() {
+        String[] filters = {"device/report/+", "device/#", "#", "+/status/dev-1", "$SYS/#", "test/topic"};
+        String[] topics = {"device/report/dev-1", "device", "device/status/dev-1", "$SYS/x", "test/topic", "a/b/c"};
+        for (String filter : filters) {
+            TopicTrie<String> trie = new TopicTrie<>();
+            trie.add(filter, filter);
+            for (String topic : topics) {
+                assertEquals(!match(trie, topic).isEmpty(), MqttTopics.matches(filter, topic), filter + " vs " + topic);
+            }
+        }
+    }
+}
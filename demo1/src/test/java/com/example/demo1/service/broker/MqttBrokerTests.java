@@ -0,0 +1,163 @@
+package com.example.demo1.service.broker;
+
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MqttBrokerTests {
+
+    private static final String URL = "vm://broker-tests";
+
+    private MqttBroker broker;
+
+    @BeforeEach
+    void startBroker() throws Exception {
+        broker = new MqttBroker("broker-tests");
+        broker.start(-1);
+    }
+
+    @AfterEach
+    void stopBroker() {
+        broker.close();
+    }
+
+    private static MqttClient connect(String clientId, MqttConnectOptions options) throws Exception {
+        MqttClient client = new MqttClient(URL, clientId, new MemoryPersistence());
+        client.connect(options);
+        return client;
+    }
+
+    private static BlockingQueue<String> subscribe(MqttClient client, String filter, int qos) throws Exception {
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        client.subscribe(filter, qos, (topic, message) -> received.add(
+                topic + "=" + new String(message.getPayload(), StandardCharsets.UTF_8)
+                        + (message.isRetained() ? " (retained)" : "")));
+        return received;
+    }
+
+    @Test
+    void routesByWildcardAndReplaysRetainedMessages() throws Exception {
+        MqttClient publisher = connect("publisher", new MqttConnectOptions());
+        publisher.publish("device/status/dev-1", "online".getBytes(StandardCharsets.UTF_8), 1, true);
+
+        MqttClient subscriber = connect("subscriber", new MqttConnectOptions());
+        BlockingQueue<String> status = subscribe(subscriber, "device/status/+", 1);
+        BlockingQueue<String> reports = subscribe(subscriber, "device/report/#", 0);
+        assertEquals("device/status/dev-1=online (retained)", status.poll(5, TimeUnit.SECONDS));
+
+        publisher.publish("device/report/dev-1", "{\"t\":1}".getBytes(StandardCharsets.UTF_8), 1, false);
+        publisher.publish("test/topic", "ignored".getBytes(StandardCharsets.UTF_8), 0, false);
+        assertEquals("device/report/dev-1={\"t\":1}", reports.poll(5, TimeUnit.SECONDS));
+        assertNull(reports.poll(200, TimeUnit.MILLISECONDS));
+
+        // 空的保留消息清除该主题的保留消息
+        publisher.publish("device/status/dev-1", new byte[0], 1, true);
+        MqttClient late = connect("late", new MqttConnectOptions());
+        BlockingQueue<String> lateStatus = subscribe(late, "device/status/#", 1);
+        assertNull(lateStatus.poll(200, TimeUnit.MILLISECONDS));
+
+        publisher.disconnect();
+        subscriber.disconnect();
+        late.disconnect();
+    }
+
+    @Test
+    void publishesWillOnlyOnAbnormalDisconnect() throws Exception {
+        MqttClient watcher = connect("watcher", new MqttConnectOptions());
+        BlockingQueue<String> status = subscribe(watcher, "device/status/+", 1);
+
+        MqttConnectOptions graceful = new MqttConnectOptions();
+        graceful.setWill("device/status/dev-1", "offline".getBytes(StandardCharsets.UTF_8), 1, false);
+        connect("dev-1", graceful).disconnect();
+        assertNull(status.poll(300, TimeUnit.MILLISECONDS));
+
+        MqttConnectOptions abrupt = new MqttConnectOptions();
+        abrupt.setWill("device/status/dev-2", "offline".getBytes(StandardCharsets.UTF_8), 1, false);
+        MqttClient device = connect("dev-2", abrupt);
+        device.disconnectForcibly(0, 1000, false);
+        assertEquals("device/status/dev-2=offline", status.poll(5, TimeUnit.SECONDS));
+        assertTrue(watcher.isConnected());
+
+        watcher.disconnect();
+    }
+
+    // Paho 的按订阅回调无法匹配 $share 过滤器，共享订阅的消息经客户端级回调送达
+    private static BlockingQueue<String> subscribeShared(MqttClient client, String filter) throws Exception {
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        client.setCallback(new MqttCallback() {
+            @Override
+            public void connectionLost(Throwable cause) {
+            }
+
+            @Override
+            public void messageArrived(String topic, MqttMessage message) {
+                received.add(topic + "=" + new String(message.getPayload(), StandardCharsets.UTF_8)
+                        + (message.isRetained() ? " (retained)" : ""));
+            }
+
+            @Override
+            public void deliveryComplete(IMqttDeliveryToken token) {
+            }
+        });
+        client.subscribe(filter, 1);
+        return received;
+    }
+
+    @Test
+    void sharedSubscriptionDeliversEachMessageToOneMemberByTopic() throws Exception {
+        MqttConnectOptions publisherOptions = new MqttConnectOptions();
+        publisherOptions.setMaxInflight(100); // 同步发布返回时在途计数可能尚未释放
+        MqttClient publisher = connect("publisher", publisherOptions);
+        publisher.publish("device/report/retained", "r".getBytes(StandardCharsets.UTF_8), 1, true);
+
+        MqttClient first = connect("consumer-0", new MqttConnectOptions());
+        MqttClient second = connect("consumer-1", new MqttConnectOptions());
+        BlockingQueue<String> a = subscribeShared(first, "$share/g/device/report/#");
+        BlockingQueue<String> b = subscribeShared(second, "$share/g/device/report/#");
+
+        for (int round = 0; round < 3; round++) {
+            for (int d = 0; d < 20; d++) {
+                publisher.publish("device/report/dev-" + d, String.valueOf(round).getBytes(StandardCharsets.UTF_8), 1, false);
+            }
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (a.size() + b.size() < 60 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(60, a.size() + b.size());
+        assertTrue(!a.isEmpty() && !b.isEmpty());
+        // 同一设备的消息只发往一个成员，且按发布顺序到达；共享订阅不补发保留消息
+        for (BlockingQueue<String> received : List.of(a, b)) {
+            Map<String, String> lastByTopic = new HashMap<>();
+            for (String message : received) {
+                String[] parts = message.split("=");
+                assertTrue(!parts[0].endsWith("retained"), message);
+                String previous = lastByTopic.put(parts[0], parts[1]);
+                assertTrue(previous == null || previous.compareTo(parts[1]) < 0, message);
+            }
+            (received == a ? b : a).forEach(other -> assertTrue(!lastByTopic.containsKey(other.split("=")[0])));
+        }
+
+        publisher.disconnect();
+        first.disconnect();
+        second.disconnect();
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.demo1.service.command;
+
+import com.example.demo1.service.DeviceService;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:bulk_command_tests;DB_CLOSE_DELAY=-1",
+        "mqtt.embedded-broker.enabled=true",
+        "mqtt.embedded-broker.name=bulk-tests",
+        "mqtt.embedded-broker.port=-1",
+        "mqtt.broker-url=vm://bulk-tests",
+        "command.bulk.max-inflight=8",
+        "command.bulk.progress-interval-ms=20"
+})
+class BulkCommandServiceTests {
+
+    private static final int SWITCHES = 50;
+
+    @Autowired
+    private BulkCommandService bulkCommandService;
+
+    @Autowired
+    private DeviceService deviceService;
+
+    /**
+     * 记录写出的 SSE 事件名。
+     */
+    private static final class RecordingEmitter extends SseEmitter {
+        private final List<String> events = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            for (DataWithMediaType item : builder.build()) {
+                String data = String.valueOf(item.getData());
+                if (data.startsWith("event:")) {
+                    events.add(data.substring(6, data.indexOf('\n')));
+                }
+            }
+        }
+    }
+
+    private static BulkCommandJob awaitDone(BulkCommandJob job) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!job.isDone() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertTrue(job.isDone());
+        return job;
+    }
+
+    @Test
+    void dispatchesToSelectedDevicesAndStreamsProgress() throws Exception {
+        for (int i = 0; i < SWITCHES; i++) {
+            deviceService.handleDeviceRegistrationOrUpdate("switch-" + i, "switch", i % 2 == 0 ? "online" : "offline");
+        }
+        deviceService.handleDeviceRegistrationOrUpdate("sensor-0", "sensor", "online");
+
+        Map<String, String> received = new ConcurrentHashMap<>();
+        MqttClient watcher = new MqttClient("vm://bulk-tests", "bulk-tests-watcher", new MemoryPersistence());
+        watcher.setCallback(new MqttCallback() {
+            @Override
+            public void connectionLost(Throwable cause) {
+            }
+
+            @Override
+            public void messageArrived(String topic, MqttMessage message) {
+                // 启用命令确认时报文为 {"commandId":"...","action":"ON"}
+                String payload = new String(message.getPayload(), StandardCharsets.UTF_8);
+                received.put(topic, payload.substring(payload.indexOf("\"action\":\"") + 10, payload.lastIndexOf('"')));
+            }
+
+            @Override
+            public void deliveryComplete(IMqttDeliveryToken token) {
+            }
+        });
+        watcher.connect(new MqttConnectOptions());
+        watcher.subscribe("device/command/#", 1);
+
+        BulkCommandJob byType = bulkCommandService.submit("off", null, "switch", null).job();
+        RecordingEmitter progress = new RecordingEmitter();
+        assertTrue(bulkCommandService.subscribe(byType.getId(), progress));
+        awaitDone(byType);
+        assertEquals(SWITCHES, byType.getSummary().get("sent"));
+
+        BulkCommandJob byStatus = awaitDone(bulkCommandService.submit("ON", null, "switch", "ONLINE").job());
+        assertEquals(SWITCHES / 2, byStatus.getTotal());
+
+        BulkCommandService.Submission byList = bulkCommandService.submit("ON",
+                List.of("sensor-0", "ghost", "switch-1", "sensor-0"), null, null);
+        assertEquals(List.of("ghost"), byList.unknownDeviceUids());
+        assertEquals(2, awaitDone(byList.job()).getTotal());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while ((received.size() < SWITCHES + 1 || !progress.events.contains("completed"))
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(SWITCHES + 1, received.size());
+        assertEquals("OFF", received.get("device/command/switch-3"));
+        assertEquals("ON", received.get("device/command/switch-2"));
+        assertEquals("ON", received.get("device/command/switch-1"));
+        assertEquals("ON", received.get("device/command/sensor-0"));
+        assertTrue(progress.events.contains("progress"), progress.events::toString);
+        assertEquals("completed", progress.events.get(progress.events.size() - 1));
+
+        assertThrows(IllegalArgumentException.class, () -> bulkCommandService.submit("ON", List.of(), null, " "));
+        watcher.disconnect();
+        watcher.close();
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.demo1.service.command;
+
+import com.example.demo1.service.DeviceService;
+import com.example.demo1.service.MqttService;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:command_tracker_tests;DB_CLOSE_DELAY=-1",
+        "mqtt.embedded-broker.enabled=true",
+        "mqtt.embedded-broker.name=ack-tests",
+        "mqtt.embedded-broker.port=-1",
+        "mqtt.broker-url=vm://ack-tests",
+        "command.ack.timeout-ms=500"
+})
+class CommandTrackerTests {
+
+    @Autowired
+    private CommandTracker commandTracker;
+
+    @Autowired
+    private MqttService mqttService;
+
+    @Autowired
+    private DeviceService deviceService;
+
+    private CommandTracker.Outcome awaitOutcome(String commandId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (commandTracker.find(commandId).orElseThrow().outcome() == CommandTracker.Outcome.PENDING
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        return commandTracker.find(commandId).orElseThrow().outcome();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void correlatesAcksAndTimesOutSilentDevices() throws Exception {
+        deviceService.handleDeviceRegistrationOrUpdate("lamp-1", "SmartSwitch", "offline");
+        deviceService.handleDeviceRegistrationOrUpdate("lamp-2", "SmartSwitch", "offline");
+
+        // lamp-1 回显确认，lamp-2 不回显
+        MqttClient device = new MqttClient("vm://ack-tests", "ack-tests-lamp-1", new MemoryPersistence());
+        device.setCallback(new MqttCallback() {
+            @Override
+            public void connectionLost(Throwable cause) {
+            }
+
+            @Override
+            public void messageArrived(String topic, MqttMessage message) {
+                String payload = new String(message.getPayload(), StandardCharsets.UTF_8);
+                String commandId = payload.substring(payload.indexOf("\"commandId\":\"") + 13, payload.indexOf("\","));
+                String ack = "{\"commandId\":\"" + commandId + "\",\"result\":\"ok\",\"status\":\"online\"}";
+                new Thread(() -> {
+                    try {
+                        device.publish("device/ack/lamp-1", ack.getBytes(StandardCharsets.UTF_8), 1, false);
+                    } catch (Exception ignored) {
+                    }
+                }).start();
+            }
+
+            @Override
+            public void deliveryComplete(IMqttDeliveryToken token) {
+            }
+        });
+        device.connect(new MqttConnectOptions());
+        device.subscribe("device/command/lamp-1", 1);
+
+        String acked = commandTracker.register("lamp-1", "ON");
+        mqttService.publish("device/command/lamp-1", commandTracker.encode(acked, "ON"), 1);
+        String silent = commandTracker.register("lamp-2", "ON");
+        mqttService.publish("device/command/lamp-2", commandTracker.encode(silent, "ON"), 1);
+
+        assertEquals(CommandTracker.Outcome.ACKED, awaitOutcome(acked));
+        CommandTracker.CommandOutcome outcome = commandTracker.find(acked).orElseThrow();
+        assertEquals("SmartSwitch", outcome.deviceType());
+        assertEquals("online", outcome.deviceStatus());
+        assertTrue(outcome.rttMs() >= 0);
+        assertEquals(CommandTracker.Outcome.TIMED_OUT, awaitOutcome(silent));
+
+        Map<String, Object> byType = (Map<String, Object>) commandTracker.getLatencyStats().get("byDeviceType");
+        Map<String, Object> switches = (Map<String, Object>) byType.get("SmartSwitch");
+        assertEquals(1L, switches.get("count"));
+        assertEquals(1L, switches.get("timeouts"));
+        assertTrue(switches.containsKey("p50") && switches.containsKey("p99"));
+
+        device.disconnect();
+        device.close();
+    }
+}
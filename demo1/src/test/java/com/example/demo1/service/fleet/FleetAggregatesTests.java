@@ -0,0 +1,69 @@
+package com.example.demo1.service.fleet;
+
+import com.example.demo1.entity.Device;
+import com.example.demo1.service.DeviceService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:fleet_tests;DB_CLOSE_DELAY=-1",
+        "mqtt.embedded-broker.enabled=true",
+        "mqtt.embedded-broker.name=fleet-tests",
+        "mqtt.embedded-broker.port=-1",
+        "mqtt.broker-url=vm://fleet-tests",
+        "fleet.summary.push-interval-ms=20"
+})
+class FleetAggregatesTests {
+
+    @Autowired
+    private FleetAggregates fleetAggregates;
+
+    @Autowired
+    private DeviceService deviceService;
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Long> counts(String key) {
+        return (Map<String, Long>) fleetAggregates.getSummary().get(key);
+    }
+
+    @Test
+    void countsFollowRegistrationsStatusChangesUpdatesAndDeletes() throws InterruptedException {
+        for (int i = 0; i < 4; i++) {
+            deviceService.handleDeviceRegistrationOrUpdate("fleet-sw-" + i, "switch", "online");
+        }
+        deviceService.handleDeviceRegistrationOrUpdate("fleet-sensor", "sensor", "ONLINE");
+        deviceService.updateDeviceStatusByUid("fleet-sw-0", "offline");
+        deviceService.updateDeviceStatusByUid("fleet-sw-0", "OFFLINE"); // 状态未变化
+        deviceService.handleDeviceRegistrationOrUpdate("fleet-sw-1", "switch", "offline");
+        Device manual = deviceService.registerDevice(new Device("手动", "lamp", "offline", "fleet-lamp"));
+
+        assertEquals(6, fleetAggregates.getSummary().get("total"));
+        assertEquals(Map.of("offline", 3L, "online", 3L), counts("byStatus"));
+        assertEquals(Map.of("lamp", 1L, "sensor", 1L, "switch", 4L), counts("byType"));
+
+        Device update = new Device();
+        update.setDeviceType("switch");
+        deviceService.updateDevice(manual.getId(), update);
+        assertEquals(Map.of("sensor", 1L, "switch", 5L), counts("byType"));
+        assertEquals(Map.of("offline", 3L, "online", 3L), counts("byStatus"));
+
+        deviceService.deleteDevice(manual.getId());
+        assertEquals(5, fleetAggregates.getSummary().get("total"));
+        assertEquals(Map.of("offline", 2L, "online", 3L), counts("byStatus"));
+
+        // 变化被推送后 seq 前进
+        long deadline = System.currentTimeMillis() + 5000;
+        long seq = (long) fleetAggregates.getSummary().get("seq");
+        while (seq == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            seq = (long) fleetAggregates.getSummary().get("seq");
+        }
+        assertTrue(seq > 0);
+    }
+}
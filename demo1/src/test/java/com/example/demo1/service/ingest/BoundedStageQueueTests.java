@@ -0,0 +1,48 @@
+package com.example.demo1.service.ingest;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BoundedStageQueueTests {
+
+    @Test
+    void dropNewestRejectsIncomingWhenFull() throws InterruptedException {
+        BoundedStageQueue<Integer> queue = new BoundedStageQueue<>(2, BackpressurePolicy.DROP_NEWEST);
+        assertTrue(queue.offer(1));
+        assertTrue(queue.offer(2));
+        assertFalse(queue.offer(3));
+
+        assertEquals(1, queue.droppedCount());
+        assertEquals(1, queue.take());
+        assertEquals(2, queue.take());
+    }
+
+    @Test
+    void dropOldestEvictsHeadWhenFull() throws InterruptedException {
+        BoundedStageQueue<Integer> queue = new BoundedStageQueue<>(2, BackpressurePolicy.DROP_OLDEST);
+        queue.offer(1);
+        queue.offer(2);
+        assertTrue(queue.offer(3));
+
+        assertEquals(1, queue.droppedCount());
+        assertEquals(2, queue.take());
+        assertEquals(3, queue.take());
+    }
+
+    @Test
+    void tracksDepthAndHighWaterMark() throws InterruptedException {
+        BoundedStageQueue<Integer> queue = new BoundedStageQueue<>(4, BackpressurePolicy.BLOCK);
+        queue.offer(1);
+        queue.offer(2);
+        queue.offer(3);
+        queue.take();
+
+        assertEquals(2, queue.depth());
+        assertEquals(3, queue.highWaterMark());
+        assertEquals(3, queue.enqueuedCount());
+        assertEquals(4, queue.capacity());
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.demo1.service.ingest;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompactPayloadCodecTests {
+
+    private static byte[] bytes(int... values) {
+        byte[] out = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            out[i] = (byte) values[i];
+        }
+        return out;
+    }
+
+    @Test
+    void decodesReportInSchemaOrderAndSortsByName() throws IOException {
+        CompactPayloadCodec.Schema schema = new CompactPayloadCodec.Schema(List.of(
+                new CompactPayloadCodec.Field("temperature", 1), new CompactPayloadCodec.Field("humidity", 1)));
+        // ts=1000, temperature=234 (23.4), humidity=-50 (-5.0), bench seq=7, sendNanos=-1
+        byte[] payload = bytes(0xC7, 0x81, 0xE8, 0x07, 0xD4, 0x03, 0x63, 0x07, 0x01);
+
+        assertTrue(CompactPayloadCodec.isCompact(payload));
+        CompactPayloadCodec.Report report = CompactPayloadCodec.decodeReport(payload, schema);
+        assertEquals(1000L, report.timestamp());
+        assertArrayEquals(new String[]{"humidity", "temperature"}, report.names());
+        assertArrayEquals(new double[]{-5.0, 23.4}, report.values());
+        assertTrue(report.bench());
+        assertEquals(7L, report.benchSeq());
+        assertEquals(-1L, report.benchSendNanos());
+
+        assertThrows(IOException.class, () -> CompactPayloadCodec.decodeReport(bytes(0xC7, 0x01, 0xE8, 0x07, 0xD4), schema));
+    }
+
+    @Test
+    void decodesStatusAndRejectsJson() throws IOException {
+        byte[] payload = bytes(0xC7, 0x02, 0x05, 0x07, 'o', 'f', 'f', 'l', 'i', 'n', 'e');
+
+        assertEquals(new CompactPayloadCodec.Status(5L, "offline"), CompactPayloadCodec.decodeStatus(payload));
+        assertFalse(CompactPayloadCodec.isCompact("{\"status\":\"online\"}".getBytes()));
+        assertThrows(IOException.class, () -> CompactPayloadCodec.decodeReport(payload,
+                new CompactPayloadCodec.Schema(List.of(new CompactPayloadCodec.Field("t", 0)))));
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.demo1.service.ingest;
+
+import com.example.demo1.service.DeviceRegistryCache;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:ingest_pipeline_tests;DB_CLOSE_DELAY=-1",
+        "mqtt.embedded-broker.enabled=true",
+        "mqtt.embedded-broker.name=ingest-pipeline-tests",
+        "mqtt.embedded-broker.port=-1",
+        "mqtt.broker-url=vm://ingest-pipeline-tests",
+        "ingest.parse-workers=4",
+        "ingest.persist-workers=4"
+})
+class IngestPipelineTests {
+
+    private static final int DEVICES = 200;
+
+    @Autowired
+    private IngestPipeline ingestPipeline;
+
+    @Autowired
+    private DeviceRegistryCache deviceRegistryCache;
+
+    private static byte[] json(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private String statusOf(String deviceUid) {
+        return deviceRegistryCache.get(deviceUid).map(DeviceRegistryCache.DeviceSnapshot::status).orElse(null);
+    }
+
+    @Test
+    void messagesOfOneDeviceAreProcessedInArrivalOrder() throws InterruptedException {
+        // 注册消息走共用的注册主题，紧随其后的状态消息走设备自己的主题；两者必须按到达顺序处理，
+        // 否则状态消息先到时设备尚未注册而被忽略，最终状态停留在注册时的 online
+        for (int i = 0; i < DEVICES; i++) {
+            String uid = "order-" + i;
+            ingestPipeline.submit("device/lifecycle/register",
+                    json("{\"deviceId\":\"" + uid + "\",\"deviceType\":\"switch\",\"status\":\"online\"}"));
+            ingestPipeline.submit("device/status/" + uid, json("{\"status\":\"offline\"}"));
+        }
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        int settled = 0;
+        while (System.currentTimeMillis() < deadline) {
+            settled = 0;
+            for (int i = 0; i < DEVICES; i++) {
+                if ("offline".equals(statusOf("order-" + i))) {
+                    settled++;
+                }
+            }
+            if (settled == DEVICES) {
+                break;
+            }
+            Thread.sleep(20);
+        }
+        assertEquals(DEVICES, settled);
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.demo1.service.ingest;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PayloadDecoderTests {
+
+    private final PayloadDecoder decoder = new PayloadDecoder(new JsonFactory());
+
+    private static byte[] json(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void decodesNumericAndLegacyStringMetricsSortedByName() throws IOException {
+        PayloadDecoder.ReportPayload report = decoder.decodeReport(json(
+                "{\"deviceId\":\"th-1\",\"timestamp\":1700000000000,\"temperature\":23.4,\"humidity\":\"56.7\","
+                        + "\"bench\":{\"seq\":3},\"on\":true,\"label\":\"n/a\"}"), 0L);
+
+        assertEquals(1700000000000L, report.timestamp());
+        assertArrayEquals(new String[]{"humidity", "temperature"}, report.names());
+        assertArrayEquals(new double[]{56.7, 23.4}, report.values());
+    }
+
+    @Test
+    void reportWithoutTimestampOrMetricsUsesDefaults() throws IOException {
+        PayloadDecoder.ReportPayload report = decoder.decodeReport(json("{\"deviceId\":\"th-1\",\"x\":[1,2]}"), 42L);
+
+        assertEquals(42L, report.timestamp());
+        assertEquals(0, report.names().length);
+    }
+
+    @Test
+    void decodesStatusAndRegistrationFields() throws IOException {
+        assertEquals("offline", decoder.decodeStatus(json("{\"ts\":1,\"status\":\"offline\"}")).status());
+        assertNull(decoder.decodeStatus(json("{\"status\":1}")).status());
+
+        PayloadDecoder.RegistrationPayload registration = decoder.decodeRegistration(
+                json("{\"deviceId\":\"sw-1\",\"deviceType\":\"SmartSwitch\",\"meta\":{\"fw\":\"1.0\"}}"));
+        assertEquals(new PayloadDecoder.RegistrationPayload("sw-1", "SmartSwitch", null, null, List.of()), registration);
+
+        PayloadDecoder.RegistrationPayload compact = decoder.decodeRegistration(json(
+                "{\"deviceId\":\"th-1\",\"deviceType\":\"TempHumSensor\",\"encoding\":\"compact\","
+                        + "\"schema\":[{\"name\":\"temperature\",\"scale\":1},{\"name\":\"humidity\"}]}"));
+        assertEquals("compact", compact.encoding());
+        assertEquals(List.of(new CompactPayloadCodec.Field("temperature", 1), new CompactPayloadCodec.Field("humidity", 0)),
+                compact.schema());
+
+        assertThrows(IOException.class, () -> decoder.decodeStatus(json("[\"online\"]")));
+    }
+}
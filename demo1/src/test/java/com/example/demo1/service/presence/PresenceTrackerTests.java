@@ -0,0 +1,108 @@
+package com.example.demo1.service.presence;
+
+import com.example.demo1.service.DeviceRegistryCache;
+import com.example.demo1.service.DeviceService;
+import com.example.demo1.service.ingest.IngestPipeline;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:presence_tests;DB_CLOSE_DELAY=-1",
+        "mqtt.embedded-broker.enabled=true",
+        "mqtt.embedded-broker.name=presence-tests",
+        "mqtt.embedded-broker.port=-1",
+        "mqtt.broker-url=vm://presence-tests",
+        "presence.tick-ms=20",
+        "presence.default-interval-ms=100",
+        "presence.min-timeout-ms=200"
+})
+class PresenceTrackerTests {
+
+    @Autowired
+    private PresenceTracker presenceTracker;
+
+    @Autowired
+    private DeviceService deviceService;
+
+    @Autowired
+    private DeviceRegistryCache deviceRegistryCache;
+
+    @Autowired
+    private IngestPipeline ingestPipeline;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private String statusOf(String deviceUid) {
+        return deviceRegistryCache.get(deviceUid).orElseThrow().status();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    @Test
+    void silentDevicesExpireWhileHeartbeatingDevicesStayOnline() throws Exception {
+        MqttClient device = new MqttClient("vm://presence-tests", "presence-tests-device", new MemoryPersistence());
+        device.connect(new MqttConnectOptions());
+        for (String uid : new String[]{"p-silent", "p-heartbeat", "p-leaving"}) {
+            deviceService.handleDeviceRegistrationOrUpdate(uid, "switch", "online");
+            presenceTracker.touch(uid);
+        }
+        presenceTracker.markOffline("p-leaving"); // 主动下线的设备不再参与超时判定
+
+        long until = System.currentTimeMillis() + 1000;
+        while (System.currentTimeMillis() < until) {
+            device.publish("device/heartbeat/p-heartbeat", new byte[0], 0, false);
+            Thread.sleep(50);
+        }
+        device.disconnect();
+        device.close();
+
+        await(() -> "offline".equals(statusOf("p-silent")));
+        assertEquals("EXPIRED", presenceTracker.find("p-silent").orElseThrow().state());
+        assertEquals("online", statusOf("p-heartbeat"));
+        assertEquals("ACTIVE", presenceTracker.find("p-heartbeat").orElseThrow().state());
+        assertEquals("online", statusOf("p-leaving"));
+        assertEquals("IDLE", presenceTracker.find("p-leaving").orElseThrow().state());
+        assertEquals(0L, presenceTracker.getStats().get("revived"));
+
+        // 超时后再次收到消息，恢复在线
+        presenceTracker.touch("p-silent");
+        await(() -> "online".equals(statusOf("p-silent")));
+        assertTrue((long) presenceTracker.getStats().get("revived") >= 1);
+    }
+
+    @Test
+    void commandAckAfterOfflineStatusDoesNotResumeTracking() throws Exception {
+        deviceService.handleDeviceRegistrationOrUpdate("p-switched-off", "switch", "online");
+        presenceTracker.touch("p-switched-off");
+        ingestPipeline.submit("device/status/p-switched-off",
+                "{\"status\":\"offline\"}".getBytes(StandardCharsets.UTF_8));
+        await(() -> "IDLE".equals(presenceTracker.find("p-switched-off").orElseThrow().state()));
+
+        // 关闭命令的确认在 offline 状态之后到达
+        Timer ackParse = meterRegistry.get("ingest.parse").tag("family", "ack").timer();
+        long acksBefore = ackParse.count();
+        ingestPipeline.submit("device/ack/p-switched-off",
+                "{\"commandId\":\"cmd-1\",\"result\":\"ok\",\"status\":\"off\"}".getBytes(StandardCharsets.UTF_8));
+        await(() -> ackParse.count() > acksBefore);
+        assertEquals("IDLE", presenceTracker.find("p-switched-off").orElseThrow().state());
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.demo1.service.presence;
+
+import com.example.demo1.service.DeviceService;
+import com.example.demo1.service.SseNotificationService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PresenceTrackerWheelTests {
+
+    private static final long TICK_MS = 10;
+    // 4 个槽位一圈只有 40 毫秒，远小于超时时长，截止时间都要截断到 tick + mask 再重新计算
+    private static final int WHEEL_SIZE = 4;
+    private static final long TIMEOUT_MS = 300;
+
+    private PresenceTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        DeviceService deviceService = mock(DeviceService.class);
+        when(deviceService.findDeviceUids(null, "online")).thenReturn(List.of());
+        when(deviceService.updateDeviceStatuses(anyCollection(), anyString())).thenReturn(List.of());
+        tracker = new PresenceTracker();
+        ReflectionTestUtils.setField(tracker, "deviceService", deviceService);
+        ReflectionTestUtils.setField(tracker, "sseNotificationService", mock(SseNotificationService.class));
+        ReflectionTestUtils.setField(tracker, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(tracker, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(tracker, "enabled", true);
+        ReflectionTestUtils.setField(tracker, "tickMs", TICK_MS);
+        ReflectionTestUtils.setField(tracker, "wheelSize", WHEEL_SIZE);
+        ReflectionTestUtils.setField(tracker, "missedIntervals", 3);
+        ReflectionTestUtils.setField(tracker, "defaultIntervalMs", (int) (TIMEOUT_MS / 3));
+        ReflectionTestUtils.setField(tracker, "minTimeoutMs", TIMEOUT_MS);
+        ReflectionTestUtils.setField(tracker, "maxDevices", 1000);
+        tracker.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        tracker.shutdown();
+    }
+
+    private String stateOf(String deviceUid) {
+        return tracker.find(deviceUid).orElseThrow().state();
+    }
+
+    @Test
+    void deadlinesBeyondOneRevolutionAreCappedAndRechecked() throws InterruptedException {
+        long start = System.currentTimeMillis();
+        tracker.touch("silent");
+        tracker.touch("busy");
+
+        long expiredAfter = -1;
+        while (System.currentTimeMillis() - start < 5_000) {
+            tracker.touch("busy");
+            if (expiredAfter < 0 && "EXPIRED".equals(stateOf("silent"))) {
+                expiredAfter = System.currentTimeMillis() - start;
+            }
+            if (expiredAfter >= 0 && System.currentTimeMillis() - start > expiredAfter + 2 * TIMEOUT_MS) {
+                break;
+            }
+            Thread.sleep(5);
+        }
+
+        // 截断后的槽位先于截止时间到期，只是重新挂入，不会提前判定超时
+        assertTrue(expiredAfter >= TIMEOUT_MS, "expired after " + expiredAfter + " ms");
+        assertTrue(expiredAfter < TIMEOUT_MS + 500, "expired after " + expiredAfter + " ms");
+        // 一直有消息的设备经过多次截断和重新计算仍在跟踪
+        assertEquals("ACTIVE", stateOf("busy"));
+        assertEquals(1L, tracker.getStats().get("expired"));
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.demo1.service.sse;
+
+import com.example.demo1.Demo1Application;
+import com.example.demo1.service.SseNotificationService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SseEventBusTests {
+
+    private static final int DEVICES = 20;
+
+    /**
+     * 记录写出的 mqttMessage 事件所属主题。
+     */
+    private static final class RecordingEmitter extends SseEmitter {
+        private final List<String> topics = new CopyOnWriteArrayList<>();
+
+        RecordingEmitter() {
+            super(0L);
+        }
+
+        @Override
+        public synchronized void send(Set<DataWithMediaType> items) {
+            for (DataWithMediaType item : items) {
+                String frame = item.getData() instanceof byte[] bytes
+                        ? new String(bytes, StandardCharsets.UTF_8) : String.valueOf(item.getData());
+                int start = frame.indexOf("\"topic\":\"");
+                if (frame.contains("event:mqttMessage") && start >= 0) {
+                    topics.add(frame.substring(start + 9, frame.indexOf('"', start + 9)));
+                }
+            }
+        }
+    }
+
+    @Test
+    void deduplicatorRejectsRepeatsAndEventsOlderThanTheWindow() {
+        SseEventDeduplicator deduplicator = new SseEventDeduplicator();
+        assertTrue(deduplicator.accept("a", 1));
+        assertTrue(deduplicator.accept("a", 3));
+        assertTrue(deduplicator.accept("a", 2));
+        assertFalse(deduplicator.accept("a", 2));
+        assertFalse(deduplicator.accept("a", 3));
+        assertTrue(deduplicator.accept("b", 2));
+
+        assertTrue(deduplicator.accept("a", 3 + SseEventDeduplicator.WINDOW));
+        assertFalse(deduplicator.accept("a", 3));
+        assertEquals(2, deduplicator.origins());
+    }
+
+    private static ConfigurableApplicationContext startNode(String name, boolean brokerHost, Path dataDir) {
+        return new SpringApplicationBuilder(Demo1Application.class)
+                .run("--server.port=0",
+                        "--spring.datasource.url=jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1",
+                        "--telemetry.data-dir=" + dataDir.resolve(name),
+                        "--mqtt.embedded-broker.enabled=" + brokerHost,
+                        "--mqtt.embedded-broker.name=bus-tests",
+                        "--mqtt.embedded-broker.port=-1",
+                        "--mqtt.broker-url=vm://bus-tests",
+                        "--mqtt.client-id=" + name,
+                        "--mqtt.consumer.connections=2");
+    }
+
+    @Test
+    void everyNodeDeliversEachSharedEventExactlyOnce(@TempDir Path dataDir) throws Exception {
+        try (ConfigurableApplicationContext nodeA = startNode("node-a", true, dataDir);
+             ConfigurableApplicationContext nodeB = startNode("node-b", false, dataDir)) {
+            RecordingEmitter clientA = new RecordingEmitter();
+            RecordingEmitter clientB = new RecordingEmitter();
+            nodeA.getBean(SseNotificationService.class).addEmitter(clientA);
+            nodeB.getBean(SseNotificationService.class).addEmitter(clientB);
+
+            MqttClient device = new MqttClient("vm://bus-tests", "bus-tests-device", new MemoryPersistence());
+            MqttConnectOptions options = new MqttConnectOptions();
+            options.setMaxInflight(DEVICES); // 同步发布返回时在途计数可能尚未释放
+            device.connect(options);
+            for (int i = 0; i < DEVICES; i++) {
+                device.publish("device/report/dev-" + i,
+                        ("{\"temperature\":" + i + "}").getBytes(StandardCharsets.UTF_8), 1, false);
+            }
+            device.disconnect();
+            device.close();
+
+            long deadline = System.currentTimeMillis() + 10_000;
+            while ((clientA.topics.size() < DEVICES || clientB.topics.size() < DEVICES)
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            Thread.sleep(200); // 留出时间暴露重复投递
+
+            // 消息由两个节点分摊解析，但两个节点的客户端都恰好收到每条消息一次
+            double ingestedA = nodeA.getBean(MeterRegistry.class).get("ingest.messages").tag("family", "report").counter().count();
+            double ingestedB = nodeB.getBean(MeterRegistry.class).get("ingest.messages").tag("family", "report").counter().count();
+            assertEquals(DEVICES, ingestedA + ingestedB);
+            assertTrue(ingestedA > 0 && ingestedB > 0);
+            for (RecordingEmitter client : List.of(clientA, clientB)) {
+                assertEquals(DEVICES, client.topics.size(), client.topics::toString);
+                assertEquals(DEVICES, Set.copyOf(client.topics).size());
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.demo1.service.sse;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SseEventJournalTests {
+
+    @Test
+    void assignsIncreasingIdsAndReplaysWithinRange() {
+        SseEventJournal journal = new SseEventJournal(4, 100);
+        for (int i = 0; i < 6; i++) {
+            journal.append("mqttMessage", "m" + i, "device/report/dev", "dev", false);
+        }
+        assertEquals(106, journal.lastId());
+
+        List<SseEventJournal.Entry> missed = journal.since(103);
+        assertEquals(List.of(104L, 105L, 106L), missed.stream().map(SseEventJournal.Entry::id).toList());
+        // 最旧的保留事件是 103，从 102 之后重放仍然完整
+        assertEquals(4, journal.since(102).size());
+        assertTrue(journal.since(106).isEmpty());
+    }
+
+    @Test
+    void reportsGapBeyondJournalOrForeignId() {
+        SseEventJournal journal = new SseEventJournal(4, 100);
+        for (int i = 0; i < 6; i++) {
+            journal.append("mqttMessage", "m" + i, null, null, true);
+        }
+        assertNull(journal.since(101));
+        assertNull(journal.since(500));
+    }
+}
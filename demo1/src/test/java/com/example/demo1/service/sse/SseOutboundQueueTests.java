@@ -0,0 +1,96 @@
+package com.example.demo1.service.sse;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SseOutboundQueueTests {
+
+    private static SseFrame frame(String data, String key) {
+        return SseFrame.encode("mqttMessage", data, key);
+    }
+
+    @Test
+    void encodesFrameOnceInSseFormat() {
+        SseFrame frame = frame("line1\nline2", null);
+        byte[] bytes = (byte[]) frame.getContent().iterator().next().getData();
+        assertEquals("event:mqttMessage\ndata:line1\ndata:line2\n\n", new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void conflateReplacesPendingFrameOfSameDevice() {
+        SseOutboundQueue queue = new SseOutboundQueue(2, SlowConsumerPolicy.CONFLATE);
+        SseFrame a1 = frame("a1", "dev-a");
+        SseFrame b1 = frame("b1", "dev-b");
+        SseFrame a2 = frame("a2", "dev-a");
+        SseFrame c1 = frame("c1", "dev-c");
+
+        assertEquals(SseOutboundQueue.OfferResult.QUEUED, queue.offer(a1));
+        assertEquals(SseOutboundQueue.OfferResult.QUEUED, queue.offer(b1));
+        assertEquals(SseOutboundQueue.OfferResult.CONFLATED, queue.offer(a2)); // a1 被移除，a2 排到队尾
+        // 没有同设备的事件可替换时丢弃最旧的（b1）
+        assertEquals(SseOutboundQueue.OfferResult.QUEUED, queue.offer(c1));
+
+        assertSame(a2, queue.poll());
+        assertSame(c1, queue.poll());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    void conflateKeepsStatusWhenReportOfSameDeviceArrives() {
+        SseEventJournal journal = new SseEventJournal(16, 0);
+        SseOutboundQueue queue = new SseOutboundQueue(2, SlowConsumerPolicy.CONFLATE);
+        queue.offer(journal.append("mqttMessage", "r1", "device/report/dev-a", "dev-a", false).frame());
+        SseFrame status = journal.append("mqttMessage", "offline", "device/status/dev-a", "dev-a", false).frame();
+        queue.offer(status);
+        SseFrame report = journal.append("mqttMessage", "r2", "device/report/dev-a", "dev-a", false).frame();
+        // 同一设备的上报只替换上一条上报，不覆盖排队中的状态事件
+        assertEquals(SseOutboundQueue.OfferResult.CONFLATED, queue.offer(report));
+
+        List<SseFrame> delivered = new ArrayList<>();
+        for (SseFrame frame = queue.poll(); frame != null; frame = queue.poll()) {
+            delivered.add(frame);
+        }
+        assertEquals(2, delivered.size());
+        assertTrue(delivered.contains(status));
+        assertTrue(delivered.contains(report));
+    }
+
+    @Test
+    void conflatedQueueDeliversIdsInOrderSoReplayHasNoGaps() {
+        SseEventJournal journal = new SseEventJournal(16, 0);
+        SseOutboundQueue queue = new SseOutboundQueue(2, SlowConsumerPolicy.CONFLATE);
+        queue.offer(journal.append("mqttMessage", "a1", "device/report/dev-a", "dev-a", false).frame()); // id 1
+        queue.offer(journal.append("mqttMessage", "b1", "device/report/dev-b", "dev-b", false).frame()); // id 2
+        queue.offer(journal.append("mqttMessage", "a2", "device/report/dev-a", "dev-a", false).frame()); // id 3, 替换 id 1
+
+        // 新事件排到队尾：客户端先收到 id 2，再收到 id 3
+        SseFrame first = queue.poll();
+        assertEquals(2, first.getId());
+
+        // 收到 id 2 后断线，按 Last-Event-ID 重放得到尚未收到的 id 3，没有缺口
+        List<Long> replayed = journal.since(first.getId()).stream().map(e -> e.frame().getId()).toList();
+        assertEquals(List.of(3L), replayed);
+        assertEquals(3, queue.poll().getId());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    void dropAndDisconnectPoliciesRejectWhenFull() {
+        SseOutboundQueue drop = new SseOutboundQueue(1, SlowConsumerPolicy.DROP);
+        drop.offer(frame("1", "dev"));
+        assertEquals(SseOutboundQueue.OfferResult.DROPPED, drop.offer(frame("2", "dev")));
+        assertEquals(1, drop.depth());
+
+        SseOutboundQueue disconnect = new SseOutboundQueue(1, SlowConsumerPolicy.DISCONNECT);
+        disconnect.offer(frame("1", "dev"));
+        assertEquals(SseOutboundQueue.OfferResult.OVERFLOW, disconnect.offer(frame("2", "dev")));
+    }
+}
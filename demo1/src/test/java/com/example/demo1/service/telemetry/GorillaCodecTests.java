@@ -0,0 +1,74 @@
+package com.example.demo1.service.telemetry;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GorillaCodecTests {
+
+    @Test
+    void roundTripsJitteryTimestampsAndSensorValues() {
+        Random random = new Random(42);
+        int n = 1000;
+        long[] timestamps = new long[n];
+        double[] temperature = new double[n];
+        double[] humidity = new double[n];
+        long ts = 1_700_000_000_000L;
+        for (int i = 0; i < n; i++) {
+            // 5 秒间隔 + 抖动，偶尔出现大跳变和乱序
+            ts += 5000 + random.nextInt(200) - 100;
+            if (i % 97 == 0) {
+                ts += 3_600_000L;
+            }
+            timestamps[i] = i % 113 == 0 ? ts - 20_000 : ts;
+            temperature[i] = Math.round((15.0 + random.nextDouble() * 15.0) * 10) / 10.0;
+            humidity[i] = i % 7 == 0 ? Double.NaN : 40.0 + i * 0.01;
+        }
+
+        ChunkBuilder builder = new ChunkBuilder("sensor-th-001", new String[]{"humidity", "temperature"}, 0L);
+        for (int i = 0; i < n; i++) {
+            builder.append(timestamps[i], new double[]{humidity[i], temperature[i]});
+        }
+        // 经过段文件记录格式序列化再解析
+        EncodedChunk chunk = EncodedChunk.fromRecord(builder.encode().toRecord());
+
+        TelemetrySeries temp = new TelemetrySeries("temperature");
+        chunk.decodeInto(chunk.indexOf("temperature"), Long.MIN_VALUE, Long.MAX_VALUE, temp);
+        TelemetrySeries hum = new TelemetrySeries("humidity");
+        chunk.decodeInto(chunk.indexOf("humidity"), Long.MIN_VALUE, Long.MAX_VALUE, hum);
+
+        assertEquals("sensor-th-001", chunk.deviceUid);
+        assertArrayEquals(timestamps, temp.getTimestamps());
+        assertArrayEquals(temperature, temp.getValues());
+        assertArrayEquals(humidity, hum.getValues());
+        // 即使数值是随机的，也应小于原始的 3 * 8 字节/行
+        assertTrue(builder.encodedBytes() < n * 24, "encoded size " + builder.encodedBytes());
+    }
+
+    @Test
+    void regularSeriesCompressesToAFewBitsPerPoint() {
+        ChunkBuilder builder = new ChunkBuilder("d", new String[]{"v"}, 0L);
+        for (int i = 0; i < 512; i++) {
+            builder.append(1_700_000_000_000L + 5000L * i, new double[]{21.5});
+        }
+        // 固定间隔 + 恒定数值: 每点时间戳 1 位、数值 1 位
+        assertTrue(builder.encodedBytes() < 160, "encoded size " + builder.encodedBytes());
+    }
+
+    @Test
+    void rangeFilterKeepsOnlyPointsInside() {
+        ChunkBuilder builder = new ChunkBuilder("d", new String[]{"v"}, 0L);
+        for (int i = 0; i < 10; i++) {
+            builder.append(1000L * i, new double[]{i});
+        }
+        TelemetrySeries result = new TelemetrySeries("v");
+        builder.encode().decodeInto(0, 3000, 5000, result);
+
+        assertArrayEquals(new long[]{3000, 4000, 5000}, result.getTimestamps());
+        assertArrayEquals(new double[]{3, 4, 5}, result.getValues());
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.demo1.service.telemetry;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RollupEngineTests {
+
+    private static final String[] TEMPERATURE = {"temperature"};
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    @TempDir
+    Path dataDir;
+
+    private TelemetryStore store;
+    private RollupEngine engine;
+
+    private RollupEngine start(TelemetryStore telemetryStore, long minuteRetentionHours) {
+        RollupEngine rollupEngine = new RollupEngine();
+        ReflectionTestUtils.setField(rollupEngine, "telemetryStore", telemetryStore);
+        ReflectionTestUtils.setField(rollupEngine, "minuteRetentionHours", minuteRetentionHours);
+        ReflectionTestUtils.setField(rollupEngine, "hourRetentionDays", 30L);
+        ReflectionTestUtils.setField(rollupEngine, "dayRetentionDays", 365L);
+        rollupEngine.init();
+        return rollupEngine;
+    }
+
+    private TelemetryStore openStore() throws Exception {
+        TelemetryStore telemetryStore = new TelemetryStore();
+        ReflectionTestUtils.setField(telemetryStore, "enabled", true);
+        ReflectionTestUtils.setField(telemetryStore, "dataDir", dataDir.toString());
+        ReflectionTestUtils.setField(telemetryStore, "segmentSizeMb", 1);
+        ReflectionTestUtils.setField(telemetryStore, "chunkPoints", 512);
+        ReflectionTestUtils.setField(telemetryStore, "sealAfterMs", 300_000L);
+        telemetryStore.init();
+        return telemetryStore;
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (engine != null) {
+            engine.shutdown();
+        }
+        if (store != null) {
+            store.shutdown();
+        }
+    }
+
+    private void record(String deviceUid, long timestamp, double value) {
+        engine.record(deviceUid, timestamp, TEMPERATURE, new double[]{value});
+    }
+
+    @Test
+    void bucketsTrackMinMaxAvgAndCount() {
+        engine = start(new TelemetryStore(), 24);
+        long hour = Math.floorDiv(System.currentTimeMillis(), HOUR) * HOUR;
+        record("dev", hour + 1_000, 20);
+        record("dev", hour + 59_000, 30);
+        record("dev", hour + 30_000, 10); // 同一分钟内乱序
+        record("dev", hour + 61_000, 40);
+
+        RollupSeries minutes = engine.query("dev", "temperature", RollupResolution.MINUTE, hour, hour + HOUR);
+        assertArrayEquals(new long[]{hour, hour + 60_000}, minutes.getTimestamps());
+        assertArrayEquals(new double[]{10, 40}, minutes.getMin());
+        assertArrayEquals(new double[]{30, 40}, minutes.getMax());
+        assertArrayEquals(new double[]{20, 40}, minutes.getAvg());
+        assertArrayEquals(new long[]{3, 1}, minutes.getCount());
+
+        RollupSeries hours = engine.query("dev", "temperature", RollupResolution.HOUR, hour, hour + HOUR);
+        assertArrayEquals(new long[]{4}, hours.getCount());
+        assertArrayEquals(new double[]{25}, hours.getAvg());
+    }
+
+    @Test
+    void choosesFinestResolutionWithinBudgetAndRetention() {
+        engine = start(new TelemetryStore(), 24);
+        long now = System.currentTimeMillis();
+        assertEquals(RollupResolution.MINUTE, engine.chooseResolution(now - HOUR, now, 500));
+        assertEquals(RollupResolution.HOUR, engine.chooseResolution(now - 2 * DAY, now, 500));
+        assertEquals(RollupResolution.DAY, engine.chooseResolution(now - 2 * DAY, now, 10));
+        // 1 分钟粒度的保留期（24 小时）不覆盖 from 时退到 1 小时
+        assertEquals(RollupResolution.HOUR, engine.chooseResolution(now - 48 * HOUR, now - 47 * HOUR, 500));
+        // 没有粒度满足预算时使用 1 天粒度
+        assertEquals(RollupResolution.DAY, engine.chooseResolution(now - 400 * DAY, now, 1));
+    }
+
+    @Test
+    void trimsBucketsPastRetentionAndDropsEmptySeries() {
+        engine = start(new TelemetryStore(), 1);
+        long now = System.currentTimeMillis();
+        record("dev", now - 3 * HOUR, 1);
+        record("dev", now, 2);
+        record("gone", now - 400 * DAY, 3);
+
+        ReflectionTestUtils.invokeMethod(engine, "trimExpired");
+
+        assertEquals(1, engine.query("dev", "temperature", RollupResolution.MINUTE, 0, Long.MAX_VALUE).getSize());
+        assertEquals(2, engine.query("dev", "temperature", RollupResolution.HOUR, 0, Long.MAX_VALUE).getSize());
+        assertEquals(0, engine.query("gone", "temperature", RollupResolution.DAY, 0, Long.MAX_VALUE).getSize());
+        assertEquals(1, engine.getStats().get("series"));
+
+        // 已清理的序列可以重新写入
+        record("gone", now, 4);
+        assertEquals(1, engine.query("gone", "temperature", RollupResolution.DAY, 0, Long.MAX_VALUE).getSize());
+    }
+
+    @Test
+    void backfillCountsStoredPointsOnceAndLiveRecordsAfterIt() throws Exception {
+        store = openStore();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 5; i++) {
+            store.append("dev", now - 10 * HOUR + i, TEMPERATURE, new double[]{i});
+        }
+        engine = start(store, 24);
+        // 启动后到达、设备时间戳早于启动时刻的点只由实时记录计入一次
+        store.append("dev", now - 10 * HOUR, TEMPERATURE, new double[]{5});
+        record("dev", now - 10 * HOUR, 5);
+
+        RollupSeries hours = engine.query("dev", "temperature", RollupResolution.HOUR, 0, Long.MAX_VALUE);
+        assertArrayEquals(new long[]{6}, hours.getCount());
+    }
+}
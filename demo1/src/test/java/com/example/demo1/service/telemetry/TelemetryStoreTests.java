@@ -0,0 +1,129 @@
+package com.example.demo1.service.telemetry;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TelemetryStoreTests {
+
+    @TempDir
+    Path dataDir;
+
+    private TelemetryStore store() {
+        TelemetryStore store = new TelemetryStore();
+        ReflectionTestUtils.setField(store, "enabled", true);
+        ReflectionTestUtils.setField(store, "dataDir", dataDir.toString());
+        ReflectionTestUtils.setField(store, "segmentSizeMb", 1);
+        ReflectionTestUtils.setField(store, "chunkPoints", 4);
+        ReflectionTestUtils.setField(store, "sealAfterMs", 300_000L);
+        return store;
+    }
+
+    @Test
+    void dataDirectoryCanOnlyBeOpenedByOneStore() throws Exception {
+        TelemetryStore first = store();
+        first.init();
+        for (int i = 0; i < 10; i++) {
+            first.append("dev", 1000L * i, new String[]{"temperature"}, new double[]{20 + i});
+        }
+        assertThrows(IllegalStateException.class, () -> store().init());
+        first.shutdown();
+
+        // 关闭后释放目录锁，新实例可以打开并读回已封存的数据
+        TelemetryStore reopened = store();
+        reopened.init();
+        assertEquals(10, reopened.query("dev", "temperature", 0, Long.MAX_VALUE).getSize());
+        reopened.shutdown();
+    }
+
+    private List<String> segmentNames() throws Exception {
+        try (Stream<Path> files = Files.list(dataDir)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(".tsdb"))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    @Test
+    void corruptTailIsTruncatedOnOpen() throws Exception {
+        TelemetryStore first = store();
+        first.init();
+        for (int i = 0; i < 10; i++) {
+            first.append("dev", 1000L * i, new String[]{"temperature"}, new double[]{20 + i});
+        }
+        first.shutdown(); // 3 条记录: 4 + 4 + 2 个点
+
+        // 翻转最后一条记录中的一个字节，模拟写了一半的记录
+        Path segment = dataDir.resolve(segmentNames().get(0));
+        byte[] bytes = Files.readAllBytes(segment);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int last = 0;
+        for (int position = 0; buffer.getInt(position) != 0; position += 4 + buffer.getInt(position)) {
+            last = position;
+        }
+        bytes[last + 20] ^= 0x5A;
+        Files.write(segment, bytes);
+
+        TelemetryStore reopened = store();
+        reopened.init();
+        assertEquals(8, reopened.query("dev", "temperature", 0, Long.MAX_VALUE).getSize());
+        for (int i = 10; i < 14; i++) {
+            reopened.append("dev", 1000L * i, new String[]{"temperature"}, new double[]{20 + i});
+        }
+        reopened.shutdown();
+
+        // 截断处之后写入的新记录可以正常读回
+        TelemetryStore again = store();
+        again.init();
+        assertEquals(12, again.query("dev", "temperature", 0, Long.MAX_VALUE).getSize());
+        again.shutdown();
+    }
+
+    @Test
+    void segmentsOlderThanRetentionAreDropped() throws Exception {
+        long now = System.currentTimeMillis();
+        TelemetryStore store = store();
+        ReflectionTestUtils.setField(store, "rawRetention", Duration.ofDays(1));
+        ReflectionTestUtils.setField(store, "sealAfterMs", 0L);
+        store.init();
+        for (int i = 0; i < 4; i++) {
+            store.append("old", now - Duration.ofDays(10).toMillis() + i, new String[]{"temperature"}, new double[]{i});
+        }
+        ReflectionTestUtils.invokeMethod(store, "sealIdleChunks");
+        ReflectionTestUtils.invokeMethod(store, "rollSegment");
+        for (int i = 0; i < 4; i++) {
+            store.append("new", now + i, new String[]{"temperature"}, new double[]{i});
+        }
+        assertEquals(List.of("segment-000000.tsdb", "segment-000001.tsdb"), segmentNames());
+
+        ReflectionTestUtils.invokeMethod(store, "dropExpiredSegments");
+        assertEquals(List.of("segment-000001.tsdb"), segmentNames());
+        assertEquals(Set.of("new"), store.deviceUids());
+        assertEquals(0, store.query("old", "temperature", 0, Long.MAX_VALUE).getSize());
+        assertEquals(4, store.query("new", "temperature", 0, Long.MAX_VALUE).getSize());
+        assertEquals(1L, store.getStats().get("segmentsDropped"));
+        // 被删除段的编号不会被复用
+        ReflectionTestUtils.invokeMethod(store, "rollSegment");
+        assertEquals(List.of("segment-000001.tsdb", "segment-000002.tsdb"), segmentNames());
+        store.shutdown();
+
+        TelemetryStore reopened = store();
+        reopened.init();
+        assertFalse(reopened.deviceUids().contains("old"));
+        assertEquals(4, reopened.query("new", "temperature", 0, Long.MAX_VALUE).getSize());
+        reopened.shutdown();
+    }
+}
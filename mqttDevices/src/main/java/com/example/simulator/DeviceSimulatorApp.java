@@ -1,72 +1,58 @@
 package com.example.simulator;
 
-import com.example.simulator.device.SimulatedDevice;
+import com.example.simulator.config.DeviceConfig;
+import com.example.simulator.config.DevicesConfig;
+import com.example.simulator.engine.SimulationEngine;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CountDownLatch;
 
 public class DeviceSimulatorApp {
 
     private static final Logger logger = LoggerFactory.getLogger(DeviceSimulatorApp.class);
     // --- 配置区 ---
-    private static final String BROKER_URL = "tcp://localhost:1883"; // 你的 EMQX 地址
+    // 设备群定义文件: -Dsim.fleet=/path/to/devices.xml，未指定时使用 classpath 中的 devices.xml
+    private static final String FLEET_FILE = System.getProperty("sim.fleet");
+    // 覆盖 devices.xml 中的 Broker 地址: -Dsim.broker-url=tcp://host:1883
+    private static final String BROKER_URL = System.getProperty("sim.broker-url");
     // --- 配置区结束 ---
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
         logger.info("启动物联网设备模拟器...");
 
-        // --- 定义要模拟的设备 (硬编码方式) ---
-        List<SimulatedDevice> devices = new ArrayList<>();
-        // 设备1: 温湿度传感器，10秒上报一次，初始状态为 ON
-        devices.add(new SimulatedDevice("sensor-th-001", "TempHumSensor", BROKER_URL, 10, true));
-        // 设备2: 智能开关，60秒上报一次状态（或仅变化时），初始状态为 OFF
-        devices.add(new SimulatedDevice("switch-001", "SmartSwitch", BROKER_URL, 60, false));
-        // 设备3: 另一个温湿度传感器，15秒上报一次，初始状态为 ON
-        devices.add(new SimulatedDevice("sensor-th-002", "TempHumSensor", BROKER_URL, 15, true));
-
-        // --- 启动设备模拟 ---
-        // 为每个设备创建一个线程
-        ExecutorService executorService = Executors.newFixedThreadPool(devices.size());
-        for (SimulatedDevice device : devices) {
-            executorService.submit(device); // 提交任务到线程池执行 run() 方法
+        // --- 读取设备群定义 ---
+        DevicesConfig config = FLEET_FILE != null
+                ? DevicesConfig.load(FLEET_FILE)
+                : DevicesConfig.loadFromClasspath("devices.xml");
+        if (BROKER_URL != null) {
+            config.setBrokerUrl(BROKER_URL);
+        }
+        for (DeviceConfig group : config.getGroups()) {
+            logger.info("设备组: {}", group);
         }
 
-        logger.info("已提交 {} 个模拟设备到线程池运行...", devices.size());
+        // --- 启动设备模拟 ---
+        // 所有设备共享引擎的时间轮和工作线程，不再每个设备一个线程
+        SimulationEngine engine = new SimulationEngine(config.getBrokerUrl(), config.getConnectionMode(),
+                config.getPoolSize(), config.getWorkers());
+        engine.start();
+        // 按速率逐批接入设备，设备对象按需创建
+        engine.rampUp(config.devices(), config.getRampUpPerSecond(), null);
+
+        logger.info("共 {} 个模拟设备，按每秒 {} 个接入。", config.totalDevices(), config.getRampUpPerSecond());
         logger.info("模拟器正在运行。按 Ctrl+C 停止。");
 
         // --- 添加关闭钩子，用于优雅停止 ---
+        CountDownLatch stopped = new CountDownLatch(1);
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             logger.info("收到关闭信号，正在停止所有模拟设备...");
-            for (SimulatedDevice device : devices) {
-                device.stopSimulation(); // 请求设备停止
-            }
-
-            executorService.shutdown(); // 不再接受新任务
-            try {
-                // 等待最多 10 秒让现有任务完成或停止
-                if (!executorService.awaitTermination(10, TimeUnit.SECONDS)) {
-                    logger.warn("模拟设备线程池未能在 10 秒内完全关闭，强制停止...");
-                    executorService.shutdownNow(); // 强制停止
-                }
-            } catch (InterruptedException e) {
-                logger.error("等待设备停止时被中断。", e);
-                executorService.shutdownNow();
-                Thread.currentThread().interrupt();
-            }
+            engine.shutdown(10_000);
             logger.info("设备模拟器已关闭。");
+            stopped.countDown();
         }));
 
-        // 主线程可以退出，或者保持运行以执行其他管理任务 (如果需要)
-        // 例如，可以监听控制台输入来动态控制设备
-        // try {
-        //     Thread.currentThread().join(); // 让主线程等待，直到被中断
-        // } catch (InterruptedException e) {
-        //     logger.info("主线程被中断。");
-        // }
+        // 引擎的线程都是守护线程，主线程需要等待直到收到关闭信号
+        stopped.await();
     }
 }
\ No newline at end of file
@@ -0,0 +1,66 @@
+package com.example.simulator.bench;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 压测接收端统计：按设备跟踪序号以发现乱序 / 重复，并记录端到端延迟（微秒）。
+ * 预热结束前收到的消息计入接收数量，但不计入延迟直方图。
+ */
+public class BenchStats {
+
+    private final ConcurrentHashMap<String, Long> lastSeqByDevice = new ConcurrentHashMap<>();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder receivedInWindow = new LongAdder();
+    private final LongAdder outOfOrder = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LatencyHistogram latencyMicros = new LatencyHistogram();
+    private volatile long measureFromNanos = Long.MAX_VALUE;
+
+    public void startMeasuring() {
+        measureFromNanos = System.nanoTime();
+    }
+
+    public void onReceived(String deviceId, long seq, long sendNanos, long receiveNanos) {
+        received.increment();
+        Long last = lastSeqByDevice.put(deviceId, seq);
+        if (last != null) {
+            if (seq == last) {
+                duplicates.increment();
+            } else if (seq < last) {
+                outOfOrder.increment();
+                // 保留已见过的最大序号
+                lastSeqByDevice.put(deviceId, last);
+            }
+        }
+        if (sendNanos >= measureFromNanos) {
+            receivedInWindow.increment();
+            latencyMicros.record(TimeUnit.NANOSECONDS.toMicros(receiveNanos - sendNanos));
+        }
+    }
+
+    public long getReceived() {
+        return received.sum();
+    }
+
+    public long getReceivedInWindow() {
+        return receivedInWindow.sum();
+    }
+
+    public long getOutOfOrder() {
+        return outOfOrder.sum();
+    }
+
+    public long getDuplicates() {
+        return duplicates.sum();
+    }
+
+    public int getDevicesSeen() {
+        return lastSeqByDevice.size();
+    }
+
+    public LatencyHistogram getLatencyMicros() {
+        return latencyMicros;
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.simulator.bench;
+
+import com.example.simulator.config.DeviceConfig;
+import com.example.simulator.config.DevicesConfig;
+import com.example.simulator.engine.SimulationEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 端到端压测：模拟设备 -> MQTT Broker -> demo1 -> SSE 客户端。
+ * <p>
+ * 运行方式（demo1 需已启动并连接到同一个 Broker，默认 tcp://localhost:1883）:
+ * <pre>
+ * java -cp device-simulator-1.0.0.jar com.example.simulator.bench.BenchmarkApp
+ *     -Dbench.broker=embedded        内置压测 Broker（默认）；或填写外部 Broker 地址，例如 tcp://host:1883
+ *     -Dbench.broker-port=1883       内置 Broker 端口
+ *     -Dbench.sse-url=http://localhost:8080/sse/mqtt?topics=device/report/%2B
+ *     -Dbench.warmup=5s -Dbench.duration=60s
+ *     -Dsim.fleet=/path/to/fleet.xml 设备群定义，默认使用 classpath 中的 bench-devices.xml
+ * </pre>
+ * 输出吞吐量、丢失数、乱序 / 重复数以及 p50 / p99 / p99.9 端到端延迟。
+ */
+public class BenchmarkApp {
+
+    private static final Logger logger = LoggerFactory.getLogger(BenchmarkApp.class);
+    private static final long PROGRESS_INTERVAL_MILLIS = 5000;
+    private static final long DRAIN_MILLIS = 3000;
+
+    public static void main(String[] args) throws Exception {
+        String broker = System.getProperty("bench.broker", "embedded");
+        int brokerPort = Integer.getInteger("bench.broker-port", 1883);
+        String sseUrl = System.getProperty("bench.sse-url", "http://localhost:8080/sse/mqtt?topics=device/report/%2B");
+        long warmupMillis = parseDuration(System.getProperty("bench.warmup", "5s"));
+        long durationMillis = parseDuration(System.getProperty("bench.duration", "60s"));
+        String fleetFile = System.getProperty("sim.fleet");
+
+        DevicesConfig config = fleetFile != null
+                ? DevicesConfig.load(fleetFile)
+                : DevicesConfig.loadFromClasspath("bench-devices.xml");
+        for (DeviceConfig group : config.getGroups()) {
+            logger.info("压测设备组: {}", group);
+        }
+
+        StandInBroker standInBroker = null;
+        if ("embedded".equalsIgnoreCase(broker)) {
+            standInBroker = new StandInBroker(brokerPort);
+            standInBroker.start();
+            config.setBrokerUrl("tcp://localhost:" + standInBroker.getPort());
+        } else {
+            config.setBrokerUrl(broker);
+        }
+
+        // 先建立 SSE 连接，确保不漏掉最早的上报
+        BenchStats stats = new BenchStats();
+        SseBenchConsumer consumer = new SseBenchConsumer(URI.create(sseUrl), stats);
+        consumer.start();
+        if (!consumer.awaitConnected(10, TimeUnit.SECONDS)) {
+            logger.error("10 秒内未能连接到 {}，请确认 demo1 已启动并连接到 Broker {}", sseUrl, config.getBrokerUrl());
+            System.exit(1);
+        }
+        logger.info("SSE 客户端已连接: {}", sseUrl);
+
+        SimulationEngine engine = new SimulationEngine(config.getBrokerUrl(), config.getConnectionMode(),
+                config.getPoolSize(), config.getWorkers());
+        engine.setBenchmarkMode(true);
+        engine.start();
+        engine.rampUp(config.devices(), config.getRampUpPerSecond(), null);
+
+        logger.info("预热 {} 毫秒...", warmupMillis);
+        Thread.sleep(warmupMillis);
+        stats.startMeasuring();
+        long sentAtStart = engine.getReportsPublished();
+        long measureStart = System.currentTimeMillis();
+        logger.info("开始测量，持续 {} 毫秒", durationMillis);
+
+        long lastReceived = stats.getReceived();
+        while (System.currentTimeMillis() - measureStart < durationMillis) {
+            Thread.sleep(Math.min(PROGRESS_INTERVAL_MILLIS, durationMillis - (System.currentTimeMillis() - measureStart) + 1));
+            long received = stats.getReceived();
+            LatencyHistogram h = stats.getLatencyMicros();
+            logger.info("进度: 已发送 {}, 已接收 {} (+{}), p50={}ms p99={}ms",
+                    engine.getReportsPublished(), received, received - lastReceived,
+                    millis(h.valueAtPercentile(50)), millis(h.valueAtPercentile(99)));
+            lastReceived = received;
+        }
+        long windowMillis = System.currentTimeMillis() - measureStart;
+        long sentInWindow = engine.getReportsPublished() - sentAtStart;
+
+        engine.shutdown(5000);
+        // 等待途中的消息到达
+        Thread.sleep(DRAIN_MILLIS);
+        consumer.stop();
+        if (standInBroker != null) {
+            standInBroker.close();
+        }
+
+        long sent = engine.getReportsPublished();
+        long received = stats.getReceived();
+        LatencyHistogram h = stats.getLatencyMicros();
+        logger.info("========== 压测结果 ==========");
+        logger.info("设备数: {} (收到消息的设备 {}), 连接方式: {}", engine.getDeviceCount(), stats.getDevicesSeen(),
+                config.getConnectionMode());
+        logger.info("发送: {} 条上报 (测量窗口内 {} 条, {} 条/秒), 发布失败 {}", sent, sentInWindow,
+                rate(sentInWindow, windowMillis), engine.getPublishFailures());
+        logger.info("接收: {} 条 (测量窗口内 {} 条, {} 条/秒)", received, stats.getReceivedInWindow(),
+                rate(stats.getReceivedInWindow(), windowMillis));
+        logger.info("丢失: {} 条 ({}%), 乱序: {}, 重复: {}", Math.max(0, sent - received),
+                String.format("%.3f", sent == 0 ? 0.0 : Math.max(0, sent - received) * 100.0 / sent),
+                stats.getOutOfOrder(), stats.getDuplicates());
+        logger.info("端到端延迟 (ms): min={} mean={} p50={} p90={} p99={} p99.9={} max={} (样本 {})",
+                millis(h.getMin()), String.format("%.3f", h.getMean() / 1000.0), millis(h.valueAtPercentile(50)),
+                millis(h.valueAtPercentile(90)), millis(h.valueAtPercentile(99)), millis(h.valueAtPercentile(99.9)),
+                millis(h.getMax()), h.getTotalCount());
+        System.exit(0);
+    }
+
+    private static String millis(long micros) {
+        return String.format("%.3f", micros / 1000.0);
+    }
+
+    private static String rate(long count, long windowMillis) {
+        return String.format("%.0f", windowMillis == 0 ? 0.0 : count * 1000.0 / windowMillis);
+    }
+
+    private static long parseDuration(String value) {
+        String v = value.trim().toLowerCase();
+        if (v.endsWith("ms")) {
+            return Long.parseLong(v.substring(0, v.length() - 2));
+        }
+        if (v.endsWith("s")) {
+            return Math.round(Double.parseDouble(v.substring(0, v.length() - 1)) * 1000);
+        }
+        if (v.endsWith("m")) {
+            return Math.round(Double.parseDouble(v.substring(0, v.length() - 1)) * 60_000);
+        }
+        return Long.parseLong(v);
+    }
+}
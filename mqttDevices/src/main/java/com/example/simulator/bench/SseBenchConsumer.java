@@ -0,0 +1,117 @@
+package com.example.simulator.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 内置 SSE 客户端：连接 demo1 的 /sse/mqtt，解析 mqttMessage 事件，
+ * 从设备上报的 bench 字段（seq / sendNanos）计算端到端延迟并交给 {@link BenchStats}。
+ * <p>
+ * 模拟设备与本客户端运行在同一个 JVM 中，System.nanoTime 可以直接相减。
+ */
+public class SseBenchConsumer {
+
+    private static final Logger logger = LoggerFactory.getLogger(SseBenchConsumer.class);
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final URI uri;
+    private final BenchStats stats;
+    private final CountDownLatch connected = new CountDownLatch(1);
+    private volatile Stream<String> lines;
+    private volatile boolean stopped;
+
+    private String eventName = "message";
+    private final StringBuilder data = new StringBuilder();
+
+    public SseBenchConsumer(URI uri, BenchStats stats) {
+        this.uri = uri;
+        this.stats = stats;
+    }
+
+    public void start() {
+        Thread reader = new Thread(this::readLoop, "bench-sse-consumer");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * 等待收到服务端的 connection 事件。
+     */
+    public boolean awaitConnected(long timeout, TimeUnit unit) throws InterruptedException {
+        return connected.await(timeout, unit);
+    }
+
+    private void readLoop() {
+        try {
+            HttpRequest request = HttpRequest.newBuilder(uri).header("Accept", "text/event-stream").GET().build();
+            HttpResponse<Stream<String>> response = HttpClient.newHttpClient()
+                    .send(request, HttpResponse.BodyHandlers.ofLines());
+            if (response.statusCode() != 200) {
+                logger.error("SSE 连接失败: HTTP {}", response.statusCode());
+                return;
+            }
+            lines = response.body();
+            lines.forEach(this::onLine);
+        } catch (Exception e) {
+            if (!stopped) {
+                logger.error("SSE 连接 {} 出错: {}", uri, e.getMessage());
+            }
+        }
+    }
+
+    private void onLine(String line) {
+        if (line.isEmpty()) {
+            dispatch();
+            eventName = "message";
+            data.setLength(0);
+        } else if (line.startsWith("event:")) {
+            eventName = line.substring(6).trim();
+        } else if (line.startsWith("data:")) {
+            if (data.length() > 0) {
+                data.append('\n');
+            }
+            data.append(line, line.startsWith("data: ") ? 6 : 5, line.length());
+        }
+    }
+
+    private void dispatch() {
+        long receiveNanos = System.nanoTime();
+        if ("connection".equals(eventName)) {
+            connected.countDown();
+            return;
+        }
+        if (!"mqttMessage".equals(eventName)) {
+            return;
+        }
+        try {
+            JsonNode message = objectMapper.readTree(data.toString());
+            String topic = message.path("topic").asText();
+            JsonNode payload = objectMapper.readTree(message.path("payload").asText());
+            JsonNode bench = payload.path("bench");
+            if (bench.isObject()) {
+                String deviceId = topic.substring(topic.lastIndexOf('/') + 1);
+                stats.onReceived(deviceId, bench.path("seq").asLong(), bench.path("sendNanos").asLong(), receiveNanos);
+            }
+        } catch (Exception e) {
+            logger.debug("解析 SSE 事件失败: {}", e.getMessage());
+        }
+    }
+
+    public void stop() {
+        stopped = true;
+        Stream<String> current = lines;
+        if (current != null) {
+            current.close();
+        }
+    }
+}
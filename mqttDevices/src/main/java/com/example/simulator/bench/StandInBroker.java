@@ -0,0 +1,356 @@
+package com.example.simulator.bench;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 压测用的最小 MQTT 3.1.1 Broker，让压测不依赖外部 EMQX。
+ * <p>
+ * 支持 CONNECT / PUBLISH（QoS 0、1）/ SUBSCRIBE（+ / # 通配符）/ UNSUBSCRIBE / PING / DISCONNECT、
+ * 保留消息和遗嘱消息。转发给订阅者时统一使用 QoS 0。每个连接一个读线程，不做持久会话和鉴权，
+ * 只用于压测和本地开发。
+ */
+public class StandInBroker implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(StandInBroker.class);
+
+    private final int port;
+    private ServerSocket serverSocket;
+    private volatile boolean running;
+    private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+    private final Map<String, byte[]> retained = new ConcurrentHashMap<>();
+    private final AtomicInteger connectionIndex = new AtomicInteger();
+    private final LongAdder messagesIn = new LongAdder();
+    private final LongAdder messagesOut = new LongAdder();
+
+    public StandInBroker(int port) {
+        this.port = port;
+    }
+
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(port);
+        running = true;
+        Thread acceptor = new Thread(this::acceptLoop, "standin-broker-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        logger.info("压测用 MQTT Broker 已启动，端口 {}", serverSocket.getLocalPort());
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public long getMessagesIn() {
+        return messagesIn.sum();
+    }
+
+    public long getMessagesOut() {
+        return messagesOut.sum();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Session session = new Session(socket);
+                Thread reader = new Thread(session::readLoop, "standin-broker-conn-" + connectionIndex.incrementAndGet());
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (running) {
+                    logger.warn("接受连接时出错: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        serverSocket.close();
+        for (Session session : sessions) {
+            session.closeQuietly();
+        }
+    }
+
+    static boolean matches(String filter, String topic) {
+        String[] f = filter.split("/", -1);
+        String[] t = topic.split("/", -1);
+        if (topic.startsWith("$") && (f[0].equals("+") || f[0].equals("#"))) {
+            return false;
+        }
+        for (int i = 0; i < f.length; i++) {
+            if (f[i].equals("#")) {
+                return true;
+            }
+            if (i >= t.length || (!f[i].equals("+") && !f[i].equals(t[i]))) {
+                return false;
+            }
+        }
+        return f.length == t.length;
+    }
+
+    private static boolean isWildcard(String filter) {
+        return filter.indexOf('+') >= 0 || filter.indexOf('#') >= 0;
+    }
+
+    private void route(String topic, byte[] payload) {
+        messagesIn.increment();
+        for (Session session : sessions) {
+            if (session.isSubscribed(topic)) {
+                session.sendPublish(topic, payload, false);
+                messagesOut.increment();
+            }
+        }
+    }
+
+    /**
+     * 一个客户端连接。
+     */
+    private final class Session {
+        private final Socket socket;
+        private final DataInputStream in;
+        private final OutputStream out;
+        // 不含通配符的订阅按主题直接查找：连接池中的连接为每个设备订阅一个命令主题，路由时不能逐个匹配
+        private final Set<String> exactFilters = ConcurrentHashMap.newKeySet();
+        private final Set<String> wildcardFilters = ConcurrentHashMap.newKeySet();
+        private String clientId;
+        private String willTopic;
+        private byte[] willPayload;
+        private boolean willRetain;
+
+        Session(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+            this.out = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024);
+        }
+
+        boolean isSubscribed(String topic) {
+            if (exactFilters.contains(topic)) {
+                return true;
+            }
+            for (String filter : wildcardFilters) {
+                if (matches(filter, topic)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void readLoop() {
+            boolean clean = false;
+            try {
+                while (true) {
+                    int header = in.readUnsignedByte();
+                    int length = readRemainingLength();
+                    byte[] body = new byte[length];
+                    in.readFully(body);
+                    int type = header >> 4;
+                    if (type == 14) { // DISCONNECT
+                        clean = true;
+                        break;
+                    }
+                    handle(type, header & 0x0F, body);
+                }
+            } catch (EOFException | SocketException e) {
+                // 连接断开
+            } catch (IOException e) {
+                logger.debug("客户端 [{}] 读取出错: {}", clientId, e.getMessage());
+            } finally {
+                sessions.remove(this);
+                closeQuietly();
+                if (!clean && willTopic != null) {
+                    if (willRetain) {
+                        retained.put(willTopic, willPayload);
+                    }
+                    route(willTopic, willPayload);
+                }
+            }
+        }
+
+        private int readRemainingLength() throws IOException {
+            int value = 0;
+            int multiplier = 1;
+            int b;
+            do {
+                b = in.readUnsignedByte();
+                value += (b & 0x7F) * multiplier;
+                multiplier *= 128;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        private void handle(int type, int flags, byte[] body) throws IOException {
+            Reader r = new Reader(body);
+            switch (type) {
+                case 1 -> { // CONNECT
+                    r.string(); // 协议名
+                    r.u8();     // 协议级别
+                    int connectFlags = r.u8();
+                    r.u16();    // keepalive
+                    clientId = r.string();
+                    if ((connectFlags & 0x04) != 0) {
+                        willTopic = r.string();
+                        willPayload = r.bytes();
+                        willRetain = (connectFlags & 0x20) != 0;
+                    }
+                    sessions.add(this);
+                    write(new byte[]{0x20, 0x02, 0x00, 0x00});
+                }
+                case 3 -> { // PUBLISH
+                    int qos = (flags >> 1) & 0x03;
+                    boolean retain = (flags & 0x01) != 0;
+                    String topic = r.string();
+                    int packetId = qos > 0 ? r.u16() : 0;
+                    byte[] payload = r.rest();
+                    if (qos > 0) {
+                        write(new byte[]{0x40, 0x02, (byte) (packetId >> 8), (byte) packetId});
+                    }
+                    if (retain) {
+                        if (payload.length == 0) {
+                            retained.remove(topic);
+                        } else {
+                            retained.put(topic, payload);
+                        }
+                    }
+                    route(topic, payload);
+                }
+                case 8 -> { // SUBSCRIBE
+                    int packetId = r.u16();
+                    ByteArrayOutputStream granted = new ByteArrayOutputStream();
+                    while (r.remaining() > 0) {
+                        String filter = r.string();
+                        r.u8(); // 请求的 QoS，统一授予 0
+                        (isWildcard(filter) ? wildcardFilters : exactFilters).add(filter);
+                        granted.write(0);
+                        retained.forEach((topic, payload) -> {
+                            if (matches(filter, topic)) {
+                                sendPublish(topic, payload, true);
+                            }
+                        });
+                    }
+                    byte[] codes = granted.toByteArray();
+                    ByteArrayOutputStream ack = new ByteArrayOutputStream();
+                    ack.write(0x90);
+                    writeLength(ack, 2 + codes.length);
+                    ack.write(packetId >> 8);
+                    ack.write(packetId);
+                    ack.write(codes);
+                    write(ack.toByteArray());
+                }
+                case 10 -> { // UNSUBSCRIBE
+                    int packetId = r.u16();
+                    while (r.remaining() > 0) {
+                        String filter = r.string();
+                        (isWildcard(filter) ? wildcardFilters : exactFilters).remove(filter);
+                    }
+                    write(new byte[]{(byte) 0xB0, 0x02, (byte) (packetId >> 8), (byte) packetId});
+                }
+                case 12 -> write(new byte[]{(byte) 0xD0, 0x00}); // PINGREQ
+                default -> {
+                    // PUBACK 等（转发使用 QoS 0，无需处理）
+                }
+            }
+        }
+
+        void sendPublish(String topic, byte[] payload, boolean retain) {
+            byte[] topicBytes = topic.getBytes(StandardCharsets.UTF_8);
+            ByteArrayOutputStream packet = new ByteArrayOutputStream(payload.length + topicBytes.length + 8);
+            packet.write(0x30 | (retain ? 1 : 0));
+            writeLength(packet, 2 + topicBytes.length + payload.length);
+            packet.write(topicBytes.length >> 8);
+            packet.write(topicBytes.length);
+            packet.write(topicBytes, 0, topicBytes.length);
+            packet.write(payload, 0, payload.length);
+            try {
+                write(packet.toByteArray());
+            } catch (IOException e) {
+                closeQuietly();
+            }
+        }
+
+        private void write(byte[] packet) throws IOException {
+            synchronized (out) {
+                out.write(packet);
+                out.flush();
+            }
+        }
+
+        void closeQuietly() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // 已关闭
+            }
+        }
+    }
+
+    private static void writeLength(ByteArrayOutputStream out, int length) {
+        do {
+            int b = length % 128;
+            length /= 128;
+            out.write(length > 0 ? b | 0x80 : b);
+        } while (length > 0);
+    }
+
+    /**
+     * 报文体读取辅助类。
+     */
+    private static final class Reader {
+        private final byte[] data;
+        private int pos;
+
+        Reader(byte[] data) {
+            this.data = data;
+        }
+
+        int u8() {
+            return data[pos++] & 0xFF;
+        }
+
+        int u16() {
+            return (u8() << 8) | u8();
+        }
+
+        byte[] bytes() {
+            int len = u16();
+            byte[] result = new byte[len];
+            System.arraycopy(data, pos, result, 0, len);
+            pos += len;
+            return result;
+        }
+
+        String string() {
+            return new String(bytes(), StandardCharsets.UTF_8);
+        }
+
+        byte[] rest() {
+            byte[] result = new byte[data.length - pos];
+            System.arraycopy(data, pos, result, 0, result.length);
+            pos = data.length;
+            return result;
+        }
+
+        int remaining() {
+            return data.length - pos;
+        }
+    }
+}
@@ -1,4 +1,93 @@
 package com.example.simulator.config;
 
+import com.example.simulator.device.PayloadEncoding;
+import com.example.simulator.device.SimulatedDevice;
+
+/**
+ * 一组同类模拟设备的定义（devices.xml 中的 {@code <template>} 或 {@code <devices>} 元素）。
+ * <p>
+ * 设备 ID 由 idPattern（{@link String#format} 格式，参数为序号）和 startIndex 开始的序号生成，
+ * 例如 {@code sensor-th-%06d} + 1 生成 sensor-th-000001、sensor-th-000002 ...
+ */
 public class DeviceConfig {
+
+    private final String name;
+    private final String deviceType;
+    private final int count;
+    private final String idPattern;
+    private final int startIndex;
+    private final long intervalMillis;
+    private final long jitterMillis;
+    private final boolean initiallyOn;
+    private final PayloadEncoding encoding;
+
+    public DeviceConfig(String name, String deviceType, int count, String idPattern, int startIndex,
+                        long intervalMillis, long jitterMillis, boolean initiallyOn) {
+        this(name, deviceType, count, idPattern, startIndex, intervalMillis, jitterMillis, initiallyOn, PayloadEncoding.JSON);
+    }
+
+    public DeviceConfig(String name, String deviceType, int count, String idPattern, int startIndex,
+                        long intervalMillis, long jitterMillis, boolean initiallyOn, PayloadEncoding encoding) {
+        this.name = name;
+        this.deviceType = deviceType;
+        this.count = count;
+        this.idPattern = idPattern;
+        this.startIndex = startIndex;
+        this.intervalMillis = intervalMillis;
+        this.jitterMillis = jitterMillis;
+        this.initiallyOn = initiallyOn;
+        this.encoding = encoding;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDeviceType() {
+        return deviceType;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public String getIdPattern() {
+        return idPattern;
+    }
+
+    public int getStartIndex() {
+        return startIndex;
+    }
+
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    public long getJitterMillis() {
+        return jitterMillis;
+    }
+
+    public boolean isInitiallyOn() {
+        return initiallyOn;
+    }
+
+    public PayloadEncoding getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * 生成本组第 i 个（从 0 开始）设备。
+     */
+    public SimulatedDevice createDevice(int i) {
+        String deviceId = String.format(idPattern, startIndex + i);
+        SimulatedDevice device = new SimulatedDevice(deviceId, deviceType, intervalMillis, jitterMillis, initiallyOn);
+        device.setEncoding(encoding);
+        return device;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d x %s (%s, interval=%dms, jitter=%dms, encoding=%s)",
+                count, deviceType, idPattern, intervalMillis, jitterMillis, encoding);
+    }
 }
@@ -1,4 +1,223 @@
 package com.example.simulator.config;
 
+import com.example.simulator.device.PayloadEncoding;
+import com.example.simulator.device.SimulatedDevice;
+import com.example.simulator.engine.ConnectionMode;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * 模拟设备群的定义，从 devices.xml 解析（StAX 流式解析）。
+ * <pre>{@code
+ * <fleet brokerUrl="tcp://localhost:1883" connectionMode="POOLED" poolSize="8" workers="4" rampUpPerSecond="2000">
+ *     <template name="th" deviceType="TempHumSensor" interval="5s" jitter="500ms"/>
+ *     <devices template="th" count="20000" idPattern="sensor-th-%06d"/>
+ *     <devices deviceType="SmartSwitch" count="100" idPattern="switch-%04d" initiallyOn="false"/>
+ *     <devices template="th" count="1000" idPattern="compact-th-%06d" encoding="compact"/>
+ * </fleet>
+ * }</pre>
+ * {@code <devices>} 上的属性覆盖所引用模板的属性。时长支持 ms / s / m 后缀，不带后缀按毫秒。
+ * 设备实例通过 {@link #devices()} 按需逐个生成，不会一次性构建整个设备列表。
+ */
 public class DevicesConfig {
+
+    private String brokerUrl = "tcp://localhost:1883";
+    private ConnectionMode connectionMode = ConnectionMode.PER_DEVICE;
+    private int poolSize = 8;
+    private int workers = 4;
+    private int rampUpPerSecond = 1000;
+    private final List<DeviceConfig> groups = new ArrayList<>();
+
+    public static DevicesConfig load(String path) throws IOException {
+        try (InputStream in = new FileInputStream(path)) {
+            return parse(in);
+        }
+    }
+
+    public static DevicesConfig loadFromClasspath(String resource) throws IOException {
+        try (InputStream in = DevicesConfig.class.getClassLoader().getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IOException("Classpath resource not found: " + resource);
+            }
+            return parse(in);
+        }
+    }
+
+    public static DevicesConfig parse(InputStream in) throws IOException {
+        DevicesConfig config = new DevicesConfig();
+        Map<String, DeviceConfig> templates = new HashMap<>();
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        // 设备定义文件不需要外部实体
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        try {
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                        continue;
+                    }
+                    switch (reader.getLocalName()) {
+                        case "fleet" -> config.readFleet(reader);
+                        case "template" -> {
+                            DeviceConfig template = readGroup(reader, null, 0);
+                            if (template.getName() == null) {
+                                throw new IllegalArgumentException("<template> requires a name");
+                            }
+                            templates.put(template.getName(), template);
+                        }
+                        case "devices" -> {
+                            String templateName = reader.getAttributeValue(null, "template");
+                            DeviceConfig template = null;
+                            if (templateName != null) {
+                                template = templates.get(templateName);
+                                if (template == null) {
+                                    throw new IllegalArgumentException("Unknown template: " + templateName);
+                                }
+                            }
+                            config.groups.add(readGroup(reader, template, 1));
+                        }
+                        default -> {
+                            // 忽略未知元素
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Invalid device fleet definition: " + e.getMessage(), e);
+        }
+        return config;
+    }
+
+    private void readFleet(XMLStreamReader reader) {
+        brokerUrl = attr(reader, "brokerUrl", brokerUrl);
+        connectionMode = ConnectionMode.valueOf(attr(reader, "connectionMode", connectionMode.name()).toUpperCase());
+        poolSize = Integer.parseInt(attr(reader, "poolSize", Integer.toString(poolSize)));
+        workers = Integer.parseInt(attr(reader, "workers", Integer.toString(workers)));
+        rampUpPerSecond = Integer.parseInt(attr(reader, "rampUpPerSecond", Integer.toString(rampUpPerSecond)));
+    }
+
+    private static DeviceConfig readGroup(XMLStreamReader reader, DeviceConfig template, int defaultCount) {
+        String deviceType = attr(reader, "deviceType", template != null ? template.getDeviceType() : null);
+        if (deviceType == null) {
+            throw new IllegalArgumentException("<" + reader.getLocalName() + "> requires a deviceType");
+        }
+        String defaultPattern = template != null ? template.getIdPattern() : deviceType.toLowerCase() + "-%06d";
+        return new DeviceConfig(
+                reader.getAttributeValue(null, "name"),
+                deviceType,
+                Integer.parseInt(attr(reader, "count", Integer.toString(defaultCount))),
+                attr(reader, "idPattern", defaultPattern),
+                Integer.parseInt(attr(reader, "startIndex", template != null ? Integer.toString(template.getStartIndex()) : "1")),
+                parseDuration(attr(reader, "interval", null), template != null ? template.getIntervalMillis() : 10_000),
+                parseDuration(attr(reader, "jitter", null), template != null ? template.getJitterMillis() : 0),
+                Boolean.parseBoolean(attr(reader, "initiallyOn", template != null ? Boolean.toString(template.isInitiallyOn()) : "true")),
+                PayloadEncoding.valueOf(attr(reader, "encoding", template != null ? template.getEncoding().name() : "JSON").toUpperCase()));
+    }
+
+    private static String attr(XMLStreamReader reader, String name, String defaultValue) {
+        String value = reader.getAttributeValue(null, name);
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+
+    /**
+     * 解析时长: "500ms"、"5s"、"1m" 或纯数字（毫秒）。
+     */
+    static long parseDuration(String value, long defaultMillis) {
+        if (value == null) {
+            return defaultMillis;
+        }
+        String v = value.toLowerCase();
+        try {
+            if (v.endsWith("ms")) {
+                return Long.parseLong(v.substring(0, v.length() - 2).trim());
+            }
+            if (v.endsWith("s")) {
+                return Math.round(Double.parseDouble(v.substring(0, v.length() - 1).trim()) * 1000);
+            }
+            if (v.endsWith("m")) {
+                return Math.round(Double.parseDouble(v.substring(0, v.length() - 1).trim()) * 60_000);
+            }
+            return Long.parseLong(v);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid duration: " + value, e);
+        }
+    }
+
+    /**
+     * 按定义顺序逐个生成设备的迭代器（惰性，每次 next() 才创建一个设备对象）。
+     */
+    public Iterator<SimulatedDevice> devices() {
+        return new Iterator<>() {
+            private int group;
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                while (group < groups.size() && index >= groups.get(group).getCount()) {
+                    group++;
+                    index = 0;
+                }
+                return group < groups.size();
+            }
+
+            @Override
+            public SimulatedDevice next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return groups.get(group).createDevice(index++);
+            }
+        };
+    }
+
+    public long totalDevices() {
+        long total = 0;
+        for (DeviceConfig group : groups) {
+            total += group.getCount();
+        }
+        return total;
+    }
+
+    public String getBrokerUrl() {
+        return brokerUrl;
+    }
+
+    public void setBrokerUrl(String brokerUrl) {
+        this.brokerUrl = brokerUrl;
+    }
+
+    public ConnectionMode getConnectionMode() {
+        return connectionMode;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public int getRampUpPerSecond() {
+        return rampUpPerSecond;
+    }
+
+    public List<DeviceConfig> getGroups() {
+        return groups;
+    }
 }
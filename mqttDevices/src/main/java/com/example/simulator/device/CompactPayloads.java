@@ -0,0 +1,77 @@
+package com.example.simulator.device;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 紧凑二进制报文编码，与后端 CompactPayloadCodec 的格式一致:
+ * <pre>
+ * 字节 0      魔数 0xC7
+ * 字节 1      类型: 0x01 上报、0x02 状态；最高位 0x80 表示带压测附加字段
+ * 上报        varint 时间戳 + 按注册 schema 顺序每个指标一个 zigzag varint (round(值 * 10^scale))
+ *             [+ varint seq + zigzag varint sendNanos]
+ * 状态        varint 时间戳 + varint 长度 + UTF-8 状态字符串
+ * </pre>
+ * 指标名不出现在报文中，由设备在注册消息里以 schema 声明。
+ */
+public final class CompactPayloads {
+
+    public static final int MAGIC = 0xC7;
+    public static final int KIND_REPORT = 0x01;
+    public static final int KIND_STATUS = 0x02;
+    public static final int FLAG_BENCH = 0x80;
+
+    private CompactPayloads() {
+    }
+
+    /**
+     * @param scaledValues 已按 schema 的小数位数放大并取整的指标值（schema 顺序）
+     */
+    public static byte[] report(long timestamp, long[] scaledValues) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4 + 10 + scaledValues.length * 3);
+        out.write(MAGIC);
+        out.write(KIND_REPORT);
+        writeValues(out, timestamp, scaledValues);
+        return out.toByteArray();
+    }
+
+    public static byte[] benchReport(long timestamp, long[] scaledValues, long seq, long sendNanos) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4 + 30 + scaledValues.length * 3);
+        out.write(MAGIC);
+        out.write(KIND_REPORT | FLAG_BENCH);
+        writeValues(out, timestamp, scaledValues);
+        writeVarint(out, seq);
+        writeVarint(out, zigzag(sendNanos));
+        return out.toByteArray();
+    }
+
+    public static byte[] status(long timestamp, String status) {
+        byte[] text = status.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 + text.length);
+        out.write(MAGIC);
+        out.write(KIND_STATUS);
+        writeVarint(out, timestamp);
+        writeVarint(out, text.length);
+        out.write(text, 0, text.length);
+        return out.toByteArray();
+    }
+
+    private static void writeValues(ByteArrayOutputStream out, long timestamp, long[] scaledValues) {
+        writeVarint(out, timestamp);
+        for (long value : scaledValues) {
+            writeVarint(out, zigzag(value));
+        }
+    }
+
+    private static long zigzag(long n) {
+        return (n << 1) ^ (n >> 63);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.simulator.device;
+
+/**
+ * 设备上报/状态消息的报文格式（devices.xml 中的 encoding 属性）。注册消息始终为 JSON。
+ */
+public enum PayloadEncoding {
+    /** JSON 文本（默认） */
+    JSON,
+    /** 紧凑二进制格式，见 {@link CompactPayloads} */
+    COMPACT
+}
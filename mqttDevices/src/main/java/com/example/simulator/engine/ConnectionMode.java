@@ -0,0 +1,11 @@
+package com.example.simulator.engine;
+
+/**
+ * 模拟设备与 Broker 的连接方式。
+ */
+public enum ConnectionMode {
+    /** 每个设备一个 MQTT 连接（各自的 clientId 和遗嘱消息），最接近真实设备，适合数千台以内 */
+    PER_DEVICE,
+    /** 多个设备复用一个连接池，按设备 ID 哈希分配连接，适合十万级设备压测 */
+    POOLED
+}
@@ -0,0 +1,211 @@
+package com.example.simulator.engine;
+
+import com.example.simulator.device.SimulatedDevice;
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttCallbackExtended;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.ScheduledExecutorPingSender;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * 一个异步 MQTT 连接，承载一个（PER_DEVICE）或多个（POOLED）模拟设备。
+ * <p>
+ * 发布使用 {@link MqttAsyncClient}，调用方不会阻塞在网络 IO 上。连接只订阅自己承载的设备的命令主题
+ * （device/command/{id}），Broker 只投递这些设备的命令；收到的命令按主题中的设备 ID 路由到对应设备，
+ * 并交给引擎的工作线程处理，不占用 Paho 回调线程。
+ * 首次连接失败时由引擎定时器重试，连接建立后断线由 Paho 自动重连，重连成功后重新订阅并通知设备。
+ */
+public class DeviceConnection implements MqttCallbackExtended {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeviceConnection.class);
+    private static final long CONNECT_RETRY_MILLIS = 10_000;
+    // (重)连接后批量订阅时每个 SUBSCRIBE 报文包含的主题数
+    private static final int SUBSCRIBE_BATCH = 500;
+
+    private final SimulationEngine engine;
+    private final MqttAsyncClient client;
+    private final MqttConnectOptions options;
+    private final Map<String, SimulatedDevice> devices = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    /**
+     * @param maxInflight   QoS 1 未确认消息的最大数量；连接池中的连接承载大量设备，需要更大的窗口
+     */
+    DeviceConnection(SimulationEngine engine, String brokerUrl, String clientId, int maxInflight,
+                     ScheduledExecutorService pingScheduler) throws MqttException {
+        this.engine = engine;
+        this.client = new MqttAsyncClient(brokerUrl, clientId, new MemoryPersistence(),
+                new ScheduledExecutorPingSender(pingScheduler));
+        this.options = new MqttConnectOptions();
+        options.setAutomaticReconnect(true);
+        options.setCleanSession(true);
+        options.setConnectionTimeout(10);
+        options.setKeepAliveInterval(20); // 秒
+        options.setMaxInflight(maxInflight);
+        client.setCallback(this);
+    }
+
+    /**
+     * 设置遗嘱消息（仅 PER_DEVICE 模式有意义，须在 connect 之前调用）。
+     */
+    void setWill(String topic, byte[] payload) {
+        options.setWill(topic, payload, 1, true);
+    }
+
+    /**
+     * 加入一个设备。连接已建立时立即订阅其命令主题；否则在 connectComplete 中随其他设备一起订阅
+     * （两者并发时可能重复订阅同一主题，对 Broker 无副作用）。
+     */
+    void attach(SimulatedDevice device) {
+        devices.put(device.getDeviceId(), device);
+        if (client.isConnected()) {
+            subscribe(new String[]{device.getCommandTopic()});
+            engine.execute(device::onConnected);
+        }
+    }
+
+    void detach(SimulatedDevice device) {
+        if (devices.remove(device.getDeviceId(), device) && client.isConnected()) {
+            try {
+                client.unsubscribe(device.getCommandTopic());
+            } catch (MqttException e) {
+                logger.debug("连接 [{}] 取消订阅 {} 失败: {}", client.getClientId(), device.getCommandTopic(), e.getMessage());
+            }
+        }
+    }
+
+    int deviceCount() {
+        return devices.size();
+    }
+
+    /**
+     * 异步连接，失败时稍后重试。
+     */
+    void connect() {
+        if (closed) {
+            return;
+        }
+        try {
+            client.connect(options, null, new IMqttActionListener() {
+                @Override
+                public void onSuccess(IMqttToken asyncActionToken) {
+                    // connectComplete 回调中处理订阅和设备上线
+                }
+
+                @Override
+                public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+                    logger.warn("连接 [{}] 失败，将在 {} 秒后重试: {}", client.getClientId(),
+                            CONNECT_RETRY_MILLIS / 1000, exception.getMessage());
+                    engine.schedule(DeviceConnection.this::connect, CONNECT_RETRY_MILLIS);
+                }
+            });
+        } catch (MqttException e) {
+            logger.warn("连接 [{}] 发起失败，将在 {} 秒后重试: {}", client.getClientId(),
+                    CONNECT_RETRY_MILLIS / 1000, e.getMessage());
+            engine.schedule(this::connect, CONNECT_RETRY_MILLIS);
+        }
+    }
+
+    public boolean isConnected() {
+        return client.isConnected();
+    }
+
+    /**
+     * 非阻塞发布。未连接或未确认窗口已满时返回 false（计入发布失败）。
+     */
+    public boolean publish(String topic, byte[] payload, int qos, boolean retained) {
+        if (!client.isConnected()) {
+            engine.recordPublishFailure();
+            return false;
+        }
+        try {
+            client.publish(topic, payload, qos, retained);
+            engine.recordPublished();
+            return true;
+        } catch (MqttException e) {
+            engine.recordPublishFailure();
+            logger.debug("连接 [{}] 发布到 {} 失败: {}", client.getClientId(), topic, e.getMessage());
+            return false;
+        }
+    }
+
+    // --- MqttCallbackExtended 回调实现 ---
+    @Override
+    public void connectComplete(boolean reconnect, String serverURI) {
+        logger.debug("连接 [{}] {}成功，承载 {} 个设备", client.getClientId(), reconnect ? "重连" : "连接", devices.size());
+        // cleanSession 连接（重连）后订阅为空，重新订阅全部设备的命令主题
+        List<SimulatedDevice> attached = new ArrayList<>(devices.values());
+        for (int from = 0; from < attached.size(); from += SUBSCRIBE_BATCH) {
+            List<SimulatedDevice> batch = attached.subList(from, Math.min(attached.size(), from + SUBSCRIBE_BATCH));
+            subscribe(batch.stream().map(SimulatedDevice::getCommandTopic).toArray(String[]::new));
+        }
+        for (SimulatedDevice device : attached) {
+            engine.execute(device::onConnected);
+        }
+    }
+
+    private void subscribe(String[] topics) {
+        int[] qos = new int[topics.length];
+        Arrays.fill(qos, 1);
+        try {
+            client.subscribe(topics, qos);
+        } catch (MqttException e) {
+            logger.error("连接 [{}] 订阅 {} 个命令主题失败: {}", client.getClientId(), topics.length, e.getMessage());
+        }
+    }
+
+    @Override
+    public void connectionLost(Throwable cause) {
+        logger.warn("连接 [{}] 丢失 ({} 个设备): {}", client.getClientId(), devices.size(), cause.getMessage());
+        for (SimulatedDevice device : devices.values()) {
+            device.onDisconnected();
+        }
+    }
+
+    @Override
+    public void messageArrived(String topic, MqttMessage message) {
+        String deviceId = topic.substring(topic.lastIndexOf('/') + 1);
+        SimulatedDevice device = devices.get(deviceId);
+        if (device == null) {
+            // 设备已移除，取消订阅之前到达的命令
+            return;
+        }
+        byte[] payload = message.getPayload();
+        engine.execute(() -> device.handleCommand(topic, payload));
+    }
+
+    @Override
+    public void deliveryComplete(IMqttDeliveryToken token) {
+        // QoS 1 消息送达确认，无需处理
+    }
+
+    void close() {
+        closed = true;
+        try {
+            if (client.isConnected()) {
+                client.disconnect(1000).waitForCompletion(2000);
+            }
+        } catch (MqttException e) {
+            logger.debug("断开连接 [{}] 时出错: {}", client.getClientId(), e.getMessage());
+        }
+        try {
+            client.close();
+        } catch (MqttException e) {
+            logger.debug("关闭连接 [{}] 时出错: {}", client.getClientId(), e.getMessage());
+        }
+    }
+}
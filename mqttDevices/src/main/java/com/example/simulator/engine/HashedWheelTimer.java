@@ -0,0 +1,184 @@
+package com.example.simulator.engine;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 哈希时间轮定时器：所有模拟设备共享一个时间轮和一个节拍线程。
+ * <p>
+ * 新定时任务先放入无锁队列，由节拍线程在每个节拍转移到对应的槽位（槽位链表只由节拍线程访问）。
+ * 到期的任务不在节拍线程中执行，而是交给 dispatcher（工作线程池），节拍线程只负责计时。
+ * 精度为一个节拍（tickMillis），对于秒级的上报间隔足够；十万个定时任务也只占用链表节点的内存。
+ */
+public class HashedWheelTimer {
+
+    private static final Logger logger = LoggerFactory.getLogger(HashedWheelTimer.class);
+    // 每个节拍最多从队列转移的任务数，防止突发添加时节拍线程长时间不推进
+    private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+
+    /**
+     * 一个定时任务的句柄。
+     */
+    public static final class Timeout {
+        private final Runnable task;
+        private final long deadline; // 相对 startTime 的毫秒数
+        private long remainingRounds;
+        private Timeout next;
+        private volatile boolean cancelled;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * 取消任务；已经交给工作线程的任务不受影响。
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private final String name;
+    private final long tickMillis;
+    private final int mask;
+    private final Timeout[] wheel;
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final Executor dispatcher;
+
+    private volatile long startTime;
+    private volatile boolean running;
+    private Thread worker;
+    private long tick;
+
+    /**
+     * @param wheelSize 槽位数，向上取整为 2 的幂
+     */
+    public HashedWheelTimer(String name, long tickMillis, int wheelSize, Executor dispatcher) {
+        this.name = name;
+        this.tickMillis = tickMillis;
+        int size = Integer.highestOneBit(Math.max(2, wheelSize) - 1) << 1;
+        this.wheel = new Timeout[size];
+        this.mask = size - 1;
+        this.dispatcher = dispatcher;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        startTime = System.currentTimeMillis();
+        running = true;
+        worker = new Thread(this::run, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public void stop() {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+
+    /**
+     * 在 delayMillis 毫秒后执行 task（在 dispatcher 中执行）。
+     */
+    public Timeout newTimeout(Runnable task, long delayMillis) {
+        long deadline = System.currentTimeMillis() + Math.max(0, delayMillis) - startTime;
+        Timeout timeout = new Timeout(task, deadline);
+        pending.add(timeout);
+        return timeout;
+    }
+
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    private void run() {
+        while (running) {
+            long sleep = startTime + (tick + 1) * tickMillis - System.currentTimeMillis();
+            if (sleep > 0) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(sleep);
+                } catch (InterruptedException e) {
+                    if (!running) {
+                        break;
+                    }
+                }
+            }
+            try {
+                transferPending();
+                expireBucket(tick & mask);
+            } catch (Exception e) {
+                logger.error("时间轮 [{}] 处理节拍时出错: {}", name, e.getMessage(), e);
+            }
+            tick++;
+        }
+    }
+
+    private void transferPending() {
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+            Timeout timeout = pending.poll();
+            if (timeout == null) {
+                return;
+            }
+            if (timeout.cancelled) {
+                continue;
+            }
+            long ticks = Math.max(timeout.deadline / tickMillis, tick); // 已过期的任务放入当前槽位
+            timeout.remainingRounds = (ticks - tick) / wheel.length;
+            int index = (int) (ticks & mask);
+            timeout.next = wheel[index];
+            wheel[index] = timeout;
+        }
+    }
+
+    private void expireBucket(long index) {
+        int i = (int) index;
+        Timeout previous = null;
+        Timeout current = wheel[i];
+        while (current != null) {
+            Timeout next = current.next;
+            boolean remove;
+            if (current.cancelled) {
+                remove = true;
+            } else if (current.remainingRounds <= 0) {
+                remove = true;
+                dispatch(current);
+            } else {
+                current.remainingRounds--;
+                remove = false;
+            }
+            if (remove) {
+                if (previous == null) {
+                    wheel[i] = next;
+                } else {
+                    previous.next = next;
+                }
+                current.next = null;
+            } else {
+                previous = current;
+            }
+            current = next;
+        }
+    }
+
+    private void dispatch(Timeout timeout) {
+        try {
+            dispatcher.execute(timeout.task);
+        } catch (RejectedExecutionException e) {
+            // 工作线程池已关闭
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.example.simulator.engine;
+
+import com.example.simulator.device.SimulatedDevice;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 模拟器引擎：用一个共享的时间轮和一个小型工作线程池驱动任意数量的逻辑设备。
+ * <p>
+ * 设备本身只是普通对象（状态 + 下一次上报的定时器句柄），不再各自占用线程、调度器和 MQTT 客户端；
+ * 连接按 {@link ConnectionMode} 选择每设备一个或多设备复用连接池。
+ * 单个 JVM 即可模拟十万级设备对后端进行压测。
+ */
+public class SimulationEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(SimulationEngine.class);
+    private static final long TICK_MILLIS = 10;
+    private static final int WHEEL_SIZE = 1024;
+    private static final long STATS_INTERVAL_MILLIS = 10_000;
+    private static final long RAMP_STEP_MILLIS = 100;
+
+    private final String brokerUrl;
+    private final ConnectionMode connectionMode;
+    private final int poolSize;
+    private final int workerThreads;
+
+    private ExecutorService workers;
+    private ScheduledExecutorService pingScheduler;
+    private HashedWheelTimer timer;
+    private final List<DeviceConnection> pool = new CopyOnWriteArrayList<>();
+    private final ConcurrentLinkedQueue<SimulatedDevice> devices = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<DeviceConnection> dedicatedConnections = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger deviceCount = new AtomicInteger();
+    private final String runId = Long.toString(System.currentTimeMillis(), 36);
+
+    // 压测模式: 设备上报中附带序号和发送时刻 (bench.seq / bench.sendNanos)
+    private volatile boolean benchmarkMode;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder reportsPublished = new LongAdder();
+    private final LongAdder publishFailures = new LongAdder();
+    private final LongAdder commandsReceived = new LongAdder();
+    private long lastPublished;
+
+    /**
+     * @param poolSize      POOLED 模式下的连接数
+     * @param workerThreads 执行上报、命令处理等设备任务的线程数
+     */
+    public SimulationEngine(String brokerUrl, ConnectionMode connectionMode, int poolSize, int workerThreads) {
+        this.brokerUrl = brokerUrl;
+        this.connectionMode = connectionMode;
+        this.poolSize = Math.max(1, poolSize);
+        this.workerThreads = Math.max(1, workerThreads);
+    }
+
+    public void start() throws MqttException {
+        AtomicInteger workerIndex = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(workerThreads, r -> {
+            Thread t = new Thread(r, "sim-worker-" + workerIndex.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        pingScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "sim-mqtt-ping");
+            t.setDaemon(true);
+            return t;
+        });
+        timer = new HashedWheelTimer("sim-timer", TICK_MILLIS, WHEEL_SIZE, workers);
+        timer.start();
+
+        if (connectionMode == ConnectionMode.POOLED) {
+            for (int i = 0; i < poolSize; i++) {
+                DeviceConnection connection = new DeviceConnection(this, brokerUrl,
+                        "sim-pool-" + runId + "-" + i, 65535, pingScheduler);
+                pool.add(connection);
+                connection.connect();
+            }
+        }
+        schedule(this::logStats, STATS_INTERVAL_MILLIS);
+        logger.info("模拟器引擎已启动: Broker={}, 连接方式={}{}, 工作线程={}", brokerUrl, connectionMode,
+                connectionMode == ConnectionMode.POOLED ? " x" + poolSize : "", workerThreads);
+    }
+
+    /**
+     * 加入一个设备：分配（或创建）连接，连接建立后设备自动注册、上报状态并开始周期上报。
+     */
+    public void addDevice(SimulatedDevice device) throws MqttException {
+        device.bind(this);
+        devices.add(device);
+        deviceCount.incrementAndGet();
+        if (connectionMode == ConnectionMode.POOLED) {
+            DeviceConnection connection = pool.get(Math.floorMod(device.getDeviceId().hashCode(), pool.size()));
+            device.setConnection(connection);
+            connection.attach(device);
+        } else {
+            DeviceConnection connection = new DeviceConnection(this, brokerUrl,
+                    "sim-" + device.getDeviceId() + "-" + runId, 10, pingScheduler);
+            connection.setWill(device.getStatusTopic(), device.buildStatusPayload("offline"));
+            device.setConnection(connection);
+            connection.attach(device);
+            dedicatedConnections.add(connection);
+            connection.connect();
+        }
+    }
+
+    /**
+     * 按 perSecond 的速率从迭代器中逐批取出设备并加入（每 100 毫秒一批），
+     * 设备对象在加入时才被创建，大规模设备群不会一次性占满内存或同时冲击 Broker。
+     *
+     * @param onComplete 全部设备加入后调用，可为 null
+     */
+    public void rampUp(Iterator<SimulatedDevice> source, int perSecond, Runnable onComplete) {
+        int perStep = Math.max(1, (int) (perSecond * RAMP_STEP_MILLIS / 1000));
+        execute(() -> rampStep(source, perStep, onComplete));
+    }
+
+    private void rampStep(Iterator<SimulatedDevice> source, int perStep, Runnable onComplete) {
+        long stepStart = System.currentTimeMillis();
+        try {
+            for (int i = 0; i < perStep && source.hasNext(); i++) {
+                addDevice(source.next());
+            }
+        } catch (MqttException e) {
+            logger.error("加入模拟设备时出错，停止接入: {}", e.getMessage(), e);
+            return;
+        }
+        if (source.hasNext()) {
+            long elapsed = System.currentTimeMillis() - stepStart;
+            schedule(() -> rampStep(source, perStep, onComplete), Math.max(0, RAMP_STEP_MILLIS - elapsed));
+        } else {
+            logger.info("全部 {} 个模拟设备已接入", deviceCount.get());
+            if (onComplete != null) {
+                onComplete.run();
+            }
+        }
+    }
+
+    public HashedWheelTimer.Timeout schedule(Runnable task, long delayMillis) {
+        return timer.newTimeout(task, delayMillis);
+    }
+
+    public void execute(Runnable task) {
+        try {
+            workers.execute(task);
+        } catch (RejectedExecutionException e) {
+            // 引擎已关闭
+        }
+    }
+
+    public int getDeviceCount() {
+        return deviceCount.get();
+    }
+
+    void recordPublished() {
+        published.increment();
+    }
+
+    void recordPublishFailure() {
+        publishFailures.increment();
+    }
+
+    public void recordReport() {
+        reportsPublished.increment();
+    }
+
+    public long getReportsPublished() {
+        return reportsPublished.sum();
+    }
+
+    public boolean isBenchmarkMode() {
+        return benchmarkMode;
+    }
+
+    public void setBenchmarkMode(boolean benchmarkMode) {
+        this.benchmarkMode = benchmarkMode;
+    }
+
+    public void recordCommand() {
+        commandsReceived.increment();
+    }
+
+    public long getCommandsReceived() {
+        return commandsReceived.sum();
+    }
+
+    public long getPublished() {
+        return published.sum();
+    }
+
+    public long getPublishFailures() {
+        return publishFailures.sum();
+    }
+
+    private void logStats() {
+        long total = published.sum();
+        double rate = (total - lastPublished) * 1000.0 / STATS_INTERVAL_MILLIS;
+        lastPublished = total;
+        logger.info("模拟器运行中: 设备 {}, 已发布 {} 条 ({} 条/秒), 发布失败 {}, 收到命令 {}",
+                deviceCount.get(), total, String.format("%.0f", rate), publishFailures.sum(), commandsReceived.sum());
+        schedule(this::logStats, STATS_INTERVAL_MILLIS);
+    }
+
+    /**
+     * 停止所有设备（尽力发布 offline 状态），然后关闭连接和线程。
+     */
+    public void shutdown(long timeoutMillis) {
+        logger.info("正在停止 {} 个模拟设备...", deviceCount.get());
+        timer.stop();
+        for (SimulatedDevice device : devices) {
+            device.stop();
+        }
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                logger.warn("模拟器工作线程未能在 {} 毫秒内停止，强制停止...", timeoutMillis);
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        pool.forEach(DeviceConnection::close);
+        dedicatedConnections.forEach(DeviceConnection::close);
+        pingScheduler.shutdownNow();
+        logger.info("模拟器引擎已停止，共发布 {} 条消息，失败 {} 条", published.sum(), publishFailures.sum());
+    }
+}
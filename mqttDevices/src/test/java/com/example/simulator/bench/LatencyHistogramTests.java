@@ -0,0 +1,69 @@
+package com.example.simulator.bench;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTests {
+
+    @Test
+    void emptyHistogramReportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getTotalCount());
+        assertEquals(0, histogram.getMin());
+        assertEquals(0, histogram.valueAtPercentile(99));
+        assertEquals(0.0, histogram.getMean());
+    }
+
+    @Test
+    void smallValuesAreRecordedExactly() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int v = 1; v <= 200; v++) {
+            histogram.record(v);
+        }
+        assertEquals(200, histogram.getTotalCount());
+        assertEquals(1, histogram.getMin());
+        assertEquals(200, histogram.getMax());
+        assertEquals(100.5, histogram.getMean(), 1e-9);
+        assertEquals(100, histogram.valueAtPercentile(50));
+        assertEquals(198, histogram.valueAtPercentile(99));
+        assertEquals(200, histogram.valueAtPercentile(100));
+        assertEquals(1, histogram.valueAtPercentile(0));
+    }
+
+    @Test
+    void bucketsReportUpperBoundWithinOnePercent() {
+        long[] values = {255, 256, 257, 511, 512, 513, 1000, 4095, 4096, 123_456, 9_999_999, 1L << 40, Long.MAX_VALUE / 2};
+        for (long v : values) {
+            LatencyHistogram histogram = new LatencyHistogram();
+            histogram.record(v);
+            histogram.record(Long.MAX_VALUE); // 让 max 不截断 v 所在桶的上界
+            long reported = histogram.valueAtPercentile(50);
+            assertTrue(reported >= v, v + " -> " + reported);
+            assertTrue(reported - v <= v / 100, v + " -> " + reported);
+        }
+    }
+
+    @Test
+    void percentilesOfUniformDistributionAreConservativeAndAccurate() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int v = 1; v <= 100_000; v++) {
+            histogram.record(v);
+        }
+        for (double p : new double[]{50, 90, 99, 99.9}) {
+            long expected = (long) Math.ceil(100_000 * p / 100);
+            long reported = histogram.valueAtPercentile(p);
+            assertTrue(reported >= expected && reported <= expected * 1.01, p + " -> " + reported);
+        }
+        assertEquals(100_000, histogram.valueAtPercentile(100));
+    }
+
+    @Test
+    void negativeValuesAreClampedToZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(0, histogram.getMin());
+        assertEquals(0, histogram.valueAtPercentile(100));
+    }
+}
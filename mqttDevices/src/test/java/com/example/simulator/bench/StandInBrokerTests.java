@@ -0,0 +1,101 @@
+package com.example.simulator.bench;
+
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StandInBrokerTests {
+
+    private StandInBroker broker;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        broker = new StandInBroker(0);
+        broker.start();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        broker.close();
+    }
+
+    private MqttClient connect(String clientId) throws Exception {
+        MqttClient client = new MqttClient("tcp://localhost:" + broker.getPort(), clientId, new MemoryPersistence());
+        client.connect();
+        return client;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    @Test
+    void topicFiltersMatchWildcards() {
+        assertTrue(StandInBroker.matches("device/report/+", "device/report/th-1"));
+        assertFalse(StandInBroker.matches("device/report/+", "device/report/th-1/extra"));
+        assertTrue(StandInBroker.matches("device/#", "device/report/th-1"));
+        assertTrue(StandInBroker.matches("device/#", "device"));
+        assertTrue(StandInBroker.matches("+/status/+", "device/status/sw-1"));
+        assertFalse(StandInBroker.matches("device/command/sw-1", "device/command/sw-2"));
+        assertFalse(StandInBroker.matches("#", "$SYS/broker/uptime"));
+    }
+
+    @Test
+    void routesToExactAndWildcardSubscriptionsAndReplaysRetained() throws Exception {
+        MqttClient publisher = connect("standin-publisher");
+        publisher.publish("device/status/sw-1", "online".getBytes(StandardCharsets.UTF_8), 1, true);
+
+        List<String> received = new CopyOnWriteArrayList<>();
+        MqttClient subscriber = connect("standin-subscriber");
+        subscriber.setCallback(new MqttCallback() {
+            @Override
+            public void connectionLost(Throwable cause) {
+            }
+
+            @Override
+            public void messageArrived(String topic, MqttMessage message) {
+                received.add(topic + "=" + new String(message.getPayload(), StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public void deliveryComplete(IMqttDeliveryToken token) {
+            }
+        });
+        // 精确主题和通配符订阅；订阅时收到匹配的保留消息
+        subscriber.subscribe(new String[]{"device/command/sw-1", "device/status/+"}, new int[]{1, 1});
+        await(() -> received.size() >= 1);
+        publisher.publish("device/command/sw-1", "ON".getBytes(StandardCharsets.UTF_8), 1, false);
+        publisher.publish("device/command/sw-2", "ON".getBytes(StandardCharsets.UTF_8), 1, false);
+        await(() -> received.size() >= 2);
+
+        subscriber.unsubscribe("device/command/sw-1");
+        publisher.publish("device/command/sw-1", "OFF".getBytes(StandardCharsets.UTF_8), 1, false);
+        publisher.publish("device/status/sw-1", "offline".getBytes(StandardCharsets.UTF_8), 1, false);
+        await(() -> received.size() >= 3);
+
+        assertEquals(List.of("device/status/sw-1=online", "device/command/sw-1=ON", "device/status/sw-1=offline"),
+                received);
+        publisher.disconnect();
+        subscriber.disconnect();
+        publisher.close();
+        subscriber.close();
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.simulator.config;
+
+import com.example.simulator.device.PayloadEncoding;
+import com.example.simulator.device.SimulatedDevice;
+import com.example.simulator.engine.ConnectionMode;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DevicesConfigTests {
+
+    private static final String FLEET = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <fleet brokerUrl="tcp://broker:1883" connectionMode="pooled" poolSize="3" workers="2" rampUpPerSecond="500">
+                <template name="th" deviceType="TempHumSensor" interval="5s" jitter="500ms" idPattern="th-%04d"/>
+                <template name="sw" deviceType="SmartSwitch" interval="1m" initiallyOn="false"/>
+                <devices template="th" count="3"/>
+                <devices template="th" count="0" idPattern="empty-%d"/>
+                <devices template="sw" count="2" startIndex="10"/>
+                <devices template="th" count="2" idPattern="compact-%03d" interval="2500ms" encoding="compact"/>
+                <devices deviceType="Lamp" count="1"/>
+            </fleet>
+            """;
+
+    private static DevicesConfig parse(String xml) throws IOException {
+        return DevicesConfig.parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String describe(SimulatedDevice device) {
+        return device.getDeviceId() + "/" + device.getDeviceType() + "/" + device.getEncoding();
+    }
+
+    @Test
+    void lazyIteratorYieldsSameDevicesAsEagerExpansion() throws IOException {
+        DevicesConfig config = parse(FLEET);
+
+        List<String> eager = new ArrayList<>();
+        for (DeviceConfig group : config.getGroups()) {
+            for (int i = 0; i < group.getCount(); i++) {
+                eager.add(describe(group.createDevice(i)));
+            }
+        }
+        List<String> lazy = new ArrayList<>();
+        for (Iterator<SimulatedDevice> it = config.devices(); it.hasNext(); ) {
+            lazy.add(describe(it.next()));
+        }
+
+        assertEquals(eager, lazy);
+        assertEquals(List.of(
+                "th-0001/TempHumSensor/JSON", "th-0002/TempHumSensor/JSON", "th-0003/TempHumSensor/JSON",
+                "smartswitch-000010/SmartSwitch/JSON", "smartswitch-000011/SmartSwitch/JSON",
+                "compact-001/TempHumSensor/COMPACT", "compact-002/TempHumSensor/COMPACT",
+                "lamp-000001/Lamp/JSON"), lazy);
+        assertEquals(lazy.size(), config.totalDevices());
+    }
+
+    @Test
+    void groupAttributesOverrideTheirTemplate() throws IOException {
+        DevicesConfig config = parse(FLEET);
+        assertEquals("tcp://broker:1883", config.getBrokerUrl());
+        assertEquals(ConnectionMode.POOLED, config.getConnectionMode());
+        assertEquals(3, config.getPoolSize());
+
+        List<DeviceConfig> groups = config.getGroups();
+        assertEquals(5000, groups.get(0).getIntervalMillis());
+        assertEquals(500, groups.get(0).getJitterMillis());
+        assertEquals(60_000, groups.get(2).getIntervalMillis());
+        assertFalse(groups.get(2).isInitiallyOn());
+        assertEquals(2500, groups.get(3).getIntervalMillis());
+        assertEquals(500, groups.get(3).getJitterMillis()); // 未覆盖的属性沿用模板
+        assertEquals(PayloadEncoding.COMPACT, groups.get(3).getEncoding());
+        assertEquals(10_000, groups.get(4).getIntervalMillis());
+        assertTrue(groups.get(4).isInitiallyOn());
+    }
+
+    @Test
+    void exhaustedIteratorThrows() throws IOException {
+        Iterator<SimulatedDevice> it = parse("<fleet><devices deviceType=\"Lamp\" count=\"1\"/></fleet>").devices();
+        assertTrue(it.hasNext());
+        assertTrue(it.hasNext()); // hasNext 不消耗元素
+        it.next();
+        assertFalse(it.hasNext());
+        assertThrows(NoSuchElementException.class, it::next);
+    }
+
+    @Test
+    void unknownTemplateIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> parse("<fleet><devices template=\"missing\" count=\"1\"/></fleet>"));
+    }
+}
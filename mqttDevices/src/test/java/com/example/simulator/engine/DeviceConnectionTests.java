@@ -0,0 +1,70 @@
+package com.example.simulator.engine;
+
+import com.example.simulator.bench.StandInBroker;
+import com.example.simulator.device.SimulatedDevice;
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeviceConnectionTests {
+
+    private static final int DEVICES = 6;
+    private static final int POOL_SIZE = 3;
+
+    private StandInBroker broker;
+    private SimulationEngine engine;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        broker = new StandInBroker(0);
+        broker.start();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (engine != null) {
+            engine.shutdown(1000);
+        }
+        broker.close();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    @Test
+    void pooledConnectionsOnlyReceiveCommandsOfTheirOwnDevices() throws Exception {
+        engine = new SimulationEngine("tcp://localhost:" + broker.getPort(), ConnectionMode.POOLED, POOL_SIZE, 2);
+        engine.start();
+        for (int i = 0; i < DEVICES; i++) {
+            engine.addDevice(new SimulatedDevice("pooled-" + i, "SmartSwitch", 0, true));
+        }
+        // 每台设备上线时发布注册和状态消息；它们在同一连接上晚于订阅发出，到达 Broker 时订阅已生效
+        await(() -> broker.getMessagesIn() >= 2L * DEVICES);
+
+        MqttClient backend = new MqttClient("tcp://localhost:" + broker.getPort(), "pooled-test-backend",
+                new MemoryPersistence());
+        backend.connect();
+        backend.publish("device/command/pooled-3", "OFF".getBytes(StandardCharsets.UTF_8), 1, false);
+        backend.disconnect();
+        backend.close();
+
+        await(() -> engine.getCommandsReceived() == 1);
+        Thread.sleep(200);
+        // 命令只投递给承载该设备的连接一次，而不是连接池中的每个连接
+        assertEquals(1, broker.getMessagesOut());
+        assertEquals(1, engine.getCommandsReceived());
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.simulator.engine;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HashedWheelTimerTests {
+
+    private static final long TICK_MILLIS = 10;
+    // 8 个槽位，一圈 80 毫秒
+    private static final int WHEEL_SIZE = 8;
+
+    private HashedWheelTimer timer;
+
+    @BeforeEach
+    void setUp() {
+        // 任务直接在节拍线程中执行，便于观察到期时刻
+        timer = new HashedWheelTimer("test-timer", TICK_MILLIS, WHEEL_SIZE, Runnable::run);
+        timer.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        timer.stop();
+    }
+
+    @Test
+    void tasksBeyondOneRevolutionWaitTheirRounds() throws InterruptedException {
+        Map<String, Long> firedAfter = new ConcurrentHashMap<>();
+        List<String> order = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+        long start = System.currentTimeMillis();
+        for (Map.Entry<String, Long> task : Map.of("short", 10L, "oneRound", 90L, "threeRounds", 250L).entrySet()) {
+            timer.newTimeout(() -> {
+                firedAfter.put(task.getKey(), System.currentTimeMillis() - start);
+                order.add(task.getKey());
+                done.countDown();
+            }, task.getValue());
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        // 10 和 90 毫秒落在同一个槽位，90 毫秒的任务要等下一圈；精度为一个节拍
+        assertEquals(List.of("short", "oneRound", "threeRounds"), order);
+        assertTrue(firedAfter.get("oneRound") >= 90 - TICK_MILLIS, firedAfter::toString);
+        assertTrue(firedAfter.get("threeRounds") >= 250 - TICK_MILLIS, firedAfter::toString);
+        assertTrue(firedAfter.get("threeRounds") < 250 + 500, firedAfter::toString);
+    }
+
+    @Test
+    void cancelledTasksDoNotRun() throws InterruptedException {
+        CountDownLatch cancelledRan = new CountDownLatch(1);
+        CountDownLatch control = new CountDownLatch(1);
+
+        // 尚在队列中时取消
+        HashedWheelTimer.Timeout queued = timer.newTimeout(cancelledRan::countDown, 50);
+        queued.cancel();
+        // 已经挂到槽位上之后取消（跨一圈，确保取消时仍未到期）
+        HashedWheelTimer.Timeout inWheel = timer.newTimeout(cancelledRan::countDown, 150);
+        TimeUnit.MILLISECONDS.sleep(5 * TICK_MILLIS);
+        assertEquals(0, timer.pendingCount());
+        inWheel.cancel();
+        timer.newTimeout(control::countDown, 200);
+
+        assertTrue(control.await(5, TimeUnit.SECONDS));
+        assertTrue(queued.isCancelled());
+        assertTrue(inWheel.isCancelled());
+        assertFalse(cancelledRan.await(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void overdueTasksRunOnTheNextTick() throws InterruptedException {
+        CountDownLatch ran = new CountDownLatch(2);
+        long start = System.currentTimeMillis();
+        timer.newTimeout(ran::countDown, 0);
+        timer.newTimeout(ran::countDown, -100);
+
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertTrue(System.currentTimeMillis() - start < 500);
+    }
+}
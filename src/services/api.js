@@ -29,8 +29,17 @@ apiClient.interceptors.response.use(
 
 export default {
   // --- Device API ---
-  getAllDevices() {
-    return apiClient.get('/devices/');
+  // 分页获取设备: params 可含 status / type / uidPrefix / after / limit，返回 { items, nextCursor }
+  getDevices(params) {
+    return apiClient.get('/devices/', { params });
+  },
+  // 导出链接（浏览器直接下载），format 为 json 或 ndjson
+  getDeviceExportUrl(params) {
+    return apiClient.getUri({ url: '/devices/export', params });
+  },
+  // 设备总览（总数、按状态 / 类型计数、消息速率），由服务端内存计数直接返回
+  getFleetSummary() {
+    return apiClient.get('/devices/summary');
   },
   registerDevice(device) {
     return apiClient.post('/devices/register', device);